@@ -0,0 +1,58 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the given regular expressions (all if none are given) with the GC profiler, which adds
+ * the bytes allocated per operation ({@code gc.alloc.rate.norm}) to the results, and writes the results to {@code
+ * benchmark-results.txt}. Compare them with {@code baseline.txt} in this module to spot regressions. Use {@code java
+ * -jar benchmarks.jar} instead to pass any other JMH options.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+
+		final ChainedOptionsBuilder options = new OptionsBuilder()
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.TEXT)
+				.result("benchmark-results.txt");
+
+		// Guice 3 defines classes through reflection into java.lang.ClassLoader, which newer JVMs only allow if opened
+		if (!System.getProperty("java.specification.version").startsWith("1.")) {
+			options.jvmArgsAppend("--add-opens=java.base/java.lang=ALL-UNNAMED");
+		}
+
+		for (String include : args) {
+			options.include(include);
+		}
+
+		new Runner(options.build()).run();
+	}
+}
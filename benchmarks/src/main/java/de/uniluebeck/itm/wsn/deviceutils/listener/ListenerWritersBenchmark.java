@@ -0,0 +1,120 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.io.ByteStreams;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.MessageEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.SocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time (and, when run with {@code -prof gc}, the allocations) per message of the listener output formats
+ * on the I/O thread. The output is discarded, so only formatting and handing the record to the {@link AsyncWriter}
+ * are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListenerWritersBenchmark {
+
+	@Param({"csv", "hex", "human", "wiseml", "utf8"})
+	public String format;
+
+	private WriterHandler writerHandler;
+
+	private MessageEvent messageEvent;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		if ("csv".equals(format)) {
+			writerHandler = new CsvWriter(ByteStreams.nullOutputStream());
+		} else if ("hex".equals(format)) {
+			writerHandler = new HexWriter(ByteStreams.nullOutputStream());
+		} else if ("human".equals(format)) {
+			writerHandler = new HumanReadableWriter(ByteStreams.nullOutputStream());
+		} else if ("wiseml".equals(format)) {
+			writerHandler = new WiseMLWriterHandler(ByteStreams.nullOutputStream(), "urn:local:0x1234", true);
+		} else {
+			writerHandler = new StringWriter(ByteStreams.nullOutputStream(), Charset.forName("UTF-8"));
+		}
+
+		final byte[] packet = new byte[64];
+		for (int i = 0; i < packet.length; i++) {
+			packet[i] = (byte) i;
+		}
+		messageEvent = new BenchmarkMessageEvent(ChannelBuffers.wrappedBuffer(packet));
+
+		writerHandler.channelConnected(null, null);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		writerHandler.channelDisconnected(null, null);
+	}
+
+	@Benchmark
+	public void messageReceived() throws Exception {
+		writerHandler.messageReceived(null, messageEvent);
+	}
+
+	private static class BenchmarkMessageEvent implements MessageEvent {
+
+		private final ChannelBuffer message;
+
+		private BenchmarkMessageEvent(final ChannelBuffer message) {
+			this.message = message;
+		}
+
+		@Override
+		public Object getMessage() {
+			return message;
+		}
+
+		@Override
+		public SocketAddress getRemoteAddress() {
+			return null;
+		}
+
+		@Override
+		public Channel getChannel() {
+			return null;
+		}
+
+		@Override
+		public ChannelFuture getFuture() {
+			return null;
+		}
+	}
+}
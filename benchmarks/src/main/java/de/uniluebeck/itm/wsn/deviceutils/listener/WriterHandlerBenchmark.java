@@ -0,0 +1,92 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many messages per second a {@link WriterHandler} can take from the I/O thread, writing to a file. The
+ * handlers write a line and flush for every message; {@code flushPerMessage} is what they did before records were
+ * handed to an {@link AsyncWriter}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriterHandlerBenchmark {
+
+	/**
+	 * A 32 byte packet as written by {@link HexWriter}.
+	 */
+	private static final String MESSAGE =
+			"0x0a 0x00 0x12 0x34 0x56 0x78 0x9a 0xbc 0xde 0xf0 0x01 0x02 0x03 0x04 0x05 0x06 "
+					+ "0x07 0x08 0x09 0x0a 0x0b 0x0c 0x0d 0x0e 0x0f 0x10 0x11 0x12 0x13 0x14 0x15 0x16";
+
+	private File file;
+
+	private BufferedWriter synchronousOutput;
+
+	private BufferedWriter asynchronousOutput;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		file = File.createTempFile("WriterHandlerBenchmark", ".txt");
+		synchronousOutput = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
+		asynchronousOutput = new BufferedWriter(
+				new AsyncWriter(new FileOutputStream(file), AsyncWriter.OverflowPolicy.BLOCK)
+		);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		synchronousOutput.close();
+		asynchronousOutput.close();
+		if (!file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	@Benchmark
+	public void flushPerMessage() throws IOException {
+		synchronousOutput.write(MESSAGE);
+		synchronousOutput.newLine();
+		synchronousOutput.flush();
+	}
+
+	@Benchmark
+	public void asyncWriter() throws IOException {
+		asynchronousOutput.write(MESSAGE);
+		asynchronousOutput.newLine();
+		asynchronousOutput.flush();
+	}
+}
@@ -0,0 +1,77 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares enumerating the attached devices using the devicelist script (fork/exec of perl plus CSV parsing) with
+ * walking sysfs in-process. Only meaningful on Linux hosts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeviceInfoProviderBenchmark {
+
+	private DeviceCsvProvider csvProvider;
+
+	private DeviceInfoCsvParser csvParser;
+
+	private DeviceInfoProvider sysfsProvider;
+
+	@Setup
+	public void setUp() {
+		csvProvider = new DeviceCsvProviderImpl();
+		csvParser = new DeviceInfoCsvParserImpl();
+		sysfsProvider = new SysfsDeviceInfoProvider();
+	}
+
+	@Benchmark
+	public Map<String, DeviceInfo> script() {
+		return csvParser.parseCsv(csvProvider.getDeviceCsv());
+	}
+
+	@Benchmark
+	public Map<String, DeviceInfo> scriptStreaming() throws IOException {
+		final Reader csv = csvProvider.openDeviceCsv();
+		try {
+			return csvParser.parseCsv(csv);
+		} finally {
+			csv.close();
+		}
+	}
+
+	@Benchmark
+	public Map<String, DeviceInfo> sysfs() {
+		return sysfsProvider.getDeviceInfos();
+	}
+}
@@ -0,0 +1,141 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures deriving the device events of one observer update (one device attached or removed out of 32) and queueing
+ * them for {@code listeners} listeners. The listeners do nothing, so delivering the events on their threads costs
+ * next to nothing, but is not measured anyway.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeviceObserverBenchmark {
+
+	private static final int DEVICES = 32;
+
+	@Param({"1", "10", "100"})
+	public int listeners;
+
+	private DeviceObserver deviceObserver;
+
+	private ImmutableMap<String, DeviceInfo> lastState;
+
+	/**
+	 * Alternately reports all devices and all but the last one, so that every update produces one event.
+	 */
+	private static class AlternatingDeviceInfoProvider implements DeviceInfoProvider {
+
+		private final ImmutableMap<String, DeviceInfo> allDevices;
+
+		private final ImmutableMap<String, DeviceInfo> allButOneDevices;
+
+		private boolean all;
+
+		private AlternatingDeviceInfoProvider() {
+			final ImmutableMap.Builder<String, DeviceInfo> all = ImmutableMap.builder();
+			final ImmutableMap.Builder<String, DeviceInfo> allButOne = ImmutableMap.builder();
+			for (int i = 0; i < DEVICES; i++) {
+				final String port = "/dev/ttyUSB" + i;
+				// the MAC addresses are known, so that the observer doesn't try to read them in the background
+				final DeviceInfo deviceInfo = new DeviceInfo("isense", port, "FT" + i, new MacAddress(new byte[]{
+						0, 0, 0, 0, 0, 0, 0, (byte) i
+				}
+				)
+				);
+				all.put(port, deviceInfo);
+				if (i < DEVICES - 1) {
+					allButOne.put(port, deviceInfo);
+				}
+			}
+			this.allDevices = all.build();
+			this.allButOneDevices = allButOne.build();
+		}
+
+		@Override
+		public Map<String, DeviceInfo> getDeviceInfos() {
+			all = !all;
+			return all ? allDevices : allButOneDevices;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+
+		deviceObserver = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(DeviceMacReader.class).toInstance(new DeviceMacReader() {
+					@Override
+					public MacAddress readMac(final String port, final String deviceType,
+											  final Map<String, String> configuration, final String reference) {
+						return null;
+					}
+				}
+				);
+				bind(DeviceInfoProvider.class).toInstance(new AlternatingDeviceInfoProvider());
+				bind(DeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				bind(DeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(DeviceObserver.class);
+
+		for (int i = 0; i < listeners; i++) {
+			deviceObserver.addListener(new DeviceObserverListener() {
+				@Override
+				public void deviceEvent(final DeviceEvent event) {
+				}
+			}
+			);
+		}
+
+		deviceObserver.updateState(false);
+		lastState = deviceObserver.getCurrentState();
+	}
+
+	@Benchmark
+	public void updateAndNotify() {
+		deviceObserver.run();
+	}
+
+	@Benchmark
+	public ImmutableList<DeviceEvent> getEvents() {
+		deviceObserver.updateState(false);
+		return deviceObserver.getEvents(lastState);
+	}
+}
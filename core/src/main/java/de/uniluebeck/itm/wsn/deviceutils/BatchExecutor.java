@@ -0,0 +1,117 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Runs the per-device tasks of the batch operations (flashing, reading and writing MAC addresses) on a shared
+ * executor, with at most a given number of them running at the same time. A single task is run by the calling thread
+ * right away.
+ */
+public final class BatchExecutor {
+
+	private BatchExecutor() {
+	}
+
+	/**
+	 * Runs {@code tasks} and blocks until all of them are done. The tasks are expected to report failures as part of
+	 * their (non-null) results, an exception thrown by a task is rethrown wrapped in a {@link RuntimeException}.
+	 *
+	 * @param executorService
+	 * 		the executor to run the tasks on
+	 * @param parallelism
+	 * 		the maximum number of tasks running at the same time
+	 * @param tasks
+	 * 		the tasks to run
+	 *
+	 * @return the results of the tasks, in the order of {@code tasks}
+	 *
+	 * @throws InterruptedException
+	 * 		if interrupted while waiting for the tasks, in which case the tasks not yet done are cancelled
+	 */
+	public static <T> ImmutableList<T> invokeAll(final ExecutorService executorService, final int parallelism,
+												 final List<? extends Callable<T>> tasks) throws InterruptedException {
+
+		checkArgument(parallelism > 0, "The parallelism must be positive");
+
+		if (tasks.size() == 1) {
+			try {
+				return ImmutableList.of(tasks.get(0).call());
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		final Semaphore permits = new Semaphore(parallelism);
+		final List<Future<T>> futures = newArrayList();
+
+		try {
+
+			for (final Callable<T> task : tasks) {
+				permits.acquire();
+				futures.add(executorService.submit(new Callable<T>() {
+					@Override
+					public T call() throws Exception {
+						try {
+							return task.call();
+						} finally {
+							permits.release();
+						}
+					}
+				}
+				)
+				);
+			}
+
+			final ImmutableList.Builder<T> results = ImmutableList.builder();
+			for (Future<T> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			return results.build();
+
+		} catch (InterruptedException e) {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+	}
+}
@@ -1,15 +1,30 @@
 package de.uniluebeck.itm.wsn.deviceutils;
 
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newHashSet;
+import static com.google.common.collect.Sets.newLinkedHashSet;
 
 public class CliUtils {
 
+	private static final CharMatcher GLOB_CHARACTERS = CharMatcher.anyOf("*?[{");
+
+	private static final CharMatcher CSV_SPECIAL_CHARACTERS = CharMatcher.anyOf(",\"\r\n");
+
 	public static void assertParametersPresent(final CommandLine line, char... parameter) throws Exception {
 		Set<Character> missingParameters = newHashSet();
 		for (char p : parameter) {
@@ -28,4 +43,53 @@ public class CliUtils {
 		System.exit(exitCode);
 	}
 
+	/**
+	 * Resolves a port specification to a list of serial ports. The specification is a comma-separated list of ports
+	 * and/or glob patterns matching file names in a directory (e.g., "/dev/ttyUSB*").
+	 */
+	public static List<String> resolvePorts(final String portSpecification) throws IOException {
+
+		final Set<String> ports = newLinkedHashSet();
+
+		for (String entry : Splitter.on(',').trimResults().omitEmptyStrings().split(portSpecification)) {
+
+			if (!GLOB_CHARACTERS.matchesAnyOf(entry)) {
+				ports.add(entry);
+				continue;
+			}
+
+			final File pattern = new File(entry);
+			final File dir = pattern.getAbsoluteFile().getParentFile();
+			final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.getName());
+			final String[] fileNames = dir.list();
+
+			if (fileNames == null) {
+				throw new IOException("Could not list files in " + dir);
+			}
+
+			Arrays.sort(fileNames);
+			for (String fileName : fileNames) {
+				if (matcher.matches(FileSystems.getDefault().getPath(fileName))) {
+					ports.add(new File(pattern.getParentFile(), fileName).getPath());
+				}
+			}
+		}
+
+		return newArrayList(ports);
+	}
+
+	/**
+	 * Formats a value as a CSV field (RFC 4180), quoting it if it contains a comma, a quote or a line break.
+	 * {@code null} is written as an empty field.
+	 */
+	public static String toCsv(@Nullable final String value) {
+		if (value == null) {
+			return "";
+		}
+		if (CSV_SPECIAL_CHARACTERS.matchesAnyOf(value)) {
+			return '"' + value.replace("\"", "\"\"") + '"';
+		}
+		return value;
+	}
+
 }
@@ -0,0 +1,460 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Span;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Tracer;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * <p>
+ * Keeps connections to devices open between operations, so that back-to-back operations on one device (e.g., reading
+ * its MAC address and then flashing or listening to it) don't have to reconnect.
+ * </p>
+ * <p>
+ * A serial port can only be opened once, so there is at most one connection per port and a connection is only ever
+ * lent to one borrower at a time. Borrowing a connection that is in use blocks until it is returned. An idle
+ * connection is only reused if it was opened with the same device type and driver configuration, otherwise it is
+ * closed before the port is connected again. Returned connections are checked for being connected before they are
+ * lent again and are closed after being idle for a while.
+ * </p>
+ * <p>
+ * An injected pool closes connections as soon as they are returned, so that the ports are free for other processes,
+ * unless an idle timeout is bound to {@code @Named("connectionIdleTimeoutMillis")}. Only long-running processes that
+ * own the devices (like the daemon) should keep connections open.
+ * </p>
+ * <p>
+ * Devices are connected and closed outside of the pool's lock, so a slow driver only holds up borrowers of its own
+ * port.
+ * </p>
+ */
+@Singleton
+public class DeviceConnectionPool implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceConnectionPool.class);
+
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 0;
+
+	public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 60000;
+
+	/**
+	 * The trace category of creating, connecting and closing devices.
+	 */
+	public static final String TRACE_CATEGORY = "connection";
+
+	private static class Key {
+
+		private final String port;
+
+		private final String deviceType;
+
+		private final String normalizedDeviceType;
+
+		private final ImmutableMap<String, String> configuration;
+
+		private final Map<String, String> driverConfiguration;
+
+		private Key(final String port, final String deviceType, @Nullable final Map<String, String> configuration) {
+			this.port = port;
+			this.deviceType = deviceType;
+			this.normalizedDeviceType = deviceType.toLowerCase();
+			this.configuration = configuration == null ?
+					ImmutableMap.<String, String>of() :
+					ImmutableMap.copyOf(configuration);
+			this.driverConfiguration = configuration;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) o;
+			return port.equals(other.port)
+					&& normalizedDeviceType.equals(other.normalizedDeviceType)
+					&& configuration.equals(other.configuration);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(port, normalizedDeviceType, configuration);
+		}
+	}
+
+	private static class Connection {
+
+		private final Key key;
+
+		private Device device;
+
+		/**
+		 * Whether the connection is lent, or is being connected or closed, i.e., whether the port is in use.
+		 */
+		private boolean borrowed;
+
+		private long idleSinceMillis;
+
+		private Connection(final Key key) {
+			this.key = key;
+		}
+	}
+
+	private final DeviceFactory deviceFactory;
+
+	private final ExecutorService executorService;
+
+	private final DeviceConnector connector;
+
+	private long idleTimeoutMillis;
+
+	private final long borrowTimeoutMillis;
+
+	private final Map<String, Connection> connections = newHashMap();
+
+	private final Map<Device, Connection> borrowedDevices = new IdentityHashMap<Device, Connection>();
+
+	private ScheduledExecutorService evictionScheduler;
+
+	private boolean closed;
+
+	@Inject
+	public DeviceConnectionPool(final DeviceFactory deviceFactory, final ExecutorService executorService,
+								final DeviceConnector connector) {
+		this(deviceFactory, executorService, connector, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_BORROW_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param deviceFactory
+	 * 		the factory to create the device drivers with
+	 * @param executorService
+	 * 		the executor passed to the device drivers
+	 * @param connector
+	 * 		connects newly created devices
+	 * @param idleTimeoutMillis
+	 * 		the time after which unused connections are closed (0 to close connections as soon as they are returned)
+	 * @param borrowTimeoutMillis
+	 * 		the maximum time to wait for a connection that is in use
+	 */
+	public DeviceConnectionPool(final DeviceFactory deviceFactory, final ExecutorService executorService,
+								final DeviceConnector connector, final long idleTimeoutMillis,
+								final long borrowTimeoutMillis) {
+
+		this.deviceFactory = deviceFactory;
+		this.executorService = executorService;
+		this.connector = connector;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+
+		setIdleTimeoutMillis(idleTimeoutMillis);
+	}
+
+	/**
+	 * Sets the time after which unused connections are closed. Must be called before the pool is used.
+	 *
+	 * @param idleTimeoutMillis
+	 * 		the idle timeout (0 to close connections as soon as they are returned)
+	 */
+	@Inject(optional = true)
+	public synchronized void setIdleTimeoutMillis(@Named("connectionIdleTimeoutMillis") final long idleTimeoutMillis) {
+
+		checkArgument(idleTimeoutMillis >= 0, "The idle timeout must not be negative");
+		checkState(connections.isEmpty(), "The idle timeout must be set before the pool is used");
+
+		if (evictionScheduler != null) {
+			evictionScheduler.shutdown();
+			evictionScheduler = null;
+		}
+
+		this.idleTimeoutMillis = idleTimeoutMillis;
+
+		if (idleTimeoutMillis > 0) {
+			evictionScheduler = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setNameFormat("DeviceConnectionPool %d").setDaemon(true).build()
+			);
+			evictionScheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					evictIdleConnections();
+				}
+			}, idleTimeoutMillis, idleTimeoutMillis, TimeUnit.MILLISECONDS
+			);
+		}
+	}
+
+	/**
+	 * Lends a connected device, reusing an idle connection to the device if there is a live one. The device must be
+	 * passed to {@link #release(Device)} or {@link #invalidate(Device)} afterwards and must not be closed by the
+	 * borrower.
+	 *
+	 * @throws Exception
+	 * 		if no connection could be established or the connection to the device stayed in use for too long
+	 */
+	public Device borrow(final String port, final String deviceType, @Nullable final Map<String, String> configuration)
+			throws Exception {
+
+		final Key key = new Key(port, deviceType, configuration);
+		final Connection connection;
+		final Connection replaced;
+
+		synchronized (this) {
+
+			final long deadline = System.currentTimeMillis() + borrowTimeoutMillis;
+			Connection existing = connections.get(port);
+
+			while (existing != null && existing.borrowed) {
+				final long remaining = deadline - System.currentTimeMillis();
+				if (closed || remaining <= 0) {
+					throw new IllegalStateException("The connection to the device at port \"" + port + "\" is in use");
+				}
+				wait(remaining);
+				existing = connections.get(port);
+			}
+
+			if (closed) {
+				throw new IllegalStateException("The connection pool is closed");
+			}
+
+			if (existing != null && existing.key.equals(key) && existing.device.isConnected()) {
+				log.debug("Reusing connection to device at port {}", port);
+				lend(existing);
+				return existing.device;
+			}
+
+			// reserves the port while closing the previous connection and connecting outside of the lock
+			replaced = existing;
+			connection = new Connection(key);
+			connection.borrowed = true;
+			connections.put(port, connection);
+		}
+
+		if (replaced != null) {
+			log.debug("Closing stale or differently configured connection to device at port {}", port);
+			closeQuietly(replaced.device, port);
+		}
+
+		final Device device;
+		try {
+			device = connect(key);
+		} catch (Exception e) {
+			remove(connection);
+			throw e;
+		}
+
+		synchronized (this) {
+			connection.device = device;
+			borrowedDevices.put(device, connection);
+		}
+
+		return device;
+	}
+
+	/**
+	 * Returns a borrowed device to the pool, keeping the connection open for subsequent operations.
+	 */
+	public void release(final Device device) {
+
+		final Connection connection;
+		synchronized (this) {
+
+			connection = borrowedDevices.remove(device);
+			if (connection == null) {
+				throw new IllegalArgumentException("The device " + device + " was not borrowed from this pool");
+			}
+
+			if (!closed && idleTimeoutMillis > 0) {
+				connection.borrowed = false;
+				connection.idleSinceMillis = System.currentTimeMillis();
+				notifyAll();
+				return;
+			}
+		}
+
+		closeAndRemove(connection);
+	}
+
+	/**
+	 * Returns a borrowed device whose connection must not be reused (e.g., because the device was detached or an
+	 * operation failed) and closes it.
+	 */
+	public void invalidate(final Device device) {
+
+		final Connection connection;
+		synchronized (this) {
+			connection = borrowedDevices.remove(device);
+			if (connection == null) {
+				throw new IllegalArgumentException("The device " + device + " was not borrowed from this pool");
+			}
+		}
+
+		closeAndRemove(connection);
+	}
+
+	/**
+	 * Returns the number of open connections, including those currently lent.
+	 */
+	public synchronized int getConnectionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Closes all idle connections. Connections that are currently lent are closed when they are returned.
+	 */
+	@Override
+	public void close() {
+
+		final List<Connection> idle = newArrayList();
+
+		synchronized (this) {
+
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+
+			if (evictionScheduler != null) {
+				evictionScheduler.shutdown();
+			}
+
+			for (Connection connection : connections.values()) {
+				if (!connection.borrowed) {
+					connection.borrowed = true;
+					idle.add(connection);
+				}
+			}
+
+			// wakes up waiting borrowers, which fail as the pool is closed
+			notifyAll();
+		}
+
+		for (Connection connection : idle) {
+			closeAndRemove(connection);
+		}
+	}
+
+	private void lend(final Connection connection) {
+		connection.borrowed = true;
+		borrowedDevices.put(connection.device, connection);
+	}
+
+	private Device connect(final Key key) throws Exception {
+
+		final Device device;
+		final Span createSpan = Tracer.getDefault().begin(TRACE_CATEGORY, "create").arg("port", key.port);
+		try {
+			device = deviceFactory.create(executorService, key.deviceType, key.driverConfiguration);
+		} finally {
+			createSpan.end();
+		}
+
+		try {
+			final Span connectSpan = Tracer.getDefault().begin(TRACE_CATEGORY, "connect").arg("port", key.port);
+			try {
+				connector.connect(device, key.port);
+			} catch (IOException e) {
+				connectSpan.arg("failure", e.getMessage());
+				throw e;
+			} finally {
+				connectSpan.end();
+			}
+		} catch (IOException e) {
+			// closing the device is not part of connecting
+			closeQuietly(device, key.port);
+			throw e;
+		}
+
+		return device;
+	}
+
+	private void evictIdleConnections() {
+
+		final List<Connection> evicted = newArrayList();
+
+		synchronized (this) {
+			final long now = System.currentTimeMillis();
+			for (Connection connection : connections.values()) {
+				if (!connection.borrowed && now - connection.idleSinceMillis >= idleTimeoutMillis) {
+					connection.borrowed = true;
+					evicted.add(connection);
+				}
+			}
+		}
+
+		for (Connection connection : evicted) {
+			log.debug("Closing idle connection to device at port {}", connection.key.port);
+			closeAndRemove(connection);
+		}
+	}
+
+	/**
+	 * Closes a connection that is marked as borrowed, so that the port stays reserved until the device is closed, and
+	 * removes it from the pool afterwards.
+	 */
+	private void closeAndRemove(final Connection connection) {
+		closeQuietly(connection.device, connection.key.port);
+		remove(connection);
+	}
+
+	private synchronized void remove(final Connection connection) {
+		if (connections.get(connection.key.port) == connection) {
+			connections.remove(connection.key.port);
+		}
+		notifyAll();
+	}
+
+	private static void closeQuietly(final Device device, final String port) {
+		final Span span = Tracer.getDefault().begin(TRACE_CATEGORY, "close").arg("port", port);
+		try {
+			device.close();
+		} catch (IOException e) {
+			log.warn("Exception while closing device at port {}: {}", port, e);
+		} finally {
+			span.end();
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Counter;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.LatencyHistogram;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * <p>
+ * Connects devices to their ports, retrying with exponential backoff if connecting fails. Right after a device was
+ * attached its device node might not be accessible yet, so failures with an {@link IOException} (e.g., a {@link
+ * de.uniluebeck.itm.wsn.drivers.core.exception.PortNotFoundException}) are retried until the deadline is reached. All
+ * other exceptions are considered fatal and abort immediately, as does a successful attempt.
+ * </p>
+ * <p>
+ * The delay between attempts starts at the initial delay and doubles with every attempt up to the maximum delay. A
+ * random jitter of up to half the delay is subtracted, so that many devices attached at once don't retry in lockstep.
+ * </p>
+ * <p>
+ * Instances are thread-safe. The attempts, failures and connect latencies are exposed through the default {@link
+ * MetricRegistry}.
+ * </p>
+ */
+@Singleton
+public class DeviceConnector {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceConnector.class);
+
+	public static final long DEFAULT_INITIAL_DELAY_MILLIS = 50;
+
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+	public static final long DEFAULT_DEADLINE_MILLIS = 5000;
+
+	private static final Counter connects = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_connect_total", "Connections to devices that were established"
+	);
+
+	private static final Counter failures = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_connect_failures_total", "Connections to devices that could not be established"
+	);
+
+	private static final Counter attempts = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_connect_attempts_total", "Attempts made to connect to devices, successful or not"
+	);
+
+	private static final LatencyHistogram connectDuration = MetricRegistry.getDefault().histogram(
+			"wsn_deviceutils_connect_seconds", "Time taken to establish a connection to a device, including retries"
+	);
+
+	private final long initialDelayMillis;
+
+	private final long maxDelayMillis;
+
+	private final long deadlineMillis;
+
+	private final Random random = new Random();
+
+	@Inject
+	public DeviceConnector() {
+		this(DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_DEADLINE_MILLIS);
+	}
+
+	/**
+	 * @param initialDelayMillis
+	 * 		the delay before the first retry
+	 * @param maxDelayMillis
+	 * 		the maximum delay between two attempts
+	 * @param deadlineMillis
+	 * 		the time after which no further attempts are made
+	 */
+	public DeviceConnector(final long initialDelayMillis, final long maxDelayMillis, final long deadlineMillis) {
+		checkArgument(initialDelayMillis > 0, "The initial delay must be positive");
+		checkArgument(maxDelayMillis >= initialDelayMillis, "The maximum delay must not be less than the initial delay");
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.deadlineMillis = deadlineMillis;
+	}
+
+	/**
+	 * Connects the device to the port.
+	 *
+	 * @throws IOException
+	 * 		if the device could not be connected before the deadline, connecting failed with a fatal error or the
+	 * 		thread was interrupted while waiting for the next attempt (an {@link InterruptedIOException})
+	 */
+	public void connect(final Device device, final String port) throws IOException {
+
+		final long startNanos = System.nanoTime();
+		final long deadline = System.currentTimeMillis() + deadlineMillis;
+
+		long delayMillis = initialDelayMillis;
+		int attempt = 0;
+		Exception lastFailure = null;
+
+		while (true) {
+
+			attempt++;
+			attempts.increment();
+
+			try {
+				device.connect(port);
+			} catch (Exception e) {
+				if (!isRetryable(e)) {
+					failures.increment();
+					throw new IOException("Connecting to device at port \"" + port + "\" failed: " + e, e);
+				}
+				lastFailure = e;
+				log.trace("Attempt {} to connect to device at port {} failed: {}", attempt, port, e);
+			}
+
+			if (device.isConnected()) {
+				connectDuration.recordSince(startNanos);
+				connects.increment();
+				log.debug("Connected to device at port {} after {} attempt(s)", port, attempt);
+				return;
+			}
+
+			final long remainingMillis = deadline - System.currentTimeMillis();
+			if (remainingMillis <= 0) {
+				failures.increment();
+				throw new IOException("Connection to device at port \"" + port + "\" could not be established after "
+						+ attempt + " attempt(s)!", lastFailure
+				);
+			}
+
+			try {
+				Thread.sleep(Math.min(remainingMillis, withJitter(delayMillis)));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failures.increment();
+				throw new InterruptedIOException("Interrupted while connecting to device at port \"" + port + "\"");
+			}
+
+			delayMillis = Math.min(maxDelayMillis, delayMillis * 2);
+		}
+	}
+
+	/**
+	 * Returns whether connecting may succeed if retried after the given exception was thrown.
+	 */
+	protected boolean isRetryable(final Exception e) {
+		return e instanceof IOException;
+	}
+
+	private long withJitter(final long delayMillis) {
+		return delayMillis - (long) (random.nextDouble() * delayMillis / 2);
+	}
+}
@@ -23,17 +23,43 @@
 
 package de.uniluebeck.itm.wsn.deviceutils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Binder;
 import com.google.inject.Module;
 import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReaderModule;
 import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReferenceMap;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactoryModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class DeviceUtilsModule implements Module {
 
+	private static final Logger log = LoggerFactory.getLogger(DeviceUtilsModule.class);
+
+	/**
+	 * System property selecting the {@link ExecutorStrategy} of {@link #createExecutorService(String)}.
+	 */
+	public static final String EXECUTOR_STRATEGY_PROPERTY = "wsn.deviceutils.executor";
+
+	/**
+	 * System property setting the maximum number of threads of the {@link ExecutorStrategy#BOUNDED} strategy.
+	 */
+	public static final String EXECUTOR_MAX_THREADS_PROPERTY = "wsn.deviceutils.executor.maxThreads";
+
+	public static final int DEFAULT_EXECUTOR_MAX_THREADS = 128;
+
+	private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+
 	private final ExecutorService executorService;
 
 	private final DeviceMacReferenceMap deviceMacReferenceMap;
@@ -56,5 +82,87 @@ public class DeviceUtilsModule implements Module {
 	public void configure(final Binder binder) {
 		binder.install(new DeviceMacReaderModule(executorService, deviceMacReferenceMap, use16BitMode));
 		binder.install(new DeviceFactoryModule());
+
+		if (executorService instanceof InstrumentedExecutorService) {
+			binder.bind(InstrumentedExecutorService.class).toInstance((InstrumentedExecutorService) executorService);
+		}
+	}
+
+	/**
+	 * Creates the executor to be shared by the device drivers and everything else of a tool, using the strategy and
+	 * maximum number of threads given by the system properties {@value #EXECUTOR_STRATEGY_PROPERTY} (cached
+	 * (default), bounded or virtual) and {@value #EXECUTOR_MAX_THREADS_PROPERTY}.
+	 *
+	 * @param threadName
+	 * 		the prefix of the names of the executors threads
+	 */
+	public static InstrumentedExecutorService createExecutorService(final String threadName) {
+		return createExecutorService(
+				threadName,
+				ExecutorStrategy.fromString(System.getProperty(EXECUTOR_STRATEGY_PROPERTY, "cached")),
+				Integer.getInteger(EXECUTOR_MAX_THREADS_PROPERTY, DEFAULT_EXECUTOR_MAX_THREADS)
+		);
+	}
+
+	/**
+	 * Creates an executor whose numbers are exposed as gauges of the default {@link MetricRegistry}, labelled with
+	 * {@code threadName}.
+	 */
+	public static InstrumentedExecutorService createExecutorService(final String threadName,
+																	final ExecutorStrategy strategy,
+																	final int maxThreads) {
+		final InstrumentedExecutorService executorService = createExecutor(threadName, strategy, maxThreads);
+		executorService.registerMetrics(MetricRegistry.getDefault(), threadName);
+		return executorService;
+	}
+
+	private static InstrumentedExecutorService createExecutor(final String threadName, final ExecutorStrategy strategy,
+															  final int maxThreads) {
+
+		final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(threadName + " %d").build();
+
+		switch (strategy) {
+
+			case BOUNDED:
+				final ThreadPoolExecutor boundedExecutor = new ThreadPoolExecutor(
+						maxThreads, maxThreads,
+						IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+						new LinkedBlockingQueue<Runnable>(),
+						threadFactory
+				);
+				boundedExecutor.allowCoreThreadTimeOut(true);
+				return new InstrumentedExecutorService(boundedExecutor, strategy);
+
+			case VIRTUAL:
+				try {
+					return new InstrumentedExecutorService(createVirtualThreadExecutor(threadName), strategy);
+				} catch (Exception e) {
+					log.warn("Virtual threads are not supported by this JVM, using a cached thread pool instead");
+					return createCachedExecutorService(threadFactory);
+				}
+
+			default:
+				return createCachedExecutorService(threadFactory);
+		}
+	}
+
+	private static InstrumentedExecutorService createCachedExecutorService(final ThreadFactory threadFactory) {
+		return new InstrumentedExecutorService(Executors.newCachedThreadPool(threadFactory), ExecutorStrategy.CACHED);
+	}
+
+	/**
+	 * Calls {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadName + " ", 0).factory())}, which
+	 * can't be compiled against the Java version this project targets.
+	 */
+	private static ExecutorService createVirtualThreadExecutor(final String threadName) throws Exception {
+
+		final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+		final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+		final Object namedBuilder = builderClass.getMethod("name", String.class, long.class)
+				.invoke(builder, threadName + " ", 0L);
+		final ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(namedBuilder);
+
+		final Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
 	}
 }
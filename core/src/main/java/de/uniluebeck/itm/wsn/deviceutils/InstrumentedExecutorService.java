@@ -0,0 +1,236 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Gauge;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps the executor created by {@link DeviceUtilsModule#createExecutorService(String)} and counts the tasks passing
+ * through it, so that the number of waiting and running tasks can be observed to size the executor for a host. The
+ * numbers are exposed as gauges of the {@link MetricRegistry}, see {@link #registerMetrics(MetricRegistry, String)}.
+ */
+public class InstrumentedExecutorService extends AbstractExecutorService {
+
+	private final ExecutorService delegate;
+
+	private final ExecutorStrategy strategy;
+
+	private final AtomicInteger queuedTasks = new AtomicInteger();
+
+	private final AtomicInteger activeTasks = new AtomicInteger();
+
+	private final AtomicInteger largestActiveTasks = new AtomicInteger();
+
+	private final AtomicLong completedTasks = new AtomicLong();
+
+	private volatile MetricRegistry metricRegistry;
+
+	private volatile ImmutableList<Gauge> gauges = ImmutableList.of();
+
+	public InstrumentedExecutorService(final ExecutorService delegate, final ExecutorStrategy strategy) {
+		this.delegate = delegate;
+		this.strategy = strategy;
+	}
+
+	public ExecutorStrategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * Returns the number of tasks that were submitted but have not yet started because all threads are busy (always 0
+	 * unless the {@link ExecutorStrategy#BOUNDED bounded} strategy is used).
+	 */
+	public int getQueueDepth() {
+		return queuedTasks.get();
+	}
+
+	/**
+	 * Returns the number of tasks that are currently running, i.e., the number of busy threads.
+	 */
+	public int getActiveThreads() {
+		return activeTasks.get();
+	}
+
+	/**
+	 * Returns the maximum number of tasks that were running at the same time.
+	 */
+	public int getLargestActiveThreads() {
+		return largestActiveTasks.get();
+	}
+
+	/**
+	 * Returns the number of platform threads currently kept by the executor, including idle ones (for virtual
+	 * threads, the number of running tasks).
+	 */
+	public int getPoolSize() {
+		return delegate instanceof ThreadPoolExecutor ?
+				((ThreadPoolExecutor) delegate).getPoolSize() :
+				activeTasks.get();
+	}
+
+	public long getCompletedTasks() {
+		return completedTasks.get();
+	}
+
+	/**
+	 * Exposes the numbers of this executor as gauges labelled with the executors name. The gauges are removed when the
+	 * executor is shut down.
+	 */
+	public void registerMetrics(final MetricRegistry metricRegistry, final String executorName) {
+		this.metricRegistry = metricRegistry;
+		this.gauges = ImmutableList.of(
+				metricRegistry.gauge("wsn_deviceutils_executor_queued_tasks",
+						"Tasks waiting for a thread of the executor", new Supplier<Integer>() {
+							@Override
+							public Integer get() {
+								return getQueueDepth();
+							}
+						}, "executor", executorName
+				),
+				metricRegistry.gauge("wsn_deviceutils_executor_active_threads",
+						"Threads of the executor that are running a task", new Supplier<Integer>() {
+							@Override
+							public Integer get() {
+								return getActiveThreads();
+							}
+						}, "executor", executorName
+				),
+				metricRegistry.gauge("wsn_deviceutils_executor_largest_active_threads",
+						"Maximum number of threads of the executor that were running a task at the same time",
+						new Supplier<Integer>() {
+							@Override
+							public Integer get() {
+								return getLargestActiveThreads();
+							}
+						}, "executor", executorName
+				),
+				metricRegistry.gauge("wsn_deviceutils_executor_pool_threads",
+						"Threads kept by the executor, including idle ones", new Supplier<Integer>() {
+							@Override
+							public Integer get() {
+								return getPoolSize();
+							}
+						}, "executor", executorName
+				),
+				metricRegistry.gauge("wsn_deviceutils_executor_completed_tasks",
+						"Tasks completed by the executor", new Supplier<Long>() {
+							@Override
+							public Long get() {
+								return getCompletedTasks();
+							}
+						}, "executor", executorName
+				)
+		);
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+
+		queuedTasks.incrementAndGet();
+
+		try {
+			delegate.execute(new Runnable() {
+				@Override
+				public void run() {
+					queuedTasks.decrementAndGet();
+					updateLargestActiveTasks(activeTasks.incrementAndGet());
+					try {
+						command.run();
+					} finally {
+						activeTasks.decrementAndGet();
+						completedTasks.incrementAndGet();
+					}
+				}
+			}
+			);
+		} catch (RejectedExecutionException e) {
+			queuedTasks.decrementAndGet();
+			throw e;
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		delegate.shutdown();
+		removeMetrics();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		removeMetrics();
+		final List<Runnable> notStarted = delegate.shutdownNow();
+		queuedTasks.addAndGet(-notStarted.size());
+		return notStarted;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public String toString() {
+		return "InstrumentedExecutorService{strategy=" + strategy
+				+ ", queueDepth=" + getQueueDepth()
+				+ ", activeThreads=" + getActiveThreads()
+				+ ", poolSize=" + getPoolSize()
+				+ ", completedTasks=" + getCompletedTasks()
+				+ "}";
+	}
+
+	private void removeMetrics() {
+		for (Gauge gauge : gauges) {
+			metricRegistry.remove(gauge);
+		}
+	}
+
+	private void updateLargestActiveTasks(final int active) {
+		int largest;
+		do {
+			largest = largestActiveTasks.get();
+		} while (active > largest && !largestActiveTasks.compareAndSet(largest, active));
+	}
+}
@@ -28,9 +28,7 @@ public class ScheduledExecutorServiceModule implements Module {
 		final ScheduledExecutorService scheduleService = Executors.newScheduledThreadPool(1,
 				new ThreadFactoryBuilder().setNameFormat(threadName + "Scheduler-Thread %d").build()
 		);
-		final ExecutorService executorService = Executors.newCachedThreadPool(
-				new ThreadFactoryBuilder().setNameFormat(threadName + "-Thread %d").build()
-		);
+		final ExecutorService executorService = DeviceUtilsModule.createExecutorService(threadName + "-Thread");
 		return new ForwardingScheduledExecutorService(scheduleService, executorService);
 	}
 
@@ -0,0 +1,337 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.daemon;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closeables;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * <p>
+ * A thin client of the {@link DeviceUtilsDaemon}. It only opens a socket, so using it doesn't pay for creating an
+ * injector and connecting to the device. Requests are executed one after another.
+ * </p>
+ * <p>
+ * The client authenticates with the token the daemon wrote to its token file, see {@link DaemonProtocol}. Every
+ * request but listening fails if the daemon doesn't answer in time, so a wedged daemon or an unrelated service on the
+ * port doesn't block the client forever.
+ * </p>
+ */
+public class DaemonClient implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DaemonClient.class);
+
+	/**
+	 * System property setting the loopback port the daemon listens on. If it is 0 the CLIs never forward to a daemon.
+	 */
+	public static final String PORT_PROPERTY = "wsn.deviceutils.daemon.port";
+
+	public static final int DEFAULT_PORT = 7331;
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 500;
+
+	private static final int HANDSHAKE_TIMEOUT_MILLIS = 2000;
+
+	/**
+	 * The time the daemon may take to answer a request. Writing a MAC address may take two operations of up to two
+	 * minutes each on the daemon's side.
+	 */
+	private static final int REQUEST_TIMEOUT_MILLIS = 300000;
+
+	/**
+	 * Receives the data sent by a device while listening to it.
+	 */
+	public interface DataHandler {
+
+		void dataReceived(byte[] data) throws IOException;
+
+	}
+
+	private interface ResponseHandler {
+
+		void data(String data) throws IOException;
+
+	}
+
+	private final Socket socket;
+
+	private final BufferedReader reader;
+
+	private final Writer writer;
+
+	/**
+	 * Connects to the daemon listening on {@code port}, authenticating with the token from its token file.
+	 *
+	 * @throws IOException
+	 * 		if the token file can't be read, the connection could not be established or the handshake failed
+	 */
+	public DaemonClient(final int port) throws IOException {
+		this(port, DaemonTokenFile.read(DaemonTokenFile.getTokenFile(port)));
+	}
+
+	/**
+	 * Connects to the daemon listening on {@code port}, authenticating with {@code token}.
+	 *
+	 * @throws IOException
+	 * 		if the connection could not be established or the handshake failed
+	 */
+	public DaemonClient(final int port, final String token) throws IOException {
+		socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+			reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+			writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8));
+			execute(new ResponseHandler() {
+				@Override
+				public void data(final String data) throws IOException {
+					throw new IOException("Unexpected response to the handshake: " + data);
+				}
+			}, HANDSHAKE_TIMEOUT_MILLIS, DaemonProtocol.HELLO, DaemonProtocol.VERSION, token
+			);
+		} catch (IOException e) {
+			Closeables.close(socket, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the port given by the system property {@value #PORT_PROPERTY} or {@value #DEFAULT_PORT}.
+	 */
+	public static int getConfiguredPort() {
+		return Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+	}
+
+	/**
+	 * Connects to the daemon listening on the {@linkplain #getConfiguredPort() configured port}, if the current user
+	 * started one. The port is only probed if the daemon's token file exists.
+	 *
+	 * @return the connected client or {@code null} if no daemon is running or the handshake with it failed, in which
+	 * case the operation should be executed locally
+	 */
+	@Nullable
+	public static DaemonClient connectIfRunning() {
+
+		final int port = getConfiguredPort();
+		if (port <= 0) {
+			return null;
+		}
+
+		final File tokenFile = DaemonTokenFile.getTokenFile(port);
+		if (!tokenFile.exists()) {
+			return null;
+		}
+
+		final String token;
+		try {
+			token = DaemonTokenFile.read(tokenFile);
+		} catch (IOException e) {
+			log.warn("Not forwarding to the daemon: {}", e.getMessage());
+			return null;
+		}
+
+		try {
+			final DaemonClient client = new DaemonClient(port, token);
+			log.debug("Forwarding to the daemon listening on port {}", port);
+			return client;
+		} catch (ConnectException e) {
+			log.debug("No daemon listening on port {}, the token file {} is stale", port, tokenFile);
+			return null;
+		} catch (IOException e) {
+			log.warn("Handshake with the daemon on port {} failed, executing locally: {}", port, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the devices currently attached to the daemons host. Their MAC addresses are only included if the daemon
+	 * has read them before.
+	 */
+	public ImmutableList<DeviceInfo> listDevices() throws IOException {
+		final ImmutableList.Builder<DeviceInfo> devices = ImmutableList.builder();
+		for (String line : execute(DaemonProtocol.LIST)) {
+			final List<String> fields = Splitter.on(DaemonProtocol.SEPARATOR).splitToList(line);
+			final String macAddress = Strings.emptyToNull(fields.get(3));
+			devices.add(new DeviceInfo(
+					Strings.emptyToNull(fields.get(1)),
+					fields.get(0),
+					Strings.emptyToNull(fields.get(2)),
+					macAddress == null ? null : new MacAddress(macAddress)
+			)
+			);
+		}
+		return devices.build();
+	}
+
+	/**
+	 * Reads the MAC address of a device, see {@link de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader}.
+	 *
+	 * @param force
+	 * 		{@code true} to ignore the MAC address cached by the daemon
+	 */
+	public MacAddress readMac(final String port, final String deviceType, final boolean force) throws IOException {
+		final List<String> response = force ?
+				execute(DaemonProtocol.READ_MAC, port, deviceType, DaemonProtocol.FORCE) :
+				execute(DaemonProtocol.READ_MAC, port, deviceType);
+		return new MacAddress(response.get(0));
+	}
+
+	/**
+	 * Writes the MAC address of a device and verifies it by reading it back.
+	 */
+	public void writeMac(final String port, final String deviceType, final MacAddress macAddress)
+			throws IOException {
+		execute(DaemonProtocol.WRITE_MAC, port, deviceType, macAddress.toHexString());
+	}
+
+	/**
+	 * Flashes an image onto a device. The image file is read by the daemon.
+	 */
+	public void flash(final String port, final String deviceType, final File imageFile) throws IOException {
+		execute(DaemonProtocol.FLASH, port, deviceType, imageFile.getAbsolutePath());
+	}
+
+	public void reset(final String port, final String deviceType) throws IOException {
+		execute(DaemonProtocol.RESET, port, deviceType);
+	}
+
+	/**
+	 * Passes everything a device sends to {@code handler} and blocks until the device is disconnected or the client
+	 * is closed.
+	 */
+	public void listen(final String port, final String deviceType, final DataHandler handler) throws IOException {
+		// devices may stay silent for arbitrarily long
+		execute(new ResponseHandler() {
+			@Override
+			public void data(final String data) throws IOException {
+				try {
+					handler.dataReceived(Hex.decodeHex(data.toCharArray()));
+				} catch (DecoderException e) {
+					throw new IOException("Invalid data received from the daemon: " + data, e);
+				}
+			}
+		}, 0, DaemonProtocol.LISTEN, port, deviceType
+		);
+	}
+
+	/**
+	 * Executes a request and returns the data lines of the response.
+	 *
+	 * @throws DaemonException
+	 * 		if the daemon answered with an error
+	 */
+	List<String> execute(final String command, final String... arguments) throws IOException {
+		final List<String> lines = newArrayList();
+		execute(new ResponseHandler() {
+			@Override
+			public void data(final String data) {
+				lines.add(data);
+			}
+		}, REQUEST_TIMEOUT_MILLIS, command, arguments
+		);
+		return lines;
+	}
+
+	/**
+	 * @param timeoutMillis
+	 * 		the time to wait for every line of the response (0 to wait forever)
+	 */
+	private synchronized void execute(final ResponseHandler handler, final int timeoutMillis, final String command,
+									  final String... arguments) throws IOException {
+
+		for (String argument : arguments) {
+			checkArgument(argument.indexOf(DaemonProtocol.SEPARATOR) < 0 && argument.indexOf('\n') < 0,
+					"Arguments must not contain tabs or line breaks: %s", argument
+			);
+		}
+
+		writer.write(command);
+		for (String argument : arguments) {
+			writer.write(DaemonProtocol.SEPARATOR);
+			writer.write(argument);
+		}
+		writer.write('\n');
+		writer.flush();
+
+		socket.setSoTimeout(timeoutMillis);
+
+		String line;
+		while ((line = readLine(command, timeoutMillis)) != null) {
+			if (line.startsWith(DaemonProtocol.DATA + " ")) {
+				handler.data(line.substring(DaemonProtocol.DATA.length() + 1));
+			} else if (line.equals(DaemonProtocol.OK)) {
+				return;
+			} else if (line.startsWith(DaemonProtocol.ERROR)) {
+				throw new DaemonException(line.substring(DaemonProtocol.ERROR.length()).trim());
+			} else {
+				throw new IOException("Invalid response from the daemon: " + line);
+			}
+		}
+
+		throw new EOFException("The daemon closed the connection while executing " + command);
+	}
+
+	@Nullable
+	private String readLine(final String command, final int timeoutMillis) throws IOException {
+		try {
+			return reader.readLine();
+		} catch (SocketTimeoutException e) {
+			// the rest of the response would be taken for the response to the next request
+			socket.close();
+			throw new IOException("The daemon did not answer " + command + " within " + timeoutMillis + " ms", e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+}
@@ -0,0 +1,75 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.daemon;
+
+/**
+ * <p>
+ * The line-based protocol spoken between {@link DaemonClient} and {@link DeviceUtilsDaemon}. Every request is a single
+ * line of tab-separated fields, the first of which is the command. The daemon answers with any number of
+ * {@value #DATA} lines followed by either {@value #OK} or {@value #ERROR} and an error message.
+ * </p>
+ * <p>
+ * Every connection starts with {@code HELLO version token}. The daemon closes the connection if the protocol version
+ * differs from {@value #VERSION} or the token is not the one it wrote to its token file, which only the user running
+ * the daemon can read. No other command is accepted before the handshake succeeded.
+ * </p>
+ * <p>
+ * Commands: {@code LIST}, {@code READMAC port type [force]}, {@code WRITEMAC port type mac}, {@code FLASH port type
+ * imageFile}, {@code RESET port type} and {@code LISTEN port type}. {@code LISTEN} answers with a {@value #DATA} line
+ * per chunk of bytes received from the device (hex encoded) until the client disconnects.
+ * </p>
+ */
+final class DaemonProtocol {
+
+	static final String VERSION = "1";
+
+	static final String HELLO = "HELLO";
+
+	static final String LIST = "LIST";
+
+	static final String READ_MAC = "READMAC";
+
+	static final String WRITE_MAC = "WRITEMAC";
+
+	static final String FLASH = "FLASH";
+
+	static final String RESET = "RESET";
+
+	static final String LISTEN = "LISTEN";
+
+	static final String FORCE = "force";
+
+	static final String DATA = "DATA";
+
+	static final String OK = "OK";
+
+	static final String ERROR = "ERROR";
+
+	static final char SEPARATOR = '\t';
+
+	static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private DaemonProtocol() {
+	}
+}
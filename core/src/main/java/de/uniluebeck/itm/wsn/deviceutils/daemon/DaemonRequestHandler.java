@@ -0,0 +1,363 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.daemon;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.flasher.BatchDeviceFlasher;
+import de.uniluebeck.itm.wsn.deviceutils.flasher.FlashResult;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacCache;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.deviceutils.macwriter.BatchDeviceMacWriter;
+import de.uniluebeck.itm.wsn.deviceutils.macwriter.MacWriteResult;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationAdapter;
+import org.apache.commons.codec.binary.Hex;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Executes the requests of {@link DaemonClient}s. Requests are executed by a separate executor, as most of them block
+ * until the device has finished the operation. The {@value DaemonProtocol#HELLO} handshake is checked right away, and
+ * clients that fail it are disconnected.
+ */
+@ChannelHandler.Sharable
+class DaemonRequestHandler extends SimpleChannelUpstreamHandler {
+
+	private static final Logger log = LoggerFactory.getLogger(DaemonRequestHandler.class);
+
+	private static final long TIMEOUT_MILLIS = 120000;
+
+	private static final int LISTEN_BUFFER_SIZE = 4096;
+
+	private final DeviceObserver deviceObserver;
+
+	private final DeviceMacReader deviceMacReader;
+
+	private final DeviceMacCache deviceMacCache;
+
+	private final DeviceConnectionPool connectionPool;
+
+	private final Map<String, String> configuration;
+
+	private final ExecutorService requestExecutorService;
+
+	private final ChannelGroup channels;
+
+	private volatile String token;
+
+	DaemonRequestHandler(final DeviceObserver deviceObserver,
+						 final DeviceMacReader deviceMacReader,
+						 final DeviceMacCache deviceMacCache,
+						 final DeviceConnectionPool connectionPool,
+						 @Nullable final Map<String, String> configuration,
+						 final ExecutorService requestExecutorService,
+						 final ChannelGroup channels) {
+		this.deviceObserver = deviceObserver;
+		this.deviceMacReader = deviceMacReader;
+		this.deviceMacCache = deviceMacCache;
+		this.connectionPool = connectionPool;
+		this.configuration = configuration;
+		this.requestExecutorService = requestExecutorService;
+		this.channels = channels;
+	}
+
+	void setToken(final String token) {
+		this.token = token;
+	}
+
+	@Override
+	public void channelOpen(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+		channels.add(e.getChannel());
+		super.channelOpen(ctx, e);
+	}
+
+	@Override
+	public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+		final Channel channel = e.getChannel();
+		final String request = (String) e.getMessage();
+
+		if (ctx.getAttachment() == null) {
+			if (isValidHello(request)) {
+				ctx.setAttachment(Boolean.TRUE);
+				channel.write(DaemonProtocol.OK + "\n");
+			} else {
+				log.warn("Disconnecting client that failed the handshake");
+				channel.write(DaemonProtocol.ERROR + " Handshake failed, expected protocol version "
+						+ DaemonProtocol.VERSION + " and the token of the daemon\n"
+				).addListener(ChannelFutureListener.CLOSE);
+			}
+			return;
+		}
+
+		requestExecutorService.execute(new Runnable() {
+			@Override
+			public void run() {
+				handleRequest(channel, request);
+			}
+		}
+		);
+	}
+
+	@Override
+	public void exceptionCaught(final ChannelHandlerContext ctx, final ExceptionEvent e) throws Exception {
+		log.warn("Closing connection to client after exception: {}", e.getCause().toString());
+		e.getChannel().close();
+	}
+
+	private void handleRequest(final Channel channel, final String request) {
+
+		log.debug("Executing request {}", request);
+
+		try {
+
+			final List<String> fields = Splitter.on(DaemonProtocol.SEPARATOR).splitToList(request.trim());
+			final String command = fields.get(0).toUpperCase();
+
+			if (DaemonProtocol.LIST.equals(command)) {
+				list(channel);
+			} else if (DaemonProtocol.READ_MAC.equals(command)) {
+				checkFields(fields, 3, 4);
+				final boolean force = fields.size() == 4 && DaemonProtocol.FORCE.equals(fields.get(3));
+				readMac(channel, fields.get(1), fields.get(2), force);
+			} else if (DaemonProtocol.WRITE_MAC.equals(command)) {
+				checkFields(fields, 4, 4);
+				writeMac(fields.get(1), fields.get(2), new MacAddress(fields.get(3)));
+			} else if (DaemonProtocol.FLASH.equals(command)) {
+				checkFields(fields, 4, 4);
+				flash(fields.get(1), fields.get(2), new File(fields.get(3)));
+			} else if (DaemonProtocol.RESET.equals(command)) {
+				checkFields(fields, 3, 3);
+				reset(fields.get(1), fields.get(2));
+			} else if (DaemonProtocol.LISTEN.equals(command)) {
+				checkFields(fields, 3, 3);
+				listen(channel, fields.get(1), fields.get(2));
+			} else {
+				throw new IllegalArgumentException("Unknown command " + fields.get(0));
+			}
+
+			channel.write(DaemonProtocol.OK + "\n");
+
+		} catch (Exception e) {
+
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+
+			log.warn("Request " + request + " failed: " + e, e);
+			final String message = e.getMessage() == null ? e.toString() : e.getMessage();
+			channel.write(DaemonProtocol.ERROR + " " + message.replace('\n', ' ') + "\n");
+		}
+	}
+
+	private void list(final Channel channel) {
+
+		final List<DeviceInfo> deviceInfos = newArrayList(deviceObserver.getCurrentState().values());
+		Collections.sort(deviceInfos, new Comparator<DeviceInfo>() {
+			@Override
+			public int compare(final DeviceInfo o1, final DeviceInfo o2) {
+				return o1.getPort().compareTo(o2.getPort());
+			}
+		}
+		);
+
+		for (DeviceInfo deviceInfo : deviceInfos) {
+			MacAddress macAddress = deviceInfo.getMacAddress();
+			if (macAddress == null && deviceInfo.getReference() != null) {
+				macAddress = deviceMacCache.get(deviceInfo.getReference());
+			}
+			writeData(channel, Joiner.on(DaemonProtocol.SEPARATOR).join(
+					deviceInfo.getPort(),
+					Strings.nullToEmpty(deviceInfo.getType()),
+					Strings.nullToEmpty(deviceInfo.getReference()),
+					macAddress == null ? "" : macAddress.toHexString()
+			)
+			);
+		}
+	}
+
+	private void readMac(final Channel channel, final String port, final String deviceType, final boolean force)
+			throws IOException {
+
+		final String reference = getReference(port);
+		if (force && reference != null) {
+			deviceMacCache.invalidate(reference);
+		}
+
+		final MacAddress macAddress = deviceMacReader.readMac(port, deviceType, configuration, reference);
+		if (macAddress == null) {
+			throw new IOException("MAC address of " + deviceType + " device at port " + port + " could not be read");
+		}
+
+		writeData(channel, macAddress.toHexString());
+	}
+
+	private void writeMac(final String port, final String deviceType, final MacAddress macAddress)
+			throws Exception {
+
+		final BatchDeviceMacWriter writer = new BatchDeviceMacWriter(
+				connectionPool, requestExecutorService, 1, TIMEOUT_MILLIS
+		);
+		final MacWriteResult result = writer.writeAll(ImmutableMap.of(port, macAddress), deviceType, configuration)
+				.get(0);
+
+		final String reference = getReference(port);
+		if (reference != null) {
+			deviceMacCache.invalidate(reference);
+		}
+
+		if (!result.isSuccessful()) {
+			throw new IOException(String.valueOf(result.getFailure()), result.getFailure());
+		}
+	}
+
+	private void flash(final String port, final String deviceType, final File imageFile) throws Exception {
+
+		final byte[] image = Files.toByteArray(imageFile);
+		final FlashResult result = new BatchDeviceFlasher(connectionPool, requestExecutorService, 1, TIMEOUT_MILLIS)
+				.flash(ImmutableList.of(port), deviceType, configuration, image)
+				.get(0);
+
+		if (!result.isSuccessful()) {
+			throw new IOException(String.valueOf(result.getFailure()), result.getFailure());
+		}
+	}
+
+	private void reset(final String port, final String deviceType) throws Exception {
+
+		Device device = connectionPool.borrow(port, deviceType, configuration);
+		try {
+			device.reset(TIMEOUT_MILLIS, new OperationAdapter<Void>()).get();
+			connectionPool.release(device);
+			device = null;
+		} finally {
+			if (device != null) {
+				connectionPool.invalidate(device);
+			}
+		}
+	}
+
+	/**
+	 * Writes everything the device sends to the client until either of them disconnects. The connection to the device
+	 * is not reused afterwards, as closing it is the only way to stop a blocking read from it.
+	 */
+	private void listen(final Channel channel, final String port, final String deviceType) throws Exception {
+
+		final Device device = connectionPool.borrow(port, deviceType, configuration);
+
+		try {
+
+			channel.getCloseFuture().addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(final ChannelFuture future) throws Exception {
+					log.debug("Client disconnected, closing connection to device at {}", port);
+					Closeables.close(device, true);
+				}
+			}
+			);
+
+			final InputStream inputStream = device.getInputStream();
+			final byte[] buffer = new byte[LISTEN_BUFFER_SIZE];
+			int read;
+
+			while (channel.isConnected() && (read = inputStream.read(buffer)) != -1) {
+
+				final byte[] data = new byte[read];
+				System.arraycopy(buffer, 0, data, 0, read);
+				final ChannelFuture writeFuture = writeData(channel, Hex.encodeHexString(data));
+
+				// don't read faster than the client can receive
+				if (!channel.isWritable()) {
+					writeFuture.awaitUninterruptibly();
+				}
+			}
+
+		} catch (IOException e) {
+			if (channel.isConnected()) {
+				throw e;
+			}
+		} finally {
+			connectionPool.invalidate(device);
+		}
+	}
+
+	private boolean isValidHello(final String request) {
+		final List<String> fields = Splitter.on(DaemonProtocol.SEPARATOR).splitToList(request.trim());
+		return token != null
+				&& fields.size() == 3
+				&& DaemonProtocol.HELLO.equals(fields.get(0))
+				&& DaemonProtocol.VERSION.equals(fields.get(1))
+				&& MessageDigest.isEqual(token.getBytes(Charsets.US_ASCII), fields.get(2).getBytes(Charsets.US_ASCII));
+	}
+
+	@Nullable
+	private String getReference(final String port) {
+		final DeviceInfo deviceInfo = deviceObserver.getCurrentState().get(port);
+		return deviceInfo == null ? null : deviceInfo.getReference();
+	}
+
+	private static ChannelFuture writeData(final Channel channel, final String data) {
+		return channel.write(DaemonProtocol.DATA + " " + data + "\n");
+	}
+
+	private static void checkFields(final List<String> fields, final int min, final int max) {
+		checkArgument(fields.size() >= min && fields.size() <= max,
+				"Invalid number of arguments for %s: %s", fields.get(0), fields.size() - 1
+		);
+	}
+}
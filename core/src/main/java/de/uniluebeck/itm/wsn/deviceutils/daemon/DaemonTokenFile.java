@@ -0,0 +1,111 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.daemon;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The file a {@link DeviceUtilsDaemon} writes a random token to when it starts. Only the owner may read the file, so
+ * only clients run by the user who started the daemon can present the token in the {@value DaemonProtocol#HELLO}
+ * handshake. If the file doesn't exist, no daemon was started and the CLIs don't try to forward to one.
+ */
+final class DaemonTokenFile {
+
+	private static final int TOKEN_LENGTH = 16;
+
+	private static final Set<PosixFilePermission> OWNER_ONLY =
+			EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+
+	private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+	private DaemonTokenFile() {
+	}
+
+	/**
+	 * Returns the token file of the daemon listening on {@code port}.
+	 */
+	static File getTokenFile(final int port) {
+		return new File(System.getProperty("user.home"),
+				".wsn-device-utils" + File.separator + "daemon-" + port + ".token"
+		);
+	}
+
+	/**
+	 * Writes a new random token to {@code file}, readable only by its owner.
+	 */
+	static String create(final File file) throws IOException {
+
+		final byte[] bytes = new byte[TOKEN_LENGTH];
+		new SecureRandom().nextBytes(bytes);
+		final String token = Hex.encodeHexString(bytes);
+
+		Files.createParentDirs(file);
+		final Path path = file.toPath();
+		java.nio.file.Files.deleteIfExists(path);
+
+		if (POSIX) {
+			java.nio.file.Files.createFile(path, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+		} else {
+			java.nio.file.Files.createFile(path);
+			if (!file.setReadable(false, false) || !file.setReadable(true, true)) {
+				throw new IOException("Could not restrict the permissions of " + file);
+			}
+		}
+
+		Files.write(token, file, Charsets.US_ASCII);
+		return token;
+	}
+
+	/**
+	 * Reads the token from {@code file}.
+	 *
+	 * @throws IOException
+	 * 		if the file can't be read or may be read by other users than its owner
+	 */
+	static String read(final File file) throws IOException {
+
+		if (POSIX) {
+			final Set<PosixFilePermission> permissions = java.nio.file.Files.getPosixFilePermissions(file.toPath());
+			if (!OWNER_ONLY.containsAll(permissions)) {
+				throw new IOException("Ignoring " + file + " as it is accessible by other users: "
+						+ PosixFilePermissions.toString(permissions)
+				);
+			}
+		}
+
+		return Files.toString(file, Charsets.US_ASCII).trim();
+	}
+}
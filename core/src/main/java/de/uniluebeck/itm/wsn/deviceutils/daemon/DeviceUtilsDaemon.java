@@ -0,0 +1,243 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.daemon;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
+import de.uniluebeck.itm.wsn.deviceutils.ExecutorStrategy;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacCache;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.Delimiters;
+import org.jboss.netty.handler.codec.string.StringDecoder;
+import org.jboss.netty.handler.codec.string.StringEncoder;
+import org.jboss.netty.util.CharsetUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.jboss.netty.channel.Channels.pipeline;
+
+/**
+ * <p>
+ * A resident process that executes the operations of the CLIs on behalf of {@link DaemonClient}s, so that they don't
+ * have to start a JVM, create an injector and open the serial port for every single operation. The daemon keeps the
+ * injector, a polled {@link DeviceObserver} and the connections of its {@link DeviceConnectionPool} around between
+ * requests.
+ * </p>
+ * <p>
+ * The daemon only listens on the loopback interface, see {@link DaemonProtocol} for the requests it understands. It
+ * only accepts clients that present the token it writes to its token file when it starts, which is deleted again
+ * when the daemon is closed.
+ * </p>
+ */
+public class DeviceUtilsDaemon implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceUtilsDaemon.class);
+
+	private static final int OBSERVER_POLLING_INTERVAL_SECONDS = 1;
+
+	/**
+	 * Clients only connect through the loopback interface and send a few lines each, so one I/O thread is plenty.
+	 */
+	private static final int IO_WORKER_COUNT = 1;
+
+	private final DeviceObserver deviceObserver;
+
+	private final DeviceMacReader deviceMacReader;
+
+	private final DeviceMacCache deviceMacCache;
+
+	private final DeviceConnectionPool connectionPool;
+
+	private final ChannelGroup channels = new DefaultChannelGroup(DeviceUtilsDaemon.class.getSimpleName());
+
+	private ExecutorService requestExecutorService;
+
+	private ScheduledExecutorService scheduler;
+
+	private ServerBootstrap bootstrap;
+
+	private Channel serverChannel;
+
+	private File tokenFile;
+
+	@Inject
+	public DeviceUtilsDaemon(final DeviceObserver deviceObserver,
+							 final DeviceMacReader deviceMacReader,
+							 final DeviceMacCache deviceMacCache,
+							 final DeviceConnectionPool connectionPool) {
+		this.deviceObserver = deviceObserver;
+		this.deviceMacReader = deviceMacReader;
+		this.deviceMacCache = deviceMacCache;
+		this.connectionPool = connectionPool;
+	}
+
+	/**
+	 * Starts polling the device observer and listening for requests. The token is written to the default token file of
+	 * the port, where {@link DaemonClient#connectIfRunning()} looks for it.
+	 *
+	 * @param port
+	 * 		the loopback port to listen on (0 for an arbitrary free port, see {@link #getPort()})
+	 * @param configuration
+	 * 		the driver configuration used for all devices or {@code null}
+	 *
+	 * @throws IOException
+	 * 		if the token file could not be written
+	 */
+	public synchronized void start(final int port, @Nullable final Map<String, String> configuration)
+			throws IOException {
+		start(port, configuration, null);
+	}
+
+	/**
+	 * Starts polling the device observer and listening for requests.
+	 *
+	 * @param port
+	 * 		the loopback port to listen on (0 for an arbitrary free port, see {@link #getPort()})
+	 * @param configuration
+	 * 		the driver configuration used for all devices or {@code null}
+	 * @param tokenFile
+	 * 		the file to write the token clients must present to or {@code null} for the default token file of the port
+	 *
+	 * @throws IOException
+	 * 		if the token file could not be written
+	 */
+	public synchronized void start(final int port, @Nullable final Map<String, String> configuration,
+								   @Nullable final File tokenFile) throws IOException {
+
+		checkState(serverChannel == null, "The daemon is already running");
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("DeviceUtilsDaemon-Observer %d").build()
+		);
+		// MAC addresses are not read while polling, as that would have to wait for devices that are being listened to
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					deviceObserver.updateState(false);
+				} catch (Exception e) {
+					log.error("Exception while observing devices: " + e, e);
+				}
+			}
+		}, 0, OBSERVER_POLLING_INTERVAL_SECONDS, TimeUnit.SECONDS
+		);
+
+		requestExecutorService = DeviceUtilsModule.createExecutorService("DeviceUtilsDaemon-Request");
+
+		final DaemonRequestHandler requestHandler = new DaemonRequestHandler(
+				deviceObserver, deviceMacReader, deviceMacCache, connectionPool, configuration, requestExecutorService,
+				channels
+		);
+
+		// Netty keeps one thread per boss and worker busy for as long as the daemon runs, so these pools must not be
+		// bounded by the configured executor strategy
+		bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(
+				DeviceUtilsModule.createExecutorService("DeviceUtilsDaemon-Boss", ExecutorStrategy.CACHED, 1),
+				DeviceUtilsModule.createExecutorService("DeviceUtilsDaemon-I/O", ExecutorStrategy.CACHED, 1),
+				IO_WORKER_COUNT
+		)
+		);
+		bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				return pipeline(
+						new DelimiterBasedFrameDecoder(DaemonProtocol.MAX_LINE_LENGTH, Delimiters.lineDelimiter()),
+						new StringDecoder(CharsetUtil.UTF_8),
+						new StringEncoder(CharsetUtil.UTF_8),
+						requestHandler
+				);
+			}
+		}
+		);
+
+		serverChannel = bootstrap.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+		this.tokenFile = tokenFile == null ? DaemonTokenFile.getTokenFile(getPort()) : tokenFile;
+		try {
+			requestHandler.setToken(DaemonTokenFile.create(this.tokenFile));
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+
+		log.info("Listening for requests on port {}", getPort());
+	}
+
+	/**
+	 * Returns the port the daemon is listening on.
+	 */
+	public synchronized int getPort() {
+		checkState(serverChannel != null, "The daemon is not running");
+		return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * Stops listening, disconnects all clients and closes all connections to devices.
+	 */
+	@Override
+	public synchronized void close() {
+
+		if (serverChannel == null) {
+			return;
+		}
+
+		serverChannel.close().awaitUninterruptibly();
+		channels.close().awaitUninterruptibly();
+		bootstrap.releaseExternalResources();
+		serverChannel = null;
+
+		ExecutorUtils.shutdown(scheduler, 1, TimeUnit.SECONDS);
+		ExecutorUtils.shutdown(requestExecutorService, 1, TimeUnit.SECONDS);
+		connectionPool.close();
+
+		if (tokenFile.exists() && !tokenFile.delete()) {
+			log.warn("Could not delete the token file {}", tokenFile);
+		}
+	}
+}
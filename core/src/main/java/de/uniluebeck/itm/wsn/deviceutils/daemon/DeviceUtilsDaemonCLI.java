@@ -0,0 +1,259 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.daemon;
+
+import com.google.common.base.Joiner;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+import de.uniluebeck.itm.util.logging.LogLevel;
+import de.uniluebeck.itm.util.logging.Logging;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReferenceMap;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricsHttpServer;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.printUsageAndExit;
+
+public class DeviceUtilsDaemonCLI {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceUtilsDaemonCLI.class);
+
+	private static final int EXIT_CODE_INVALID_ARGUMENTS = 1;
+
+	private static final int EXIT_CODE_REFERENCE_FILE_NOT_EXISTING = 2;
+
+	private static final int EXIT_CODE_REFERENCE_FILE_NOT_READABLE = 3;
+
+	private static final int EXIT_CODE_REFERENCE_FILE_IS_DIRECTORY = 4;
+
+	private static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 300;
+
+	public static void main(String[] args) throws Exception {
+
+		Logging.setRootLogLevel(LogLevel.WARN);
+		Logging.setLoggingDefaults(LogLevel.WARN);
+
+		CommandLineParser parser = new PosixParser();
+		Options options = createCommandLineOptions();
+
+		int port = DaemonClient.getConfiguredPort();
+		Map<String, String> configuration = newHashMap();
+		DeviceMacReferenceMap deviceMacReferenceMap = null;
+		boolean use16BitMode = true;
+		long idleTimeoutSeconds = DEFAULT_IDLE_TIMEOUT_SECONDS;
+		boolean status = false;
+
+		try {
+
+			CommandLine line = parser.parse(options, args, true);
+
+			if (line.hasOption('h')) {
+				printUsageAndExit(DeviceUtilsDaemonCLI.class, options, 0);
+			}
+
+			if (line.hasOption('v')) {
+				Logging.setRootLogLevel(LogLevel.DEBUG);
+				Logging.setLogLevel(LogLevel.DEBUG);
+			}
+
+			if (line.hasOption('l')) {
+				Logging.setRootLogLevel(LogLevel.toLevel(line.getOptionValue('l')));
+				Logging.setLogLevel(LogLevel.toLevel(line.getOptionValue('l')));
+			}
+
+			if (line.hasOption('c')) {
+				final String configurationFileString = line.getOptionValue('c');
+				final File configurationFile = new File(configurationFileString);
+				final Properties configurationProperties = new Properties();
+				configurationProperties.load(new FileReader(configurationFile));
+				for (Map.Entry<Object, Object> entry : configurationProperties.entrySet()) {
+					configuration.put((String) entry.getKey(), (String) entry.getValue());
+				}
+			}
+
+			if (line.hasOption('r')) {
+				deviceMacReferenceMap = readDeviceMacReferenceMap(line.getOptionValue('r'));
+			}
+
+			if (line.hasOption('b')) {
+				port = Integer.parseInt(line.getOptionValue('b'));
+			}
+
+			if (line.hasOption('i')) {
+				idleTimeoutSeconds = Long.parseLong(line.getOptionValue('i'));
+			}
+
+			use16BitMode = !line.hasOption('x');
+			status = line.hasOption('s');
+
+		} catch (Exception e) {
+			log.error("Invalid command line: " + e);
+			printUsageAndExit(DeviceUtilsDaemonCLI.class, options, EXIT_CODE_INVALID_ARGUMENTS);
+		}
+
+		if (status) {
+			printStatusAndExit(port);
+		}
+
+		MetricsHttpServer.startIfConfigured();
+		final ExecutorService executorService = DeviceUtilsModule.createExecutorService("DeviceUtilsDaemon");
+		final long idleTimeoutMillis = idleTimeoutSeconds * 1000;
+
+		final Injector injector = Guice.createInjector(
+				new DeviceUtilsModule(executorService, deviceMacReferenceMap, use16BitMode),
+				new AbstractModule() {
+					@Override
+					protected void configure() {
+						bind(Long.class).annotatedWith(Names.named("connectionIdleTimeoutMillis"))
+								.toInstance(idleTimeoutMillis);
+					}
+				}
+		);
+
+		final DeviceUtilsDaemon daemon = injector.getInstance(DeviceUtilsDaemon.class);
+
+		try {
+			daemon.start(port, configuration);
+		} catch (Exception e) {
+			log.error("Could not listen on port " + port + ": " + e, e);
+			System.exit(1);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(DeviceUtilsDaemonCLI.class.getName() + "-ShutdownThread") {
+			@Override
+			public void run() {
+				daemon.close();
+			}
+		}
+		);
+
+		System.out.println("Listening for requests on port " + daemon.getPort());
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * Prints the devices known to the daemon running on {@code port}.
+	 */
+	private static void printStatusAndExit(final int port) {
+		try {
+			final DaemonClient client = new DaemonClient(port);
+			try {
+				for (DeviceInfo deviceInfo : client.listDevices()) {
+					System.out.println(Joiner.on('\t').useForNull("-").join(
+							deviceInfo.getPort(),
+							deviceInfo.getType(),
+							deviceInfo.getReference(),
+							deviceInfo.getMacAddress() == null ? null : deviceInfo.getMacAddress().toHexString()
+					)
+					);
+				}
+			} finally {
+				client.close();
+			}
+			System.exit(0);
+		} catch (IOException e) {
+			System.err.println("No daemon running on port " + port + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static DeviceMacReferenceMap readDeviceMacReferenceMap(final String fileName) throws IOException {
+
+		final DeviceMacReferenceMap deviceMacReferenceMap;
+		final File referenceToMacMapPropertiesFile = new File(fileName);
+
+		if (!referenceToMacMapPropertiesFile.exists()) {
+			log.error("Reference file {} does not exist!");
+			System.exit(EXIT_CODE_REFERENCE_FILE_NOT_EXISTING);
+		} else if (!referenceToMacMapPropertiesFile.canRead()) {
+			log.error("Reference file {} is not readable!");
+			System.exit(EXIT_CODE_REFERENCE_FILE_NOT_READABLE);
+		} else if (referenceToMacMapPropertiesFile.isDirectory()) {
+			log.error("Reference file {} is a directory!");
+			System.exit(EXIT_CODE_REFERENCE_FILE_IS_DIRECTORY);
+		}
+
+		Properties properties = new Properties();
+		properties.load(new FileInputStream(referenceToMacMapPropertiesFile));
+
+		deviceMacReferenceMap = new DeviceMacReferenceMap();
+
+		for (Object key : properties.keySet()) {
+			final String value = (String) properties.get(key);
+			deviceMacReferenceMap.put((String) key, new MacAddress(value));
+		}
+
+		return deviceMacReferenceMap;
+	}
+
+	private static Options createCommandLineOptions() {
+
+		Options options = new Options();
+
+		options.addOption("b", "bind", true,
+				"Optional: loopback port to listen on (default: " + DaemonClient.DEFAULT_PORT + ", or the value of the "
+						+ "system property " + DaemonClient.PORT_PROPERTY + ")"
+		);
+		options.addOption("i", "idletimeout", true,
+				"Optional: seconds after which idle connections to devices are closed (default: "
+						+ DEFAULT_IDLE_TIMEOUT_SECONDS + ")"
+		);
+		options.addOption("s", "status", false,
+				"Optional: print the devices known to the running daemon instead of starting one"
+		);
+		options.addOption("x", "use64BitMode", false, "Set if you want to read MAC addresses in 64 bit mode");
+		options.addOption("r", "referencetomacmap", true,
+				"Optional: a properties file containing device references to MAC address mappings"
+		);
+		options.addOption("c", "configuration", true,
+				"Optional: file name of a configuration file containing key value pairs to configure the devices"
+		);
+		options.addOption("v", "verbose", false, "Optional: verbose logging output (equal to -l DEBUG)");
+		options.addOption("l", "logging", true,
+				"Optional: set logging level (one of [" + Joiner.on(", ").join(Logging.LOG_LEVELS) + "])"
+		);
+		options.addOption("h", "help", false, "Optional: print help");
+
+		return options;
+	}
+
+}
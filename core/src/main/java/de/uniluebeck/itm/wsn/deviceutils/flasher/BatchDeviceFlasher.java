@@ -0,0 +1,277 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.flasher;
+
+import com.google.common.collect.ImmutableList;
+import de.uniluebeck.itm.wsn.deviceutils.BatchExecutor;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnector;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Counter;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.LatencyHistogram;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Span;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Tracer;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.TracingOperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationAdapter;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+/**
+ * Flashes one image onto several devices concurrently. The image is passed to all devices as the very same array, so
+ * it is only held in memory once.
+ */
+public class BatchDeviceFlasher {
+
+	private static final Logger log = LoggerFactory.getLogger(BatchDeviceFlasher.class);
+
+	private static final LatencyHistogram flashDuration = MetricRegistry.getDefault().histogram(
+			"wsn_deviceutils_flash_seconds", "Time taken to flash an image onto a device"
+	);
+
+	private static final Counter flashedBytes = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_flash_bytes_total", "Bytes of images successfully flashed onto devices"
+	);
+
+	private static final Counter flashFailures = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_flash_failures_total", "Devices that could not be flashed"
+	);
+
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	private final DeviceConnectionPool connectionPool;
+
+	private final ExecutorService executorService;
+
+	private final int parallelism;
+
+	private final long timeoutMillis;
+
+	/**
+	 * Creates a flasher that connects to every device itself and disconnects once the device is flashed.
+	 *
+	 * @param deviceFactory
+	 * 		the factory used to create the device drivers
+	 * @param deviceExecutorService
+	 * 		the executor service passed to the device drivers, which the devices are also flashed on
+	 * @param parallelism
+	 * 		the maximum number of devices that are flashed concurrently
+	 * @param timeoutMillis
+	 * 		the maximum time flashing a single device may take
+	 */
+	public BatchDeviceFlasher(final DeviceFactory deviceFactory, final ExecutorService deviceExecutorService,
+							  final int parallelism, final long timeoutMillis) {
+		this(new DeviceConnectionPool(deviceFactory, deviceExecutorService, new DeviceConnector(), 0,
+				DeviceConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS
+		), deviceExecutorService, parallelism, timeoutMillis
+		);
+	}
+
+	/**
+	 * @param connectionPool
+	 * 		the pool to borrow the connections to the devices from, so that connections that are already open (e.g.,
+	 * 		for reading the MAC addresses of the devices) are reused
+	 * @param executorService
+	 * 		the executor the devices are flashed on
+	 * @param parallelism
+	 * 		the maximum number of devices that are flashed concurrently
+	 * @param timeoutMillis
+	 * 		the maximum time flashing a single device may take
+	 */
+	public BatchDeviceFlasher(final DeviceConnectionPool connectionPool, final ExecutorService executorService,
+							  final int parallelism, final long timeoutMillis) {
+		checkArgument(parallelism > 0, "The parallelism must be positive");
+		this.connectionPool = connectionPool;
+		this.executorService = executorService;
+		this.parallelism = parallelism;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Flashes {@code image} onto the devices attached to {@code ports} and blocks until all of them are done.
+	 *
+	 * @param ports
+	 * 		the serial ports the devices are attached to
+	 * @param deviceType
+	 * 		the type of the devices
+	 * @param configuration
+	 * 		the driver configuration or {@code null}
+	 * @param image
+	 * 		the image to flash (must not be modified while flashing)
+	 *
+	 * @return one result per port, in the order of {@code ports}
+	 *
+	 * @throws InterruptedException
+	 * 		if interrupted while waiting for the devices to be flashed
+	 */
+	public ImmutableList<FlashResult> flash(final List<String> ports, final String deviceType,
+											@Nullable final Map<String, String> configuration,
+											final byte[] image) throws InterruptedException {
+
+		final Map<String, String> deviceTypes = newLinkedHashMap();
+		for (String port : ports) {
+			deviceTypes.put(port, deviceType);
+		}
+		return flash(deviceTypes, configuration, image, null);
+	}
+
+	/**
+	 * Flashes {@code image} onto devices of possibly different types and blocks until all of them are done.
+	 *
+	 * @param deviceTypes
+	 * 		the types of the devices by the serial ports they are attached to
+	 * @param configuration
+	 * 		the driver configuration or {@code null}
+	 * @param image
+	 * 		the image to flash (must not be modified while flashing)
+	 * @param listener
+	 * 		notified about the progress of every device or {@code null}
+	 *
+	 * @return one result per port, in the iteration order of {@code deviceTypes}
+	 *
+	 * @throws InterruptedException
+	 * 		if interrupted while waiting for the devices to be flashed
+	 */
+	public ImmutableList<FlashResult> flash(final Map<String, String> deviceTypes,
+											@Nullable final Map<String, String> configuration,
+											final byte[] image,
+											@Nullable final FlashListener listener) throws InterruptedException {
+
+		if (deviceTypes.isEmpty()) {
+			return ImmutableList.of();
+		}
+
+		final List<Callable<FlashResult>> tasks = newArrayList();
+		for (final Map.Entry<String, String> entry : deviceTypes.entrySet()) {
+			tasks.add(new Callable<FlashResult>() {
+				@Override
+				public FlashResult call() throws Exception {
+					final FlashResult result = flash(entry.getKey(), entry.getValue(), configuration, image, listener);
+					if (listener != null) {
+						listener.flashed(result);
+					}
+					return result;
+				}
+			}
+			);
+		}
+
+		return BatchExecutor.invokeAll(executorService, parallelism, tasks);
+	}
+
+	private FlashResult flash(final String port, final String deviceType,
+							  @Nullable final Map<String, String> configuration, final byte[] image,
+							  @Nullable final FlashListener listener) {
+
+		final long startNanos = System.nanoTime();
+		final Span span = Tracer.getDefault().begin("device", "flash").arg("port", port).arg("type", deviceType);
+		Device device = null;
+
+		try {
+
+			device = connectionPool.borrow(port, deviceType, configuration);
+
+			final Span programSpan = Tracer.getDefault().begin(TracingOperationListener.CATEGORY, "program");
+			try {
+				device.program(image, timeoutMillis,
+						new TracingOperationListener<Void>(Tracer.getDefault(), port, new ProgressLogger(port, listener))
+				).get();
+			} finally {
+				programSpan.end();
+			}
+			log.info("{}: flashing node done!", port);
+
+			connectionPool.release(device);
+			device = null;
+
+			flashDuration.recordSince(startNanos);
+			final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			flashedBytes.add(image.length);
+			return new FlashResult(port, durationMillis, null);
+
+		} catch (Exception e) {
+
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+
+			final Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+			log.error(port + ": flashing node failed with Exception: " + cause, cause);
+			flashFailures.increment();
+			span.arg("failure", cause);
+
+			return new FlashResult(port, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), cause);
+
+		} finally {
+			// the connection is not reused if flashing failed
+			if (device != null) {
+				connectionPool.invalidate(device);
+			}
+			span.end();
+		}
+	}
+
+	/**
+	 * Logs the progress of a device in steps of one percent and passes every change on to the listener.
+	 */
+	private static class ProgressLogger extends OperationAdapter<Void> {
+
+		private final String port;
+
+		@Nullable
+		private final FlashListener listener;
+
+		private int lastProgress = -1;
+
+		private ProgressLogger(final String port, @Nullable final FlashListener listener) {
+			this.port = port;
+			this.listener = listener;
+		}
+
+		@Override
+		public void onProgressChange(final float fraction) {
+			if (listener != null) {
+				listener.progressChanged(port, fraction);
+			}
+			final int newProgress = (int) Math.floor(fraction * 100);
+			if (lastProgress < newProgress) {
+				lastProgress = newProgress;
+				log.info("{}: progress: {}%", port, newProgress);
+			}
+		}
+	}
+}
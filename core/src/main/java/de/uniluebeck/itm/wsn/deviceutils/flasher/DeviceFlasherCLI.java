@@ -26,17 +26,16 @@ package de.uniluebeck.itm.wsn.deviceutils.flasher;
 import com.google.common.base.Joiner;
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
 import de.uniluebeck.itm.util.logging.LogLevel;
 import de.uniluebeck.itm.util.logging.Logging;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
 import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
-import de.uniluebeck.itm.wsn.drivers.core.Device;
-import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
-import de.uniluebeck.itm.wsn.drivers.core.operation.StateChangedEvent;
-import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import de.uniluebeck.itm.wsn.deviceutils.daemon.DaemonClient;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.Options;
@@ -44,19 +43,22 @@ import org.apache.commons.cli.PosixParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMap;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.assertParametersPresent;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.printUsageAndExit;
+import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.resolvePorts;
 
 public class DeviceFlasherCLI {
 
@@ -67,15 +69,19 @@ public class DeviceFlasherCLI {
 
 	private static final Logger log = LoggerFactory.getLogger(DeviceFlasherCLI.class);
 
+	private static final int FLASH_TIMEOUT_MILLIS = 120000;
+
 	public static void main(String[] args) throws Exception {
 
 		CommandLineParser parser = new PosixParser();
 		Options options = createCommandLineOptions();
 
 		String deviceType = null;
-		String port = null;
+		String portSpecification = null;
 		File imageFile = null;
 		Map<String, String> configuration = newHashMap();
+		boolean flashAll = false;
+		int parallelism = BatchDeviceFlasher.DEFAULT_PARALLELISM;
 
 		try {
 
@@ -105,10 +111,20 @@ public class DeviceFlasherCLI {
 				}
 			}
 
-			assertParametersPresent(line, 't', 'p', 'i');
+			flashAll = line.hasOption('a');
+			if (flashAll) {
+				assertParametersPresent(line, 't', 'i');
+			} else {
+				assertParametersPresent(line, 't', 'p', 'i');
+			}
+
+			if (line.hasOption('n')) {
+				parallelism = Integer.parseInt(line.getOptionValue('n'));
+				checkArgument(parallelism > 0, "The parallelism must be positive");
+			}
 
 			deviceType = line.getOptionValue('t');
-			port = line.getOptionValue('p');
+			portSpecification = line.getOptionValue('p');
 			imageFile = new File(line.getOptionValue('i'));
 
 		} catch (Exception e) {
@@ -116,75 +132,108 @@ public class DeviceFlasherCLI {
 			printUsageAndExit(DeviceFlasherCLI.class, options, 1);
 		}
 
-		final ExecutorService executorService = Executors.newCachedThreadPool(
-				new ThreadFactoryBuilder().setNameFormat("DeviceFlasher %d").build()
-		);
+		// the daemon uses its own driver configuration
+		if (!flashAll && configuration.isEmpty()) {
+			final List<String> ports = resolvePorts(portSpecification);
+			final DaemonClient daemonClient = ports.size() == 1 ? DaemonClient.connectIfRunning() : null;
+			if (daemonClient != null) {
+				System.exit(flashThroughDaemon(daemonClient, ports.get(0), deviceType, imageFile));
+			}
+		}
+
+		final ExecutorService executorService = DeviceUtilsModule.createExecutorService("DeviceFlasher");
 
 		final Injector injector = Guice.createInjector(new DeviceUtilsModule(executorService, null));
-		final Device device = injector.getInstance(DeviceFactory.class).create(executorService, deviceType, configuration);
 
-		device.connect(port);
-		if (!device.isConnected()) {
-			throw new RuntimeException("Connection to device at port \"" + args[1] + "\" could not be established!");
+		// the image is read only once, even if it is flashed onto many devices
+		final byte[] image = Files.toByteArray(imageFile);
+
+		final List<String> ports = flashAll ?
+				findPortsOfType(injector.getInstance(DeviceObserver.class), deviceType) :
+				resolvePorts(portSpecification);
+
+		if (ports.isEmpty()) {
+			log.error("No devices to flash found!");
+			ExecutorUtils.shutdown(executorService, 1, TimeUnit.SECONDS);
+			System.exit(1);
 		}
 
-		OperationListener<Void> callback = new OperationListener<Void>() {
-			private int lastProgress = -1;
+		final DeviceConnectionPool connectionPool = injector.getInstance(DeviceConnectionPool.class);
+		final BatchDeviceFlasher batchDeviceFlasher = new BatchDeviceFlasher(
+				connectionPool, executorService, parallelism, FLASH_TIMEOUT_MILLIS
+		);
 
-			@Override
-			public void onProgressChange(float fraction) {
-				int newProgress = (int) Math.floor(fraction * 100);
-				if (lastProgress < newProgress) {
-					lastProgress = newProgress;
-					log.info("Progress: {}%", newProgress);
-				}
-			}
+		final List<FlashResult> results;
+		try {
+			results = batchDeviceFlasher.flash(ports, deviceType, configuration, image);
+		} finally {
+			connectionPool.close();
+			ExecutorUtils.shutdown(executorService, 1, TimeUnit.SECONDS);
+		}
 
-			@Override
-			public void onSuccess(Void result) {
-				log.info("Flashing node done!");
-			}
+		// as when flashing through the daemon, the progress and result of a single device are only logged
+		if (flashAll || ports.size() > 1) {
+			printResults(results);
+		}
 
-			@Override
-			public void onFailure(Throwable throwable) {
-				log.error("Flashing node failed with Exception: " + throwable, throwable);
+		for (FlashResult result : results) {
+			if (!result.isSuccessful()) {
+				System.exit(1);
 			}
+		}
+	}
 
-			@Override
-			public void beforeStateChanged(final StateChangedEvent<Void> stateChangedEvent) {
-				log.info("Operation state about to change: {}", stateChangedEvent);
-			}
+	private static int flashThroughDaemon(final DaemonClient daemonClient, final String port,
+										  final String deviceType, final File imageFile) throws IOException {
+		try {
+			daemonClient.flash(port, deviceType, imageFile);
+			log.info("Flashing node done!");
+			return 0;
+		} catch (IOException e) {
+			log.error("Flashing node failed with Exception: " + e, e);
+			return 1;
+		} finally {
+			Closeables.close(daemonClient, true);
+		}
+	}
 
-			@Override
-			public void afterStateChanged(final StateChangedEvent<Void> stateChangedEvent) {
-				log.info("Operation state changed: {}", stateChangedEvent);
+	private static List<String> findPortsOfType(final DeviceObserver deviceObserver, final String deviceType) {
+		deviceObserver.updateState(false);
+		final List<String> ports = newArrayList();
+		for (DeviceInfo deviceInfo : deviceObserver.getCurrentState().values()) {
+			if (deviceType.equalsIgnoreCase(deviceInfo.getType())) {
+				ports.add(deviceInfo.getPort());
 			}
+		}
+		Collections.sort(ports);
+		return ports;
+	}
 
-			@Override
-			public void onExecute() {
-				log.info("Starting flash operation...");
-			}
+	private static void printResults(final List<FlashResult> results) {
 
-			@Override
-			public void onCancel() {
-				log.info("Flashing was canceled!");
-			}
-		};
+		int portColumnWidth = "PORT".length();
+		for (FlashResult result : results) {
+			portColumnWidth = Math.max(portColumnWidth, result.getPort().length());
+		}
 
-		try {
-			device.program(Files.toByteArray(imageFile), 120000, callback).get();
-		} finally {
-			closeConnection(executorService, device);
+		final String format = "%-" + portColumnWidth + "s  %-6s  %8s  %s";
+		System.out.println(String.format(format, "PORT", "RESULT", "TIME", "ERROR"));
+
+		int successful = 0;
+		for (FlashResult result : results) {
+			if (result.isSuccessful()) {
+				successful++;
+			}
+			System.out.println(String.format(format,
+					result.getPort(),
+					result.isSuccessful() ? "OK" : "FAILED",
+					String.format("%.1f s", result.getDurationMillis() / 1000.0),
+					result.isSuccessful() ? "" : result.getFailure()
+			)
+			);
 		}
-	}
 
-	private static void closeConnection(final ExecutorService executorService, final Closeable connection) {
-        try {
-            Closeables.close(connection, true);
-        } catch (IOException e) {
-            throw new RuntimeException("This exception should have been swallowed!");
-        }
-        ExecutorUtils.shutdown(executorService, 1, TimeUnit.SECONDS);
+		System.out.println(successful + " of " + results.size() + " devices flashed successfully");
 	}
 
 	private static Options createCommandLineOptions() {
@@ -192,8 +241,9 @@ public class DeviceFlasherCLI {
 		Options options = new Options();
 
 		// add all available options
-		options.addOption("p", "port", true, "Serial port to which the device is attached");
-		options.getOption("p").setRequired(true);
+		options.addOption("p", "port", true, "Serial port to which the device is attached, or a comma-separated list of "
+				+ "ports and/or glob patterns (e.g., /dev/ttyUSB*) to flash several devices concurrently"
+		);
 
 		options.addOption("t", "type", true, "Type of the device");
 		options.getOption("t").setRequired(true);
@@ -204,6 +254,13 @@ public class DeviceFlasherCLI {
 		options.addOption("c", "configuration", true,
 				"Optional: file name of a configuration file containing key value pairs to configure the device"
 		);
+		options.addOption("a", "all", false,
+				"Optional: flash all attached devices of the given type instead of the devices given by -p"
+		);
+		options.addOption("n", "parallelism", true,
+				"Optional: maximum number of devices flashed concurrently (default: "
+						+ BatchDeviceFlasher.DEFAULT_PARALLELISM + ")"
+		);
 		options.addOption("v", "verbose", false, "Optional: verbose logging output (equal to -l DEBUG)");
 		options.addOption("l", "logging", true,
 				"Optional: set logging level (one of [" + Joiner.on(", ").join(Logging.LOG_LEVELS) + "])"
@@ -0,0 +1,468 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>
+ * A {@link Writer} that decouples the writing thread from the (potentially slow) underlying output stream. Characters
+ * written are collected in a bounded ring buffer and become visible to a dedicated writer thread as one record when
+ * {@link #flush()} is called. The writer thread writes the records to the output stream, flushing it whenever a given
+ * amount of characters was written or a given time has passed since the last flush.
+ * </p>
+ * <p>
+ * Calling {@link #flush()} therefore does not wait for the data to reach the output stream. Only {@link #close()}
+ * does, and it also reports I/O errors that occurred in the background. Apart from the ring buffer and the writer
+ * threads copy buffer, which are allocated once, writing records does not allocate.
+ * </p>
+ * <p>
+ * The writer threads are pooled, so that writers that are replaced frequently (e.g., one per segment of a {@link
+ * RollingFileOutput}) don't start a new thread each.
+ * </p>
+ */
+public class AsyncWriter extends Writer {
+
+	/**
+	 * Determines what happens to a record if the ring buffer is full, i.e., if the output stream can't keep up.
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * The writing thread waits until there is space in the ring buffer. Records larger than the ring buffer are
+		 * handed over in parts.
+		 */
+		BLOCK,
+
+		/**
+		 * The oldest buffered records are discarded to make space for the new one.
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * The new record is discarded.
+		 */
+		COUNT_DROPS;
+
+		public static OverflowPolicy fromString(final String policy) {
+			return valueOf(policy.trim().toUpperCase().replace('-', '_'));
+		}
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncWriter.class);
+
+	public static final int DEFAULT_FLUSH_THRESHOLD_CHARS = 64 * 1024;
+
+	/**
+	 * Leaves room for another threshold's worth of records while the writer thread is writing one.
+	 */
+	public static final int DEFAULT_CAPACITY = 2 * DEFAULT_FLUSH_THRESHOLD_CHARS;
+
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50;
+
+	private final Writer out;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final int flushThresholdChars;
+
+	private final long flushIntervalMillis;
+
+	private final AtomicLong droppedRecords = new AtomicLong();
+
+	/**
+	 * Guards the ring buffer. {@link Writer#lock} can't be used, as writers wrapping this one (e.g., {@link
+	 * java.io.BufferedWriter}) synchronize on it while calling {@link #close()}, which waits for the writer thread.
+	 */
+	private final Object monitor = new Object();
+
+	private static final ExecutorService drainExecutor = Executors.newCachedThreadPool(
+			new ThreadFactoryBuilder().setNameFormat("AsyncWriter %d").setDaemon(true).build()
+	);
+
+	/**
+	 * Released when the writer thread is done with this writer.
+	 */
+	private final CountDownLatch drained = new CountDownLatch(1);
+
+	/**
+	 * The ring buffer. Positions are counted from the start and mapped to indices modulo the capacity.
+	 */
+	private final char[] ring;
+
+	/**
+	 * The lengths of the records in the ring buffer, indexed by record number modulo the capacity (every record has at
+	 * least one character, so there can't be more records than characters). Only needed to drop whole records, so
+	 * {@code null} unless the overflow policy is {@link OverflowPolicy#DROP_OLDEST}.
+	 */
+	private final int[] recordLengths;
+
+	/**
+	 * The copy of the ring buffer contents the writer thread writes from.
+	 */
+	private final char[] drainBuffer;
+
+	/**
+	 * The position of the first character not yet taken by the writer thread.
+	 */
+	private long tail;
+
+	/**
+	 * The end position of the last record handed over by {@link #flush()}.
+	 */
+	private long committed;
+
+	/**
+	 * The position after the last character written (including the record not yet handed over).
+	 */
+	private long head;
+
+	private long firstRecord;
+
+	private long endRecord;
+
+	/**
+	 * Set if the record currently being written is discarded due to the overflow policy.
+	 */
+	private boolean discardingRecord;
+
+	private boolean closed;
+
+	private volatile IOException failure;
+
+	public AsyncWriter(final OutputStream out, final OverflowPolicy overflowPolicy) {
+		this(out, overflowPolicy, DEFAULT_CAPACITY, DEFAULT_FLUSH_THRESHOLD_CHARS, DEFAULT_FLUSH_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * @param out
+	 * 		the output stream to write to
+	 * @param overflowPolicy
+	 * 		what to do with new records if the ring buffer is full
+	 * @param capacity
+	 * 		the maximum number of characters waiting to be written
+	 * @param flushThresholdChars
+	 * 		the number of characters after which the output stream is flushed
+	 * @param flushIntervalMillis
+	 * 		the maximum time written records stay unflushed
+	 */
+	public AsyncWriter(final OutputStream out, final OverflowPolicy overflowPolicy, final int capacity,
+					   final int flushThresholdChars, final long flushIntervalMillis) {
+
+		checkNotNull(out);
+		checkNotNull(overflowPolicy);
+		checkArgument(capacity > 0, "The capacity must be positive");
+		checkArgument(flushThresholdChars > 0, "The flush threshold must be positive");
+
+		this.out = new OutputStreamWriter(new BufferedOutputStream(out, flushThresholdChars));
+		this.overflowPolicy = overflowPolicy;
+		this.flushThresholdChars = flushThresholdChars;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.ring = new char[capacity];
+		this.recordLengths = overflowPolicy == OverflowPolicy.DROP_OLDEST ? new int[capacity] : null;
+		this.drainBuffer = new char[capacity];
+
+		drainExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					drain();
+				} finally {
+					drained.countDown();
+				}
+			}
+		}
+		);
+	}
+
+	/**
+	 * Returns the number of records discarded so far because the ring buffer was full.
+	 *
+	 * @return the number of discarded records
+	 */
+	public long getDroppedRecords() {
+		return droppedRecords.get();
+	}
+
+	@Override
+	public void write(final char[] cbuf, final int off, final int len) throws IOException {
+		synchronized (monitor) {
+			int written = 0;
+			while (written < len) {
+				final int free = reserve(len - written);
+				if (free == 0) {
+					return;
+				}
+				final int count = Math.min(free, len - written);
+				final int index = (int) (head % ring.length);
+				final int firstPart = Math.min(count, ring.length - index);
+				System.arraycopy(cbuf, off + written, ring, index, firstPart);
+				System.arraycopy(cbuf, off + written + firstPart, ring, 0, count - firstPart);
+				head += count;
+				written += count;
+			}
+		}
+	}
+
+	@Override
+	public void write(final String str, final int off, final int len) throws IOException {
+		synchronized (monitor) {
+			int written = 0;
+			while (written < len) {
+				final int free = reserve(len - written);
+				if (free == 0) {
+					return;
+				}
+				final int count = Math.min(free, len - written);
+				final int index = (int) (head % ring.length);
+				final int firstPart = Math.min(count, ring.length - index);
+				str.getChars(off + written, off + written + firstPart, ring, index);
+				str.getChars(off + written + firstPart, off + written + count, ring, 0);
+				head += count;
+				written += count;
+			}
+		}
+	}
+
+	/**
+	 * Hands everything written since the last call over to the writer thread as one record.
+	 */
+	@Override
+	public void flush() throws IOException {
+		synchronized (monitor) {
+			assertOpen();
+			if (discardingRecord) {
+				discardingRecord = false;
+			} else {
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * Writes all pending records to the output stream and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (monitor) {
+
+			if (closed) {
+				return;
+			}
+
+			if (!discardingRecord) {
+				commit();
+			}
+			closed = true;
+			monitor.notifyAll();
+		}
+
+		try {
+			drained.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for pending records to be written", e);
+		} finally {
+			out.close();
+		}
+
+		if (droppedRecords.get() > 0) {
+			log.warn("{} records were dropped because the output could not keep up", droppedRecords.get());
+		}
+
+		if (failure != null) {
+			throw new IOException("Writing records failed", failure);
+		}
+	}
+
+	/**
+	 * Makes space for up to {@code requested} characters of the current record, according to the overflow policy.
+	 *
+	 * @return the number of characters that may be written, zero if the current record is discarded
+	 */
+	private int reserve(final int requested) throws IOException {
+
+		assertOpen();
+
+		if (discardingRecord) {
+			return 0;
+		}
+
+		int free = ring.length - (int) (head - tail);
+		if (free >= requested) {
+			return requested;
+		}
+
+		switch (overflowPolicy) {
+
+			case BLOCK:
+				while (free == 0) {
+					// records larger than the ring buffer are handed over in parts
+					if (committed == tail) {
+						commit();
+					}
+					waitForWriterThread();
+					assertOpen();
+					free = ring.length - (int) (head - tail);
+				}
+				return free;
+
+			case DROP_OLDEST:
+				while (free < requested && firstRecord < endRecord) {
+					tail += recordLengths[(int) (firstRecord % recordLengths.length)];
+					firstRecord++;
+					droppedRecords.incrementAndGet();
+					free = ring.length - (int) (head - tail);
+				}
+				if (free >= requested) {
+					return requested;
+				}
+				discardRecord();
+				return 0;
+
+			case COUNT_DROPS:
+				discardRecord();
+				return 0;
+
+			default:
+				throw new IllegalStateException("Unknown overflow policy " + overflowPolicy);
+		}
+	}
+
+	private void discardRecord() {
+		head = committed;
+		discardingRecord = true;
+		droppedRecords.incrementAndGet();
+	}
+
+	private void commit() {
+		if (head > committed) {
+			if (recordLengths != null) {
+				recordLengths[(int) (endRecord % recordLengths.length)] = (int) (head - committed);
+			}
+			endRecord++;
+			committed = head;
+			monitor.notifyAll();
+		}
+	}
+
+	private void waitForWriterThread() throws IOException {
+		try {
+			monitor.wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for space in the ring buffer", e);
+		}
+	}
+
+	private void assertOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Writer closed");
+		}
+		if (failure != null) {
+			throw new IOException("Writing records failed", failure);
+		}
+	}
+
+	private void drain() {
+
+		long unflushedChars = 0;
+		long lastFlush = System.currentTimeMillis();
+
+		try {
+
+			while (true) {
+
+				final int length;
+				final boolean done;
+
+				synchronized (monitor) {
+
+					while (committed == tail && !closed) {
+						if (unflushedChars == 0) {
+							monitor.wait();
+						} else {
+							final long waitMillis = lastFlush + flushIntervalMillis - System.currentTimeMillis();
+							if (waitMillis <= 0) {
+								break;
+							}
+							monitor.wait(waitMillis);
+						}
+					}
+
+					length = (int) (committed - tail);
+					final int index = (int) (tail % ring.length);
+					final int firstPart = Math.min(length, ring.length - index);
+					System.arraycopy(ring, index, drainBuffer, 0, firstPart);
+					System.arraycopy(ring, 0, drainBuffer, firstPart, length - firstPart);
+
+					tail = committed;
+					firstRecord = endRecord;
+					done = closed && committed == tail;
+					monitor.notifyAll();
+				}
+
+				out.write(drainBuffer, 0, length);
+				unflushedChars += length;
+
+				final long now = System.currentTimeMillis();
+				if (done || unflushedChars >= flushThresholdChars || now - lastFlush >= flushIntervalMillis) {
+					if (unflushedChars > 0) {
+						out.flush();
+					}
+					unflushedChars = 0;
+					lastFlush = now;
+				}
+
+				if (done) {
+					return;
+				}
+			}
+
+		} catch (InterruptedException e) {
+			log.warn("Interrupted while writing records, pending records are lost");
+		} catch (IOException e) {
+			log.error("Exception while writing records: " + e, e);
+			synchronized (monitor) {
+				failure = e;
+				monitor.notifyAll();
+			}
+		}
+	}
+}
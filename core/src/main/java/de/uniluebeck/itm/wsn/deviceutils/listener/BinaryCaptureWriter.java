@@ -0,0 +1,140 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes the received messages unchanged into a {@link CaptureFormat binary capture}. Use {@link CaptureConverterCLI}
+ * to convert captures into one of the text formats.
+ */
+public class BinaryCaptureWriter extends WriterHandler {
+
+	private final CaptureFileWriter captureFileWriter;
+
+	private final int portId;
+
+	private final boolean ownsCaptureFileWriter;
+
+	/**
+	 * Maps ports to port IDs if the messages of several devices are written through this handler, {@code null}
+	 * otherwise.
+	 */
+	private final ImmutableMap<String, Integer> portIds;
+
+	/**
+	 * Creates a handler writing to its own capture, which is closed when the channel is disconnected.
+	 *
+	 * @param base
+	 * 		the base name of the segment files
+	 * @param port
+	 * 		the serial port the messages are received from
+	 * @param maxSegmentBytes
+	 * 		the size after which a new segment file is started
+	 */
+	public BinaryCaptureWriter(final File base, final String port, final long maxSegmentBytes) throws IOException {
+		this.captureFileWriter = new CaptureFileWriter(
+				base, ImmutableList.of(port), maxSegmentBytes, CaptureFileWriter.DEFAULT_FLUSH_INTERVAL_MILLIS
+		);
+		this.portId = 0;
+		this.ownsCaptureFileWriter = true;
+		this.portIds = null;
+	}
+
+	/**
+	 * Creates a handler writing the messages of several devices to its own capture, which is closed when the channel
+	 * is disconnected. Messages must be passed as {@link CapturedMessageEvent}s so that their port is known.
+	 *
+	 * @param base
+	 * 		the base name of the segment files
+	 * @param ports
+	 * 		the serial ports the messages are received from
+	 * @param maxSegmentBytes
+	 * 		the size after which a new segment file is started
+	 */
+	public BinaryCaptureWriter(final File base, final List<String> ports, final long maxSegmentBytes)
+			throws IOException {
+		this.captureFileWriter = new CaptureFileWriter(
+				base, ports, maxSegmentBytes, CaptureFileWriter.DEFAULT_FLUSH_INTERVAL_MILLIS
+		);
+		this.portId = -1;
+		this.ownsCaptureFileWriter = true;
+		final ImmutableMap.Builder<String, Integer> portIds = ImmutableMap.builder();
+		for (int i = 0; i < ports.size(); i++) {
+			portIds.put(ports.get(i), i);
+		}
+		this.portIds = portIds.build();
+	}
+
+	/**
+	 * Creates a handler writing to a capture shared with other handlers. The capture is not closed by this handler.
+	 *
+	 * @param captureFileWriter
+	 * 		the capture to write to
+	 * @param portId
+	 * 		the index of the port the messages are received from in the captures list of ports
+	 */
+	public BinaryCaptureWriter(final CaptureFileWriter captureFileWriter, final int portId) {
+		this.captureFileWriter = captureFileWriter;
+		this.portId = portId;
+		this.ownsCaptureFileWriter = false;
+		this.portIds = null;
+	}
+
+	@Override
+	public void channelConnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+		// nothing to do, the capture was opened in the constructor
+	}
+
+	@Override
+	public void channelDisconnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+		if (ownsCaptureFileWriter) {
+			captureFileWriter.close();
+		} else {
+			captureFileWriter.flush();
+		}
+	}
+
+	@Override
+	public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+		countMessage(e);
+		captureFileWriter.write(portIds == null ? portId : getPortId(e), getBuffer(e));
+	}
+
+	private int getPortId(final MessageEvent e) throws IOException {
+		final Integer id = e instanceof CapturedMessageEvent ? portIds.get(((CapturedMessageEvent) e).getPort()) : null;
+		if (id == null) {
+			throw new IOException("Received a message from a port that is not part of the capture: " + e);
+		}
+		return id;
+	}
+}
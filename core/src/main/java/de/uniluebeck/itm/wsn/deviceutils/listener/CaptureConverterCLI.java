@@ -0,0 +1,165 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.base.Joiner;
+import de.uniluebeck.itm.util.logging.LogLevel;
+import de.uniluebeck.itm.util.logging.Logging;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.assertParametersPresent;
+import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.printUsageAndExit;
+
+/**
+ * Converts a binary capture written by {@link DeviceListenerCLI} (format "binary") into one of its text formats.
+ */
+public class CaptureConverterCLI {
+
+	static {
+		Logging.setRootLogLevel(LogLevel.WARN);
+		Logging.setLoggingDefaults(LogLevel.WARN);
+	}
+
+	private final static Logger log = LoggerFactory.getLogger(CaptureConverterCLI.class);
+
+	public static void main(String[] args) throws Exception {
+
+		CommandLineParser parser = new PosixParser();
+		Options options = createCommandLineOptions();
+
+		File capture = null;
+		String format = "ascii";
+		OutputStream outStream = System.out;
+		long startMillis = Long.MIN_VALUE;
+		long endMillis = Long.MAX_VALUE;
+
+		try {
+
+			CommandLine line = parser.parse(options, args, true);
+
+			if (line.hasOption('h')) {
+				printUsageAndExit(CaptureConverterCLI.class, options, 0);
+			}
+
+			if (line.hasOption('v')) {
+				Logging.setRootLogLevel(LogLevel.DEBUG);
+				Logging.setLogLevel(LogLevel.DEBUG);
+			}
+
+			if (line.hasOption('l')) {
+				Logging.setRootLogLevel(LogLevel.toLevel(line.getOptionValue('l')));
+				Logging.setLogLevel(LogLevel.toLevel(line.getOptionValue('l')));
+			}
+
+			assertParametersPresent(line, 'i');
+
+			capture = new File(line.getOptionValue('i'));
+
+			if (line.hasOption('f')) {
+				format = line.getOptionValue('f');
+			}
+
+			if (line.hasOption('s')) {
+				startMillis = Long.parseLong(line.getOptionValue('s'));
+			}
+
+			if (line.hasOption('e')) {
+				endMillis = Long.parseLong(line.getOptionValue('e'));
+			}
+
+			if (line.hasOption('o')) {
+				log.info("Using outfile {}", line.getOptionValue('o'));
+				outStream = new FileOutputStream(line.getOptionValue('o'));
+			}
+
+		} catch (Exception e) {
+			log.error("Invalid command line: {}", e.getMessage());
+			printUsageAndExit(CaptureConverterCLI.class, options, 1);
+		}
+
+		final WriterHandler writerHandler = DeviceListenerCLI.createWriterHandler(format, outStream, null);
+
+		final CaptureReader reader = CaptureReader.open(capture);
+		try {
+
+			// the records of captures of several devices have to tell where they came from
+			writerHandler.setTagRecords(reader.getPorts().size() > 1);
+
+			final CaptureReader.Cursor cursor = startMillis == Long.MIN_VALUE ?
+					reader.cursor() :
+					reader.seek(TimeUnit.MILLISECONDS.toNanos(startMillis));
+
+			writerHandler.channelConnected(null, null);
+			try {
+				while (cursor.next() && cursor.getTimestampMillis() < endMillis) {
+					writerHandler.messageReceived(null, new CapturedMessageEvent(
+							cursor.getData(), cursor.getTimestampMillis(), cursor.getPort()
+					)
+					);
+				}
+			} finally {
+				writerHandler.channelDisconnected(null, null);
+			}
+
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static Options createCommandLineOptions() {
+
+		Options options = new Options();
+
+		options.addOption("i", "capture", true, "Base name of the segment files of the capture to convert");
+		options.getOption("i").setRequired(true);
+
+		options.addOption("f", "format", true,
+				"Optional: output format, options: csv, wiseml, hex, human, utf8, iso, ascii (default)"
+		);
+		options.addOption("o", "outfile", true, "Optional: redirect output to file");
+		options.addOption("s", "start", true,
+				"Optional: only convert records received at or after this time (milliseconds since the epoch)"
+		);
+		options.addOption("e", "end", true,
+				"Optional: only convert records received before this time (milliseconds since the epoch)"
+		);
+		options.addOption("v", "verbose", false, "Optional: verbose logging output (equal to -l DEBUG)");
+		options.addOption("l", "logging", true,
+				"Optional: set logging level (one of [" + Joiner.on(", ").join(Logging.LOG_LEVELS) + "])"
+		);
+		options.addOption("h", "help", false, "Optional: print help");
+
+		return options;
+	}
+}
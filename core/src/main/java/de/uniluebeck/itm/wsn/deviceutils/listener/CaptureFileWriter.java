@@ -0,0 +1,254 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Writes records in the {@link CaptureFormat binary capture format}. Records are collected in a buffer that is
+ * written out when it is full or at the latest after a given interval. A new segment file is started whenever the
+ * current one would exceed the maximum segment size. Instances are thread-safe, so one capture can be shared by the
+ * handlers of several ports.
+ */
+public class CaptureFileWriter implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(CaptureFileWriter.class);
+
+	public static final long DEFAULT_MAX_SEGMENT_BYTES = 256 * 1024 * 1024;
+
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File base;
+
+	private final ByteBuffer header;
+
+	private final long maxSegmentBytes;
+
+	private final ScheduledExecutorService flushScheduler;
+
+	/**
+	 * Added to {@link System#nanoTime()} to get nanoseconds since the epoch (with a monotonic clock).
+	 */
+	private final long epochNanosOffset;
+
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private FileChannel segment;
+
+	private int segmentIndex;
+
+	private long segmentBytes;
+
+	private boolean closed;
+
+	private IOException failure;
+
+	public CaptureFileWriter(final File base, final List<String> ports) throws IOException {
+		this(base, ports, DEFAULT_MAX_SEGMENT_BYTES, DEFAULT_FLUSH_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * @param base
+	 * 		the base name of the segment files
+	 * @param ports
+	 * 		the names of the ports records are captured from, records refer to them by index
+	 * @param maxSegmentBytes
+	 * 		the size after which a new segment file is started (must be less than 2 GiB so that segments can be
+	 * 		memory-mapped)
+	 * @param flushIntervalMillis
+	 * 		the maximum time records are buffered before being written to the segment file
+	 */
+	public CaptureFileWriter(final File base, final List<String> ports, final long maxSegmentBytes,
+							 final long flushIntervalMillis) throws IOException {
+
+		checkArgument(maxSegmentBytes > 0 && maxSegmentBytes < Integer.MAX_VALUE,
+				"The maximum segment size must be between 1 byte and 2 GiB"
+		);
+
+		this.base = base;
+		this.header = CaptureFormat.encodeHeader(ImmutableList.copyOf(ports));
+		this.maxSegmentBytes = maxSegmentBytes;
+		this.epochNanosOffset = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+		// continue after the segments of a previous capture with the same base name instead of overwriting them
+		this.segmentIndex = nextSegmentIndex(base);
+		openSegment();
+
+		this.flushScheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("CaptureFileWriter %d").setDaemon(true).build()
+		);
+		this.flushScheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (IOException e) {
+					log.error("Exception while writing capture: " + e, e);
+				}
+			}
+		}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS
+		);
+	}
+
+	/**
+	 * Appends a record containing the readable bytes of {@code data}, timestamped with the current time.
+	 *
+	 * @param portId
+	 * 		the index of the port the data was received from
+	 * @param data
+	 * 		the data (its indices are not changed)
+	 */
+	public synchronized void write(final int portId, final ChannelBuffer data) throws IOException {
+
+		assertOpen();
+
+		final long timestampNanos = epochNanosOffset + System.nanoTime();
+		final int length = data.readableBytes();
+		final int recordLength = CaptureFormat.RECORD_HEADER_LENGTH + length;
+
+		final boolean segmentHasRecords = segmentBytes + buffer.position() > header.limit();
+		if (segmentHasRecords && segmentBytes + buffer.position() + recordLength > maxSegmentBytes) {
+			writeBuffer();
+			segment.close();
+			segmentIndex++;
+			openSegment();
+		}
+
+		if (recordLength > buffer.remaining()) {
+			writeBuffer();
+			if (recordLength > buffer.capacity()) {
+				buffer = ByteBuffer.allocate(recordLength);
+			}
+		}
+
+		buffer.putLong(timestampNanos).putInt(portId).putInt(length);
+
+		final int limit = buffer.limit();
+		buffer.limit(buffer.position() + length);
+		data.getBytes(data.readerIndex(), buffer);
+		buffer.limit(limit);
+	}
+
+	/**
+	 * Writes all buffered records to the current segment file.
+	 */
+	public synchronized void flush() throws IOException {
+		if (!closed) {
+			assertOpen();
+			writeBuffer();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		flushScheduler.shutdown();
+
+		try {
+			if (failure == null) {
+				writeBuffer();
+			}
+		} finally {
+			segment.close();
+		}
+	}
+
+	/**
+	 * Returns the index after the highest one of the existing segments, so that no segment is overwritten even if
+	 * there are gaps in the numbering.
+	 */
+	private static int nextSegmentIndex(final File base) {
+		final int indexStart = base.getName().length() + 1;
+		int maxIndex = -1;
+		for (File file : CaptureFormat.listSegmentFiles(base)) {
+			final String name = file.getName();
+			maxIndex = Math.max(maxIndex, Integer.parseInt(
+					name.substring(indexStart, name.length() - CaptureFormat.SEGMENT_SUFFIX.length())
+			)
+			);
+		}
+		return maxIndex + 1;
+	}
+
+	private void openSegment() throws IOException {
+
+		final File file = CaptureFormat.getSegmentFile(base, segmentIndex);
+		log.debug("Starting capture segment {}", file);
+
+		segment = new FileOutputStream(file).getChannel();
+		segmentBytes = 0;
+
+		final ByteBuffer segmentHeader = header.duplicate();
+		while (segmentHeader.hasRemaining()) {
+			segmentBytes += segment.write(segmentHeader);
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				segmentBytes += segment.write(buffer);
+			}
+		} catch (IOException e) {
+			failure = e;
+			throw e;
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	private void assertOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Capture closed");
+		}
+		if (failure != null) {
+			throw new IOException("Writing capture failed", failure);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Constants and helpers for the binary capture format written by {@link CaptureFileWriter} and read by {@link
+ * CaptureReader}. A capture consists of segment files named {@code <base>.<index>.wsncap}, each of which starts with a
+ * header followed by records. All values are big-endian.
+ * </p>
+ * <p>
+ * Header: magic number (int, "WSNC"), format version (short), number of ports (short) and for each port the length
+ * (short) and the UTF-8 bytes of its name. Records refer to ports by their index in this list.
+ * </p>
+ * <p>
+ * Record: timestamp in nanoseconds since the epoch (long), port index (int), length (int) and the raw bytes.
+ * </p>
+ */
+public final class CaptureFormat {
+
+	public static final int MAGIC = 0x57534e43;
+
+	public static final short VERSION = 1;
+
+	public static final String SEGMENT_SUFFIX = ".wsncap";
+
+	public static final int RECORD_HEADER_LENGTH = 16;
+
+	private CaptureFormat() {
+	}
+
+	public static File getSegmentFile(final File base, final int index) {
+		return new File(base.getPath() + "." + String.format("%06d", index) + SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * Returns the segment files of the capture with the given base name, in the order they were written.
+	 */
+	public static List<File> listSegmentFiles(final File base) {
+
+		final File dir = base.getAbsoluteFile().getParentFile();
+		final String prefix = base.getName() + ".";
+
+		final File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.startsWith(prefix)
+						&& name.endsWith(SEGMENT_SUFFIX)
+						&& name.substring(prefix.length(), name.length() - SEGMENT_SUFFIX.length()).matches("\\d+");
+			}
+		}
+		);
+
+		if (files == null) {
+			return ImmutableList.of();
+		}
+
+		Arrays.sort(files);
+		return ImmutableList.copyOf(files);
+	}
+
+	static ByteBuffer encodeHeader(final List<String> ports) {
+
+		int length = 8;
+		final byte[][] encodedPorts = new byte[ports.size()][];
+		for (int i = 0; i < ports.size(); i++) {
+			encodedPorts[i] = ports.get(i).getBytes(Charsets.UTF_8);
+			length += 2 + encodedPorts[i].length;
+		}
+
+		final ByteBuffer header = ByteBuffer.allocate(length);
+		header.putInt(MAGIC).putShort(VERSION).putShort((short) ports.size());
+		for (byte[] encodedPort : encodedPorts) {
+			header.putShort((short) encodedPort.length).put(encodedPort);
+		}
+		header.flip();
+
+		return header;
+	}
+
+	/**
+	 * Reads the header at the current position of {@code buffer} and leaves the position at the first record.
+	 *
+	 * @return the port names
+	 */
+	static ImmutableList<String> decodeHeader(final ByteBuffer buffer) throws IOException {
+
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a capture file");
+		}
+
+		final short version = buffer.getShort();
+		if (version != VERSION) {
+			throw new IOException("Unsupported capture format version " + version);
+		}
+
+		final int portCount = buffer.getShort();
+		final ImmutableList.Builder<String> ports = ImmutableList.builder();
+		for (int i = 0; i < portCount; i++) {
+			final byte[] encodedPort = new byte[buffer.getShort()];
+			buffer.get(encodedPort);
+			ports.add(new String(encodedPort, Charsets.UTF_8));
+		}
+
+		return ports.build();
+	}
+}
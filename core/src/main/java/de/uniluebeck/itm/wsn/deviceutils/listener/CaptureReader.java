@@ -0,0 +1,282 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.collect.ImmutableList;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newLinkedHashSet;
+
+/**
+ * Reads captures written by {@link CaptureFileWriter}. All segment files are memory-mapped, so scanning a capture
+ * sequentially does not copy the data. Records can also be looked up by timestamp using binary search. A record that
+ * was only partially written (e.g., because the listener was killed) ends its segment.
+ */
+public class CaptureReader implements Closeable {
+
+	/**
+	 * A position in a capture. {@link #next()} has to be called before accessing the first record.
+	 */
+	public class Cursor {
+
+		private int segmentIndex;
+
+		private int position = -1;
+
+		private int nextPosition;
+
+		private Cursor(final int segmentIndex, final int nextPosition) {
+			this.segmentIndex = segmentIndex;
+			this.nextPosition = nextPosition;
+		}
+
+		/**
+		 * Moves to the next record.
+		 *
+		 * @return {@code false} if there are no more records
+		 */
+		public boolean next() {
+			while (segmentIndex < segments.size()) {
+				final Segment segment = segments.get(segmentIndex);
+				if (segment.hasRecordAt(nextPosition)) {
+					position = nextPosition;
+					nextPosition = position + CaptureFormat.RECORD_HEADER_LENGTH + segment.getLength(position);
+					return true;
+				}
+				segmentIndex++;
+				if (segmentIndex < segments.size()) {
+					nextPosition = segments.get(segmentIndex).firstRecordPosition;
+				}
+			}
+			return false;
+		}
+
+		public long getTimestampNanos() {
+			return currentSegment().getTimestampNanos(position);
+		}
+
+		public long getTimestampMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(getTimestampNanos());
+		}
+
+		public int getPortId() {
+			return currentSegment().buffer.getInt(position + 8);
+		}
+
+		public String getPort() {
+			return currentSegment().ports.get(getPortId());
+		}
+
+		public int getLength() {
+			return currentSegment().getLength(position);
+		}
+
+		/**
+		 * Returns the data of the current record without copying it.
+		 */
+		public ChannelBuffer getData() {
+			final ByteBuffer data = currentSegment().buffer.duplicate();
+			data.position(position + CaptureFormat.RECORD_HEADER_LENGTH);
+			data.limit(position + CaptureFormat.RECORD_HEADER_LENGTH + getLength());
+			return ChannelBuffers.wrappedBuffer(data.slice());
+		}
+
+		private Segment currentSegment() {
+			if (position < 0 || segmentIndex >= segments.size()) {
+				throw new IllegalStateException("No current record");
+			}
+			return segments.get(segmentIndex);
+		}
+	}
+
+	private static class Segment {
+
+		private final MappedByteBuffer buffer;
+
+		private final ImmutableList<String> ports;
+
+		private final int firstRecordPosition;
+
+		private int[] recordPositions;
+
+		private Segment(final MappedByteBuffer buffer) throws IOException {
+			this.buffer = buffer;
+			this.ports = CaptureFormat.decodeHeader(buffer);
+			this.firstRecordPosition = buffer.position();
+		}
+
+		private boolean hasRecordAt(final int position) {
+			return position + CaptureFormat.RECORD_HEADER_LENGTH <= buffer.limit()
+					&& getLength(position) >= 0
+					&& position + CaptureFormat.RECORD_HEADER_LENGTH + getLength(position) <= buffer.limit();
+		}
+
+		private long getTimestampNanos(final int position) {
+			return buffer.getLong(position);
+		}
+
+		private int getLength(final int position) {
+			return buffer.getInt(position + 12);
+		}
+
+		/**
+		 * Returns the positions of all records, determined by skipping from record header to record header once.
+		 */
+		private synchronized int[] getRecordPositions() {
+			if (recordPositions == null) {
+				int[] positions = new int[1024];
+				int count = 0;
+				for (int position = firstRecordPosition; hasRecordAt(position);
+					 position += CaptureFormat.RECORD_HEADER_LENGTH + getLength(position)) {
+					if (count == positions.length) {
+						final int[] grown = new int[positions.length * 2];
+						System.arraycopy(positions, 0, grown, 0, count);
+						positions = grown;
+					}
+					positions[count++] = position;
+				}
+				recordPositions = new int[count];
+				System.arraycopy(positions, 0, recordPositions, 0, count);
+			}
+			return recordPositions;
+		}
+	}
+
+	private final List<Segment> segments;
+
+	private CaptureReader(final List<Segment> segments) {
+		this.segments = segments;
+	}
+
+	/**
+	 * Opens all segments of the capture with the given base name.
+	 */
+	public static CaptureReader open(final File base) throws IOException {
+
+		final List<File> files = CaptureFormat.listSegmentFiles(base);
+		if (files.isEmpty()) {
+			throw new IOException("No capture segments found for " + base);
+		}
+
+		final List<Segment> segments = newArrayList();
+		for (File file : files) {
+			final FileInputStream in = new FileInputStream(file);
+			try {
+				final FileChannel channel = in.getChannel();
+				segments.add(new Segment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+			} catch (IOException e) {
+				throw new IOException("Could not read capture segment " + file + ": " + e.getMessage(), e);
+			} finally {
+				in.close();
+			}
+		}
+
+		return new CaptureReader(segments);
+	}
+
+	/**
+	 * Returns the names of the ports of all segments, in the order they first appear in the segment headers. Segments
+	 * of successive captures with the same base name may have been written for different ports.
+	 */
+	public ImmutableList<String> getPorts() {
+		final Set<String> ports = newLinkedHashSet();
+		for (Segment segment : segments) {
+			ports.addAll(segment.ports);
+		}
+		return ImmutableList.copyOf(ports);
+	}
+
+	/**
+	 * Returns a cursor positioned before the first record.
+	 */
+	public Cursor cursor() {
+		return new Cursor(0, segments.get(0).firstRecordPosition);
+	}
+
+	/**
+	 * Returns a cursor positioned before the first record with a timestamp at or after {@code timestampNanos}.
+	 * Segments and records within segments are searched using binary search, relying on records being written in
+	 * timestamp order.
+	 */
+	public Cursor seek(final long timestampNanos) {
+
+		// the last segment starting at or before the timestamp contains the record if any segment does
+		int low = 0;
+		int high = segments.size() - 1;
+		while (low < high) {
+			final int middle = (low + high + 1) >>> 1;
+			final Segment segment = segments.get(middle);
+			if (segment.hasRecordAt(segment.firstRecordPosition)
+					&& segment.getTimestampNanos(segment.firstRecordPosition) <= timestampNanos) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		for (int segmentIndex = low; segmentIndex < segments.size(); segmentIndex++) {
+
+			final Segment segment = segments.get(segmentIndex);
+			final int[] positions = segment.getRecordPositions();
+
+			int first = 0;
+			int last = positions.length;
+			while (first < last) {
+				final int middle = (first + last) >>> 1;
+				if (segment.getTimestampNanos(positions[middle]) < timestampNanos) {
+					first = middle + 1;
+				} else {
+					last = middle;
+				}
+			}
+
+			if (first < positions.length) {
+				return new Cursor(segmentIndex, positions[first]);
+			}
+		}
+
+		return new Cursor(segments.size(), 0);
+	}
+
+	/**
+	 * Releases the references to the mapped segments. The mappings themselves are released by the garbage collector.
+	 */
+	@Override
+	public void close() {
+		segments.clear();
+	}
+}
@@ -0,0 +1,99 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.MessageEvent;
+
+import javax.annotation.Nullable;
+import java.net.SocketAddress;
+
+/**
+ * A message together with the device it was received from and the time it was received. Passed to the {@link
+ * WriterHandler}s when converting a capture offline (the handlers use its timestamp instead of the current time) and by
+ * the {@link MultiDeviceListener}, which writes the messages of many devices through one handler.
+ */
+public class CapturedMessageEvent implements MessageEvent {
+
+	private final ChannelBuffer message;
+
+	private final long timestampMillis;
+
+	private final String port;
+
+	private final String macAddress;
+
+	public CapturedMessageEvent(final ChannelBuffer message, final long timestampMillis, final String port) {
+		this(message, timestampMillis, port, null);
+	}
+
+	public CapturedMessageEvent(final ChannelBuffer message, final long timestampMillis, final String port,
+								@Nullable final String macAddress) {
+		this.message = message;
+		this.timestampMillis = timestampMillis;
+		this.port = port;
+		this.macAddress = macAddress;
+	}
+
+	@Override
+	public Object getMessage() {
+		return message;
+	}
+
+	public long getTimestampMillis() {
+		return timestampMillis;
+	}
+
+	/**
+	 * Returns the serial port the message was received from.
+	 */
+	public String getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the MAC address of the device the message was received from as hex string, if known.
+	 */
+	@Nullable
+	public String getMacAddress() {
+		return macAddress;
+	}
+
+	@Override
+	public SocketAddress getRemoteAddress() {
+		return null;
+	}
+
+	@Override
+	public Channel getChannel() {
+		return null;
+	}
+
+	@Override
+	public ChannelFuture getFuture() {
+		return null;
+	}
+}
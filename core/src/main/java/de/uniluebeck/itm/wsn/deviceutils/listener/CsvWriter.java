@@ -24,11 +24,9 @@
 package de.uniluebeck.itm.wsn.deviceutils.listener;
 
 import com.google.common.base.Joiner;
-import de.uniluebeck.itm.util.StringUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.MessageEvent;
-import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -41,15 +39,19 @@ public class CsvWriter extends WriterHandler {
 
 	private final Joiner joiner = Joiner.on(";");
 
+	private final StringBuilder formattedTime = new StringBuilder();
+
+	private long formattedTimeSecond = -1;
+
 	public CsvWriter(OutputStream out) throws IOException {
 		super(out);
 	}
 
 	@Override
-	public void channelConnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
-
-		super.channelConnected(ctx, e);
-
+	protected void writeHeader() throws IOException {
+		if (isTagRecords()) {
+			this.output.write(joiner.join("\"Port\"", "\"MAC\"", ""));
+		}
 		this.output.write(
 				joiner.join(
 						"\"Time\"",
@@ -66,17 +68,35 @@ public class CsvWriter extends WriterHandler {
 
 		super.messageReceived(ctx, e);
 
-		final byte[] packet = getBufferBytes(e);
-		this.output.write(
-				joiner.join(
-						"\"" + timeFormatter.print(new DateTime()) + "\"",
-						"\"" + StringUtils.replaceNonPrintableAsciiCharacters(new String(packet)) + "\"",
-						"\"" + StringUtils.toHexString(packet) + "\"",
-						Long.toString(System.currentTimeMillis() / 1000)
-				)
-		);
-		output.newLine();
-		output.flush();
+		final ChannelBuffer buffer = getBuffer(e);
+		final long now = getTimestampMillis(e);
+
+		record.append('"').append(formatTime(now)).append("\";\"");
+		record.appendPrintableAscii(buffer).append("\";\"");
+		record.appendHex(buffer).append("\";");
+		record.append(now / 1000);
+
+		writeRecord();
+	}
+
+	@Override
+	protected void appendTag(final CapturedMessageEvent e) {
+		final String macAddress = e.getMacAddress();
+		record.append('"').append(e.getPort()).append("\";\"").append(macAddress == null ? "" : macAddress);
+		record.append("\";");
+	}
+
+	/**
+	 * The time format has a resolution of one second, so it is only formatted once per second.
+	 */
+	private StringBuilder formatTime(final long now) throws IOException {
+		final long second = now / 1000;
+		if (second != formattedTimeSecond) {
+			formattedTime.setLength(0);
+			timeFormatter.printTo(formattedTime, now);
+			formattedTimeSecond = second;
+		}
+		return formattedTime;
 	}
 
 
@@ -25,13 +25,28 @@ package de.uniluebeck.itm.wsn.deviceutils.listener;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Closeables;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
+import com.google.inject.Injector;
 import de.uniluebeck.itm.nettyprotocols.*;
 import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.util.Tuple;
 import de.uniluebeck.itm.util.logging.LogLevel;
 import de.uniluebeck.itm.util.logging.Logging;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnector;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
+import de.uniluebeck.itm.wsn.deviceutils.daemon.DaemonClient;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricsHttpServer;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceEvent;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
 import de.uniluebeck.itm.wsn.drivers.core.Device;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactoryModule;
@@ -40,6 +55,7 @@ import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.PosixParser;
 import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.channel.iostream.IOStreamAddress;
 import org.jboss.netty.channel.iostream.IOStreamChannelFactory;
@@ -47,18 +63,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMap;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.assertParametersPresent;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.printUsageAndExit;
+import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.resolvePorts;
 import static org.jboss.netty.channel.Channels.pipeline;
 
 public class DeviceListenerCLI {
@@ -70,9 +91,27 @@ public class DeviceListenerCLI {
 
 	private final static Logger log = LoggerFactory.getLogger(DeviceListenerCLI.class);
 
-	private static final DeviceFactory deviceFactory = Guice
-			.createInjector(new DeviceFactoryModule())
-			.getInstance(DeviceFactory.class);
+	private static final String BINARY_FORMAT = "binary";
+
+	private static final int OBSERVER_POLLING_INTERVAL_SECONDS = 1;
+
+	private static final Supplier<DeviceFactory> deviceFactory = Suppliers.memoize(
+			new Supplier<DeviceFactory>() {
+				@Override
+				public DeviceFactory get() {
+					return Guice.createInjector(new DeviceFactoryModule()).getInstance(DeviceFactory.class);
+				}
+			}
+	);
+
+	private static final Supplier<HandlerFactoryMap> handlerFactories = Suppliers.memoize(
+			new Supplier<HandlerFactoryMap>() {
+				@Override
+				public HandlerFactoryMap get() {
+					return Guice.createInjector(new NettyProtocolsModule()).getInstance(HandlerFactoryMap.class);
+				}
+			}
+	);
 
 	public static void main(String[] args) throws InterruptedException, IOException {
 
@@ -81,11 +120,15 @@ public class DeviceListenerCLI {
 
 		String deviceType = null;
 		String port = null;
+		List<String> ports = null;
+		boolean allDevices = false;
+		boolean readMacAddresses = false;
 		Map<String, String> configuration = newHashMap();
 
 		OutputStream outStream = System.out;
 		WriterHandler writerHandler = null;
 		@Nonnull List<Tuple<String, ChannelHandler>> handlers = newArrayList();
+		Iterable<String> handlerNames = ImmutableList.of();
 
 		try {
 
@@ -115,71 +158,71 @@ public class DeviceListenerCLI {
 				}
 			}
 
-			assertParametersPresent(line, 't', 'p');
+			allDevices = line.hasOption('a');
+			readMacAddresses = line.hasOption('m');
+
+			if (allDevices) {
+				ports = ImmutableList.of();
+			} else {
+				assertParametersPresent(line, 't', 'p');
+				ports = resolvePorts(line.getOptionValue('p'));
+				if (ports.isEmpty()) {
+					throw new Exception("No serial port matches " + line.getOptionValue('p'));
+				}
+				port = ports.get(0);
+			}
 
 			deviceType = line.getOptionValue('t');
-			port = line.getOptionValue('p');
 
-			if (line.hasOption('o')) {
-				String filename = line.getOptionValue('o');
-				log.info("Using outfile {}", filename);
-				outStream = new FileOutputStream(filename);
+			final String outFile = line.getOptionValue('o');
+			final String format = line.hasOption('f') ? line.getOptionValue('f') : "ascii";
+
+			final boolean rolling = line.hasOption('s') || line.hasOption('r') || line.hasOption('z');
+
+			if (outFile != null && !BINARY_FORMAT.equals(format) && !rolling) {
+				log.info("Using outfile {}", outFile);
+				outStream = new FileOutputStream(outFile);
 			}
 
 			if (line.hasOption('e')) {
 
 				final String handlerNamesString = line.getOptionValue('e');
 
-				final Iterable<String> handlerNames = Splitter.on(",")
+				handlerNames = Splitter.on(",")
 						.omitEmptyStrings()
 						.trimResults()
 						.split(handlerNamesString);
 
-				final HandlerFactoryMap handlerFactories = Guice
-						.createInjector(new NettyProtocolsModule())
-						.getInstance(HandlerFactoryMap.class);
-
-				for (String handlerName : handlerNames) {
-
-					final NamedChannelHandlerList channelHandlers = handlerFactories
-							.get(handlerName)
-							.create(new ChannelHandlerConfig(handlerName));
+				handlers = createHandlers(handlerNames);
+			}
 
-					for (NamedChannelHandler channelHandler : channelHandlers) {
-						handlers.add(
-								new Tuple<String, ChannelHandler>(
-										channelHandler.getInstanceName(),
-										channelHandler.getChannelHandler()
-								)
-						);
+			if (BINARY_FORMAT.equals(format)) {
+				if (outFile == null) {
+					throw new Exception("The binary format requires an outfile");
+				}
+				if (allDevices) {
+					throw new Exception("The binary format requires the ports to be known in advance");
+				}
+				final long maxSegmentBytes = line.hasOption('s') ?
+						Long.parseLong(line.getOptionValue('s')) * 1024 * 1024 :
+						CaptureFileWriter.DEFAULT_MAX_SEGMENT_BYTES;
+				writerHandler = ports.size() == 1 ?
+						new BinaryCaptureWriter(new File(outFile), port, maxSegmentBytes) :
+						new BinaryCaptureWriter(new File(outFile), ports, maxSegmentBytes);
+			} else {
+				writerHandler = createWriterHandler(format, outStream, port == null ? null : "node at " + port);
+				if (rolling) {
+					if (outFile == null) {
+						throw new Exception("Rolling output requires an outfile");
 					}
+					writerHandler.setRollingFileOutput(createRollingFileOutput(line, outFile));
 				}
 			}
 
-			if (line.hasOption('f')) {
-
-				String format = line.getOptionValue('f');
-
-				if ("csv".equals(format)) {
-					writerHandler = new CsvWriter(outStream);
-				} else if ("wiseml".equals(format)) {
-					writerHandler = new WiseMLWriterHandler(outStream, "node at " + line.getOptionValue('p'), true);
-				} else if ("hex".equals(format)) {
-					writerHandler = new HexWriter(outStream);
-				} else if ("human".equals(format)) {
-					writerHandler = new HumanReadableWriter(outStream);
-				} else if ("utf8".equals(format) || "UTF-8".equals(format)) {
-					writerHandler = new StringWriter(outStream, Charset.forName("UTF-8"));
-				} else if ("iso".equals(format) || "ISO-8859-1".equals(format)) {
-					writerHandler = new StringWriter(outStream, Charset.forName("ISO-8859-1"));
-				} else {
-					throw new Exception("Unknown format " + format);
-				}
+			log.info("Using format {}", format);
 
-				log.info("Using format {}", format);
-
-			} else {
-				writerHandler = new StringWriter(outStream, Charset.forName("US-ASCII"));
+			if (line.hasOption('d')) {
+				writerHandler.setOverflowPolicy(AsyncWriter.OverflowPolicy.fromString(line.getOptionValue('d')));
 			}
 
 		} catch (Exception e) {
@@ -191,17 +234,29 @@ public class DeviceListenerCLI {
 			throw new RuntimeException("This should not happen!");
 		}
 
-		final ExecutorService executorService = Executors.newCachedThreadPool(
-				new ThreadFactoryBuilder().setNameFormat("DeviceListener-Thread %d").build()
-		);
+		// the daemon uses its own driver configuration and only passes on raw data, so channel handlers are not supported
+		if (!allDevices && ports.size() == 1 && handlers.isEmpty() && configuration.isEmpty()) {
+			final DaemonClient daemonClient = DaemonClient.connectIfRunning();
+			if (daemonClient != null) {
+				listenThroughDaemon(daemonClient, port, deviceType, writerHandler);
+				return;
+			}
+		}
 
-		final Device device = deviceFactory.create(executorService, deviceType, configuration);
+		MetricsHttpServer.startIfConfigured();
+		final ExecutorService executorService = DeviceUtilsModule.createExecutorService("DeviceListener-Thread");
 
-		device.connect(port);
-		if (!device.isConnected()) {
-			throw new RuntimeException("Connection to device at port \"" + args[1] + "\" could not be established!");
+		if (allDevices || ports.size() > 1) {
+			listenToDevices(executorService, writerHandler, handlerNames, configuration, deviceType,
+					allDevices ? null : ports, readMacAddresses
+			);
+			return;
 		}
 
+		final Device device = deviceFactory.get().create(executorService, deviceType, configuration);
+
+		new DeviceConnector().connect(device, port);
+
 		final InputStream inputStream = device.getInputStream();
 		final OutputStream outputStream = device.getOutputStream();
 
@@ -263,16 +318,237 @@ public class DeviceListenerCLI {
 
 	}
 
+	/**
+	 * Writes the data the daemon receives from the device through the writer handler, like {@link CaptureConverterCLI}
+	 * does with the messages of a capture. Sending data to the device is not supported.
+	 */
+	private static void listenThroughDaemon(final DaemonClient daemonClient, final String port,
+											final String deviceType, final WriterHandler writerHandler) {
+
+		Runtime.getRuntime().addShutdownHook(new Thread(DeviceListenerCLI.class.getName() + "-ShutdownThread") {
+			@Override
+			public void run() {
+				try {
+					Closeables.close(daemonClient, true);
+					synchronized (writerHandler) {
+						writerHandler.channelDisconnected(null, null);
+					}
+				} catch (Exception e) {
+					log.error("Exception while closing output: {}", e, e);
+				}
+			}
+		}
+		);
+
+		try {
+
+			writerHandler.channelConnected(null, null);
+
+			daemonClient.listen(port, deviceType, new DaemonClient.DataHandler() {
+				@Override
+				public void dataReceived(final byte[] data) throws IOException {
+					synchronized (writerHandler) {
+						try {
+							writerHandler.messageReceived(null, new CapturedMessageEvent(
+									ChannelBuffers.wrappedBuffer(data), System.currentTimeMillis(), port
+							)
+							);
+						} catch (IOException e) {
+							throw e;
+						} catch (Exception e) {
+							throw new IOException(e);
+						}
+					}
+				}
+			}
+			);
+
+		} catch (Exception e) {
+			log.error("Listening through the daemon failed: {}", e.getMessage());
+			System.exit(1);
+		}
+
+		System.exit(0);
+	}
+
+	private static RollingFileOutput createRollingFileOutput(final CommandLine line, final String outFile) {
+
+		final long maxSegmentChars = line.hasOption('s') ? Long.parseLong(line.getOptionValue('s')) * 1024 * 1024 : 0;
+		final long segmentIntervalMillis = line.hasOption('r') ? Long.parseLong(line.getOptionValue('r')) * 1000 : 0;
+		final RollingFileOutput.Compression compression = line.hasOption('z') ?
+				RollingFileOutput.Compression.fromString(line.getOptionValue('z')) :
+				RollingFileOutput.Compression.NONE;
+
+		log.info("Writing segments of {} (maximum size: {} MiB, interval: {} s, compression: {})",
+				outFile, maxSegmentChars / 1024 / 1024, segmentIntervalMillis / 1000, compression
+		);
+
+		return new RollingFileOutput(new File(outFile), maxSegmentChars, segmentIntervalMillis, compression);
+	}
+
+	/**
+	 * Listens to several devices in this JVM, sharing the executor and the writer handler. If {@code ports} is {@code
+	 * null} all devices (of the given type, if not {@code null}) are listened to and devices are added and removed as
+	 * they are attached and detached.
+	 */
+	private static void listenToDevices(final ExecutorService executorService,
+										final WriterHandler writerHandler,
+										final Iterable<String> handlerNames,
+										final Map<String, String> configuration,
+										@Nullable final String deviceType,
+										@Nullable final List<String> ports,
+										final boolean readMacAddresses) throws InterruptedException {
+
+		final Injector injector = Guice.createInjector(new DeviceUtilsModule(executorService, null));
+		final DeviceConnectionPool connectionPool = injector.getInstance(DeviceConnectionPool.class);
+
+		final MultiDeviceListener listener = new MultiDeviceListener(
+				connectionPool,
+				executorService,
+				writerHandler,
+				new Callable<List<Tuple<String, ChannelHandler>>>() {
+					@Override
+					public List<Tuple<String, ChannelHandler>> call() throws Exception {
+						return createHandlers(handlerNames);
+					}
+				},
+				configuration,
+				deviceType,
+				readMacAddresses ? injector.getInstance(DeviceMacReader.class) : null
+		);
+
+		try {
+			listener.start();
+		} catch (Exception e) {
+			log.error("Could not open output: " + e, e);
+			System.exit(1);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(DeviceListenerCLI.class.getName() + "-ShutdownThread") {
+			@Override
+			public void run() {
+				try {
+					listener.close();
+				} catch (Exception e) {
+					log.error("Exception while closing connections to devices: {}", e, e);
+				} finally {
+					connectionPool.close();
+				}
+			}
+		}
+		);
+
+		if (ports != null) {
+			for (String port : ports) {
+				listener.addDevice(new DeviceInfo(deviceType, port, null, null));
+			}
+		} else {
+
+			// the observer is polled without reading MAC addresses (which would need to open the devices serial port
+			// while it is being listened to), the listener reads them itself before connecting if requested
+			final DeviceObserver deviceObserver = injector.getInstance(DeviceObserver.class);
+			final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setNameFormat("DeviceListener-Observer %d").build()
+			);
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+
+				private ImmutableMap<String, DeviceInfo> lastState = null;
+
+				@Override
+				public void run() {
+					try {
+						deviceObserver.updateState(false);
+						for (DeviceEvent event : deviceObserver.getEvents(lastState)) {
+							listener.deviceEvent(event);
+						}
+						lastState = deviceObserver.getCurrentState();
+					} catch (Exception e) {
+						log.error("Exception while observing devices: " + e, e);
+					}
+				}
+			}, 0, OBSERVER_POLLING_INTERVAL_SECONDS, TimeUnit.SECONDS
+			);
+		}
+
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * Creates new instances of the named channel handlers.
+	 */
+	private static List<Tuple<String, ChannelHandler>> createHandlers(final Iterable<String> handlerNames)
+			throws Exception {
+
+		final List<Tuple<String, ChannelHandler>> handlers = newArrayList();
+
+		for (String handlerName : handlerNames) {
+
+			final NamedChannelHandlerList channelHandlers = handlerFactories.get()
+					.get(handlerName)
+					.create(new ChannelHandlerConfig(handlerName));
+
+			for (NamedChannelHandler channelHandler : channelHandlers) {
+				handlers.add(
+						new Tuple<String, ChannelHandler>(
+								channelHandler.getInstanceName(),
+								channelHandler.getChannelHandler()
+						)
+				);
+			}
+		}
+
+		return handlers;
+	}
+
+	/**
+	 * Creates the handler writing messages to {@code out} in the given text format.
+	 *
+	 * @throws Exception
+	 * 		if the format is unknown
+	 */
+	static WriterHandler createWriterHandler(final String format, final OutputStream out, final String nodeUrn)
+			throws Exception {
+
+		if ("csv".equals(format)) {
+			return new CsvWriter(out);
+		} else if ("wiseml".equals(format)) {
+			return new WiseMLWriterHandler(out, nodeUrn, true);
+		} else if ("hex".equals(format)) {
+			return new HexWriter(out);
+		} else if ("human".equals(format)) {
+			return new HumanReadableWriter(out);
+		} else if ("utf8".equals(format) || "UTF-8".equals(format)) {
+			return new StringWriter(out, Charset.forName("UTF-8"));
+		} else if ("iso".equals(format) || "ISO-8859-1".equals(format)) {
+			return new StringWriter(out, Charset.forName("ISO-8859-1"));
+		} else if ("ascii".equals(format) || "US-ASCII".equals(format)) {
+			return new StringWriter(out, Charset.forName("US-ASCII"));
+		}
+
+		throw new Exception("Unknown format " + format);
+	}
+
 	private static Options createCommandLineOptions() {
 
 		Options options = new Options();
 
 		// add all available options
-		options.addOption("p", "port", true, "Serial port to which the device is attached");
-		options.getOption("p").setRequired(true);
+		options.addOption("p", "port", true,
+				"Serial port to which the device is attached, or a comma-separated list of ports and/or glob patterns "
+						+ "(e.g., /dev/ttyUSB*) to listen to several devices"
+		);
 
-		options.addOption("t", "type", true, "Type of the device");
-		options.getOption("t").setRequired(true);
+		options.addOption("t", "type", true,
+				"Type of the device (optional with -a: only listen to devices of this type)"
+		);
+
+		options.addOption("a", "all", false,
+				"Optional: listen to all attached devices (instead of -p), including devices attached later on"
+		);
+		options.addOption("m", "readmac", false,
+				"Optional: when listening to several devices, read the MAC address of each device before listening to "
+						+ "it (resets the device) so that it can be written with every message"
+		);
 
 		options.addOption("c", "configuration", true,
 				"Optional: file name of a configuration file containing key value pairs to configure the device"
@@ -281,8 +557,27 @@ public class DeviceListenerCLI {
 		options.addOption("e", "channelpipeline", true,
 				"Optional: comma-separated list of channel pipeline handler names"
 		);
-		options.addOption("f", "format", true, "Optional: output format, options: csv, wiseml");
-		options.addOption("o", "outfile", true, "Optional: redirect output to file");
+		options.addOption("f", "format", true,
+				"Optional: output format, options: csv, wiseml, hex, human, utf8, iso, ascii (default), binary"
+		);
+		options.addOption("o", "outfile", true,
+				"Optional: redirect output to file (for the binary format and rolling output: the base name of the "
+						+ "segment files)"
+		);
+		options.addOption("s", "segmentsize", true,
+				"Optional: start a new segment file whenever the current one reaches this size in MiB (binary format "
+						+ "default: " + CaptureFileWriter.DEFAULT_MAX_SEGMENT_BYTES / 1024 / 1024 + ")"
+		);
+		options.addOption("r", "rollinterval", true,
+				"Optional: start a new segment file every n seconds (not for the binary format)"
+		);
+		options.addOption("z", "compression", true,
+				"Optional: compress finished segment files, options: none (default), gzip (not for the binary format)"
+		);
+		options.addOption("d", "overflowpolicy", true,
+				"Optional: what to do with messages if the output can't keep up, options: block (default), drop-oldest, "
+						+ "count-drops"
+		);
 		options.addOption("v", "verbose", false, "Optional: verbose logging output (equal to -l DEBUG)");
 		options.addOption("l", "logging", true,
 				"Optional: set logging level (one of [" + Joiner.on(", ").join(Logging.LOG_LEVELS) + "])"
@@ -23,7 +23,6 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.listener;
 
-import de.uniluebeck.itm.util.StringUtils;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
 import org.slf4j.LoggerFactory;
@@ -41,9 +40,8 @@ public class HumanReadableWriter extends WriterHandler {
 
 		super.messageReceived(ctx, e);
 
-		output.write(StringUtils.replaceNonPrintableAsciiCharacters(getBufferBytes(e)));
-		output.newLine();
-		output.flush();
+		record.appendPrintableAscii(getBuffer(e));
+		writeRecord();
 	}
 
 }
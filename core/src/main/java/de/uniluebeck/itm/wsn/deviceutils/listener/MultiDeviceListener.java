@@ -0,0 +1,351 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import de.uniluebeck.itm.util.Tuple;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceEvent;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverListener;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.iostream.IOStreamAddress;
+import org.jboss.netty.channel.iostream.IOStreamChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static org.jboss.netty.channel.Channels.pipeline;
+
+/**
+ * <p>
+ * Listens to many devices at once, sharing one executor and one {@link WriterHandler} between them. Every device gets
+ * its own channel pipeline (built from a fresh set of handlers) whose last handler passes the messages on to the
+ * shared writer as {@link CapturedMessageEvent}s, so that every record is tagged with the port and MAC address of the
+ * device that sent it.
+ * </p>
+ * <p>
+ * Devices can be added and removed at any time, either explicitly or by registering the listener with a {@link
+ * de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver}, which adds attached and removes detached devices.
+ * </p>
+ */
+public class MultiDeviceListener implements DeviceObserverListener, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(MultiDeviceListener.class);
+
+	private final DeviceConnectionPool connectionPool;
+
+	private final ExecutorService executorService;
+
+	private final ChannelFactory channelFactory;
+
+	private final WriterHandler writerHandler;
+
+	private final Callable<List<Tuple<String, ChannelHandler>>> handlers;
+
+	private final Map<String, String> configuration;
+
+	private final String deviceType;
+
+	private final DeviceMacReader macReader;
+
+	private final Map<String, DeviceConnection> connections = newHashMap();
+
+	private boolean closed;
+
+	/**
+	 * @param connectionPool
+	 * 		the pool to borrow the connections to the devices from, so that the connections opened for reading MAC
+	 * 		addresses are reused for listening
+	 * @param executorService
+	 * 		the executor shared by all device drivers and channels
+	 * @param writerHandler
+	 * 		the handler writing the messages of all devices
+	 * @param handlers
+	 * 		creates the channel handlers to put in front of the writer for every device
+	 * @param configuration
+	 * 		the configuration of the device drivers
+	 * @param deviceType
+	 * 		the type of devices to listen to if devices are added by a device observer or {@code null} to listen to
+	 * 		devices of all types
+	 * @param macReader
+	 * 		if not {@code null}, the MAC address of devices whose MAC address is unknown is read before listening
+	 */
+	public MultiDeviceListener(final DeviceConnectionPool connectionPool,
+							   final ExecutorService executorService,
+							   final WriterHandler writerHandler,
+							   final Callable<List<Tuple<String, ChannelHandler>>> handlers,
+							   final Map<String, String> configuration,
+							   @Nullable final String deviceType,
+							   @Nullable final DeviceMacReader macReader) {
+		this.connectionPool = connectionPool;
+		this.executorService = executorService;
+		this.channelFactory = new IOStreamChannelFactory(executorService);
+		this.writerHandler = writerHandler;
+		this.handlers = handlers;
+		this.configuration = configuration;
+		this.deviceType = deviceType;
+		this.macReader = macReader;
+	}
+
+	/**
+	 * Opens the output. Must be called before devices are added.
+	 */
+	public void start() throws Exception {
+		writerHandler.setTagRecords(true);
+		synchronized (writerHandler) {
+			writerHandler.channelConnected(null, null);
+		}
+	}
+
+	/**
+	 * Connects to the device in the background and starts listening to it. Does nothing if the device is already
+	 * being listened to.
+	 */
+	public synchronized void addDevice(final DeviceInfo deviceInfo) {
+
+		if (closed || connections.containsKey(deviceInfo.getPort())) {
+			return;
+		}
+
+		final DeviceConnection connection = new DeviceConnection(deviceInfo);
+		connections.put(deviceInfo.getPort(), connection);
+		executorService.execute(connection);
+	}
+
+	/**
+	 * Stops listening to the device at the given port and disconnects from it.
+	 */
+	public void removeDevice(final String port) {
+
+		final DeviceConnection connection;
+		synchronized (this) {
+			connection = connections.remove(port);
+		}
+
+		if (connection != null) {
+			connection.close();
+		}
+	}
+
+	@Override
+	public void deviceEvent(final DeviceEvent event) {
+
+		final DeviceInfo deviceInfo = event.getDeviceInfo();
+
+		switch (event.getType()) {
+			case ATTACHED:
+				if (deviceType == null || deviceType.equalsIgnoreCase(deviceInfo.getType())) {
+					addDevice(deviceInfo);
+				}
+				break;
+			case REMOVED:
+				removeDevice(deviceInfo.getPort());
+				break;
+			case MAC_RESOLVED:
+				final DeviceConnection connection;
+				synchronized (this) {
+					connection = connections.get(deviceInfo.getPort());
+				}
+				if (connection != null) {
+					connection.setMacAddress(deviceInfo.getMacAddress());
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Disconnects from all devices and closes the output.
+	 */
+	@Override
+	public void close() throws IOException {
+
+		final List<DeviceConnection> remainingConnections;
+		synchronized (this) {
+			closed = true;
+			remainingConnections = newArrayList(connections.values());
+			connections.clear();
+		}
+
+		for (DeviceConnection connection : remainingConnections) {
+			connection.close();
+		}
+
+		synchronized (writerHandler) {
+			try {
+				writerHandler.channelDisconnected(null, null);
+			} catch (Exception e) {
+				throw new IOException("Exception while closing output: " + e, e);
+			}
+		}
+	}
+
+	/**
+	 * Connects to a device (when run) and passes its messages on to the writer handler.
+	 */
+	private class DeviceConnection extends SimpleChannelUpstreamHandler implements Runnable {
+
+		private final DeviceInfo deviceInfo;
+
+		private volatile String macAddress;
+
+		private Device device;
+
+		private Channel channel;
+
+		private boolean removed;
+
+		private DeviceConnection(final DeviceInfo deviceInfo) {
+			this.deviceInfo = deviceInfo;
+			setMacAddress(deviceInfo.getMacAddress());
+		}
+
+		@Override
+		public void run() {
+
+			final String port = deviceInfo.getPort();
+
+			if (macAddress == null && macReader != null) {
+				try {
+					setMacAddress(
+							macReader.readMac(port, deviceInfo.getType(), configuration, deviceInfo.getReference())
+					);
+				} catch (Exception e) {
+					log.warn("Could not read MAC address of device at port {}: {}", port, e.getMessage());
+				}
+			}
+
+			Device device = null;
+
+			try {
+
+				device = connectionPool.borrow(port, deviceInfo.getType(), configuration);
+
+				final ClientBootstrap bootstrap = new ClientBootstrap(channelFactory);
+				bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+					@Override
+					public ChannelPipeline getPipeline() throws Exception {
+						final ChannelPipeline pipeline = pipeline();
+						for (Tuple<String, ChannelHandler> handler : handlers.call()) {
+							pipeline.addLast(handler.getFirst(), handler.getSecond());
+						}
+						pipeline.addLast("deviceConnection", DeviceConnection.this);
+						return pipeline;
+					}
+				}
+				);
+
+				final Channel channel = bootstrap
+						.connect(new IOStreamAddress(device.getInputStream(), device.getOutputStream()))
+						.awaitUninterruptibly()
+						.getChannel();
+
+				final boolean removedInTheMeantime;
+				synchronized (MultiDeviceListener.this) {
+					this.device = device;
+					this.channel = channel;
+					removedInTheMeantime = removed;
+				}
+
+				if (removedInTheMeantime) {
+					close();
+				} else {
+					log.info("Listening to device at port {}", port);
+				}
+
+			} catch (Exception e) {
+				log.error("Could not listen to device at port " + port + ": " + e, e);
+				if (device != null) {
+					connectionPool.invalidate(device);
+				}
+				synchronized (MultiDeviceListener.this) {
+					if (connections.get(port) == this) {
+						connections.remove(port);
+					}
+				}
+			}
+		}
+
+		private void setMacAddress(@Nullable final MacAddress macAddress) {
+			if (macAddress != null) {
+				this.macAddress = macAddress.toHexString();
+			}
+		}
+
+		@Override
+		public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+			final CapturedMessageEvent event = new CapturedMessageEvent(
+					(ChannelBuffer) e.getMessage(), System.currentTimeMillis(), deviceInfo.getPort(), macAddress
+			);
+			synchronized (writerHandler) {
+				writerHandler.messageReceived(ctx, event);
+			}
+		}
+
+		@Override
+		public void exceptionCaught(final ChannelHandlerContext ctx, final ExceptionEvent e) throws Exception {
+			log.warn("Exception while listening to device at port {}: {}", deviceInfo.getPort(), e.getCause());
+		}
+
+		/**
+		 * Disconnects from the device, or makes sure that happens once connected if the connection is being
+		 * established.
+		 */
+		private void close() {
+
+			final Device device;
+			final Channel channel;
+			synchronized (MultiDeviceListener.this) {
+				removed = true;
+				device = this.device;
+				channel = this.channel;
+				this.device = null;
+				this.channel = null;
+			}
+
+			if (channel != null) {
+				channel.close().awaitUninterruptibly();
+			}
+
+			if (device != null) {
+				// the streams of the device were handed over to the channel, so the connection can't be reused
+				connectionPool.invalidate(device);
+				log.info("Stopped listening to device at port {}", deviceInfo.getPort());
+			}
+		}
+	}
+}
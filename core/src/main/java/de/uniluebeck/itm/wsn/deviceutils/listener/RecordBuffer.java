@@ -0,0 +1,247 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * A growable character buffer that is reused for every message a {@link WriterHandler} receives. The encoders read
+ * directly from the {@link ChannelBuffer} (without changing its indices), so that formatting a message does not
+ * allocate once the buffer has grown to the size of the largest record.
+ */
+public final class RecordBuffer {
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final char[] BASE64_ALPHABET =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private char[] chars = new char[1024];
+
+	private int length;
+
+	private ByteBuffer decoderInput = ByteBuffer.allocate(256);
+
+	private CharBuffer decoderOutput = CharBuffer.wrap(chars);
+
+	public RecordBuffer clear() {
+		length = 0;
+		return this;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public RecordBuffer append(final char c) {
+		ensureCapacity(1);
+		chars[length++] = c;
+		return this;
+	}
+
+	public RecordBuffer append(final String s) {
+		ensureCapacity(s.length());
+		s.getChars(0, s.length(), chars, length);
+		length += s.length();
+		return this;
+	}
+
+	public RecordBuffer append(final StringBuilder s) {
+		ensureCapacity(s.length());
+		s.getChars(0, s.length(), chars, length);
+		length += s.length();
+		return this;
+	}
+
+	/**
+	 * Appends the decimal representation of {@code value}.
+	 */
+	public RecordBuffer append(final long value) {
+
+		if (value == Long.MIN_VALUE) {
+			return append(Long.toString(value));
+		}
+
+		ensureCapacity(20);
+
+		long remaining = value;
+		if (remaining < 0) {
+			chars[length++] = '-';
+			remaining = -remaining;
+		}
+
+		int digits = 1;
+		for (long bound = 10; digits < 19 && remaining >= bound; bound *= 10) {
+			digits++;
+		}
+
+		for (int i = length + digits - 1; i >= length; i--) {
+			chars[i] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+		}
+		length += digits;
+
+		return this;
+	}
+
+	/**
+	 * Appends the readable bytes of {@code buffer} as space-separated hex values (e.g., "0x0a 0xff").
+	 */
+	public RecordBuffer appendHex(final ChannelBuffer buffer) {
+
+		final int readable = buffer.readableBytes();
+		ensureCapacity(readable * 5);
+
+		for (int i = 0; i < readable; i++) {
+			if (i > 0) {
+				chars[length++] = ' ';
+			}
+			appendHexByte(buffer.getByte(buffer.readerIndex() + i));
+		}
+
+		return this;
+	}
+
+	/**
+	 * Appends the readable bytes of {@code buffer} as ASCII characters, replacing non-printable characters by their
+	 * hex value in brackets (e.g., "[0x0a]").
+	 */
+	public RecordBuffer appendPrintableAscii(final ChannelBuffer buffer) {
+
+		final int readable = buffer.readableBytes();
+		ensureCapacity(readable * 6);
+
+		for (int i = 0; i < readable; i++) {
+			final byte b = buffer.getByte(buffer.readerIndex() + i);
+			if (b >= 0x20 && b < 0x7f) {
+				chars[length++] = (char) b;
+			} else {
+				chars[length++] = '[';
+				appendHexByte(b);
+				chars[length++] = ']';
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Appends the readable bytes of {@code buffer} Base64-encoded (RFC 2045 alphabet with padding, no line breaks).
+	 */
+	public RecordBuffer appendBase64(final ChannelBuffer buffer) {
+
+		final int readable = buffer.readableBytes();
+		final int start = buffer.readerIndex();
+		ensureCapacity((readable + 2) / 3 * 4);
+
+		int i = 0;
+		for (; i + 2 < readable; i += 3) {
+			final int bits = (buffer.getUnsignedByte(start + i) << 16)
+					| (buffer.getUnsignedByte(start + i + 1) << 8)
+					| buffer.getUnsignedByte(start + i + 2);
+			chars[length++] = BASE64_ALPHABET[(bits >>> 18) & 0x3f];
+			chars[length++] = BASE64_ALPHABET[(bits >>> 12) & 0x3f];
+			chars[length++] = BASE64_ALPHABET[(bits >>> 6) & 0x3f];
+			chars[length++] = BASE64_ALPHABET[bits & 0x3f];
+		}
+
+		final int rest = readable - i;
+		if (rest > 0) {
+			final int bits = (buffer.getUnsignedByte(start + i) << 16)
+					| (rest == 2 ? buffer.getUnsignedByte(start + i + 1) << 8 : 0);
+			chars[length++] = BASE64_ALPHABET[(bits >>> 18) & 0x3f];
+			chars[length++] = BASE64_ALPHABET[(bits >>> 12) & 0x3f];
+			chars[length++] = rest == 2 ? BASE64_ALPHABET[(bits >>> 6) & 0x3f] : '=';
+			chars[length++] = '=';
+		}
+
+		return this;
+	}
+
+	/**
+	 * Appends the readable bytes of {@code buffer} decoded with {@code decoder}. The decoder is reset before use and
+	 * should be configured to replace malformed input (as {@link String#String(byte[], java.nio.charset.Charset)}
+	 * does).
+	 */
+	public RecordBuffer appendDecoded(final ChannelBuffer buffer, final CharsetDecoder decoder) {
+
+		final int readable = buffer.readableBytes();
+		if (decoderInput.capacity() < readable) {
+			decoderInput = ByteBuffer.allocate(Math.max(readable, decoderInput.capacity() * 2));
+		}
+
+		decoderInput.clear();
+		decoderInput.limit(readable);
+		buffer.getBytes(buffer.readerIndex(), decoderInput);
+		decoderInput.flip();
+
+		ensureCapacity((int) Math.ceil(readable * (double) decoder.maxCharsPerByte()));
+		decoderOutput.limit(chars.length);
+		decoderOutput.position(length);
+
+		decoder.reset();
+		CoderResult result = decoder.decode(decoderInput, decoderOutput, true);
+		if (result.isUnderflow()) {
+			result = decoder.flush(decoderOutput);
+		}
+		if (result.isError()) {
+			throw new IllegalStateException("Decoding failed: " + result);
+		}
+
+		length = decoderOutput.position();
+		return this;
+	}
+
+	public void writeTo(final Writer writer) throws IOException {
+		writer.write(chars, 0, length);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+
+	private void appendHexByte(final byte b) {
+		chars[length++] = '0';
+		chars[length++] = 'x';
+		chars[length++] = HEX_DIGITS[(b >> 4) & 0x0f];
+		chars[length++] = HEX_DIGITS[b & 0x0f];
+	}
+
+	private void ensureCapacity(final int additional) {
+		if (length + additional > chars.length) {
+			final char[] grown = new char[Math.max(length + additional, chars.length * 2)];
+			System.arraycopy(chars, 0, grown, 0, length);
+			chars = grown;
+			decoderOutput = CharBuffer.wrap(chars);
+		}
+	}
+}
@@ -0,0 +1,310 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * <p>
+ * Splits the output of a {@link WriterHandler} into segment files named {@code <base>.<index>}. A new segment is
+ * started when the current one would exceed a maximum size and/or when a wall-clock interval ends (intervals are
+ * aligned to multiples of their length since the epoch, so e.g. hourly segments start at full hours). Segments are
+ * only ever split between two records.
+ * </p>
+ * <p>
+ * A segment is written as {@code <base>.<index>.part} and renamed once it is complete, so every file without that
+ * suffix can be processed right away. Closing and optionally compressing finished segments happens on a background
+ * thread so that it never delays writing the next segment.
+ * </p>
+ */
+public class RollingFileOutput implements Closeable {
+
+	public enum Compression {
+
+		NONE(""),
+
+		GZIP(".gz");
+
+		private final String suffix;
+
+		Compression(final String suffix) {
+			this.suffix = suffix;
+		}
+
+		public String getSuffix() {
+			return suffix;
+		}
+
+		public static Compression fromString(final String compression) {
+			return valueOf(compression.trim().toUpperCase());
+		}
+	}
+
+	/**
+	 * A segment file that is currently written.
+	 */
+	public static class Segment {
+
+		private final File file;
+
+		private final File partFile;
+
+		private final OutputStream outputStream;
+
+		private final long deadlineMillis;
+
+		private long chars;
+
+		private Segment(final File file, final long deadlineMillis) throws IOException {
+			this.file = file;
+			this.partFile = new File(file.getPath() + PART_SUFFIX);
+			this.outputStream = new FileOutputStream(partFile);
+			this.deadlineMillis = deadlineMillis;
+		}
+
+		public OutputStream getOutputStream() {
+			return outputStream;
+		}
+
+		/**
+		 * Accounts for characters written to the segment.
+		 */
+		public void written(final int chars) {
+			this.chars += chars;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Returns the time at which the interval of the segment ends or {@link Long#MAX_VALUE} if segments are not split
+		 * by time.
+		 */
+		public long getDeadlineMillis() {
+			return deadlineMillis;
+		}
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(RollingFileOutput.class);
+
+	private static final String PART_SUFFIX = ".part";
+
+	private final File base;
+
+	private final long maxSegmentChars;
+
+	private final long segmentIntervalMillis;
+
+	private final Compression compression;
+
+	private final ExecutorService closeExecutor;
+
+	private int segmentIndex;
+
+	/**
+	 * @param base
+	 * 		the base name of the segment files
+	 * @param maxSegmentChars
+	 * 		the number of characters after which a new segment is started or 0 to not split by size
+	 * @param segmentIntervalMillis
+	 * 		the length of the interval after which a new segment is started or 0 to not split by time
+	 * @param compression
+	 * 		how to compress finished segments
+	 */
+	public RollingFileOutput(final File base, final long maxSegmentChars, final long segmentIntervalMillis,
+							 final Compression compression) {
+
+		checkArgument(maxSegmentChars >= 0, "The maximum segment size must not be negative");
+		checkArgument(segmentIntervalMillis >= 0, "The segment interval must not be negative");
+		checkNotNull(compression);
+
+		this.base = base;
+		this.maxSegmentChars = maxSegmentChars;
+		this.segmentIntervalMillis = segmentIntervalMillis;
+		this.compression = compression;
+		this.closeExecutor = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setNameFormat("RollingFileOutput %d").setDaemon(true).build()
+		);
+
+		// continue after the segments of a previous run with the same base name instead of overwriting them
+		this.segmentIndex = nextSegmentIndex();
+	}
+
+	/**
+	 * Returns the length of the interval after which a new segment is started or 0 if segments are not split by time.
+	 */
+	public long getSegmentIntervalMillis() {
+		return segmentIntervalMillis;
+	}
+
+	/**
+	 * Creates the next segment file.
+	 */
+	public Segment openSegment() throws IOException {
+
+		final long deadlineMillis = segmentIntervalMillis == 0 ?
+				Long.MAX_VALUE :
+				(System.currentTimeMillis() / segmentIntervalMillis + 1) * segmentIntervalMillis;
+
+		final File file = new File(base.getPath() + "." + String.format("%06d", segmentIndex++));
+		log.debug("Starting segment {}", file);
+
+		return new Segment(file, deadlineMillis);
+	}
+
+	/**
+	 * Checks if a record of the given length has to go to a new segment. A segment always takes at least one record,
+	 * even if it is larger than the maximum segment size.
+	 */
+	public boolean isSegmentComplete(final Segment segment, final int recordChars, final long nowMillis) {
+		if (segment.chars == 0) {
+			return false;
+		}
+		return nowMillis >= segment.deadlineMillis
+				|| (maxSegmentChars > 0 && segment.chars + recordChars > maxSegmentChars);
+	}
+
+	/**
+	 * Closes {@code writer}, which must be the last user of the segments output stream, renames the segment to its
+	 * final name and compresses it. All of this is done in the background.
+	 */
+	public void closeSegment(final Segment segment, final Closeable writer) {
+		closeExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					try {
+						writer.close();
+					} finally {
+						segment.outputStream.close();
+					}
+					finishSegment(segment);
+				} catch (IOException e) {
+					log.error("Exception while closing segment " + segment.partFile + ": " + e, e);
+				}
+			}
+		}
+		);
+	}
+
+	/**
+	 * Waits until all segments passed to {@link #closeSegment(Segment, Closeable)} are closed and compressed.
+	 */
+	@Override
+	public void close() throws IOException {
+		closeExecutor.shutdown();
+		try {
+			closeExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void finishSegment(final Segment segment) throws IOException {
+
+		if (compression == Compression.NONE) {
+			rename(segment.partFile, segment.file);
+			return;
+		}
+
+		final File compressedFile = new File(segment.file.getPath() + compression.getSuffix());
+		final File compressedPartFile = new File(compressedFile.getPath() + PART_SUFFIX);
+
+		final FileInputStream in = new FileInputStream(segment.partFile);
+		boolean threw = true;
+		try {
+			final OutputStream out = new GZIPOutputStream(new FileOutputStream(compressedPartFile), 64 * 1024);
+			try {
+				ByteStreams.copy(in, out);
+				threw = false;
+			} finally {
+				Closeables.close(out, threw);
+			}
+		} finally {
+			Closeables.close(in, true);
+		}
+
+		rename(compressedPartFile, compressedFile);
+		if (!segment.partFile.delete()) {
+			log.warn("Could not delete {} after compressing it", segment.partFile);
+		}
+	}
+
+	private static void rename(final File from, final File to) throws IOException {
+		if (!from.renameTo(to)) {
+			throw new IOException("Could not rename " + from + " to " + to);
+		}
+	}
+
+	private int nextSegmentIndex() {
+
+		// segments of previous runs may have been written with another compression
+		final StringBuilder suffixes = new StringBuilder();
+		for (Compression knownCompression : Compression.values()) {
+			if (!knownCompression.getSuffix().isEmpty()) {
+				suffixes.append(suffixes.length() == 0 ? "" : "|").append(Pattern.quote(knownCompression.getSuffix()));
+			}
+		}
+
+		final Pattern segmentPattern = Pattern.compile(
+				Pattern.quote(base.getName()) + "\\.\\d{6}(" + suffixes + ")?(" + Pattern.quote(PART_SUFFIX) + ")?"
+		);
+
+		final String[] names = base.getAbsoluteFile().getParentFile().list(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return segmentPattern.matcher(name).matches();
+			}
+		}
+		);
+
+		int maxIndex = -1;
+		for (String name : names == null ? new String[0] : names) {
+			final int indexStart = base.getName().length() + 1;
+			maxIndex = Math.max(maxIndex, Integer.parseInt(name.substring(indexStart, indexStart + 6)));
+		}
+		return maxIndex + 1;
+	}
+}
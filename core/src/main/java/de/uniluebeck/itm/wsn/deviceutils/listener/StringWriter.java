@@ -23,20 +23,23 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.listener;
 
-import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
 
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 public class StringWriter extends WriterHandler {
 
-	private final Charset charset;
+	private final CharsetDecoder decoder;
 
 	public StringWriter(OutputStream out, Charset charset) {
 		super(out);
-		this.charset = charset;
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
 	}
 
 	@Override
@@ -44,8 +47,7 @@ public class StringWriter extends WriterHandler {
 
 		super.messageReceived(ctx, e);
 
-		output.write(((ChannelBuffer) e.getMessage()).toString(charset));
-		output.newLine();
-		output.flush();
+		record.appendDecoded(getBuffer(e), decoder);
+		writeRecord();
 	}
 }
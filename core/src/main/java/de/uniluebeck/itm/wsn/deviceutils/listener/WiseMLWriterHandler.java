@@ -23,10 +23,7 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.listener;
 
-import org.apache.commons.codec.binary.Base64;
-import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -36,14 +33,14 @@ import java.io.OutputStream;
 
 public class WiseMLWriterHandler extends WriterHandler {
 
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
 	private final DateTimeFormatter timeFormatter = DateTimeFormat.fullDateTime();
 
 	private final String nodeUrn;
 
 	private boolean writeHeaderAndFooter;
 
-	private volatile boolean traceOpen = false;
-
 	public WiseMLWriterHandler(OutputStream out, String nodeUrn, boolean writeHeaderAndFooter) {
 		super(out);
 		this.writeHeaderAndFooter = writeHeaderAndFooter;
@@ -51,79 +48,68 @@ public class WiseMLWriterHandler extends WriterHandler {
 	}
 
 	@Override
-	public void channelConnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+	public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
 
-		super.channelConnected(ctx, e);
+		super.messageReceived(ctx, e);
 
-		if (writeHeaderAndFooter) {
-			writeHeader();
+		record.append("\t<timestamp>").append(getTimestampMillis(e)).append("</timestamp>").append(LINE_SEPARATOR);
+		record.append("\t<node id=\"").append(getNodeUrn(e)).append("\">").append(LINE_SEPARATOR);
+		record.append("\t\t<data>").appendBase64(getBuffer(e)).append("</data>").append(LINE_SEPARATOR);
+		record.append("\t</node>");
+
+		writeRecord();
+	}
+
+	/**
+	 * Returns the URN of the node that sent the message. If no URN was passed to the constructor it is derived from
+	 * the MAC address or port of {@link CapturedMessageEvent}s.
+	 */
+	protected String getNodeUrn(final MessageEvent e) {
+		if (nodeUrn == null && e instanceof CapturedMessageEvent) {
+			final CapturedMessageEvent capturedMessageEvent = (CapturedMessageEvent) e;
+			return capturedMessageEvent.getMacAddress() != null ?
+					capturedMessageEvent.getMacAddress() :
+					"node at " + capturedMessageEvent.getPort();
 		}
+		return nodeUrn;
 	}
 
+	/**
+	 * The node URN identifies the device in every record already.
+	 */
 	@Override
-	public void channelDisconnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+	protected void appendTag(final CapturedMessageEvent e) {
+	}
 
-		closeTraceTagIfOpen();
+	/**
+	 * Every output file (i.e., every segment if a rolling output is used) contains one complete trace, so that each of
+	 * them is a valid WiseML document on its own.
+	 */
+	@Override
+	protected void writeHeader() throws IOException {
 
 		if (writeHeaderAndFooter) {
-			writeFooter();
+			output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			output.newLine();
+			output.write(
+					"<wiseml xmlns=\"http://wisebed.eu/ns/wiseml/1.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://wisebed.eu/ns/wiseml/1.0\" version=\"1.0\">"
+			);
+			output.newLine();
 		}
 
-		super.channelDisconnected(ctx, e);
+		output.write("<trace id=\"" + timeFormatter.print(System.currentTimeMillis()) + "\">");
+		output.newLine();
 	}
 
 	@Override
-	public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
-
-		super.messageReceived(ctx, e);
-
-		openTraceTagIfNotOpenYet();
-
-		ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
-		final byte[] packet = new byte[buffer.readableBytes()];
-		buffer.getBytes(0, packet);
-
-		output.write("\t<timestamp>" + System.currentTimeMillis() + "</timestamp>\n");
-
-		output.write("\t<node id=\"" + nodeUrn + "\">");
-		output.newLine();
-
-		output.write("\t\t<data>" + Base64.encodeBase64String(packet) + "</data>");
-		output.newLine();
+	protected void writeFooter() throws IOException {
 
-		output.write("\t</node>");
+		output.write("</trace>");
 		output.newLine();
-		output.flush();
-	}
-
-	private void writeHeader() throws IOException {
-		output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-		output.newLine();
-		output.write(
-				"<wiseml xmlns=\"http://wisebed.eu/ns/wiseml/1.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://wisebed.eu/ns/wiseml/1.0\" version=\"1.0\">"
-		);
-		output.newLine();
-	}
-
-	private void openTraceTagIfNotOpenYet() throws IOException {
 
-		if (!traceOpen) {
-			output.write("<trace id=\"" + timeFormatter.print(System.currentTimeMillis()) + "\">\n");
-			traceOpen = true;
-		}
-	}
-
-	private void closeTraceTagIfOpen() throws IOException {
-
-		if (traceOpen) {
-			output.write("</trace>\n");
-			traceOpen = false;
+		if (writeHeaderAndFooter) {
+			output.write("</wiseml>");
+			output.newLine();
 		}
 	}
-
-	private void writeFooter() throws IOException {
-
-		output.write("</wiseml>");
-		output.newLine();
-	}
 }
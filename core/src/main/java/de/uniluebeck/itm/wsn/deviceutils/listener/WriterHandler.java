@@ -1,5 +1,9 @@
 package de.uniluebeck.itm.wsn.deviceutils.listener;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Counter;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.LatencyHistogram;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
@@ -9,46 +13,296 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Base class for handlers that write received messages to an output stream. The actual writing is done by an {@link
+ * AsyncWriter}, so that a slow output does not block the channels I/O thread. Subclasses write one record per message
+ * to {@link #output} and call {@link BufferedWriter#flush()} afterwards, which hands the record to the writer thread.
+ */
 public abstract class WriterHandler extends SimpleChannelHandler {
 
+	private static final int LINE_SEPARATOR_LENGTH = System.getProperty("line.separator").length();
+
+	private static final long ROLLOVER_CHECK_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * Starts new segments of rolling outputs when their interval ends, even if no record arrives, see {@link
+	 * #rollOverIfComplete()}. Shared by all handlers, as the check is cheap.
+	 */
+	private static final ScheduledExecutorService rolloverTimer = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("WriterHandler-Rollover %d").setDaemon(true).build()
+	);
+
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
 
 	protected BufferedWriter output;
 
+	/**
+	 * Reused for formatting every message, see {@link #writeRecord()}.
+	 */
+	protected final RecordBuffer record = new RecordBuffer();
+
 	private final OutputStream out;
 
+	private AsyncWriter.OverflowPolicy overflowPolicy = AsyncWriter.OverflowPolicy.BLOCK;
+
+	private RollingFileOutput rollingFileOutput;
+
+	private RollingFileOutput.Segment segment;
+
+	private AsyncWriter asyncWriter;
+
+	/**
+	 * Guards the output and the current segment, which are used by the channels I/O thread and the {@link
+	 * #rolloverTimer}.
+	 */
+	private final Object outputLock = new Object();
+
+	private ScheduledFuture<?> rolloverCheck;
+
+	private boolean tagRecords;
+
+	private final Counter messages = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_listener_messages_total", "Messages received by writer handlers", "writer", getWriterName()
+	);
+
+	private final Counter bytes = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_listener_bytes_total", "Bytes received by writer handlers", "writer", getWriterName()
+	);
+
+	private final LatencyHistogram flushDuration = MetricRegistry.getDefault().histogram(
+			"wsn_deviceutils_listener_flush_seconds", "Time taken to hand a record over to the output",
+			"writer", getWriterName()
+	);
+
 	public WriterHandler(@Nonnull final OutputStream out) {
 		checkNotNull(out);
 		this.out = out;
 	}
 
+	/**
+	 * For subclasses that don't write text and manage their output themselves. They must override {@link
+	 * #channelConnected(ChannelHandlerContext, ChannelStateEvent)} and {@link #channelDisconnected(ChannelHandlerContext,
+	 * ChannelStateEvent)} without calling the implementations of this class.
+	 */
+	protected WriterHandler() {
+		this.out = null;
+	}
+
+	/**
+	 * Sets what happens to messages if the output can't keep up. Must be called before the channel is connected.
+	 *
+	 * @param overflowPolicy
+	 * 		the policy to use (default: {@link AsyncWriter.OverflowPolicy#BLOCK})
+	 */
+	public void setOverflowPolicy(@Nonnull final AsyncWriter.OverflowPolicy overflowPolicy) {
+		checkNotNull(overflowPolicy);
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Writes to the segment files of {@code rollingFileOutput} instead of the output stream passed to the constructor.
+	 * The rolling output is closed when the channel is disconnected. Must be called before the channel is connected.
+	 *
+	 * @param rollingFileOutput
+	 * 		the rolling output to use or {@code null} to write to the output stream (default)
+	 */
+	public void setRollingFileOutput(@Nullable final RollingFileOutput rollingFileOutput) {
+		this.rollingFileOutput = rollingFileOutput;
+	}
+
+	/**
+	 * Makes every record start with the port and MAC address of the device that sent the message, which is needed if
+	 * the messages of several devices are written through this handler (see {@link MultiDeviceListener}). Only
+	 * messages passed as {@link CapturedMessageEvent} carry that information. Must be called before the channel is
+	 * connected.
+	 */
+	public void setTagRecords(final boolean tagRecords) {
+		this.tagRecords = tagRecords;
+	}
+
+	public boolean isTagRecords() {
+		return tagRecords;
+	}
+
 	@Override
 	public void channelConnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
 		log.trace("channelConnected({},{})", ctx, e);
-		this.output = new BufferedWriter(new OutputStreamWriter(out));
+		synchronized (outputLock) {
+			openOutput();
+			writeHeader();
+		}
+		if (rollingFileOutput != null && rollingFileOutput.getSegmentIntervalMillis() > 0) {
+			final long checkIntervalMillis =
+					Math.min(rollingFileOutput.getSegmentIntervalMillis(), ROLLOVER_CHECK_INTERVAL_MILLIS);
+			rolloverCheck = rolloverTimer.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					rollOverIfComplete();
+				}
+			}, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS
+			);
+		}
 	}
 
 	@Override
 	public void channelDisconnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
 		log.trace("channelDisconnected({},{})", ctx, e);
-		try {
-			output.flush();
-		} finally {
-			output.close();
+		if (rolloverCheck != null) {
+			rolloverCheck.cancel(false);
+		}
+		synchronized (outputLock) {
+			try {
+				writeFooter();
+				output.flush();
+			} finally {
+				if (rollingFileOutput == null) {
+					output.close();
+				} else {
+					rollingFileOutput.closeSegment(segment, asyncWriter);
+					segment = null;
+					rollingFileOutput.close();
+				}
+			}
 		}
 	}
 
 	@Override
 	public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
 		//log.trace("messageReceived({},{})", ctx, e);
+		countMessage(e);
+		if (tagRecords && e instanceof CapturedMessageEvent) {
+			appendTag((CapturedMessageEvent) e);
+		}
+	}
+
+	/**
+	 * Counts the message and its bytes. Subclasses that don't call {@link #messageReceived(ChannelHandlerContext,
+	 * MessageEvent)} of this class must call this for every message themselves.
+	 */
+	protected void countMessage(final MessageEvent e) {
+		messages.increment();
+		if (e.getMessage() instanceof ChannelBuffer) {
+			bytes.add(((ChannelBuffer) e.getMessage()).readableBytes());
+		}
+	}
+
+	/**
+	 * Appends the port and MAC address ("-" if unknown) of the device that sent the message to {@link #record}, see
+	 * {@link #setTagRecords(boolean)}.
+	 */
+	protected void appendTag(final CapturedMessageEvent e) {
+		final String macAddress = e.getMacAddress();
+		record.append(e.getPort()).append(' ').append(macAddress == null ? "-" : macAddress).append(' ');
+	}
+
+	/**
+	 * Writes whatever has to precede the records in every output file. Does nothing by default.
+	 */
+	protected void writeHeader() throws IOException {
+	}
+
+	/**
+	 * Writes whatever has to follow the records in every output file. Does nothing by default.
+	 */
+	protected void writeFooter() throws IOException {
+	}
+
+	/**
+	 * Writes the contents of {@link #record} followed by a line break as one record and clears it. If a rolling output
+	 * is used and the record doesn't belong to the current segment anymore, a new segment is started first.
+	 */
+	protected void writeRecord() throws IOException {
+
+		final int chars = record.length() + LINE_SEPARATOR_LENGTH;
+
+		synchronized (outputLock) {
+
+			if (segment != null && rollingFileOutput.isSegmentComplete(segment, chars, System.currentTimeMillis())) {
+				rollOver();
+			}
+
+			final long start = System.nanoTime();
+			record.writeTo(output);
+			record.clear();
+			output.newLine();
+			output.flush();
+			flushDuration.recordSince(start);
+
+			if (segment != null) {
+				segment.written(chars);
+			}
+		}
+	}
+
+	/**
+	 * Returns the time the message was received, which is the current time unless the message was read from a
+	 * capture.
+	 */
+	protected long getTimestampMillis(final MessageEvent e) {
+		return e instanceof CapturedMessageEvent ?
+				((CapturedMessageEvent) e).getTimestampMillis() :
+				System.currentTimeMillis();
+	}
+
+	private String getWriterName() {
+		final String simpleName = getClass().getSimpleName();
+		return simpleName.isEmpty() ? getClass().getName() : simpleName;
+	}
+
+	/**
+	 * Starts a new segment if the interval of the current one has ended, so that a device that stopped sending doesn't
+	 * keep its segment open.
+	 */
+	private void rollOverIfComplete() {
+		synchronized (outputLock) {
+			if (segment == null || !rollingFileOutput.isSegmentComplete(segment, 0, System.currentTimeMillis())) {
+				return;
+			}
+			try {
+				rollOver();
+			} catch (IOException e) {
+				log.error("Exception while starting a new segment: " + e, e);
+			}
+		}
+	}
+
+	private void rollOver() throws IOException {
+		writeFooter();
+		output.flush();
+		rollingFileOutput.closeSegment(segment, asyncWriter);
+		openOutput();
+		writeHeader();
+	}
+
+	private void openOutput() throws IOException {
+		if (rollingFileOutput == null) {
+			asyncWriter = new AsyncWriter(out, overflowPolicy);
+		} else {
+			segment = rollingFileOutput.openSegment();
+			asyncWriter = new AsyncWriter(segment.getOutputStream(), overflowPolicy);
+		}
+		output = new BufferedWriter(asyncWriter);
+	}
+
+	protected ChannelBuffer getBuffer(final MessageEvent e) {
+		return (ChannelBuffer) e.getMessage();
 	}
 
+	/**
+	 * Copies the readable bytes of the messages buffer. Use {@link #getBuffer(MessageEvent)} together with the encoders
+	 * of {@link RecordBuffer} to avoid the copy.
+	 */
 	protected byte[] getBufferBytes(final MessageEvent e) {
 		ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
 		byte[] packet = new byte[buffer.readableBytes()];
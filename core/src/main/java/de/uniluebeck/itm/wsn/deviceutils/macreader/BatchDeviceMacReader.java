@@ -0,0 +1,132 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.collect.ImmutableList;
+import de.uniluebeck.itm.wsn.deviceutils.BatchExecutor;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Reads the MAC addresses of many devices concurrently, so that taking the inventory of all attached devices takes
+ * about as long as reading the MAC address of the slowest one. Devices that can't be asked for their MAC address
+ * (e.g., TelosB) are looked up in the reference map by the {@link DeviceMacReader}.
+ */
+public class BatchDeviceMacReader {
+
+	private static final Logger log = LoggerFactory.getLogger(BatchDeviceMacReader.class);
+
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	private final DeviceMacReader deviceMacReader;
+
+	private final ExecutorService executorService;
+
+	private final int parallelism;
+
+	/**
+	 * @param deviceMacReader
+	 * 		the reader used for every single device
+	 * @param executorService
+	 * 		the executor the MAC addresses are read on
+	 * @param parallelism
+	 * 		the maximum number of MAC addresses that are read concurrently
+	 */
+	public BatchDeviceMacReader(final DeviceMacReader deviceMacReader, final ExecutorService executorService,
+								final int parallelism) {
+		checkArgument(parallelism > 0, "The parallelism must be positive");
+		this.deviceMacReader = deviceMacReader;
+		this.executorService = executorService;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Reads the MAC addresses of {@code devices} and blocks until all of them are done.
+	 *
+	 * @param devices
+	 * 		the devices to read the MAC addresses of
+	 * @param configuration
+	 * 		the driver configuration or {@code null}
+	 *
+	 * @return one result per device, in the order of {@code devices}
+	 *
+	 * @throws InterruptedException
+	 * 		if interrupted while waiting for the MAC addresses to be read
+	 */
+	public ImmutableList<MacReadResult> readAll(final List<DeviceInfo> devices,
+												@Nullable final Map<String, String> configuration)
+			throws InterruptedException {
+
+		if (devices.isEmpty()) {
+			return ImmutableList.of();
+		}
+
+		final List<Callable<MacReadResult>> tasks = newArrayList();
+		for (final DeviceInfo deviceInfo : devices) {
+			tasks.add(new Callable<MacReadResult>() {
+				@Override
+				public MacReadResult call() throws Exception {
+					return read(deviceInfo, configuration);
+				}
+			}
+			);
+		}
+
+		return BatchExecutor.invokeAll(executorService, parallelism, tasks);
+	}
+
+	private MacReadResult read(final DeviceInfo deviceInfo, @Nullable final Map<String, String> configuration) {
+
+		final long start = System.currentTimeMillis();
+
+		try {
+
+			final MacAddress macAddress = deviceMacReader.readMac(
+					deviceInfo.getPort(), deviceInfo.getType(), configuration, deviceInfo.getReference()
+			);
+			log.debug("{}: read MAC address {}", deviceInfo.getPort(), macAddress);
+
+			return new MacReadResult(deviceInfo, macAddress, System.currentTimeMillis() - start, null);
+
+		} catch (Exception e) {
+
+			// checked exceptions are propagated wrapped in a plain RuntimeException by the reader
+			final Throwable cause = e.getClass() == RuntimeException.class && e.getCause() != null ? e.getCause() : e;
+			log.warn(deviceInfo.getPort() + ": reading MAC address failed with Exception: " + cause, cause);
+
+			return new MacReadResult(deviceInfo, null, System.currentTimeMillis() - start, cause);
+		}
+	}
+}
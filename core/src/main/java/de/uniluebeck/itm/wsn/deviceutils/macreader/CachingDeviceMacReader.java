@@ -0,0 +1,115 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.base.Strings;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Counter;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * A {@link DeviceMacReader} that remembers MAC addresses read from devices in a {@link DeviceMacCache} so that they
+ * don't have to be read over the serial connection again, e.g. after a restart. Devices are identified by their
+ * reference (the USB-to-serial converter ID), so devices without a reference are always read.
+ */
+public class CachingDeviceMacReader implements DeviceMacReader {
+
+	private static final Logger log = LoggerFactory.getLogger(CachingDeviceMacReader.class);
+
+	private static final Counter cacheHits = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_mac_cache_hits_total", "MAC address reads answered from the cache"
+	);
+
+	private static final Counter cacheMisses = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_mac_cache_misses_total", "MAC address reads that had to ask the device"
+	);
+
+	@Inject
+	private DeviceMacReaderImpl deviceMacReader;
+
+	@Inject
+	private DeviceMacCache cache;
+
+	@Inject
+	@Nullable
+	private DeviceMacReferenceMap referenceToMacMap;
+
+	@Inject(optional = true)
+	@Named("use16BitMode")
+	private Boolean use16BitMode = true;
+
+	@Override
+	public MacAddress readMac(final String port,
+							  final String deviceType,
+							  @Nullable final Map<String, String> configuration,
+							  @Nullable final String reference) {
+
+		// reference map lookups are cheap and must not be shadowed by cached values
+		if (Strings.isNullOrEmpty(reference)
+				|| (referenceToMacMap != null && referenceToMacMap.containsKey(reference))) {
+			return deviceMacReader.readMac(port, deviceType, configuration, reference);
+		}
+
+		final String key = getCacheKey(reference);
+		final MacAddress cachedMacAddress = cache.get(key);
+
+		if (cachedMacAddress != null) {
+			cacheHits.increment();
+			log.debug("Using cached MAC address {} for device {} at port {}", cachedMacAddress, reference, port);
+			return cachedMacAddress;
+		}
+
+		cacheMisses.increment();
+		final MacAddress macAddress = deviceMacReader.readMac(port, deviceType, configuration, reference);
+
+		if (macAddress != null) {
+			cache.put(key, macAddress);
+		}
+
+		return macAddress;
+	}
+
+	/**
+	 * Forgets the cached MAC address of the device with the given reference so that it is read from the device the
+	 * next time (e.g., after a new MAC address was written to the device).
+	 *
+	 * @param reference
+	 * 		the USB-to-serial converter ID of the device
+	 */
+	public void invalidate(final String reference) {
+		cache.invalidate(reference);
+	}
+
+	private String getCacheKey(final String reference) {
+		// 16 and 64 bit addresses of the same device have to be kept apart
+		return reference + (use16BitMode ? ".16" : ".64");
+	}
+}
@@ -0,0 +1,277 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.Closeables;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A persistent cache of MAC addresses keyed by the USB-to-serial converters ID (the devices "reference"), optionally
+ * followed by a qualifier separated by a dot (e.g., "A6005Ycl.16"). Entries expire after a configurable time to live.
+ * </p>
+ * <p>
+ * The cache is stored as a properties file so that it survives restarts and can be shared by several processes on
+ * the same host. The file is reloaded whenever another process modified it and is always replaced atomically. Every
+ * modification holds a lock on a sibling lock file while it reloads, modifies and stores the cache, so that
+ * concurrent processes don't lose each other's entries.
+ * </p>
+ */
+@Singleton
+public class DeviceMacCache {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceMacCache.class);
+
+	public static final File DEFAULT_CACHE_FILE =
+			new File(System.getProperty("user.home"), ".wsn-device-utils" + File.separator + "mac-cache.properties");
+
+	public static final long DEFAULT_TTL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	private static final String VALUE_SEPARATOR = ",";
+
+	private interface Modification {
+
+		/**
+		 * Modifies the freshly loaded entries and returns whether they need to be stored.
+		 */
+		boolean apply(Properties entries);
+
+	}
+
+	@Inject(optional = true)
+	@Named("macCacheFile")
+	private File cacheFile = DEFAULT_CACHE_FILE;
+
+	@Inject(optional = true)
+	@Named("macCacheTtlMillis")
+	private Long ttlMillis = DEFAULT_TTL_MILLIS;
+
+	private final Properties entries = new Properties();
+
+	private long lastLoaded = -1;
+
+	public DeviceMacCache() {
+	}
+
+	public DeviceMacCache(final File cacheFile, final long ttlMillis) {
+		this.cacheFile = cacheFile;
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * Returns the cached MAC address for the given key.
+	 *
+	 * @param key
+	 * 		the key under which the MAC address was cached
+	 *
+	 * @return the MAC address or {@code null} if none is cached or if the cached one has expired
+	 */
+	@Nullable
+	public synchronized MacAddress get(final String key) {
+
+		reloadIfModified();
+
+		final String value = entries.getProperty(key);
+		if (value == null) {
+			return null;
+		}
+
+		try {
+
+			final Iterator<String> fields = Splitter.on(VALUE_SEPARATOR).split(value).iterator();
+			final MacAddress macAddress = new MacAddress(fields.next());
+			final long cachedAt = Long.parseLong(fields.next());
+
+			if (System.currentTimeMillis() - cachedAt > ttlMillis) {
+				log.debug("Cached MAC address for {} has expired", key);
+				return null;
+			}
+
+			return macAddress;
+
+		} catch (Exception e) {
+			log.warn("Ignoring invalid MAC cache entry {}={}", key, value);
+			return null;
+		}
+	}
+
+	public synchronized void put(final String key, final MacAddress macAddress) {
+		modify(new Modification() {
+			@Override
+			public boolean apply(final Properties entries) {
+				entries.setProperty(key, macAddress.toHexString() + VALUE_SEPARATOR + System.currentTimeMillis());
+				return true;
+			}
+		}
+		);
+	}
+
+	/**
+	 * Removes all entries cached for the device with the given reference.
+	 *
+	 * @param reference
+	 * 		the USB-to-serial converter ID of the device
+	 */
+	public synchronized void invalidate(final String reference) {
+		modify(new Modification() {
+			@Override
+			public boolean apply(final Properties entries) {
+				boolean modified = false;
+				for (Iterator<Object> it = entries.keySet().iterator(); it.hasNext(); ) {
+					final String key = (String) it.next();
+					if (key.equals(reference) || key.startsWith(reference + ".")) {
+						it.remove();
+						modified = true;
+					}
+				}
+				return modified;
+			}
+		}
+		);
+	}
+
+	public synchronized void invalidateAll() {
+		modify(new Modification() {
+			@Override
+			public boolean apply(final Properties entries) {
+				entries.clear();
+				return true;
+			}
+		}
+		);
+	}
+
+	private void reloadIfModified() {
+		if (cacheFile.exists() && cacheFile.lastModified() != lastLoaded) {
+			try {
+				load();
+			} catch (IOException e) {
+				log.warn("Could not load MAC cache from {}: {}", cacheFile, e.getMessage());
+			}
+		}
+	}
+
+	private void load() throws IOException {
+		final InputStream in = new FileInputStream(cacheFile);
+		try {
+			entries.clear();
+			entries.load(in);
+			lastLoaded = cacheFile.lastModified();
+		} finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Applies a modification to the entries stored on disk while holding the lock file, so that entries written by
+	 * other processes in the meantime are kept.
+	 */
+	private void modify(final Modification modification) {
+
+		final File dir = cacheFile.getAbsoluteFile().getParentFile();
+		if (!dir.exists() && !dir.mkdirs()) {
+			log.warn("Could not create directory {} for the MAC cache", dir);
+			return;
+		}
+
+		try {
+
+			final RandomAccessFile lockFile = new RandomAccessFile(new File(dir, cacheFile.getName() + ".lock"), "rw");
+			try {
+
+				final FileLock lock = lockFile.getChannel().lock();
+				try {
+
+					// the modification time may not have changed if the file was replaced within its resolution
+					if (cacheFile.exists()) {
+						load();
+					}
+
+					if (modification.apply(entries)) {
+						store(dir);
+					}
+
+				} finally {
+					lock.release();
+				}
+
+			} finally {
+				Closeables.close(lockFile, true);
+			}
+
+		} catch (IOException e) {
+			log.warn("Could not store MAC cache to {}: {}", cacheFile, e.getMessage());
+		}
+	}
+
+	private void store(final File dir) throws IOException {
+
+		final File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+		boolean moved = false;
+
+		try {
+
+			final OutputStream out = new FileOutputStream(tmpFile);
+			boolean threw = true;
+			try {
+				entries.store(out, "MAC addresses by device reference, written by wsn-device-utils");
+				threw = false;
+			} finally {
+				Closeables.close(out, threw);
+			}
+
+			Files.move(tmpFile.toPath(), cacheFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+			);
+			moved = true;
+			lastLoaded = cacheFile.lastModified();
+
+		} finally {
+			if (!moved && !tmpFile.delete()) {
+				log.warn("Could not delete temporary MAC cache file {}", tmpFile);
+			}
+		}
+	}
+}
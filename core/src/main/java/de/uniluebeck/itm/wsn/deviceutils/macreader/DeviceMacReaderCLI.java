@@ -24,13 +24,15 @@
 package de.uniluebeck.itm.wsn.deviceutils.macreader;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.ImmutableList;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.io.Closeables;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import de.uniluebeck.itm.util.logging.LogLevel;
 import de.uniluebeck.itm.util.logging.Logging;
-import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceEvent;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
+import de.uniluebeck.itm.wsn.deviceutils.daemon.DaemonClient;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfoProvider;
 import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactoryModule;
@@ -41,18 +43,24 @@ import org.apache.commons.cli.PosixParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMap;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.assertParametersPresent;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.printUsageAndExit;
+import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.toCsv;
 
 public class DeviceMacReaderCLI {
 
@@ -66,6 +74,10 @@ public class DeviceMacReaderCLI {
 
 	private static final int EXIT_CODE_REFERENCE_FILE_IS_DIRECTORY = 4;
 
+	private enum OutputFormat {
+		CSV, JSON
+	}
+
 	public static void main(String[] args) throws Exception {
 
 		Logging.setRootLogLevel(LogLevel.WARN);
@@ -79,6 +91,10 @@ public class DeviceMacReaderCLI {
 		Map<String, String> configuration = newHashMap();
 		DeviceMacReferenceMap deviceMacReferenceMap = null;
 		boolean use16BitMode = true;
+		boolean bypassCache = false;
+		boolean inventory = false;
+		int parallelism = BatchDeviceMacReader.DEFAULT_PARALLELISM;
+		OutputFormat outputFormat = OutputFormat.CSV;
 
 		try {
 
@@ -112,20 +128,39 @@ public class DeviceMacReaderCLI {
 				deviceMacReferenceMap = readDeviceMacReferenceMap(line.getOptionValue('r'));
 			}
 
-			assertParametersPresent(line, 't', 'p');
+			inventory = line.hasOption('a');
+			if (!inventory) {
+				assertParametersPresent(line, 't', 'p');
+			}
+
+			if (line.hasOption('n')) {
+				parallelism = Integer.parseInt(line.getOptionValue('n'));
+				checkArgument(parallelism > 0, "The parallelism must be positive");
+			}
+
+			if (line.hasOption('o')) {
+				outputFormat = OutputFormat.valueOf(line.getOptionValue('o').toUpperCase());
+			}
 
 			deviceType = line.getOptionValue('t');
 			port = line.getOptionValue('p');
 			use16BitMode = !line.hasOption('x');
+			bypassCache = line.hasOption('f');
 
 		} catch (Exception e) {
 			log.error("Invalid command line: " + e);
 			printUsageAndExit(DeviceMacReaderCLI.class, options, EXIT_CODE_INVALID_ARGUMENTS);
 		}
 
-		ExecutorService executorService = Executors.newCachedThreadPool(
-				new ThreadFactoryBuilder().setNameFormat("DeviceMacReader %d").build()
-		);
+		// the daemon uses its own driver configuration, reference map and MAC address mode
+		if (!inventory && configuration.isEmpty() && deviceMacReferenceMap == null && use16BitMode) {
+			final DaemonClient daemonClient = DaemonClient.connectIfRunning();
+			if (daemonClient != null) {
+				System.exit(readMacThroughDaemon(daemonClient, port, deviceType, bypassCache));
+			}
+		}
+
+		ExecutorService executorService = DeviceUtilsModule.createExecutorService("DeviceMacReader");
 
 		final Injector injector = Guice.createInjector(
 				new DeviceFactoryModule(),
@@ -134,18 +169,24 @@ public class DeviceMacReaderCLI {
 
 		final DeviceMacReader deviceMacReader = injector.getInstance(DeviceMacReader.class);
 
-		String reference = null;
-		if (deviceMacReferenceMap != null) {
+		if (inventory) {
+			final List<MacReadResult> results = takeInventory(injector, deviceType, configuration, parallelism,
+					bypassCache
+			);
+			printResults(results, outputFormat);
+			boolean failed = results.isEmpty();
+			for (MacReadResult result : results) {
+				failed |= result.getFailure() != null;
+			}
+			System.exit(failed ? 1 : 0);
+		}
 
-			final DeviceObserver deviceObserver = injector.getInstance(DeviceObserver.class);
-			final ImmutableList<DeviceEvent> events = deviceObserver.getEvents(null);
+		// the reference is needed for looking up the MAC address in the reference map and the MAC cache
+		final DeviceInfo deviceInfo = injector.getInstance(DeviceInfoProvider.class).getDeviceInfos().get(port);
+		final String reference = deviceInfo == null ? null : deviceInfo.getReference();
 
-			for (DeviceEvent event : events) {
-				final boolean samePort = port.equals(event.getDeviceInfo().getPort());
-				if (samePort) {
-					reference = event.getDeviceInfo().getReference();
-				}
-			}
+		if (bypassCache && reference != null) {
+			injector.getInstance(DeviceMacCache.class).invalidate(reference);
 		}
 
 		try {
@@ -171,6 +212,130 @@ public class DeviceMacReaderCLI {
 
 	}
 
+	private static int readMacThroughDaemon(final DaemonClient daemonClient, final String port,
+											final String deviceType, final boolean bypassCache) throws IOException {
+		try {
+			final MacAddress macAddress = daemonClient.readMac(port, deviceType, bypassCache);
+			log.info("Read MAC address of {} device at port {}: {}", deviceType, port, macAddress);
+			System.out.println(macAddress.toHexString());
+			return 0;
+		} catch (IOException e) {
+			log.error("Reading MAC address failed with Exception: " + e, e);
+			return 1;
+		} finally {
+			Closeables.close(daemonClient, true);
+		}
+	}
+
+	/**
+	 * Reads the MAC addresses of all attached devices (of the given type, if not {@code null}) concurrently.
+	 */
+	private static List<MacReadResult> takeInventory(final Injector injector,
+													 @Nullable final String deviceType,
+													 final Map<String, String> configuration,
+													 final int parallelism,
+													 final boolean bypassCache) throws InterruptedException {
+
+		final DeviceObserver deviceObserver = injector.getInstance(DeviceObserver.class);
+		deviceObserver.updateState(false);
+
+		final List<DeviceInfo> devices = newArrayList();
+		for (DeviceInfo deviceInfo : deviceObserver.getCurrentState().values()) {
+			if (deviceType == null || deviceType.equalsIgnoreCase(deviceInfo.getType())) {
+				devices.add(deviceInfo);
+			}
+		}
+
+		Collections.sort(devices, new Comparator<DeviceInfo>() {
+			@Override
+			public int compare(final DeviceInfo o1, final DeviceInfo o2) {
+				return o1.getPort().compareTo(o2.getPort());
+			}
+		}
+		);
+
+		if (bypassCache) {
+			final DeviceMacCache deviceMacCache = injector.getInstance(DeviceMacCache.class);
+			for (DeviceInfo deviceInfo : devices) {
+				if (deviceInfo.getReference() != null) {
+					deviceMacCache.invalidate(deviceInfo.getReference());
+				}
+			}
+		}
+
+		final BatchDeviceMacReader batchDeviceMacReader = new BatchDeviceMacReader(
+				injector.getInstance(DeviceMacReader.class), injector.getInstance(ExecutorService.class), parallelism
+		);
+
+		return batchDeviceMacReader.readAll(devices, configuration);
+	}
+
+	private static void printResults(final List<MacReadResult> results, final OutputFormat outputFormat) {
+
+		if (outputFormat == OutputFormat.JSON) {
+
+			final StringBuilder json = new StringBuilder("[");
+			for (int i = 0; i < results.size(); i++) {
+				final MacReadResult result = results.get(i);
+				final DeviceInfo deviceInfo = result.getDeviceInfo();
+				json.append(i == 0 ? "\n" : ",\n");
+				json.append("  {\"port\": ").append(toJson(deviceInfo.getPort()));
+				json.append(", \"type\": ").append(toJson(deviceInfo.getType()));
+				json.append(", \"reference\": ").append(toJson(deviceInfo.getReference()));
+				json.append(", \"mac\": ").append(toJson(macAddressOf(result)));
+				json.append(", \"millis\": ").append(result.getDurationMillis());
+				json.append(", \"error\": ").append(toJson(errorOf(result))).append("}");
+			}
+			json.append(results.isEmpty() ? "]" : "\n]");
+			System.out.println(json);
+
+		} else {
+
+			System.out.println("port,type,reference,mac,millis,error");
+			for (MacReadResult result : results) {
+				final DeviceInfo deviceInfo = result.getDeviceInfo();
+				System.out.println(Joiner.on(',').join(
+						toCsv(deviceInfo.getPort()),
+						toCsv(deviceInfo.getType()),
+						toCsv(deviceInfo.getReference()),
+						toCsv(macAddressOf(result)),
+						result.getDurationMillis(),
+						toCsv(errorOf(result))
+				)
+				);
+			}
+		}
+	}
+
+	@Nullable
+	private static String macAddressOf(final MacReadResult result) {
+		return result.getMacAddress() == null ? null : result.getMacAddress().toHexString();
+	}
+
+	@Nullable
+	private static String errorOf(final MacReadResult result) {
+		return result.getFailure() == null ? null : String.valueOf(result.getFailure());
+	}
+
+	private static String toJson(@Nullable final String value) {
+
+		if (value == null) {
+			return "null";
+		}
+
+		final StringBuilder json = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+
 	private static DeviceMacReferenceMap readDeviceMacReferenceMap(final String fileName) throws IOException {
 
 		final DeviceMacReferenceMap deviceMacReferenceMap;
@@ -205,20 +370,32 @@ public class DeviceMacReaderCLI {
 		Options options = new Options();
 
 		options.addOption("p", "port", true, "Serial port to which the device is attached");
-		options.getOption("p").setRequired(true);
 
-		options.addOption("t", "type", true, "Type of the device");
-		options.getOption("t").setRequired(true);
+		options.addOption("t", "type", true,
+				"Type of the device (optional with -a, where it restricts the inventory to devices of this type)"
+		);
 
 		options.addOption("x", "use64BitMode", false, "Set if you want to write the MAC in 64 bit mode");
 		options.getOption("x").setRequired(false);
 
+		options.addOption("f", "force", false,
+				"Optional: ignore the MAC address cache and read the MAC address from the device"
+		);
 		options.addOption("r", "referencetomacmap", true,
 				"Optional: a properties file containing device references to MAC address mappings"
 		);
 		options.addOption("c", "configuration", true,
 				"Optional: file name of a configuration file containing key value pairs to configure the device"
 		);
+		options.addOption("a", "all", false,
+				"Optional: read the MAC addresses of all attached devices instead of the device given by -p and print "
+						+ "them as a table"
+		);
+		options.addOption("n", "parallelism", true,
+				"Optional: maximum number of MAC addresses read concurrently with -a (default: "
+						+ BatchDeviceMacReader.DEFAULT_PARALLELISM + ")"
+		);
+		options.addOption("o", "format", true, "Optional: output format of -a (one of [csv, json], default: csv)");
 		options.addOption("v", "verbose", false, "Optional: verbose logging output (equal to -l DEBUG)");
 		options.addOption("l", "logging", true,
 				"Optional: set logging level (one of [" + Joiner.on(", ").join(Logging.LOG_LEVELS) + "])"
@@ -23,22 +23,25 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.macreader;
 
-import com.google.common.io.Closeables;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Counter;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.LatencyHistogram;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Span;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Tracer;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.TracingOperationListener;
 import de.uniluebeck.itm.wsn.drivers.core.Device;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
-import de.uniluebeck.itm.wsn.drivers.core.exception.PortNotFoundException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationAdapter;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
-import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
 
 import static com.google.common.base.Throwables.propagate;
 
@@ -48,11 +51,16 @@ public class DeviceMacReaderImpl implements DeviceMacReader {
 
 	private static final int TIMEOUT = 300000;
 
-	@Inject
-	private DeviceFactory deviceFactory;
+	private static final LatencyHistogram readDuration = MetricRegistry.getDefault().histogram(
+			"wsn_deviceutils_mac_read_seconds", "Time taken to read the MAC address from a device"
+	);
+
+	private static final Counter readFailures = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_mac_read_failures_total", "MAC addresses that could not be read from devices"
+	);
 
 	@Inject
-	private ExecutorService executorService;
+	private DeviceConnectionPool connectionPool;
 
 	@Inject
 	@Nullable
@@ -74,11 +82,11 @@ public class DeviceMacReaderImpl implements DeviceMacReader {
 
 			switch (deviceType) {
 				case ISENSE:
-					return readMacFromDevice(port, deviceType, configuration);
+					return readMacFromDevice(port, deviceTypeString, configuration);
 				case MOCK:
-					return readMacFromDevice(port, deviceType, configuration);
+					return readMacFromDevice(port, deviceTypeString, configuration);
 				case PACEMATE:
-					return readMacFromDevice(port, deviceType, configuration);
+					return readMacFromDevice(port, deviceTypeString, configuration);
 				case TELOSB:
 					return readMacFromMap(reference);
 				default:
@@ -99,60 +107,67 @@ public class DeviceMacReaderImpl implements DeviceMacReader {
 		return referenceToMacMap.get(reference);
 	}
 
-	private MacAddress readMacFromDevice(final String port, final DeviceType deviceType,
+	private MacAddress readMacFromDevice(final String port, final String deviceType,
 										 @Nullable Map<String, String> configuration) throws Exception {
 
+		final long start = System.nanoTime();
+		final Span span = Tracer.getDefault().begin("device", "read MAC").arg("port", port).arg("type", deviceType);
+
 		try {
 
-			final Device device = deviceFactory.create(executorService, deviceType, configuration);
+			final Device device = connectionPool.borrow(port, deviceType, configuration);
+			final MacAddress macAddress;
 
 			try {
+				macAddress = readMac(device, port);
+			} catch (Exception e) {
+				connectionPool.invalidate(device);
+				throw e;
+			}
 
-				tryToConnect(device, port);
-
-				final OperationListener<MacAddress> callback = new OperationAdapter<MacAddress>() {
-					private int lastProgress = -1;
-
-					@Override
-					public void onProgressChange(float fraction) {
-						int newProgress = (int) Math.floor(fraction * 100);
-						if (lastProgress < newProgress) {
-							lastProgress = newProgress;
-							log.debug("Progress: {}%", newProgress);
-						}
-					}
-				};
-
-				final MacAddress macAddress = device.readMac(TIMEOUT, callback).get();
-
-				if (use16BitMode) {
-					return macAddress.to16BitMacAddress();
-				}
-
-				return macAddress;
+			connectionPool.release(device);
+			readDuration.recordSince(start);
 
-			} finally {
-				Closeables.close(device, true);
+			if (use16BitMode) {
+				return macAddress.to16BitMacAddress();
 			}
 
+			return macAddress;
+
 		} catch (final Throwable e) {
 			log.warn("Error while reading MAC address from device: ", e);
+			readFailures.increment();
+			span.arg("failure", e);
 			throw propagate(e);
+		} finally {
+			span.end();
 		}
 	}
 
-	private void tryToConnect(final Device device, final String port) throws Exception {
-		for (int i = 0; i < 10; i++) {
-			try {
-				device.connect(port);
-			} catch (PortNotFoundException e) {
-				Thread.sleep(100);
-			} catch (Exception e) {
+	private static MacAddress readMac(final Device device, final String port) throws Exception {
+
+		final OperationListener<MacAddress> callback = new OperationAdapter<MacAddress>() {
+			private int lastProgress = -1;
+
+			@Override
+			public void onProgressChange(float fraction) {
+				int newProgress = (int) Math.floor(fraction * 100);
+				if (lastProgress < newProgress) {
+					lastProgress = newProgress;
+					log.debug("Progress: {}%", newProgress);
+				}
 			}
-		}
+		};
 
-		if (!device.isConnected()) {
-			throw new Exception("Connection to device at port \"" + port + "\" could not be established!");
+		final Span span = Tracer.getDefault().begin(TracingOperationListener.CATEGORY, "readMac");
+		try {
+			return device.readMac(TIMEOUT, new TracingOperationListener<MacAddress>(Tracer.getDefault(), port, callback))
+					.get();
+		} catch (Exception e) {
+			span.arg("failure", e);
+			throw e;
+		} finally {
+			span.end();
 		}
 	}
-}
\ No newline at end of file
+}
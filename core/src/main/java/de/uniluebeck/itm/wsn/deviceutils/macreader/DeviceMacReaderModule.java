@@ -65,7 +65,7 @@ public class DeviceMacReaderModule implements Module {
 		}
 
 		binder.bind(Boolean.class).annotatedWith(Names.named("use16BitMode")).toInstance(use16BitMode);
-		binder.bind(DeviceMacReader.class).to(DeviceMacReaderImpl.class);
+		binder.bind(DeviceMacReader.class).to(CachingDeviceMacReader.class);
 		binder.bind(ExecutorService.class).toInstance(executorService);
 	}
 }
@@ -0,0 +1,90 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.base.MoreObjects;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+
+import javax.annotation.Nullable;
+
+/**
+ * The outcome of reading the MAC address of a single device in an inventory.
+ */
+public class MacReadResult {
+
+	private final DeviceInfo deviceInfo;
+
+	@Nullable
+	private final MacAddress macAddress;
+
+	private final long durationMillis;
+
+	@Nullable
+	private final Throwable failure;
+
+	public MacReadResult(final DeviceInfo deviceInfo, @Nullable final MacAddress macAddress,
+						 final long durationMillis, @Nullable final Throwable failure) {
+		this.deviceInfo = deviceInfo;
+		this.macAddress = macAddress;
+		this.durationMillis = durationMillis;
+		this.failure = failure;
+	}
+
+	public DeviceInfo getDeviceInfo() {
+		return deviceInfo;
+	}
+
+	/**
+	 * Returns the MAC address or {@code null} if it could not be determined, either because reading it failed or
+	 * because the device can't be asked for it and its reference is not contained in the reference map.
+	 */
+	@Nullable
+	public MacAddress getMacAddress() {
+		return macAddress;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public boolean isSuccessful() {
+		return macAddress != null;
+	}
+
+	@Nullable
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("deviceInfo", deviceInfo)
+				.add("macAddress", macAddress)
+				.add("durationMillis", durationMillis)
+				.add("failure", failure)
+				.toString();
+	}
+}
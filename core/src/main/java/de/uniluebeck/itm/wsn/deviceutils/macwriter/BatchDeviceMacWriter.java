@@ -0,0 +1,201 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macwriter;
+
+import com.google.common.collect.ImmutableList;
+import de.uniluebeck.itm.wsn.deviceutils.BatchExecutor;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Counter;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.LatencyHistogram;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Span;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Tracer;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.TracingOperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Writes MAC addresses to several devices concurrently. Every write is verified by reading the MAC address back from
+ * the device, using the same connection.
+ */
+public class BatchDeviceMacWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(BatchDeviceMacWriter.class);
+
+	private static final LatencyHistogram writeDuration = MetricRegistry.getDefault().histogram(
+			"wsn_deviceutils_mac_write_seconds", "Time taken to write and verify the MAC address of a device"
+	);
+
+	private static final Counter writeFailures = MetricRegistry.getDefault().counter(
+			"wsn_deviceutils_mac_write_failures_total", "MAC addresses that could not be written"
+	);
+
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	private final DeviceConnectionPool connectionPool;
+
+	private final ExecutorService executorService;
+
+	private final int parallelism;
+
+	private final long timeoutMillis;
+
+	/**
+	 * @param connectionPool
+	 * 		the pool to borrow the connections to the devices from
+	 * @param executorService
+	 * 		the executor the MAC addresses are written on
+	 * @param parallelism
+	 * 		the maximum number of devices that are written to concurrently
+	 * @param timeoutMillis
+	 * 		the maximum time writing or reading the MAC address of a single device may take
+	 */
+	public BatchDeviceMacWriter(final DeviceConnectionPool connectionPool, final ExecutorService executorService,
+								final int parallelism, final long timeoutMillis) {
+		checkArgument(parallelism > 0, "The parallelism must be positive");
+		this.connectionPool = connectionPool;
+		this.executorService = executorService;
+		this.parallelism = parallelism;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Writes the MAC addresses to the devices attached to the ports and blocks until all of them are done.
+	 *
+	 * @param assignments
+	 * 		the MAC address to write by port
+	 * @param deviceType
+	 * 		the type of the devices
+	 * @param configuration
+	 * 		the driver configuration or {@code null}
+	 *
+	 * @return one result per assignment, in the iteration order of {@code assignments}
+	 *
+	 * @throws InterruptedException
+	 * 		if interrupted while waiting for the MAC addresses to be written
+	 */
+	public ImmutableList<MacWriteResult> writeAll(final Map<String, MacAddress> assignments, final String deviceType,
+												  @Nullable final Map<String, String> configuration)
+			throws InterruptedException {
+
+		if (assignments.isEmpty()) {
+			return ImmutableList.of();
+		}
+
+		final List<Callable<MacWriteResult>> tasks = newArrayList();
+		for (final Map.Entry<String, MacAddress> assignment : assignments.entrySet()) {
+			tasks.add(new Callable<MacWriteResult>() {
+				@Override
+				public MacWriteResult call() throws Exception {
+					return write(assignment.getKey(), assignment.getValue(), deviceType, configuration);
+				}
+			}
+			);
+		}
+
+		return BatchExecutor.invokeAll(executorService, parallelism, tasks);
+	}
+
+	private MacWriteResult write(final String port, final MacAddress macAddress, final String deviceType,
+								 @Nullable final Map<String, String> configuration) {
+
+		final long startNanos = System.nanoTime();
+		final Span span = Tracer.getDefault().begin("device", "write MAC").arg("port", port).arg("type", deviceType);
+		Device device = null;
+
+		try {
+
+			device = connectionPool.borrow(port, deviceType, configuration);
+
+			final Span writeSpan = Tracer.getDefault().begin(TracingOperationListener.CATEGORY, "writeMac");
+			try {
+				device.writeMac(macAddress, timeoutMillis,
+						new TracingOperationListener<Void>(Tracer.getDefault(), port, new OperationAdapter<Void>())
+				).get();
+			} finally {
+				writeSpan.end();
+			}
+
+			final MacAddress readBack;
+			final Span readSpan = Tracer.getDefault().begin(TracingOperationListener.CATEGORY, "readMac");
+			try {
+				readBack = device.readMac(timeoutMillis, new TracingOperationListener<MacAddress>(
+						Tracer.getDefault(), port, new OperationAdapter<MacAddress>()
+				)
+				).get();
+			} finally {
+				readSpan.end();
+			}
+			if (!macAddress.to16BitMacAddress().equals(readBack.to16BitMacAddress())) {
+				throw new IOException("Verification failed, the device returned MAC address "
+						+ readBack.toHexString() + " after writing " + macAddress.toHexString()
+				);
+			}
+			log.info("{}: writing MAC address {} done!", port, macAddress.toHexString());
+
+			connectionPool.release(device);
+			device = null;
+
+			writeDuration.recordSince(startNanos);
+			final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			return new MacWriteResult(port, macAddress, durationMillis, null);
+
+		} catch (Exception e) {
+
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+
+			final Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+			log.error(port + ": writing MAC address failed with Exception: " + cause, cause);
+			writeFailures.increment();
+			span.arg("failure", cause);
+
+			final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+			return new MacWriteResult(port, macAddress, durationMillis, cause);
+
+		} finally {
+			// the connection is not reused if writing failed
+			if (device != null) {
+				connectionPool.invalidate(device);
+			}
+			span.end();
+		}
+	}
+}
@@ -24,20 +24,21 @@
 package de.uniluebeck.itm.wsn.deviceutils.macwriter;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closeables;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
 import de.uniluebeck.itm.util.logging.LogLevel;
 import de.uniluebeck.itm.util.logging.Logging;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
 import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
-import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.deviceutils.daemon.DaemonClient;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacCache;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfoProvider;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
-import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
-import de.uniluebeck.itm.wsn.drivers.core.operation.StateChangedEvent;
-import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactoryModule;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -46,18 +47,26 @@ import org.apache.commons.cli.PosixParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.SortedMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static com.google.common.collect.Maps.newTreeMap;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.assertParametersPresent;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.printUsageAndExit;
+import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.toCsv;
 
 public class DeviceMacWriterCLI {
 
@@ -68,6 +77,8 @@ public class DeviceMacWriterCLI {
 
 	private static final Logger log = LoggerFactory.getLogger(DeviceMacWriterCLI.class);
 
+	private static final long TIMEOUT_MILLIS = 120000;
+
 	public static void main(String[] args) throws Exception {
 
 		CommandLineParser parser = new PosixParser();
@@ -78,6 +89,9 @@ public class DeviceMacWriterCLI {
 		String macAddressLower16String = null;
 		Map<String,String> configuration = newHashMap();
 		boolean use16BitMode = true;
+		String assignmentsFileName = null;
+		String failuresFileName = null;
+		int parallelism = BatchDeviceMacWriter.DEFAULT_PARALLELISM;
 
 		try {
 
@@ -107,7 +121,19 @@ public class DeviceMacWriterCLI {
 				}
 			}
 
-			assertParametersPresent(line, 't', 'p', 'm');
+			assignmentsFileName = line.getOptionValue('f');
+			if (assignmentsFileName == null) {
+				assertParametersPresent(line, 't', 'p', 'm');
+			} else {
+				assertParametersPresent(line, 't');
+			}
+
+			if (line.hasOption('n')) {
+				parallelism = Integer.parseInt(line.getOptionValue('n'));
+				checkArgument(parallelism > 0, "The parallelism must be positive");
+			}
+
+			failuresFileName = line.getOptionValue('e');
 
 			deviceType = line.getOptionValue('t');
 			port = line.getOptionValue('p');
@@ -119,99 +145,219 @@ public class DeviceMacWriterCLI {
 			printUsageAndExit(DeviceMacWriterCLI.class, options, 1);
 		}
 
-		long macAddressLower16 = StringUtils.parseHexOrDecLong(macAddressLower16String);
-		final MacAddress macAddress = new MacAddress(new byte[]{
-				0,
-				0,
-				0,
-				0,
-				0,
-				0,
-				(byte) (0xFF & (macAddressLower16 >> 8)),
-				(byte) (0xFF & (macAddressLower16))
+		// the daemon uses its own driver configuration and MAC address mode
+		if (assignmentsFileName == null && configuration.isEmpty() && use16BitMode) {
+			final DaemonClient daemonClient = DaemonClient.connectIfRunning();
+			if (daemonClient != null) {
+				System.exit(writeMacThroughDaemon(daemonClient, port, deviceType,
+						parseMacAddress(macAddressLower16String)
+				)
+				);
+			}
 		}
-		);
 
-		final ExecutorService executorService = Executors.newCachedThreadPool(
-				new ThreadFactoryBuilder().setNameFormat("DeviceMacWriter %d").build()
-		);
+		final ExecutorService executorService = DeviceUtilsModule.createExecutorService("DeviceMacWriter");
 
 		final Injector injector = Guice.createInjector(
 				new DeviceFactoryModule(),
 				new DeviceUtilsModule(executorService, null, use16BitMode)
 		);
-		final Device device = injector.getInstance(DeviceFactory.class).create(executorService, deviceType, configuration);
-		
-		device.connect(port);
-		if (!device.isConnected()) {
-			throw new RuntimeException("Connection to device at port \"" + args[1] + "\" could not be established!");
+
+		if (assignmentsFileName != null) {
+			final boolean successful;
+			try {
+				successful = writeAll(injector, assignmentsFileName, failuresFileName, deviceType, configuration,
+						parallelism
+				);
+			} finally {
+				ExecutorUtils.shutdown(executorService, 1, TimeUnit.SECONDS);
+			}
+			System.exit(successful ? 0 : 1);
 		}
 
-		final String finalDeviceType = deviceType;
-		final String finalPort = port;
+		final MacAddress macAddress = parseMacAddress(macAddressLower16String);
+		final MacWriteResult result;
+		try {
+			result = writeMacAddresses(injector, ImmutableMap.of(port, macAddress),
+					injector.getInstance(DeviceInfoProvider.class).getDeviceInfos(), deviceType, configuration, 1
+			).get(0);
+		} finally {
+			ExecutorUtils.shutdown(executorService, 1, TimeUnit.SECONDS);
+		}
+		System.exit(result.isSuccessful() ? 0 : 1);
+	}
 
-		OperationListener<Void> callback = new OperationListener<Void>() {
-			private int lastProgress = -1;
+	private static int writeMacThroughDaemon(final DaemonClient daemonClient, final String port,
+											 final String deviceType, final MacAddress macAddress) throws IOException {
+		try {
+			daemonClient.writeMac(port, deviceType, macAddress);
+			log.info("Writing MAC address {} of {} device at port {} done!", macAddress, deviceType, port);
+			return 0;
+		} catch (IOException e) {
+			log.error("Writing MAC address failed with Exception: " + e, e);
+			return 1;
+		} finally {
+			Closeables.close(daemonClient, true);
+		}
+	}
 
-			@Override
-			public void onProgressChange(float fraction) {
-				int newProgress = (int) Math.floor(fraction * 100);
-				if (lastProgress < newProgress) {
-					lastProgress = newProgress;
-					log.info("Progress: {}%", newProgress);
-				}
+	/**
+	 * Writes the MAC addresses listed in the assignments file, a properties file mapping the port or the reference
+	 * (e.g., the USB serial ID) of a device to the lower 16 bits of its new MAC address. Every write is verified by
+	 * reading the MAC address back. The assignments that failed are written to the failures file in the same format,
+	 * so that they can be retried without writing the successful ones again.
+	 *
+	 * @return {@code true} if all MAC addresses were written successfully
+	 */
+	private static boolean writeAll(final Injector injector,
+									final String assignmentsFileName,
+									@Nullable final String failuresFileName,
+									final String deviceType,
+									final Map<String, String> configuration,
+									final int parallelism) throws IOException, InterruptedException {
+
+		final SortedMap<String, String> assignments = readAssignments(assignmentsFileName);
+		final Map<String, DeviceInfo> deviceInfos = injector.getInstance(DeviceInfoProvider.class).getDeviceInfos();
+
+		final Map<String, MacAddress> macAddressesByPort = newLinkedHashMap();
+		final Map<String, String> keysByPort = newHashMap();
+
+		for (Map.Entry<String, String> assignment : assignments.entrySet()) {
+			final String port = resolvePort(assignment.getKey(), deviceInfos);
+			if (keysByPort.put(port, assignment.getKey()) != null) {
+				throw new IllegalArgumentException("More than one MAC address assigned to the device at " + port);
 			}
+			macAddressesByPort.put(port, parseMacAddress(assignment.getValue()));
+		}
 
-			@Override
-			public void onSuccess(Void result) {
-				log.info("Writing MAC address {} of {} device at port {} done!",
-						macAddress, finalDeviceType, finalPort
-				);
-			}
+		final List<MacWriteResult> results = writeMacAddresses(injector, macAddressesByPort, deviceInfos, deviceType,
+				configuration, parallelism
+		);
 
-			@Override
-			public void onFailure(Throwable throwable) {
-				log.error("Writing MAC address failed with Exception: " + throwable, throwable);
-			}
+		final SortedMap<String, String> failures = newTreeMap();
 
-			@Override
-			public void onExecute() {
-				log.info("Starting to write MAC address...");
+		System.out.println("port,key,mac,millis,error");
+		for (MacWriteResult result : results) {
+
+			final String key = keysByPort.get(result.getPort());
+			if (!result.isSuccessful()) {
+				failures.put(key, assignments.get(key));
 			}
 
-			@Override
-			public void onCancel() {
-				log.info("Writing MAC address was canceled!");
+			System.out.println(Joiner.on(',').join(
+					toCsv(result.getPort()),
+					toCsv(key),
+					result.getMacAddress().toHexString(),
+					result.getDurationMillis(),
+					toCsv(result.isSuccessful() ? null : String.valueOf(result.getFailure()))
+			)
+			);
+		}
+
+		System.err.println((results.size() - failures.size()) + " of " + results.size() + " MAC addresses written");
+
+		if (failuresFileName != null) {
+			writeAssignments(failuresFileName, failures);
+			if (!failures.isEmpty()) {
+				System.err.println("Failed assignments written to " + failuresFileName + ", retry them with -f "
+						+ failuresFileName
+				);
 			}
+		}
+
+		return failures.isEmpty();
+	}
 
-			@Override
-			public void beforeStateChanged(final StateChangedEvent<Void> stateChangedEvent) {
-				log.info("Operation state about to change: {}", stateChangedEvent);
+	/**
+	 * Writes and verifies the MAC addresses and invalidates the cached MAC addresses of all devices written to, as
+	 * these may have changed even if writing or verifying failed.
+	 */
+	private static List<MacWriteResult> writeMacAddresses(final Injector injector,
+														  final Map<String, MacAddress> macAddressesByPort,
+														  final Map<String, DeviceInfo> deviceInfos,
+														  final String deviceType,
+														  final Map<String, String> configuration,
+														  final int parallelism) throws InterruptedException {
+
+		final DeviceConnectionPool connectionPool = injector.getInstance(DeviceConnectionPool.class);
+		try {
+			return new BatchDeviceMacWriter(
+					connectionPool, injector.getInstance(ExecutorService.class), parallelism, TIMEOUT_MILLIS
+			).writeAll(macAddressesByPort, deviceType, configuration);
+		} finally {
+			connectionPool.close();
+			final DeviceMacCache deviceMacCache = injector.getInstance(DeviceMacCache.class);
+			for (String port : macAddressesByPort.keySet()) {
+				invalidateCachedMacAddress(deviceMacCache, deviceInfos, port);
 			}
+		}
+	}
 
-			@Override
-			public void afterStateChanged(final StateChangedEvent<Void> stateChangedEvent) {
-				log.info("Operation state changed: {}", stateChangedEvent);
+	/**
+	 * Returns the port of the device with the given reference, or {@code portOrReference} itself if no attached device
+	 * has that reference.
+	 */
+	private static String resolvePort(final String portOrReference, final Map<String, DeviceInfo> deviceInfos) {
+		if (deviceInfos.containsKey(portOrReference)) {
+			return portOrReference;
+		}
+		for (DeviceInfo deviceInfo : deviceInfos.values()) {
+			if (portOrReference.equals(deviceInfo.getReference())) {
+				return deviceInfo.getPort();
 			}
-		};
+		}
+		return portOrReference;
+	}
 
-		try{
-			device.writeMac(macAddress, 120000, callback).get();
+	private static SortedMap<String, String> readAssignments(final String fileName) throws IOException {
+		final Properties properties = new Properties();
+		final FileReader reader = new FileReader(fileName);
+		try {
+			properties.load(reader);
 		} finally {
-			closeConnection(device, executorService);
+			Closeables.close(reader, true);
+		}
+		final SortedMap<String, String> assignments = newTreeMap();
+		for (String key : properties.stringPropertyNames()) {
+			assignments.put(key, properties.getProperty(key).trim());
 		}
+		return assignments;
 	}
 
-	private static void closeConnection(final Device device, final ExecutorService executorService) {
-		log.debug("Closing Device...");
-        try {
-            Closeables.close(device, true);
-        } catch (IOException e) {
-            throw new RuntimeException("This exception should have been swallowed!");
-        }
+	private static void writeAssignments(final String fileName, final Map<String, String> assignments)
+			throws IOException {
+		final Properties properties = new Properties();
+		properties.putAll(assignments);
+		final Writer writer = new FileWriter(fileName);
+		try {
+			properties.store(writer, "MAC address assignments that failed");
+		} finally {
+			Closeables.close(writer, true);
+		}
+	}
 
-        log.debug("Shutting down executor...");
-		ExecutorUtils.shutdown(executorService, 1, TimeUnit.SECONDS);
+	private static MacAddress parseMacAddress(final String macAddressLower16String) {
+		long macAddressLower16 = StringUtils.parseHexOrDecLong(macAddressLower16String);
+		return new MacAddress(new byte[]{
+				0,
+				0,
+				0,
+				0,
+				0,
+				0,
+				(byte) (0xFF & (macAddressLower16 >> 8)),
+				(byte) (0xFF & (macAddressLower16))
+		}
+		);
+	}
+
+	private static void invalidateCachedMacAddress(final DeviceMacCache deviceMacCache,
+												   final Map<String, DeviceInfo> deviceInfos, final String port) {
+		final DeviceInfo deviceInfo = deviceInfos.get(port);
+		if (deviceInfo != null && deviceInfo.getReference() != null) {
+			log.debug("Invalidating cached MAC address of device {}", deviceInfo.getReference());
+			deviceMacCache.invalidate(deviceInfo.getReference());
+		}
 	}
 
 	private static Options createCommandLineOptions() {
@@ -220,13 +366,23 @@ public class DeviceMacWriterCLI {
 
 		// add all available options
 		options.addOption("p", "port", true, "Serial port to which the device is attached");
-		options.getOption("p").setRequired(true);
 
 		options.addOption("t", "type", true, "Type of the device");
 		options.getOption("t").setRequired(true);
 
 		options.addOption("m", "mac", true, "MAC address to write to the device");
-		options.getOption("m").setRequired(true);
+
+		options.addOption("f", "file", true,
+				"Optional: a properties file mapping ports or device references to MAC addresses, all of which are "
+						+ "written and verified instead of the device given by -p and -m"
+		);
+		options.addOption("n", "parallelism", true,
+				"Optional: maximum number of MAC addresses written concurrently with -f (default: "
+						+ BatchDeviceMacWriter.DEFAULT_PARALLELISM + ")"
+		);
+		options.addOption("e", "failures", true,
+				"Optional: file to write the assignments that failed with -f to, in the format of -f"
+		);
 
 		options.addOption("x", "use64BitMode", false, "Set if you want to write the MAC in 64 bit mode");
 		options.getOption("x").setRequired(false);
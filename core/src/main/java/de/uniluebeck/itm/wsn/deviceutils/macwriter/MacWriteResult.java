@@ -0,0 +1,89 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macwriter;
+
+import com.google.common.base.MoreObjects;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+
+import javax.annotation.Nullable;
+
+/**
+ * The outcome of writing the MAC address of a single device in batch mode.
+ */
+public class MacWriteResult {
+
+	private final String port;
+
+	private final MacAddress macAddress;
+
+	private final long durationMillis;
+
+	@Nullable
+	private final Throwable failure;
+
+	public MacWriteResult(final String port, final MacAddress macAddress, final long durationMillis,
+						  @Nullable final Throwable failure) {
+		this.port = port;
+		this.macAddress = macAddress;
+		this.durationMillis = durationMillis;
+		this.failure = failure;
+	}
+
+	public String getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the MAC address that was to be written.
+	 */
+	public MacAddress getMacAddress() {
+		return macAddress;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Returns whether the MAC address was written and reading it back returned the same address.
+	 */
+	public boolean isSuccessful() {
+		return failure == null;
+	}
+
+	@Nullable
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("port", port)
+				.add("macAddress", macAddress)
+				.add("durationMillis", durationMillis)
+				.add("failure", failure)
+				.toString();
+	}
+}
@@ -0,0 +1,199 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.metrics;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * <p>
+ * Records durations in nanoseconds into a fixed set of buckets, so that recording never allocates or locks. As in an
+ * HDR histogram, the buckets grow exponentially and every power of two is divided into 8 linear sub-buckets, so
+ * every recorded value is known with a relative error of at most 12.5%. Values up to about 39 hours are kept apart,
+ * larger ones end up in the last bucket.
+ * </p>
+ * <p>
+ * Percentiles are reported as the upper bound of the bucket they fall into (but never more than the maximum).
+ * </p>
+ */
+public class LatencyHistogram extends Metric implements LatencyHistogramMBean {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Values below this limit have a bucket of their own.
+	 */
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+	private static final int MIN_EXPONENT = SUB_BUCKET_BITS + 1;
+
+	private static final int MAX_EXPONENT = 46;
+
+	private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sumNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	LatencyHistogram(final String name, final String help, final ImmutableSortedMap<String, String> labels) {
+		super(name, help, labels);
+	}
+
+	public void record(final long nanos) {
+
+		final long value = Math.max(0, nanos);
+
+		buckets.incrementAndGet(getBucket(value));
+		count.incrementAndGet();
+		sumNanos.addAndGet(value);
+
+		long max = maxNanos.get();
+		while (value > max && !maxNanos.compareAndSet(max, value)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * Records the time passed since {@code startNanos}, a value of {@link System#nanoTime()}.
+	 */
+	public void recordSince(final long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getSumNanos() {
+		return sumNanos.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * Returns the value below or at which {@code fraction} of all recorded values lie.
+	 *
+	 * @param fraction
+	 * 		the percentile as a fraction between 0 and 1
+	 *
+	 * @return the value in nanoseconds or 0 if nothing was recorded yet
+	 */
+	public long getValueAtPercentile(final double fraction) {
+
+		checkArgument(fraction >= 0 && fraction <= 1, "The percentile must be between 0 and 1");
+
+		final long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+
+		final long target = Math.max(1, (long) Math.ceil(fraction * total));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			cumulative += buckets.get(i);
+			if (cumulative >= target) {
+				return Math.min(getUpperBound(i), maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		final long total = count.get();
+		return total == 0 ? 0 : toMillis(sumNanos.get()) / total;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return toMillis(maxNanos.get());
+	}
+
+	@Override
+	public double getMedianMillis() {
+		return toMillis(getValueAtPercentile(0.5));
+	}
+
+	@Override
+	public double get99thPercentileMillis() {
+		return toMillis(getValueAtPercentile(0.99));
+	}
+
+	@Override
+	public double get999thPercentileMillis() {
+		return toMillis(getValueAtPercentile(0.999));
+	}
+
+	@Override
+	public Type getType() {
+		return Type.HISTOGRAM;
+	}
+
+	@Override
+	Class<?> getMBeanInterface() {
+		return LatencyHistogramMBean.class;
+	}
+
+	static int getBucket(final long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return LINEAR_LIMIT + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the largest value (inclusive) that falls into the bucket.
+	 */
+	static long getUpperBound(final int bucket) {
+		if (bucket < LINEAR_LIMIT) {
+			return bucket;
+		}
+		final int exponent = MIN_EXPONENT + (bucket - LINEAR_LIMIT) / SUB_BUCKETS;
+		final long mantissa = SUB_BUCKETS + (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+		return ((mantissa + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	private static double toMillis(final long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
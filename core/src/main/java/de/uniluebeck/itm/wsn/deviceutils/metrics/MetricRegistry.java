@@ -0,0 +1,227 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.metrics;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Ordering;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * <p>
+ * Keeps the counters, gauges and latency histograms of the device utils. Metrics are looked up once (typically into
+ * static fields, like loggers) and can then be updated without allocating. Metrics of the same name and labels are
+ * shared, so all instances of a class report into the same metric.
+ * </p>
+ * <p>
+ * Every metric of the {@linkplain #getDefault() default registry} is registered as an MBean with the platform MBean
+ * server, unless the system property {@value #JMX_PROPERTY} is {@code false}. All metrics can be exposed in the
+ * Prometheus text format by {@link MetricsHttpServer}.
+ * </p>
+ */
+public class MetricRegistry {
+
+	private static final Logger log = LoggerFactory.getLogger(MetricRegistry.class);
+
+	/**
+	 * System property disabling the registration of MBeans if {@code false}.
+	 */
+	public static final String JMX_PROPERTY = "wsn.deviceutils.metrics.jmx";
+
+	public static final String JMX_DOMAIN = "de.uniluebeck.itm.wsn.deviceutils";
+
+	private static final MetricRegistry DEFAULT = new MetricRegistry(
+			Boolean.parseBoolean(System.getProperty(JMX_PROPERTY, "true")) ?
+					ManagementFactory.getPlatformMBeanServer() :
+					null
+	);
+
+	private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+	@Nullable
+	private final MBeanServer mBeanServer;
+
+	/**
+	 * @param mBeanServer
+	 * 		the server to register the metrics with or {@code null} to not register MBeans
+	 */
+	public MetricRegistry(@Nullable final MBeanServer mBeanServer) {
+		this.mBeanServer = mBeanServer;
+	}
+
+	public static MetricRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the counter with the given name and labels, creating it if necessary.
+	 *
+	 * @param labels
+	 * 		label names and values, alternating
+	 */
+	public Counter counter(final String name, final String help, final String... labels) {
+		final ImmutableSortedMap<String, String> labelMap = toLabelMap(labels);
+		return get(Counter.class, new Counter(name, help, labelMap));
+	}
+
+	/**
+	 * Returns the latency histogram with the given name and labels, creating it if necessary. By convention, the names
+	 * of histograms end with "_seconds", the unit they are exposed in.
+	 *
+	 * @param labels
+	 * 		label names and values, alternating
+	 */
+	public LatencyHistogram histogram(final String name, final String help, final String... labels) {
+		final ImmutableSortedMap<String, String> labelMap = toLabelMap(labels);
+		return get(LatencyHistogram.class, new LatencyHistogram(name, help, labelMap));
+	}
+
+	/**
+	 * Registers a gauge sampling {@code value}. A gauge that was registered before under the same name and labels is
+	 * replaced.
+	 *
+	 * @param labels
+	 * 		label names and values, alternating
+	 */
+	public Gauge gauge(final String name, final String help, final Supplier<? extends Number> value,
+					   final String... labels) {
+		final Gauge gauge = new Gauge(name, help, toLabelMap(labels), value);
+		final Metric previous = metrics.put(gauge.toString(), gauge);
+		checkArgument(previous == null || previous instanceof Gauge, "%s is not a gauge", previous);
+		if (previous != null) {
+			unregisterMBean(previous);
+		}
+		registerMBean(gauge);
+		return gauge;
+	}
+
+	/**
+	 * Removes a metric that is no longer updated, e.g. a gauge sampling an object that is discarded. Does nothing if
+	 * the metric was replaced in the meantime.
+	 */
+	public void remove(final Metric metric) {
+		if (metrics.remove(metric.toString(), metric)) {
+			unregisterMBean(metric);
+		}
+	}
+
+	/**
+	 * Returns all metrics, ordered by name and labels.
+	 */
+	public ImmutableList<Metric> getMetrics() {
+		return ImmutableSortedMap.copyOf(metrics, Ordering.<String>natural()).values().asList();
+	}
+
+	private <T extends Metric> T get(final Class<T> type, final T newMetric) {
+
+		final String key = newMetric.toString();
+		Metric metric = metrics.get(key);
+
+		if (metric == null) {
+			metric = metrics.putIfAbsent(key, newMetric);
+			if (metric == null) {
+				registerMBean(newMetric);
+				return newMetric;
+			}
+		}
+
+		checkArgument(type.isInstance(metric), "%s is not a %s", key, type.getSimpleName());
+		return type.cast(metric);
+	}
+
+	private void registerMBean(final Metric metric) {
+		if (mBeanServer == null) {
+			return;
+		}
+		try {
+			registerMBean(metric, metric.getMBeanInterface());
+		} catch (JMException e) {
+			log.warn("Could not register MBean for metric {}: {}", metric, e.getMessage());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> void registerMBean(final Metric metric, final Class<T> mBeanInterface) throws JMException {
+		mBeanServer.registerMBean(new StandardMBean((T) metric, mBeanInterface), getObjectName(metric));
+	}
+
+	private void unregisterMBean(final Metric metric) {
+		if (mBeanServer == null) {
+			return;
+		}
+		try {
+			mBeanServer.unregisterMBean(getObjectName(metric));
+		} catch (JMException e) {
+			log.trace("Could not unregister MBean for metric {}: {}", metric, e.getMessage());
+		}
+	}
+
+	private static ObjectName getObjectName(final Metric metric) throws JMException {
+		final Hashtable<String, String> properties = new Hashtable<String, String>();
+		properties.put("type", metric.getType().name().toLowerCase());
+		properties.put("name", metric.getName());
+		for (Map.Entry<String, String> label : metric.getLabels().entrySet()) {
+			properties.put(label.getKey(), ObjectName.quote(label.getValue()));
+		}
+		return new ObjectName(JMX_DOMAIN, properties);
+	}
+
+	private static ImmutableSortedMap<String, String> toLabelMap(final String... labels) {
+		checkArgument(labels.length % 2 == 0, "Labels must be given as name/value pairs");
+		final ImmutableSortedMap.Builder<String, String> labelMap = ImmutableSortedMap.naturalOrder();
+		for (int i = 0; i < labels.length; i += 2) {
+			labelMap.put(labels[i], labels[i + 1]);
+		}
+		return labelMap.build();
+	}
+
+	static String getKey(final String name, final Map<String, String> labels) {
+		if (labels.isEmpty()) {
+			return name;
+		}
+		final StringBuilder key = new StringBuilder(name).append('{');
+		for (Map.Entry<String, String> label : labels.entrySet()) {
+			if (key.charAt(key.length() - 1) != '{') {
+				key.append(',');
+			}
+			key.append(label.getKey()).append("=\"").append(label.getValue()).append('"');
+		}
+		return key.append('}').toString();
+	}
+}
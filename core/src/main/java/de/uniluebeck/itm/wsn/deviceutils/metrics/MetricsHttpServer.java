@@ -0,0 +1,131 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.metrics;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics of a registry in the Prometheus text format at {@value #PATH} on the loopback interface.
+ */
+public class MetricsHttpServer implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+	/**
+	 * System property setting the loopback port the metrics are served on. They are not served if it isn't set or 0.
+	 */
+	public static final String PORT_PROPERTY = "wsn.deviceutils.metrics.port";
+
+	public static final String PATH = "/metrics";
+
+	private final HttpServer server;
+
+	private final ExecutorService executorService;
+
+	/**
+	 * Starts serving the metrics.
+	 *
+	 * @param port
+	 * 		the loopback port to listen on (0 for an arbitrary free port, see {@link #getPort()})
+	 */
+	public MetricsHttpServer(final MetricRegistry registry, final int port) throws IOException {
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				try {
+
+					final ByteArrayOutputStream body = new ByteArrayOutputStream();
+					PrometheusTextFormat.write(registry, new OutputStreamWriter(body, Charsets.UTF_8));
+
+					exchange.getResponseHeaders().set("Content-Type", PrometheusTextFormat.CONTENT_TYPE);
+					exchange.sendResponseHeaders(200, body.size());
+					final OutputStream responseBody = exchange.getResponseBody();
+					body.writeTo(responseBody);
+					responseBody.close();
+
+				} finally {
+					exchange.close();
+				}
+			}
+		}
+		);
+
+		executorService = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setNameFormat("MetricsHttpServer %d").setDaemon(true).build()
+		);
+		server.setExecutor(executorService);
+		server.start();
+
+		log.info("Serving metrics at http://localhost:{}{}", getPort(), PATH);
+	}
+
+	/**
+	 * Serves the metrics of the {@linkplain MetricRegistry#getDefault() default registry} on the port given by the
+	 * system property {@value #PORT_PROPERTY}.
+	 *
+	 * @return the server or {@code null} if no port is configured or the server could not be started
+	 */
+	@Nullable
+	public static MetricsHttpServer startIfConfigured() {
+		final int port = Integer.getInteger(PORT_PROPERTY, 0);
+		if (port <= 0) {
+			return null;
+		}
+		try {
+			return new MetricsHttpServer(MetricRegistry.getDefault(), port);
+		} catch (IOException e) {
+			log.warn("Could not serve metrics on port {}: {}", port, e.getMessage());
+			return null;
+		}
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executorService.shutdownNow();
+	}
+}
@@ -0,0 +1,141 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4). Latency histograms are written as summaries
+ * with a few quantiles, in seconds.
+ */
+public class PrometheusTextFormat {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private PrometheusTextFormat() {
+	}
+
+	public static void write(final MetricRegistry registry, final Writer writer) throws IOException {
+
+		String lastName = null;
+
+		// metrics are ordered by name, so all members of a family follow each other
+		for (Metric metric : registry.getMetrics()) {
+
+			if (!metric.getName().equals(lastName)) {
+				lastName = metric.getName();
+				writer.write("# HELP " + metric.getName() + " " + escapeHelp(metric.getHelp()) + "\n");
+				writer.write("# TYPE " + metric.getName() + " " + getTypeName(metric) + "\n");
+			}
+
+			switch (metric.getType()) {
+
+				case COUNTER:
+					writeSample(writer, metric.getName(), metric.getLabels(), null, ((Counter) metric).getCount());
+					break;
+
+				case GAUGE:
+					writeSample(writer, metric.getName(), metric.getLabels(), null, ((Gauge) metric).getValue());
+					break;
+
+				case HISTOGRAM:
+					final LatencyHistogram histogram = (LatencyHistogram) metric;
+					for (double quantile : QUANTILES) {
+						writeSample(writer, metric.getName(), metric.getLabels(), Double.toString(quantile),
+								histogram.getValueAtPercentile(quantile) / NANOS_PER_SECOND
+						);
+					}
+					writeSample(writer, metric.getName() + "_sum", metric.getLabels(), null,
+							histogram.getSumNanos() / NANOS_PER_SECOND
+					);
+					writeSample(writer, metric.getName() + "_count", metric.getLabels(), null, histogram.getCount());
+					break;
+			}
+		}
+
+		writer.flush();
+	}
+
+	private static String getTypeName(final Metric metric) {
+		switch (metric.getType()) {
+			case COUNTER:
+				return "counter";
+			case GAUGE:
+				return "gauge";
+			default:
+				return "summary";
+		}
+	}
+
+	private static void writeSample(final Writer writer, final String name, final Map<String, String> labels,
+									final String quantile, final double value) throws IOException {
+
+		writer.write(name);
+
+		if (!labels.isEmpty() || quantile != null) {
+			writer.write('{');
+			boolean first = true;
+			for (Map.Entry<String, String> label : labels.entrySet()) {
+				if (!first) {
+					writer.write(',');
+				}
+				first = false;
+				writer.write(label.getKey() + "=\"" + escapeLabelValue(label.getValue()) + "\"");
+			}
+			if (quantile != null) {
+				writer.write((first ? "" : ",") + "quantile=\"" + quantile + "\"");
+			}
+			writer.write('}');
+		}
+
+		writer.write(' ');
+		writer.write(formatValue(value));
+		writer.write('\n');
+	}
+
+	private static String formatValue(final double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		} else if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		} else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	private static String escapeHelp(final String help) {
+		return help.replace("\\", "\\\\").replace("\n", "\\n");
+	}
+
+	private static String escapeLabelValue(final String value) {
+		return escapeHelp(value).replace("\"", "\\\"");
+	}
+}
@@ -0,0 +1,172 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Counter;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Records the changes between successive device states as a log of versions. Every state that differs from its
+ * predecessor gets the next version number and the events leading to it are stored in a bounded history, so that
+ * listeners only need to remember the version they last saw and can replay the events since then instead of
+ * comparing complete states. Instances are thread-safe.
+ */
+class DeviceChangeLog {
+
+	private static final Counter[] EVENT_COUNTERS = new Counter[DeviceEvent.Type.values().length];
+
+	static {
+		for (DeviceEvent.Type type : DeviceEvent.Type.values()) {
+			EVENT_COUNTERS[type.ordinal()] = MetricRegistry.getDefault().counter(
+					"wsn_deviceutils_observer_events_total", "Device events determined by the device observer",
+					"event", type.name().toLowerCase()
+			);
+		}
+	}
+
+	private static class Entry {
+
+		private final long version;
+
+		private final ImmutableList<DeviceEvent> events;
+
+		private Entry(final long version, final ImmutableList<DeviceEvent> events) {
+			this.version = version;
+			this.events = events;
+		}
+	}
+
+	private final int capacity;
+
+	private final Deque<Entry> history = new ArrayDeque<Entry>();
+
+	private ImmutableMap<String, DeviceInfo> state = ImmutableMap.of();
+
+	private long version;
+
+	/**
+	 * @param capacity
+	 * 		the number of versions whose events are kept
+	 */
+	DeviceChangeLog(final int capacity) {
+		checkArgument(capacity > 0, "The capacity must be positive");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Compares {@code newState} with the state passed previously (an empty state initially) and adds a new version if
+	 * they differ.
+	 *
+	 * @return the version of {@code newState}
+	 */
+	synchronized long append(final ImmutableMap<String, DeviceInfo> newState) {
+
+		final ImmutableList<DeviceEvent> events = diff(state, newState);
+		state = newState;
+
+		for (DeviceEvent event : events) {
+			countEvent(event.getType());
+		}
+
+		if (events.isEmpty()) {
+			return version;
+		}
+
+		version++;
+		history.addLast(new Entry(version, events));
+		if (history.size() > capacity) {
+			history.removeFirst();
+		}
+
+		return version;
+	}
+
+	static void countEvent(final DeviceEvent.Type type) {
+		EVENT_COUNTERS[type.ordinal()].increment();
+	}
+
+	synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the events that happened after the given version, in the order they happened.
+	 *
+	 * @return the events or {@code null} if the version is too old to be kept in the history
+	 */
+	@Nullable
+	synchronized ImmutableList<DeviceEvent> getEventsSince(final long sinceVersion) {
+
+		if (sinceVersion >= version) {
+			return ImmutableList.of();
+		}
+
+		if (history.isEmpty() || history.getFirst().version > sinceVersion + 1) {
+			return null;
+		}
+
+		final ImmutableList.Builder<DeviceEvent> events = ImmutableList.builder();
+		for (Entry entry : history) {
+			if (entry.version > sinceVersion) {
+				events.addAll(entry.events);
+			}
+		}
+		return events.build();
+	}
+
+	/**
+	 * Derives the events leading from {@code lastState} to {@code currentState}: devices attached to ports that
+	 * weren't used before and devices removed from ports that are not used anymore.
+	 */
+	static ImmutableList<DeviceEvent> diff(@Nullable final Map<String, DeviceInfo> lastState,
+										   final Map<String, DeviceInfo> currentState) {
+
+		final ImmutableList.Builder<DeviceEvent> events = ImmutableList.builder();
+
+		for (DeviceInfo newInfo : currentState.values()) {
+			if (lastState == null || !lastState.containsKey(newInfo.getPort())) {
+				events.add(new DeviceEvent(DeviceEvent.Type.ATTACHED, newInfo));
+			}
+		}
+
+		if (lastState != null) {
+			for (DeviceInfo lastStateDevice : lastState.values()) {
+				if (!currentState.containsKey(lastStateDevice.getPort())) {
+					events.add(new DeviceEvent(DeviceEvent.Type.REMOVED, lastStateDevice));
+				}
+			}
+		}
+
+		return events.build();
+	}
+}
@@ -23,8 +23,17 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.observer;
 
+import java.io.IOException;
+import java.io.Reader;
+
 public interface DeviceCsvProvider {
 
 	public String getDeviceCsv();
 
+	/**
+	 * Opens the device CSV for reading while it is being produced. Closing the reader releases all resources used to
+	 * produce it.
+	 */
+	public Reader openDeviceCsv() throws IOException;
+
 }
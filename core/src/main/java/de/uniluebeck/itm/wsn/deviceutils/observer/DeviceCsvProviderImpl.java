@@ -23,7 +23,7 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.observer;
 
-import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
 import com.google.common.io.Closeables;
 import com.google.common.io.FileWriteMode;
 import com.google.common.io.Files;
@@ -32,8 +32,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 public class DeviceCsvProviderImpl implements DeviceCsvProvider {
 
@@ -41,12 +44,26 @@ public class DeviceCsvProviderImpl implements DeviceCsvProvider {
 
 	@Override
 	public String getDeviceCsv() {
+		try {
+			final Reader csv = openDeviceCsv();
+			try {
+				return CharStreams.toString(csv);
+			} finally {
+				csv.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public Reader openDeviceCsv() throws IOException {
 		if (SystemUtils.IS_OS_LINUX) {
-			return getCsv("devicelist-linux");
+			return openCsv("devicelist-linux");
 		} else if (SystemUtils.IS_OS_MAC_OSX) {
-			return getCsv("devicelist-macosx");
+			return openCsv("devicelist-macosx");
 		} else if (SystemUtils.IS_OS_WINDOWS_XP) {
-			return getCsv("devicelist-windowsxp.exe");
+			return openCsv("devicelist-windowsxp.exe");
 		}
 		throw new RuntimeException(
 				"OS " + SystemUtils.OS_NAME + " " + SystemUtils.OS_VERSION +
@@ -54,22 +71,34 @@ public class DeviceCsvProviderImpl implements DeviceCsvProvider {
 		);
 	}
 
-	private String getCsv(final String scriptName) {
+	private Reader openCsv(final String scriptName) throws IOException {
 
-		File tmpFile = copyScriptToTmpFile(scriptName);
+		final File tmpFile = copyScriptToTmpFile(scriptName);
 
+		final Process p;
 		try {
+			p = new ProcessBuilder(tmpFile.getAbsolutePath(), "-c").start();
+		} catch (IOException e) {
+			deleteScript(tmpFile);
+			throw e;
+		}
 
-			ProcessBuilder pb = new ProcessBuilder(tmpFile.getAbsolutePath(), "-c");
-			Process p = pb.start();
-			final String csv = new String(ByteStreams.toByteArray(p.getInputStream()));
-			if (!tmpFile.delete()) {
-				tmpFile.deleteOnExit();
+		return new FilterReader(new InputStreamReader(p.getInputStream())) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					p.destroy();
+					deleteScript(tmpFile);
+				}
 			}
-			return csv;
+		};
+	}
 
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+	private void deleteScript(final File tmpFile) {
+		if (!tmpFile.delete()) {
+			tmpFile.deleteOnExit();
 		}
 	}
 
@@ -26,8 +26,16 @@ package de.uniluebeck.itm.wsn.deviceutils.observer;
 public class DeviceEvent {
 
 	public static enum Type {
+
 		ATTACHED,
-		REMOVED
+
+		REMOVED,
+
+		/**
+		 * The MAC address of an already attached device was read after its {@link #ATTACHED} event had been
+		 * published.
+		 */
+		MAC_RESOLVED
 	}
 
 	private final Type type;
@@ -35,7 +35,7 @@ public class DeviceInfo {
 
 	String reference;
 
-	MacAddress macAddress;
+	volatile MacAddress macAddress;
 
 	public DeviceInfo(final String type, final String port, final String reference, final MacAddress macAddress) {
 
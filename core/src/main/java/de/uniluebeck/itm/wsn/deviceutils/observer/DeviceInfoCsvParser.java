@@ -23,10 +23,26 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.observer;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Map;
 
+/**
+ * Parses the CSV output of the devicelist scripts. Every row consists of the reference, the port and the type of a
+ * device. Fields may be quoted (with {@code ""} standing for a quote inside a quoted field).
+ */
 public interface DeviceInfoCsvParser {
 
-	Map<String, DeviceInfo> parseCsv(String csv);
+	Map<String, DeviceInfo> parseCsv(CharSequence csv);
+
+	/**
+	 * Parses the CSV while it is read, e.g. from the pipe of the devicelist process. The reader is not closed.
+	 */
+	Map<String, DeviceInfo> parseCsv(Reader csv) throws IOException;
+
+	/**
+	 * Returns the number of rows that were skipped so far because they didn't consist of exactly three fields.
+	 */
+	long getMalformedRowCount();
 
 }
@@ -23,58 +23,201 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.observer;
 
-import com.google.common.base.Splitter;
-import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.collect.Maps.newHashMap;
 
+/**
+ * Parses the CSV in a single pass, without splitting it into rows and fields first. Rows that don't consist of
+ * exactly three fields are logged, counted and skipped. As none of the fields may contain a line break, a line break
+ * also ends a quoted field, so that a stray quote only costs the row it appears in.
+ */
 public class DeviceInfoCsvParserImpl implements DeviceInfoCsvParser {
 
+	private static final Logger log = LoggerFactory.getLogger(DeviceInfoCsvParserImpl.class);
+
 	private static final int CSV_INDEX_PORT = 1;
 
 	private static final int CSV_INDEX_REFERENCE = 0;
 
 	private static final int CSV_INDEX_TYPE = 2;
 
-	private final Splitter rowSplitter = Splitter.on("\n").trimResults();
+	private static final int CSV_COLUMNS = 3;
 
-	private final Splitter colSplitter = Splitter.on(",").trimResults();
+	private static final int READ_BUFFER_SIZE = 1024;
 
-	@Override
-	public Map<String, DeviceInfo> parseCsv(final String csv) {
+	private final AtomicLong malformedRows = new AtomicLong();
 
-		final Iterable<String> rows = rowSplitter.split(csv);
-		final Map<String, DeviceInfo> newState = newHashMap();
+	@Override
+	public Map<String, DeviceInfo> parseCsv(final CharSequence csv) {
+		final RowParser parser = new RowParser();
+		for (int i = 0; i < csv.length(); i++) {
+			parser.accept(csv.charAt(i));
+		}
+		return parser.finish();
+	}
 
-		for (String row : rows) {
-			DeviceInfo info = parseRow(row);
-			if (info != null) {
-				newState.put(info.getPort(), info);
+	@Override
+	public Map<String, DeviceInfo> parseCsv(final Reader csv) throws IOException {
+		final RowParser parser = new RowParser();
+		final char[] buffer = new char[READ_BUFFER_SIZE];
+		int read;
+		while ((read = csv.read(buffer)) != -1) {
+			for (int i = 0; i < read; i++) {
+				parser.accept(buffer[i]);
 			}
 		}
+		return parser.finish();
+	}
 
-		return newState;
+	@Override
+	public long getMalformedRowCount() {
+		return malformedRows.get();
 	}
 
-	private DeviceInfo parseRow(final String row) {
+	private enum State {
+		UNQUOTED, QUOTED, QUOTE_IN_QUOTED
+	}
+
+	/**
+	 * Collects the fields of the current row, reusing one buffer for all of them.
+	 */
+	private class RowParser {
+
+		private final Map<String, DeviceInfo> devices = newHashMap();
 
-		if ("".equals(row)) {
-			return null;
+		private final StringBuilder field = new StringBuilder();
+
+		private final String[] columns = new String[CSV_COLUMNS];
+
+		private int column;
+
+		private int row;
+
+		private boolean quoted;
+
+		private State state = State.UNQUOTED;
+
+		private void accept(final char c) {
+
+			switch (state) {
+
+				case QUOTED:
+					if (c == '"') {
+						state = State.QUOTE_IN_QUOTED;
+					} else if (c == '\n') {
+						skipRow();
+					} else {
+						field.append(c);
+					}
+					return;
+
+				case QUOTE_IN_QUOTED:
+					if (c == '"') {
+						field.append(c);
+						state = State.QUOTED;
+						return;
+					}
+					state = State.UNQUOTED;
+					// the quoted part of the field ended, handle c as unquoted character
+					break;
+
+				default:
+					break;
+			}
+
+			if (c == ',') {
+				endField();
+			} else if (c == '\n') {
+				endField();
+				endRow();
+			} else if (c == '"' && isBlank(field)) {
+				field.setLength(0);
+				quoted = true;
+				state = State.QUOTED;
+			} else if (c != '\r') {
+				field.append(c);
+			}
 		}
 
-		final List<String> columns = Lists.newArrayList(colSplitter.split(row));
-		if (columns.size() != 3) {
-			throw new RuntimeException("Every row in the CSV file must have at least and at most three columns!");
+		private Map<String, DeviceInfo> finish() {
+			if (state == State.QUOTED) {
+				log.warn("Skipping row {} of device CSV as a quoted field is not terminated", row + 1);
+				malformedRows.incrementAndGet();
+			} else if (column > 0 || field.length() > 0 || quoted) {
+				endField();
+				endRow();
+			}
+			return devices;
 		}
 
-		return new DeviceInfo(
-				columns.get(CSV_INDEX_TYPE), columns.get(CSV_INDEX_PORT),
-				columns.get(CSV_INDEX_REFERENCE),
-				null
-		);
+		private void skipRow() {
+
+			row++;
+			log.warn("Skipping row {} of device CSV as a quoted field is not terminated", row);
+			malformedRows.incrementAndGet();
+
+			column = 0;
+			field.setLength(0);
+			quoted = false;
+			state = State.UNQUOTED;
+		}
+
+		private void endField() {
+			if (column < CSV_COLUMNS) {
+				columns[column] = quoted ? field.toString() : trim(field);
+			}
+			column++;
+			field.setLength(0);
+			quoted = false;
+		}
+
+		private void endRow() {
+
+			row++;
+
+			final boolean blank = column == 1 && columns[0].isEmpty();
+			if (!blank && column != CSV_COLUMNS) {
+				log.warn("Skipping row {} of device CSV as it has {} instead of {} fields", row, column, CSV_COLUMNS);
+				malformedRows.incrementAndGet();
+			} else if (!blank) {
+				final DeviceInfo info = new DeviceInfo(
+						columns[CSV_INDEX_TYPE], columns[CSV_INDEX_PORT],
+						columns[CSV_INDEX_REFERENCE],
+						null
+				);
+				devices.put(info.getPort(), info);
+			}
+
+			column = 0;
+		}
+	}
+
+	private static boolean isBlank(final CharSequence chars) {
+		for (int i = 0; i < chars.length(); i++) {
+			if (!Character.isWhitespace(chars.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String trim(final StringBuilder chars) {
+		int start = 0;
+		int end = chars.length();
+		while (start < end && Character.isWhitespace(chars.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(chars.charAt(end - 1))) {
+			end--;
+		}
+		return chars.substring(start, end);
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,168 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * <p>
+ * Watches the device directory (usually {@code /dev}) for serial device nodes appearing or vanishing and triggers a
+ * run of the {@link DeviceObserver} whenever that happens. This way attach and detach events are detected within
+ * milliseconds instead of waiting for the next poll.
+ * </p>
+ * <p>
+ * Only the device directory is watched: sysfs does not deliver inotify events, but udev creates the device node only
+ * after the USB device is fully registered in sysfs, so a rescan triggered by the device node sees the new device.
+ * Fixed-rate polling should be kept as a fallback (e.g., with a longer interval) in case events get lost.
+ * </p>
+ * <p>
+ * The observer is run using {@code rescanExecutor} which should be the executor that also runs the regular polls so
+ * that all runs of the (not thread-safe) observer are serialized.
+ * </p>
+ */
+public class DeviceNodeWatcher implements Runnable, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceNodeWatcher.class);
+
+	public static final Pattern DEFAULT_DEVICE_NODE_PATTERN = Pattern.compile("ttyUSB\\d+|ttyACM\\d+");
+
+	/**
+	 * Time to wait for further events after the first one so that e.g. a hub with many devices being plugged in only
+	 * causes one rescan.
+	 */
+	private static final long COALESCE_MILLIS = 20;
+
+	private final DeviceObserver deviceObserver;
+
+	private final Executor rescanExecutor;
+
+	private final File devDir;
+
+	private final Pattern deviceNodePattern;
+
+	private final WatchService watchService;
+
+	public DeviceNodeWatcher(final DeviceObserver deviceObserver, final Executor rescanExecutor) throws IOException {
+		this(deviceObserver, rescanExecutor, new File("/dev"), DEFAULT_DEVICE_NODE_PATTERN);
+	}
+
+	public DeviceNodeWatcher(final DeviceObserver deviceObserver,
+							 final Executor rescanExecutor,
+							 final File devDir,
+							 final Pattern deviceNodePattern) throws IOException {
+
+		this.deviceObserver = checkNotNull(deviceObserver);
+		this.rescanExecutor = checkNotNull(rescanExecutor);
+		this.devDir = checkNotNull(devDir);
+		this.deviceNodePattern = checkNotNull(deviceNodePattern);
+
+		this.watchService = FileSystems.getDefault().newWatchService();
+		try {
+			devDir.toPath().register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+		} catch (IOException e) {
+			watchService.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void run() {
+
+		log.debug("Watching {} for device nodes matching {}", devDir, deviceNodePattern);
+
+		try {
+
+			while (!Thread.currentThread().isInterrupted()) {
+
+				WatchKey key = watchService.take();
+				boolean deviceNodeChanged = false;
+
+				while (key != null) {
+
+					deviceNodeChanged |= containsDeviceNodeEvent(key);
+
+					if (!key.reset()) {
+						log.warn("{} can no longer be watched, stopping to watch for device nodes", devDir);
+						return;
+					}
+
+					key = watchService.poll(COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+				}
+
+				if (deviceNodeChanged) {
+					log.trace("Device nodes in {} changed, triggering rescan", devDir);
+					rescanExecutor.execute(deviceObserver);
+				}
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			log.trace("Watch service closed");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+	private boolean containsDeviceNodeEvent(final WatchKey key) {
+
+		boolean result = false;
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+
+			if (event.kind() == OVERFLOW) {
+				result = true;
+			} else {
+				final Path fileName = ((Path) event.context()).getFileName();
+				if (deviceNodePattern.matcher(fileName.toString()).matches()) {
+					result = true;
+				}
+			}
+		}
+
+		return result;
+	}
+}
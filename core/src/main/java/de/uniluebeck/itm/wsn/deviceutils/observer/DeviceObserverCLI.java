@@ -30,6 +30,7 @@ import de.uniluebeck.itm.util.logging.LogLevel;
 import de.uniluebeck.itm.util.logging.Logging;
 import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
 import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReferenceMap;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricsHttpServer;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -56,6 +57,10 @@ public class DeviceObserverCLI {
 
 	private static final int EXIT_CODE_REFERENCE_FILE_IS_DIRECTORY = 4;
 
+	private static final int POLLING_INTERVAL_SECONDS = 1;
+
+	private static final int FALLBACK_POLLING_INTERVAL_SECONDS = 30;
+
 	public static void main(String[] args) throws IOException {
 
 		Logging.setRootLogLevel(LogLevel.WARN);
@@ -65,6 +70,7 @@ public class DeviceObserverCLI {
 		Options options = createCommandLineOptions();
 
 		DeviceMacReferenceMap deviceMacReferenceMap = null;
+		boolean watchDeviceNodes = false;
 
 		try {
 
@@ -88,14 +94,15 @@ public class DeviceObserverCLI {
 				deviceMacReferenceMap = readDeviceMacReferenceMap(line.getOptionValue('r'));
 			}
 
+			watchDeviceNodes = line.hasOption('w');
+
 		} catch (Exception e) {
 			log.error("Invalid command line: " + e);
 			printUsageAndExit(DeviceObserverCLI.class, options, 1);
 		}
 
-		final ExecutorService executorService = Executors.newCachedThreadPool(
-				new ThreadFactoryBuilder().setNameFormat("DeviceObserver %d").build()
-		);
+		MetricsHttpServer.startIfConfigured();
+		final ExecutorService executorService = DeviceUtilsModule.createExecutorService("DeviceObserver");
 		
 		final DeviceObserver deviceObserver = Guice
 				.createInjector(new DeviceUtilsModule(executorService, deviceMacReferenceMap))
@@ -110,7 +117,24 @@ public class DeviceObserverCLI {
 
 		final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("DeviceObserverScheduler %d").build();
 		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, threadFactory);
-		scheduler.scheduleAtFixedRate(deviceObserver, 0, 1, TimeUnit.SECONDS);
+
+		int pollingIntervalSeconds = POLLING_INTERVAL_SECONDS;
+
+		if (watchDeviceNodes) {
+			try {
+
+				final DeviceNodeWatcher watcher = new DeviceNodeWatcher(deviceObserver, scheduler);
+				Executors.newSingleThreadExecutor(
+						new ThreadFactoryBuilder().setNameFormat("DeviceNodeWatcher %d").build()
+				).execute(watcher);
+				pollingIntervalSeconds = FALLBACK_POLLING_INTERVAL_SECONDS;
+
+			} catch (IOException e) {
+				log.warn("Could not watch for device nodes, falling back to polling: {}", e.getMessage());
+			}
+		}
+
+		scheduler.scheduleAtFixedRate(deviceObserver, 0, pollingIntervalSeconds, TimeUnit.SECONDS);
 	}
 
 	private static DeviceMacReferenceMap readDeviceMacReferenceMap(final String fileName) throws IOException {
@@ -150,6 +174,10 @@ public class DeviceObserverCLI {
 		options.addOption("r", "referencetomacmap", true,
 				"Optional: a properties file containing device references to MAC address mappings"
 		);
+		options.addOption("w", "watch", false,
+				"Optional: detect devices as soon as their device nodes appear or vanish in /dev instead of polling "
+						+ "every second (still polls every " + FALLBACK_POLLING_INTERVAL_SECONDS + " seconds as a fallback)"
+		);
 		options.addOption("v", "verbose", false, "Optional: verbose logging output (equal to -l DEBUG)");
 		options.addOption("l", "logging", true,
 				"Optional: set logging level (one of [" + Joiner.on(", ").join(Logging.LOG_LEVELS) + "])"
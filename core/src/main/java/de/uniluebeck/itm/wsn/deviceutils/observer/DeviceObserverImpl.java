@@ -23,24 +23,52 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.observer;
 
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.LatencyHistogram;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Span;
+import de.uniluebeck.itm.wsn.deviceutils.tracing.Tracer;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
 
 class DeviceObserverImpl implements DeviceObserver {
 
 	private static final Logger log = LoggerFactory.getLogger(DeviceObserver.class);
 
+	private static final LatencyHistogram scanDuration = MetricRegistry.getDefault().histogram(
+			"wsn_deviceutils_observer_scan_seconds", "Time taken to determine the attached devices"
+	);
+
+	private static final AtomicInteger attachedDevices = new AtomicInteger();
+
+	static {
+		MetricRegistry.getDefault().gauge(
+				"wsn_deviceutils_observer_devices", "Number of attached devices found by the last scan",
+				new Supplier<Integer>() {
+					@Override
+					public Integer get() {
+						return attachedDevices.get();
+					}
+				}
+		);
+	}
+
 	@Inject
 	private DeviceObserverListenerManager listenerManager;
 
@@ -48,16 +76,41 @@ class DeviceObserverImpl implements DeviceObserver {
 	private DeviceMacReader macReader;
 
 	@Inject
-	private DeviceCsvProvider csvProvider;
+	private DeviceInfoProvider deviceInfoProvider;
 
-	@Inject
-	private DeviceInfoCsvParser csvParser;
+	/**
+	 * The maximum number of MAC addresses that are read concurrently.
+	 */
+	@Inject(optional = true)
+	@Named("macReadParallelism")
+	private Integer macReadParallelism = 8;
 
-	private ImmutableMap<String, DeviceInfo> currentState = ImmutableMap.of();
+	/**
+	 * The maximum time reading the MAC address of a single device may take.
+	 */
+	@Inject(optional = true)
+	@Named("macReadDeadlineMillis")
+	private Long macReadDeadlineMillis = 60000L;
+
+	/**
+	 * The number of state changes listeners can fall behind before they are compared with the current state as a
+	 * whole instead of replaying the changes.
+	 */
+	@Inject(optional = true)
+	@Named("deviceChangeLogCapacity")
+	private Integer changeLogCapacity = 64;
+
+	private final Object notificationLock = new Object();
+
+	private MacAddressResolver macAddressResolver;
+
+	private DeviceChangeLog changeLog;
+
+	private volatile ImmutableMap<String, DeviceInfo> currentState = ImmutableMap.of();
 
 	@Override
 	public ImmutableList<DeviceEvent> getEvents(final ImmutableMap<String, DeviceInfo> lastState) {
-		return deriveEvents(lastState, currentState);
+		return DeviceChangeLog.diff(lastState, currentState);
 	}
 
 	@Override
@@ -68,30 +121,62 @@ class DeviceObserverImpl implements DeviceObserver {
 	@Override
 	public ImmutableMap<String, DeviceInfo> updateState(boolean readMacAddress) {
 
-		final ImmutableMap<String, DeviceInfo> oldState = currentState;
-		currentState = ImmutableMap.copyOf(csvParser.parseCsv(csvProvider.getDeviceCsv()));
+		final long start = System.nanoTime();
+		final Span span = Tracer.getDefault().begin("observer", "update state").arg("readMacAddress", readMacAddress);
+		try {
 
-		if (readMacAddress) {
+			final ImmutableMap<String, DeviceInfo> newState;
+			final Span scanSpan = Tracer.getDefault().begin("observer", "get device infos");
+			try {
+				newState = ImmutableMap.copyOf(deviceInfoProvider.getDeviceInfos());
+			} finally {
+				scanSpan.end();
+			}
+			span.arg("devices", newState.size());
+			copyKnownMacAddresses(currentState, newState);
 
-			for (Map.Entry<String, DeviceInfo> currentStateEntry : currentState.entrySet()) {
+			if (readMacAddress) {
 
-				if (oldState.containsKey(currentStateEntry.getKey())) {
+				final Span readSpan = Tracer.getDefault().begin("observer", "read MAC addresses");
 
-					DeviceInfo oldDeviceInfo = oldState.get(currentStateEntry.getKey());
-					DeviceInfo newDeviceInfo = currentStateEntry.getValue();
+				final Map<DeviceInfo, ListenableFuture<MacAddress>> reads = newHashMap();
+				for (DeviceInfo deviceInfo : newState.values()) {
+					if (deviceInfo.getMacAddress() == null) {
+						reads.put(deviceInfo, getMacAddressResolver().resolve(deviceInfo));
+					}
+				}
 
-					if (oldDeviceInfo.getMacAddress() != null) {
-						newDeviceInfo.macAddress = oldDeviceInfo.macAddress;
-					} else {
-						tryToEnrichWithMacAddress(newDeviceInfo);
+				for (Map.Entry<DeviceInfo, ListenableFuture<MacAddress>> read : reads.entrySet()) {
+					try {
+						final MacAddress macAddress = read.getValue().get();
+						if (macAddress != null) {
+							read.getKey().macAddress = macAddress;
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					} catch (Exception e) {
+						log.warn("Exception while trying to read MAC address from device: ", e);
 					}
-				} else {
-					tryToEnrichWithMacAddress(currentStateEntry.getValue());
 				}
+
+				readSpan.arg("reads", reads.size()).end();
 			}
-		}
 
-		return oldState;
+			synchronized (notificationLock) {
+				// MAC addresses might have been resolved in the background in the meantime
+				final ImmutableMap<String, DeviceInfo> oldState = currentState;
+				copyKnownMacAddresses(oldState, newState);
+				currentState = newState;
+				getChangeLog().append(newState);
+				scanDuration.recordSince(start);
+				attachedDevices.set(newState.size());
+				return oldState;
+			}
+
+		} finally {
+			span.end();
+		}
 	}
 
 	@Override
@@ -99,6 +184,20 @@ class DeviceObserverImpl implements DeviceObserver {
 		return currentState;
 	}
 
+	/**
+	 * Updates the current state and notifies all listeners about attached and removed devices immediately. The MAC
+	 * addresses of new devices are read in the background afterwards and listeners are notified with an event of type
+	 * {@link DeviceEvent.Type#MAC_RESOLVED} for every MAC address that could be determined.
+	 * <p/>
+	 * The changes are determined once per update and recorded in a {@link DeviceChangeLog}. Listeners are notified by
+	 * replaying the changes since the version they saw last. Only listeners that are new or fell behind further than
+	 * the change log reaches are compared with the current state as a whole. Listeners whose events were dropped
+	 * because they can't keep up are notified again from the version they saw last.
+	 * <p/>
+	 * Events are only queued here and delivered to every listener on a thread of its own (see {@link
+	 * DeviceObserverListenerManager#notifyListener(DeviceObserverListener, DeviceEvent)}), so that slow listeners
+	 * don't delay the next update.
+	 */
 	@Override
 	public void run() {
 
@@ -106,18 +205,41 @@ class DeviceObserverImpl implements DeviceObserver {
 			return;
 		}
 
-		updateState();
+		final ImmutableMap<String, DeviceInfo> state;
+
+		synchronized (notificationLock) {
+
+			updateState(false);
+			state = currentState;
+			final long version = getChangeLog().getVersion();
+
+			for (DeviceObserverListener listener : listenerManager.getListeners()) {
 
-		for (DeviceObserverListener listener : listenerManager.getListeners()) {
+				final long listenerLastVersion = listenerManager.getLastVersion(listener);
+				ImmutableList<DeviceEvent> events = listenerLastVersion == DeviceObserverListenerManager.NOT_NOTIFIED ?
+						null :
+						getChangeLog().getEventsSince(listenerLastVersion);
 
-			final ImmutableMap<String, DeviceInfo> listenerLastState = listenerManager.getLastState(listener);
-			final ImmutableList<DeviceEvent> events = deriveEvents(listenerLastState, currentState);
+				if (events == null) {
+					events = DeviceChangeLog.diff(listenerManager.getLastState(listener), state);
+				}
+
+				boolean dropped = false;
+				for (DeviceEvent event : events) {
+					dropped |= !listenerManager.notifyListener(listener, event);
+				}
 
-			for (DeviceEvent event : events) {
-				notifyListener(listener, event);
+				// a listener that missed events keeps its last state, so that it gets them again with the next update
+				if (!dropped) {
+					listenerManager.updateLastState(listener, version, state);
+				}
 			}
+		}
 
-			listenerManager.updateLastState(listener, currentState);
+		for (DeviceInfo deviceInfo : state.values()) {
+			if (deviceInfo.getMacAddress() == null) {
+				resolveMacAddressInBackground(deviceInfo);
+			}
 		}
 	}
 
@@ -131,67 +253,82 @@ class DeviceObserverImpl implements DeviceObserver {
 		listenerManager.removeListener(listener);
 	}
 
-	private ImmutableList<DeviceEvent> deriveEvents(final Map<String, DeviceInfo> lastState,
-													final Map<String, DeviceInfo> currentState) {
+	private void resolveMacAddressInBackground(final DeviceInfo deviceInfo) {
 
-		final ImmutableList.Builder<DeviceEvent> resultBuilder = ImmutableList.builder();
+		final ListenableFuture<MacAddress> read = getMacAddressResolver().resolve(deviceInfo);
 
-		resultBuilder.addAll(deriveAttachedEvents(lastState, currentState));
-		resultBuilder.addAll(deriveRemovedEvents(lastState, currentState));
+		Futures.addCallback(read, new FutureCallback<MacAddress>() {
+			@Override
+			public void onSuccess(final MacAddress macAddress) {
 
-		return resultBuilder.build();
-	}
+				if (macAddress == null) {
+					return;
+				}
 
-	private List<DeviceEvent> deriveAttachedEvents(final Map<String, DeviceInfo> lastState,
-												   final Map<String, DeviceInfo> currentState) {
+				synchronized (notificationLock) {
 
-		List<DeviceEvent> events = Lists.newArrayList();
+					// the state might have been updated while the MAC address was read, so the current instance for
+					// this device has to be enriched (unless the device was removed or replaced in the meantime)
+					final DeviceInfo current = currentState.get(deviceInfo.getPort());
+					if (current == null || current.getMacAddress() != null || !isSameDevice(deviceInfo, current)) {
+						return;
+					}
 
-		for (DeviceInfo newInfo : currentState.values()) {
+					current.macAddress = macAddress;
+					DeviceChangeLog.countEvent(DeviceEvent.Type.MAC_RESOLVED);
 
-			if (lastState == null || !lastState.containsKey(newInfo.getPort())) {
-				events.add(new DeviceEvent(DeviceEvent.Type.ATTACHED, newInfo));
+					final DeviceEvent event = new DeviceEvent(DeviceEvent.Type.MAC_RESOLVED, current);
+					for (DeviceObserverListener listener : listenerManager.getListeners()) {
+						// listeners that were not yet told about the device will get it with its MAC address later on
+						final ImmutableMap<String, DeviceInfo> listenerLastState = listenerManager.getLastState(listener);
+						if (listenerLastState != null && listenerLastState.containsKey(current.getPort())) {
+							listenerManager.notifyListener(listener, event);
+						}
+					}
+				}
 			}
-		}
 
-		return events;
-	}
-
-	private void tryToEnrichWithMacAddress(final DeviceInfo deviceInfo) {
-		try {
-			final MacAddress macAddress = macReader.readMac(deviceInfo.port, deviceInfo.type, null, deviceInfo.reference);
-			if (macAddress != null) {
-				deviceInfo.macAddress = macAddress;
+			@Override
+			public void onFailure(final Throwable t) {
+				if (t instanceof CancellationException) {
+					log.warn("Reading MAC address from device at port {} timed out after {} ms",
+							deviceInfo.getPort(), macReadDeadlineMillis
+					);
+				} else {
+					log.warn("Exception while trying to read MAC address from device: ", t);
+				}
 			}
-		} catch (Exception e) {
-			log.warn("Exception while trying to read MAC address from device: ", e);
 		}
+		);
 	}
 
-	private List<DeviceEvent> deriveRemovedEvents(final Map<String, DeviceInfo> lastState,
-												  final Map<String, DeviceInfo> currentState) {
-
-		if (lastState == null) {
-			return newArrayList();
+	private static void copyKnownMacAddresses(final Map<String, DeviceInfo> oldState,
+											  final Map<String, DeviceInfo> newState) {
+		for (DeviceInfo newDeviceInfo : newState.values()) {
+			final DeviceInfo oldDeviceInfo = oldState.get(newDeviceInfo.getPort());
+			final boolean macAddressUnknown = newDeviceInfo.getMacAddress() == null;
+			if (macAddressUnknown && oldDeviceInfo != null && isSameDevice(oldDeviceInfo, newDeviceInfo)) {
+				newDeviceInfo.macAddress = oldDeviceInfo.getMacAddress();
+			}
 		}
+	}
 
-		List<DeviceEvent> events = Lists.newArrayList();
-
-		for (DeviceInfo lastStateDevice : lastState.values()) {
+	private static boolean isSameDevice(final DeviceInfo deviceInfo, final DeviceInfo other) {
+		return deviceInfo.getPort().equals(other.getPort())
+				&& Objects.equal(deviceInfo.getReference(), other.getReference());
+	}
 
-			if (!currentState.containsKey(lastStateDevice.getPort())) {
-				events.add(new DeviceEvent(DeviceEvent.Type.REMOVED, lastStateDevice));
-			}
+	private synchronized DeviceChangeLog getChangeLog() {
+		if (changeLog == null) {
+			changeLog = new DeviceChangeLog(changeLogCapacity);
 		}
-
-		return events;
+		return changeLog;
 	}
 
-	private void notifyListener(final DeviceObserverListener listener, final DeviceEvent event) {
-		try {
-			listener.deviceEvent(event);
-		} catch (Exception e) {
-			log.warn("Exception occurred while notifying {} listener: {}", listener, e);
+	private synchronized MacAddressResolver getMacAddressResolver() {
+		if (macAddressResolver == null) {
+			macAddressResolver = new MacAddressResolver(macReader, macReadParallelism, macReadDeadlineMillis);
 		}
+		return macAddressResolver;
 	}
 }
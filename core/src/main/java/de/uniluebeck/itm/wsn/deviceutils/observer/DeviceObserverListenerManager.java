@@ -6,10 +6,38 @@ import de.uniluebeck.itm.util.Listenable;
 
 public interface DeviceObserverListenerManager extends Listenable<DeviceObserverListener> {
 
+	long NOT_NOTIFIED = -1;
+
+	/**
+	 * Returns the state the listener was last notified about or {@code null} if it was not yet notified.
+	 */
 	ImmutableMap<String, DeviceInfo> getLastState(DeviceObserverListener listener);
 
-	void updateLastState(DeviceObserverListener listener, ImmutableMap<String, DeviceInfo> newState);
+	/**
+	 * Returns the version of the state the listener was last notified about or {@link #NOT_NOTIFIED} if it was not yet
+	 * notified.
+	 */
+	long getLastVersion(DeviceObserverListener listener);
+
+	/**
+	 * Remembers the state the listener was notified about. The state is not copied, so that listeners notified about
+	 * the same state share one instance.
+	 */
+	void updateLastState(DeviceObserverListener listener, long version, ImmutableMap<String, DeviceInfo> newState);
 
 	ImmutableList<DeviceObserverListener> getListeners();
 
+	/**
+	 * Queues the event for delivery to the listener. Events are delivered asynchronously, in the order they were
+	 * queued.
+	 *
+	 * @return {@code false} if the event was dropped because the listener can't keep up
+	 */
+	boolean notifyListener(DeviceObserverListener listener, DeviceEvent event);
+
+	/**
+	 * Returns the statistics of delivering events to the listener.
+	 */
+	ListenerStatistics getStatistics(DeviceObserverListener listener);
+
 }
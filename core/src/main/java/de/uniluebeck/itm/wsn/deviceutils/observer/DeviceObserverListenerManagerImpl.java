@@ -2,78 +2,108 @@ package de.uniluebeck.itm.wsn.deviceutils.observer;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-import static com.google.common.collect.Maps.newHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Keeps the registered listeners in a concurrent map, so that registering listeners and notifying them don't contend
+ * for a lock. Every listener gets a {@link ListenerDispatcher} that delivers its events on a thread of its own.
+ */
 public class DeviceObserverListenerManagerImpl implements DeviceObserverListenerManager {
 
-	private final Lock listenerMapLock = new ReentrantLock();
+	private static class LastState {
+
+		private final long version;
+
+		private final ImmutableMap<String, DeviceInfo> state;
+
+		private LastState(final long version, final ImmutableMap<String, DeviceInfo> state) {
+			this.version = version;
+			this.state = state;
+		}
+	}
+
+	private static class Registration {
+
+		private final ListenerDispatcher dispatcher;
 
-	private Map<DeviceObserverListener, ImmutableMap<String, DeviceInfo>> listenerMap = newHashMap();
+		private volatile LastState lastState = NOT_NOTIFIED_STATE;
+
+		private Registration(final ListenerDispatcher dispatcher) {
+			this.dispatcher = dispatcher;
+		}
+	}
+
+	private static final LastState NOT_NOTIFIED_STATE = new LastState(NOT_NOTIFIED, null);
+
+	/**
+	 * The maximum number of events queued for a single listener before further events are dropped.
+	 */
+	@Inject(optional = true)
+	@Named("listenerQueueCapacity")
+	private Integer listenerQueueCapacity = 1024;
+
+	private final ConcurrentMap<DeviceObserverListener, Registration> listenerMap =
+			new ConcurrentHashMap<DeviceObserverListener, Registration>();
 
 	@Override
 	public ImmutableMap<String, DeviceInfo> getLastState(final DeviceObserverListener listener) {
-		listenerMapLock.lock();
-		try {
-			if (!listenerMap.containsKey(listener)) {
-				throw new IllegalArgumentException("The listener instance " + listener + " is not registered!");
-			}
-			return listenerMap.get(listener);
-		} finally {
-			listenerMapLock.unlock();
-		}
+		return getRegistration(listener).lastState.state;
 	}
 
 	@Override
-	public void updateLastState(final DeviceObserverListener listener,
+	public long getLastVersion(final DeviceObserverListener listener) {
+		return getRegistration(listener).lastState.version;
+	}
+
+	@Override
+	public void updateLastState(final DeviceObserverListener listener, final long version,
 								final ImmutableMap<String, DeviceInfo> newState) {
-		listenerMapLock.lock();
-		try {
-			if (!listenerMap.containsKey(listener)) {
-				throw new IllegalArgumentException("The listener instance " + listener + " was not yet registered!");
-			}
-			listenerMap.put(listener, newState);
-		} finally {
-			listenerMapLock.unlock();
-		}
+		getRegistration(listener).lastState = new LastState(version, newState);
 	}
 
 	@Override
 	public ImmutableList<DeviceObserverListener> getListeners() {
-		ImmutableList.Builder<DeviceObserverListener> builder = ImmutableList.builder();
-		listenerMapLock.lock();
-		try {
-			builder.addAll(listenerMap.keySet());
-		} finally {
-			listenerMapLock.unlock();
-		}
-		return builder.build();
+		return ImmutableList.copyOf(listenerMap.keySet());
+	}
+
+	@Override
+	public boolean notifyListener(final DeviceObserverListener listener, final DeviceEvent event) {
+		final Registration registration = listenerMap.get(listener);
+		// the listener might have been removed concurrently
+		return registration == null || registration.dispatcher.dispatch(event);
+	}
+
+	@Override
+	public ListenerStatistics getStatistics(final DeviceObserverListener listener) {
+		return getRegistration(listener).dispatcher.getStatistics();
 	}
 
 	@Override
 	public void addListener(final DeviceObserverListener listener) {
-		listenerMapLock.lock();
-		try {
-			if (listenerMap.containsKey(listener)) {
-				throw new IllegalArgumentException("The listener instance " + listener + " is already registered!");
-			}
-			listenerMap.put(listener, null);
-		} finally {
-			listenerMapLock.unlock();
+		final Registration registration = new Registration(new ListenerDispatcher(listener, listenerQueueCapacity));
+		if (listenerMap.putIfAbsent(listener, registration) != null) {
+			registration.dispatcher.shutdown();
+			throw new IllegalArgumentException("The listener instance " + listener + " is already registered!");
 		}
 	}
 
 	@Override
 	public void removeListener(final DeviceObserverListener listener) {
-		listenerMapLock.lock();
-		try {
-			listenerMap.remove(listener);
-		} finally {
-			listenerMapLock.unlock();
+		final Registration registration = listenerMap.remove(listener);
+		if (registration != null) {
+			registration.dispatcher.shutdown();
+		}
+	}
+
+	private Registration getRegistration(final DeviceObserverListener listener) {
+		final Registration registration = listenerMap.get(listener);
+		if (registration == null) {
+			throw new IllegalArgumentException("The listener instance " + listener + " is not registered!");
 		}
+		return registration;
 	}
 }
@@ -25,6 +25,7 @@ package de.uniluebeck.itm.wsn.deviceutils.observer;
 
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import org.apache.commons.lang.SystemUtils;
 
 public class DeviceObserverModule implements Module {
 
@@ -32,6 +33,13 @@ public class DeviceObserverModule implements Module {
 	public void configure(final Binder binder) {
 		binder.bind(DeviceInfoCsvParser.class).to(DeviceInfoCsvParserImpl.class);
 		binder.bind(DeviceCsvProvider.class).to(DeviceCsvProviderImpl.class);
+
+		if (SystemUtils.IS_OS_LINUX && new SysfsDeviceInfoProvider().isAvailable()) {
+			binder.bind(DeviceInfoProvider.class).to(SysfsDeviceInfoProvider.class);
+		} else {
+			binder.bind(DeviceInfoProvider.class).to(CsvDeviceInfoProvider.class);
+		}
+
 		binder.bind(DeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
 		binder.bind(DeviceObserver.class).to(DeviceObserverImpl.class);
 	}
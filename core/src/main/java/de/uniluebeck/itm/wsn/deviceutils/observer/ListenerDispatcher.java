@@ -0,0 +1,191 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Counter;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Gauge;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.LatencyHistogram;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers events to a single listener on a thread of its own, so that a slow listener neither delays other listeners
+ * nor the observer. Events are delivered in the order they were queued. If the listener can't keep up and the
+ * bounded queue is full, further events are dropped (and counted) until there is room again, which is reported to the
+ * caller. The thread terminates when the listener was idle for a while and is started again with the next event.
+ * <p/>
+ * The delivery statistics are also exposed through the {@link MetricRegistry}, labelled with the class name of the
+ * listener.
+ */
+class ListenerDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(ListenerDispatcher.class);
+
+	private static final long IDLE_TIMEOUT_SECONDS = 60;
+
+	private final DeviceObserverListener listener;
+
+	private final ThreadPoolExecutor executor;
+
+	private final AtomicLong deliveredEvents = new AtomicLong();
+
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	private final Counter deliveredCounter;
+
+	private final Counter droppedCounter;
+
+	private final LatencyHistogram latencyHistogram;
+
+	private final Gauge queuedGauge;
+
+	/**
+	 * Set while events are being dropped, so that every episode of dropped events is logged once.
+	 */
+	private volatile boolean dropping;
+
+	ListenerDispatcher(final DeviceObserverListener listener, final int queueCapacity) {
+
+		this.listener = listener;
+		this.executor = new ThreadPoolExecutor(1, 1, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new ThreadFactoryBuilder().setNameFormat("DeviceObserverListener %d").setDaemon(true).build()
+		);
+		this.executor.allowCoreThreadTimeOut(true);
+
+		final String listenerName = getListenerName(listener);
+		final MetricRegistry metricRegistry = MetricRegistry.getDefault();
+		this.deliveredCounter = metricRegistry.counter(
+				"wsn_deviceutils_observer_listener_events_total", "Events delivered to observer listeners",
+				"listener", listenerName
+		);
+		this.droppedCounter = metricRegistry.counter(
+				"wsn_deviceutils_observer_listener_dropped_events_total",
+				"Events dropped because an observer listener couldn't keep up", "listener", listenerName
+		);
+		this.latencyHistogram = metricRegistry.histogram(
+				"wsn_deviceutils_observer_listener_latency_seconds",
+				"Time between queueing an event and passing it to an observer listener", "listener", listenerName
+		);
+		this.queuedGauge = metricRegistry.gauge(
+				"wsn_deviceutils_observer_listener_queued_events", "Events waiting for delivery to an observer listener",
+				new Supplier<Integer>() {
+					@Override
+					public Integer get() {
+						return executor.getQueue().size();
+					}
+				}, "listener", listenerName
+		);
+	}
+
+	/**
+	 * Queues the event for delivery.
+	 *
+	 * @return {@code false} if the event was dropped
+	 */
+	boolean dispatch(final DeviceEvent event) {
+
+		final long queuedNanos = System.nanoTime();
+
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+
+					recordLatency(System.nanoTime() - queuedNanos);
+
+					try {
+						listener.deviceEvent(event);
+					} catch (Exception e) {
+						log.warn("Exception occurred while notifying {} listener: {}", listener, e);
+					}
+				}
+			}
+			);
+		} catch (RejectedExecutionException e) {
+			if (!executor.isShutdown()) {
+				droppedEvents.incrementAndGet();
+				droppedCounter.increment();
+				if (!dropping) {
+					dropping = true;
+					log.warn("Dropping events for listener {} as it can't keep up", listener);
+				}
+			}
+			return false;
+		}
+
+		dropping = false;
+		return true;
+	}
+
+	/**
+	 * Stops the dispatcher after the queued events have been delivered.
+	 */
+	void shutdown() {
+		executor.shutdown();
+		MetricRegistry.getDefault().remove(queuedGauge);
+	}
+
+	ListenerStatistics getStatistics() {
+		final long delivered = deliveredEvents.get();
+		return new ListenerStatistics(
+				delivered,
+				droppedEvents.get(),
+				executor.getQueue().size(),
+				delivered == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatencyNanos.get() / delivered),
+				TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get())
+		);
+	}
+
+	private void recordLatency(final long latencyNanos) {
+
+		deliveredEvents.incrementAndGet();
+		totalLatencyNanos.addAndGet(latencyNanos);
+		deliveredCounter.increment();
+		latencyHistogram.record(latencyNanos);
+
+		long max = maxLatencyNanos.get();
+		while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+			max = maxLatencyNanos.get();
+		}
+	}
+
+	private static String getListenerName(final DeviceObserverListener listener) {
+		final String simpleName = listener.getClass().getSimpleName();
+		return simpleName.isEmpty() ? listener.getClass().getName() : simpleName;
+	}
+}
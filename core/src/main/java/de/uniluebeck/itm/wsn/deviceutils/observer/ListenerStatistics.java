@@ -0,0 +1,88 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A snapshot of the statistics of delivering {@link DeviceEvent}s to one {@link DeviceObserverListener}.
+ */
+public class ListenerStatistics {
+
+	private final long deliveredEvents;
+
+	private final long droppedEvents;
+
+	private final int queuedEvents;
+
+	private final long meanLatencyMicros;
+
+	private final long maxLatencyMicros;
+
+	public ListenerStatistics(final long deliveredEvents, final long droppedEvents, final int queuedEvents,
+							  final long meanLatencyMicros, final long maxLatencyMicros) {
+		this.deliveredEvents = deliveredEvents;
+		this.droppedEvents = droppedEvents;
+		this.queuedEvents = queuedEvents;
+		this.meanLatencyMicros = meanLatencyMicros;
+		this.maxLatencyMicros = maxLatencyMicros;
+	}
+
+	public long getDeliveredEvents() {
+		return deliveredEvents;
+	}
+
+	/**
+	 * Returns the number of events that were discarded because the listeners queue was full.
+	 */
+	public long getDroppedEvents() {
+		return droppedEvents;
+	}
+
+	public int getQueuedEvents() {
+		return queuedEvents;
+	}
+
+	/**
+	 * Returns the mean time between queueing an event and passing it to the listener.
+	 */
+	public long getMeanLatencyMicros() {
+		return meanLatencyMicros;
+	}
+
+	public long getMaxLatencyMicros() {
+		return maxLatencyMicros;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("deliveredEvents", deliveredEvents)
+				.add("droppedEvents", droppedEvents)
+				.add("queuedEvents", queuedEvents)
+				.add("meanLatencyMicros", meanLatencyMicros)
+				.add("maxLatencyMicros", maxLatencyMicros)
+				.toString();
+	}
+}
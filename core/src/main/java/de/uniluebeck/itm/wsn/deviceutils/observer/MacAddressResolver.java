@@ -0,0 +1,126 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+
+import java.util.concurrent.*;
+
+/**
+ * Reads the MAC addresses of devices on a bounded pool of threads. Every read is cancelled (i.e., its thread is
+ * interrupted) if it did not complete within the given deadline after it started. Concurrent requests for the same
+ * port share one read.
+ */
+class MacAddressResolver {
+
+	private final DeviceMacReader macReader;
+
+	private final long deadlineMillis;
+
+	private final ThreadPoolExecutor executor;
+
+	private final ScheduledExecutorService deadlineTimer;
+
+	private final ConcurrentMap<String, ListenableFuture<MacAddress>> pendingReads =
+			new ConcurrentHashMap<String, ListenableFuture<MacAddress>>();
+
+	MacAddressResolver(final DeviceMacReader macReader, final int parallelism, final long deadlineMillis) {
+
+		this.macReader = macReader;
+		this.deadlineMillis = deadlineMillis;
+
+		this.executor = new ThreadPoolExecutor(
+				parallelism, parallelism, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setNameFormat("DeviceObserver-MacReader %d").setDaemon(true).build()
+		);
+		this.executor.allowCoreThreadTimeOut(true);
+
+		this.deadlineTimer = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("DeviceObserver-MacReadDeadline %d").setDaemon(true).build()
+		);
+	}
+
+	/**
+	 * Starts reading the MAC address of the given device or returns the pending read if one is already running for
+	 * the devices port.
+	 *
+	 * @param deviceInfo
+	 * 		the device to read the MAC address from
+	 *
+	 * @return a future that is completed with the MAC address (or {@code null} if it could not be determined), fails
+	 * if reading failed, or is cancelled if the read did not complete within the deadline
+	 */
+	ListenableFuture<MacAddress> resolve(final DeviceInfo deviceInfo) {
+
+		final String port = deviceInfo.getPort();
+
+		final ListenableFutureTask<MacAddress> task = ListenableFutureTask.create(new Callable<MacAddress>() {
+			@Override
+			public MacAddress call() throws Exception {
+				return macReader.readMac(port, deviceInfo.getType(), null, deviceInfo.getReference());
+			}
+		}
+		);
+
+		final ListenableFuture<MacAddress> pendingRead = pendingReads.putIfAbsent(port, task);
+		if (pendingRead != null) {
+			return pendingRead;
+		}
+
+		task.addListener(new Runnable() {
+			@Override
+			public void run() {
+				pendingReads.remove(port, task);
+			}
+		}, MoreExecutors.directExecutor()
+		);
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final ScheduledFuture<?> deadline = deadlineTimer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						task.cancel(true);
+					}
+				}, deadlineMillis, TimeUnit.MILLISECONDS
+				);
+				try {
+					task.run();
+				} finally {
+					deadline.cancel(false);
+				}
+			}
+		}
+		);
+
+		return task;
+	}
+}
@@ -0,0 +1,187 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * Enumerates devices on Linux by walking {@code /sys/bus/usb/drivers/usb} directly, i.e. without spawning the
+ * devicelist-linux script. The results are equal to those of {@code scan_sysfs} in that script.
+ */
+public class SysfsDeviceInfoProvider implements DeviceInfoProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(SysfsDeviceInfoProvider.class);
+
+	/**
+	 * USB vendor and product IDs ("vendor:product") of the supported USB-to-serial converters (FTDI FT232 and Silicon
+	 * Labs CP210x).
+	 */
+	private static final ImmutableSet<String> SUPPORTED_CONVERTERS = ImmutableSet.of("0403:6001", "10c4:ea60");
+
+	private static final ImmutableMap<String, String> PRODUCT_TO_DEVICE_TYPE = ImmutableMap.<String, String>builder()
+			.put("Crossbow Telos Rev.B", "telosb")
+			.put("MTM-CM5000MSP", "telosb")
+			.put("USB <-> Serial", "isense")
+			.put("isense-gateway-module-2", "isense")
+			.put("Pacemate", "pacemate")
+			.put("FT232R USB UART", "xbee")
+			.build();
+
+	private static final String[] DEV_PREFIXES = {"usb/tts/", "ttyUSB", "tts/USB"};
+
+	private static final Pattern TTY_NUMBER_PATTERN = Pattern.compile("(\\d+)");
+
+	private static final FilenameFilter TTY_FILTER = new FilenameFilter() {
+		@Override
+		public boolean accept(final File dir, final String name) {
+			return name.startsWith("tty");
+		}
+	};
+
+	private final File usbDriverDir;
+
+	private final File devDir;
+
+	public SysfsDeviceInfoProvider() {
+		this(new File("/sys"), new File("/dev"));
+	}
+
+	public SysfsDeviceInfoProvider(final File sysDir, final File devDir) {
+		this.usbDriverDir = new File(sysDir, "bus/usb/drivers/usb");
+		this.devDir = devDir;
+	}
+
+	/**
+	 * Checks if the sysfs USB driver directory is present on this host.
+	 *
+	 * @return {@code true} if devices can be enumerated using this provider, {@code false} otherwise
+	 */
+	public boolean isAvailable() {
+		return usbDriverDir.isDirectory();
+	}
+
+	@Override
+	public Map<String, DeviceInfo> getDeviceInfos() {
+
+		final Map<String, DeviceInfo> deviceInfos = newHashMap();
+		final File[] usbDevices = usbDriverDir.listFiles();
+
+		if (usbDevices == null) {
+			log.warn("Could not list USB devices in {}", usbDriverDir);
+			return deviceInfos;
+		}
+
+		for (File usbDevice : usbDevices) {
+			final DeviceInfo deviceInfo = readDeviceInfo(usbDevice);
+			if (deviceInfo != null) {
+				deviceInfos.put(deviceInfo.getPort(), deviceInfo);
+			}
+		}
+
+		return deviceInfos;
+	}
+
+	@Nullable
+	private DeviceInfo readDeviceInfo(final File usbDevice) {
+
+		final String vendorId = readAttribute(usbDevice, "idVendor");
+		final String productId = readAttribute(usbDevice, "idProduct");
+
+		if (!SUPPORTED_CONVERTERS.contains(vendorId + ":" + productId)) {
+			return null;
+		}
+
+		final String port = findSerialPort(usbDevice);
+
+		// the script would print the raw tty number here, but that is no usable port name, so we skip the device
+		// until its device node shows up (e.g., because udev did not yet create it)
+		if (port == null) {
+			log.debug("No serial device node found for USB device {}", usbDevice);
+			return null;
+		}
+
+		final String product = nullToEmpty(readAttribute(usbDevice, "product"));
+		final String type = PRODUCT_TO_DEVICE_TYPE.containsKey(product) ? PRODUCT_TO_DEVICE_TYPE.get(product) : product;
+		final String reference = nullToEmpty(readAttribute(usbDevice, "serial"));
+
+		return new DeviceInfo(type, port, reference, null);
+	}
+
+	@Nullable
+	private String findSerialPort(final File usbDevice) {
+
+		final File usbInterface = new File(usbDevice, usbDevice.getName() + ":1.0");
+		final String[] ttys = usbInterface.list(TTY_FILTER);
+
+		if (ttys == null || ttys.length == 0) {
+			return null;
+		}
+
+		Arrays.sort(ttys);
+		final Matcher matcher = TTY_NUMBER_PATTERN.matcher(ttys[0]);
+		if (!matcher.find()) {
+			return null;
+		}
+
+		for (String devPrefix : DEV_PREFIXES) {
+			final File devFile = new File(devDir, devPrefix + matcher.group(1));
+			if (devFile.exists()) {
+				return devFile.getPath();
+			}
+		}
+
+		return null;
+	}
+
+	@Nullable
+	private String readAttribute(final File usbDevice, final String attribute) {
+		final File file = new File(usbDevice, attribute);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			return Files.toString(file, Charsets.US_ASCII).trim();
+		} catch (IOException e) {
+			log.debug("Could not read {}: {}", file, e);
+			return null;
+		}
+	}
+}
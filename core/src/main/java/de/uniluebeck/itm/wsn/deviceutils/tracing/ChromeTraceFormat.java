@@ -0,0 +1,138 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.tracing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes the events of a {@link Tracer} in the JSON object format of the Chrome trace event format, which is read by
+ * chrome://tracing, Perfetto and speedscope. Spans are written as complete events ("X") and instant events as
+ * thread-scoped instant events ("i"), with timestamps and durations in microseconds. Every thread that recorded an
+ * event is named after the Java thread.
+ */
+public class ChromeTraceFormat {
+
+	private ChromeTraceFormat() {
+	}
+
+	public static void write(final Tracer tracer, final Writer writer) throws IOException {
+
+		final long pid = Tracer.getProcessId();
+
+		writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+		boolean first = true;
+
+		for (Map.Entry<Long, String> thread : tracer.getThreadNames().entrySet()) {
+			writer.write(first ? "\n" : ",\n");
+			first = false;
+			writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":" + thread.getKey()
+					+ ",\"args\":{\"name\":"
+			);
+			writeString(writer, thread.getValue());
+			writer.write("}}");
+		}
+
+		for (TraceEvent event : tracer.getEvents()) {
+
+			writer.write(first ? "\n" : ",\n");
+			first = false;
+
+			writer.write("{\"name\":");
+			writeString(writer, event.getName());
+			writer.write(",\"cat\":");
+			writeString(writer, event.getCategory());
+			writer.write(",\"ph\":\"" + event.getPhase().getCode() + "\"");
+			writer.write(",\"ts\":" + toMicros(event.getTimestampNanos()));
+
+			if (event.getPhase() == TraceEvent.Phase.COMPLETE) {
+				writer.write(",\"dur\":" + toMicros(event.getDurationNanos()));
+			} else {
+				writer.write(",\"s\":\"t\"");
+			}
+
+			writer.write(",\"pid\":" + pid + ",\"tid\":" + event.getThreadId());
+
+			if (!event.getArgs().isEmpty()) {
+				writer.write(",\"args\":{");
+				boolean firstArg = true;
+				for (Map.Entry<String, String> arg : event.getArgs().entrySet()) {
+					if (!firstArg) {
+						writer.write(',');
+					}
+					firstArg = false;
+					writeString(writer, arg.getKey());
+					writer.write(':');
+					writeString(writer, arg.getValue());
+				}
+				writer.write('}');
+			}
+
+			writer.write('}');
+		}
+
+		writer.write("\n]}\n");
+		writer.flush();
+	}
+
+	/**
+	 * Formats non-negative nanoseconds as microseconds with three decimals, independently of the default locale.
+	 */
+	static String toMicros(final long nanos) {
+		final long fraction = nanos % 1000;
+		return nanos / 1000 + "." + (fraction < 10 ? "00" : fraction < 100 ? "0" : "") + fraction;
+	}
+
+	static void writeString(final Writer writer, final String value) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					writer.write("\\\"");
+					break;
+				case '\\':
+					writer.write("\\\\");
+					break;
+				case '\n':
+					writer.write("\\n");
+					break;
+				case '\r':
+					writer.write("\\r");
+					break;
+				case '\t':
+					writer.write("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						writer.write(String.format("\\u%04x", (int) c));
+					} else {
+						writer.write(c);
+					}
+			}
+		}
+		writer.write('"');
+	}
+}
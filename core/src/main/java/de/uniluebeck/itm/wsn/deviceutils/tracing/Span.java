@@ -0,0 +1,104 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.tracing;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+/**
+ * A phase of an operation on one thread, from {@link Tracer#begin(String, String)} to {@link #end()}. Spans started
+ * while another span is open on the same thread are shown nested in the trace viewer.
+ */
+public class Span {
+
+	static final Span DISABLED = new Span(null, null, null, 0);
+
+	private final Tracer tracer;
+
+	private final String category;
+
+	private final String name;
+
+	private final long startNanos;
+
+	private final long threadId;
+
+	private Map<String, String> args;
+
+	private boolean ended;
+
+	Span(final Tracer tracer, final String category, final String name, final long startNanos) {
+		this.tracer = tracer;
+		this.category = category;
+		this.name = name;
+		this.startNanos = startNanos;
+		this.threadId = tracer == null ? 0 : tracer.currentThreadId();
+	}
+
+	/**
+	 * Adds an argument shown with the span in the trace viewer, e.g., the port of the device.
+	 */
+	public Span arg(final String argName, final Object value) {
+		if (tracer != null) {
+			if (args == null) {
+				args = newLinkedHashMap();
+			}
+			args.put(argName, String.valueOf(value));
+		}
+		return this;
+	}
+
+	/**
+	 * Ends the span. Calling this more than once has no effect.
+	 */
+	public void end() {
+		if (tracer != null && !ended) {
+			ended = true;
+			tracer.end(this, System.nanoTime());
+		}
+	}
+
+	String getCategory() {
+		return category;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	long getStartNanos() {
+		return startNanos;
+	}
+
+	long getThreadId() {
+		return threadId;
+	}
+
+	ImmutableMap<String, String> getArgs() {
+		return args == null ? ImmutableMap.<String, String>of() : ImmutableMap.copyOf(args);
+	}
+}
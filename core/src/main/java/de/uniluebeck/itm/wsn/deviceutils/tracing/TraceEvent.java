@@ -0,0 +1,100 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.tracing;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * An ended span or an instant event. Times are in nanoseconds since the tracer was created.
+ */
+class TraceEvent {
+
+	enum Phase {
+
+		COMPLETE('X'), INSTANT('i');
+
+		private final char code;
+
+		Phase(final char code) {
+			this.code = code;
+		}
+
+		char getCode() {
+			return code;
+		}
+	}
+
+	private final Phase phase;
+
+	private final String category;
+
+	private final String name;
+
+	private final long threadId;
+
+	private final long timestampNanos;
+
+	private final long durationNanos;
+
+	private final ImmutableMap<String, String> args;
+
+	TraceEvent(final Phase phase, final String category, final String name, final long threadId,
+			   final long timestampNanos, final long durationNanos, final ImmutableMap<String, String> args) {
+		this.phase = phase;
+		this.category = category;
+		this.name = name;
+		this.threadId = threadId;
+		this.timestampNanos = timestampNanos;
+		this.durationNanos = durationNanos;
+		this.args = args;
+	}
+
+	Phase getPhase() {
+		return phase;
+	}
+
+	String getCategory() {
+		return category;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	long getThreadId() {
+		return threadId;
+	}
+
+	long getTimestampNanos() {
+		return timestampNanos;
+	}
+
+	long getDurationNanos() {
+		return durationNanos;
+	}
+
+	ImmutableMap<String, String> getArgs() {
+		return args;
+	}
+}
@@ -0,0 +1,237 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.tracing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * <p>
+ * Records spans (e.g., creating, connecting, programming and closing a device) and instant events (e.g., state changes
+ * of driver operations) of all threads, so that the time taken by an operation can be broken down into its phases and
+ * slow devices stand out when many devices are handled at once. The events can be written as a Chrome trace, which
+ * can be opened in chrome://tracing or Perfetto.
+ * </p>
+ * <p>
+ * The {@linkplain #getDefault() default tracer} is disabled unless the system property {@value #FILE_PROPERTY} names
+ * the file the trace is written to when the JVM shuts down. A disabled tracer doesn't record anything and hands out a
+ * shared span, so tracing costs next to nothing if it is not used. At most {@value #MAX_EVENTS} events are kept,
+ * further events are dropped and counted.
+ * </p>
+ */
+public class Tracer {
+
+	private static final Logger log = LoggerFactory.getLogger(Tracer.class);
+
+	/**
+	 * System property naming the file the default tracer writes its trace to.
+	 */
+	public static final String FILE_PROPERTY = "wsn.deviceutils.trace.file";
+
+	public static final int MAX_EVENTS = 1000000;
+
+	private static final Tracer DEFAULT = createDefault();
+
+	private final boolean enabled;
+
+	private final long startNanos = System.nanoTime();
+
+	private final ConcurrentLinkedQueue<TraceEvent> events = new ConcurrentLinkedQueue<TraceEvent>();
+
+	private final AtomicInteger eventCount = new AtomicInteger();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final ConcurrentMap<Long, String> threadNames = new ConcurrentHashMap<Long, String>();
+
+	/**
+	 * Creates an enabled tracer.
+	 */
+	public Tracer() {
+		this(true);
+	}
+
+	private Tracer(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public static Tracer getDefault() {
+		return DEFAULT;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts a span on the current thread. The span must be {@linkplain Span#end() ended} on the same thread, typically
+	 * in a {@code finally} block.
+	 *
+	 * @param category
+	 * 		the category of the span (e.g., "driver"), used for filtering in the trace viewer
+	 * @param name
+	 * 		the name of the span
+	 */
+	public Span begin(final String category, final String name) {
+		if (!enabled) {
+			return Span.DISABLED;
+		}
+		return new Span(this, category, name, System.nanoTime());
+	}
+
+	/**
+	 * Records an instant event on the current thread.
+	 *
+	 * @param args
+	 * 		argument names and values, alternating
+	 */
+	public void instant(final String category, final String name, final Object... args) {
+
+		if (!enabled) {
+			return;
+		}
+
+		checkArgument(args.length % 2 == 0, "The arguments must be given as name value pairs");
+
+		final ImmutableMap.Builder<String, String> argMap = ImmutableMap.builder();
+		for (int i = 0; i < args.length; i += 2) {
+			argMap.put(String.valueOf(args[i]), String.valueOf(args[i + 1]));
+		}
+
+		add(new TraceEvent(TraceEvent.Phase.INSTANT, category, name, currentThreadId(),
+				System.nanoTime() - startNanos, 0, argMap.build()
+		)
+		);
+	}
+
+	/**
+	 * Returns the number of events that were dropped because the tracer was full.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Writes all events recorded so far to {@code file} as a Chrome trace.
+	 */
+	public void writeTo(final File file) throws IOException {
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		boolean threw = true;
+		try {
+			ChromeTraceFormat.write(this, writer);
+			threw = false;
+		} finally {
+			Closeables.close(writer, threw);
+		}
+	}
+
+	void end(final Span span, final long endNanos) {
+		add(new TraceEvent(TraceEvent.Phase.COMPLETE, span.getCategory(), span.getName(), span.getThreadId(),
+				span.getStartNanos() - startNanos, endNanos - span.getStartNanos(), span.getArgs()
+		)
+		);
+	}
+
+	long currentThreadId() {
+		final Thread thread = Thread.currentThread();
+		if (!threadNames.containsKey(thread.getId())) {
+			threadNames.putIfAbsent(thread.getId(), thread.getName());
+		}
+		return thread.getId();
+	}
+
+	ImmutableList<TraceEvent> getEvents() {
+		return ImmutableList.copyOf(events);
+	}
+
+	ImmutableMap<Long, String> getThreadNames() {
+		return ImmutableMap.copyOf(threadNames);
+	}
+
+	private void add(final TraceEvent event) {
+		if (eventCount.incrementAndGet() > MAX_EVENTS) {
+			eventCount.decrementAndGet();
+			dropped.incrementAndGet();
+			return;
+		}
+		events.offer(event);
+	}
+
+	static long getProcessId() {
+		// the name of the runtime is "<pid>@<host>" on all common JVMs
+		final String runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+		try {
+			return Long.parseLong(runtimeName.substring(0, runtimeName.indexOf('@')));
+		} catch (RuntimeException e) {
+			return 0;
+		}
+	}
+
+	private static Tracer createDefault() {
+
+		final String fileName = System.getProperty(FILE_PROPERTY);
+		if (fileName == null || fileName.isEmpty()) {
+			return new Tracer(false);
+		}
+
+		final Tracer tracer = new Tracer(true);
+		final File file = new File(fileName);
+
+		Runtime.getRuntime().addShutdownHook(new Thread("Tracer") {
+			@Override
+			public void run() {
+				try {
+					tracer.writeTo(file);
+					if (tracer.getDroppedCount() > 0) {
+						log.warn("Dropped {} trace events exceeding the limit of {}", tracer.getDroppedCount(),
+								MAX_EVENTS
+						);
+					}
+				} catch (IOException e) {
+					log.warn("Could not write the trace to {}: {}", file, e.getMessage());
+				}
+			}
+		}
+		);
+
+		return tracer;
+	}
+}
@@ -0,0 +1,86 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.tracing;
+
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.core.operation.StateChangedEvent;
+
+/**
+ * Passes all callbacks of a driver operation on to another listener and marks the state transitions of the operation
+ * as instant events, so that the trace shows when the driver started working on the operation and when it was done,
+ * as opposed to when the caller submitted it and got the result.
+ */
+public class TracingOperationListener<T> implements OperationListener<T> {
+
+	public static final String CATEGORY = "driver";
+
+	private final Tracer tracer;
+
+	private final String port;
+
+	private final OperationListener<T> delegate;
+
+	public TracingOperationListener(final Tracer tracer, final String port, final OperationListener<T> delegate) {
+		this.tracer = tracer;
+		this.port = port;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void beforeStateChanged(final StateChangedEvent<T> event) {
+		tracer.instant(CATEGORY, "before state change", "port", port, "event", event);
+		delegate.beforeStateChanged(event);
+	}
+
+	@Override
+	public void afterStateChanged(final StateChangedEvent<T> event) {
+		tracer.instant(CATEGORY, "after state change", "port", port, "event", event);
+		delegate.afterStateChanged(event);
+	}
+
+	@Override
+	public void onExecute() {
+		delegate.onExecute();
+	}
+
+	@Override
+	public void onSuccess(final T result) {
+		delegate.onSuccess(result);
+	}
+
+	@Override
+	public void onFailure(final Throwable throwable) {
+		delegate.onFailure(throwable);
+	}
+
+	@Override
+	public void onCancel() {
+		delegate.onCancel();
+	}
+
+	@Override
+	public void onProgressChange(final float fraction) {
+		delegate.onProgressChange(fraction);
+	}
+}
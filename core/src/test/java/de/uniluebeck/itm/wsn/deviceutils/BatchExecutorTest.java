@@ -0,0 +1,112 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchExecutorTest {
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testResultsAreReturnedInTaskOrder() throws Exception {
+
+		final List<Callable<Integer>> tasks = newArrayList();
+		for (int i = 0; i < 10; i++) {
+			final int value = i;
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					Thread.sleep(10 - value);
+					return value;
+				}
+			}
+			);
+		}
+
+		assertEquals(ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9),
+				BatchExecutor.invokeAll(executorService, 4, tasks)
+		);
+	}
+
+	@Test
+	public void testNoMoreThanParallelismTasksRunConcurrently() throws Exception {
+
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		final List<Callable<Boolean>> tasks = newArrayList();
+		for (int i = 0; i < 20; i++) {
+			tasks.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					final int nowRunning = running.incrementAndGet();
+					synchronized (maxRunning) {
+						maxRunning.set(Math.max(maxRunning.get(), nowRunning));
+					}
+					Thread.sleep(5);
+					running.decrementAndGet();
+					return true;
+				}
+			}
+			);
+		}
+
+		BatchExecutor.invokeAll(executorService, 3, tasks);
+
+		assertTrue(maxRunning.get() <= 3);
+	}
+
+	@Test
+	public void testSingleTaskRunsOnCallingThread() throws Exception {
+
+		final Thread caller = Thread.currentThread();
+		final List<Callable<Thread>> tasks = ImmutableList.<Callable<Thread>>of(new Callable<Thread>() {
+			@Override
+			public Thread call() throws Exception {
+				return Thread.currentThread();
+			}
+		}
+		);
+
+		assertEquals(ImmutableList.of(caller), BatchExecutor.invokeAll(executorService, 2, tasks));
+	}
+}
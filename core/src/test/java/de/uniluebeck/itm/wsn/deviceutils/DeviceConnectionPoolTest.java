@@ -0,0 +1,191 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceConnectionPoolTest {
+
+	private static final String PORT = "/dev/ttyUSB0";
+
+	@Mock
+	private ExecutorService executorService;
+
+	@Mock
+	private DeviceFactory deviceFactory;
+
+	@Mock
+	private Device device1;
+
+	@Mock
+	private Device device2;
+
+	private DeviceConnectionPool connectionPool;
+
+	@Before
+	public void setUp() {
+		when(deviceFactory.create(Matchers.same(executorService), Matchers.eq("isense"),
+				Matchers.<Map<String, String>>any()
+		)
+		).thenReturn(device1, device2);
+		when(device1.isConnected()).thenReturn(true);
+		when(device2.isConnected()).thenReturn(true);
+		connectionPool = new DeviceConnectionPool(deviceFactory, executorService, new DeviceConnector(), 60000, 1000);
+	}
+
+	@After
+	public void tearDown() {
+		connectionPool.close();
+	}
+
+	@Test
+	public void testLiveConnectionIsReused() throws Exception {
+
+		final Device borrowed = connectionPool.borrow(PORT, "isense", null);
+		connectionPool.release(borrowed);
+
+		assertSame(borrowed, connectionPool.borrow(PORT, "iSense", null));
+		verify(device1, times(1)).connect(PORT);
+		verify(device1, never()).close();
+		assertEquals(1, connectionPool.getConnectionCount());
+	}
+
+	@Test
+	public void testStaleConnectionIsReplaced() throws Exception {
+
+		final Device borrowed = connectionPool.borrow(PORT, "isense", null);
+		connectionPool.release(borrowed);
+		when(device1.isConnected()).thenReturn(false);
+
+		assertSame(device2, connectionPool.borrow(PORT, "isense", null));
+		verify(device1).close();
+	}
+
+	@Test
+	public void testInvalidatedConnectionIsClosed() throws Exception {
+
+		connectionPool.invalidate(connectionPool.borrow(PORT, "isense", null));
+
+		verify(device1).close();
+		assertEquals(0, connectionPool.getConnectionCount());
+	}
+
+	@Test
+	public void testInjectedPoolClosesReturnedConnectionsByDefault() throws Exception {
+
+		final DeviceConnectionPool injectedPool = createInjectedPool(new AbstractModule() {
+			@Override
+			protected void configure() {
+			}
+		}
+		);
+		injectedPool.release(injectedPool.borrow(PORT, "isense", null));
+
+		verify(device1).close();
+		assertEquals(0, injectedPool.getConnectionCount());
+	}
+
+	@Test
+	public void testInjectedPoolKeepsConnectionsWithIdleTimeout() throws Exception {
+
+		final DeviceConnectionPool injectedPool = createInjectedPool(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(Long.class).annotatedWith(Names.named("connectionIdleTimeoutMillis")).toInstance(60000L);
+			}
+		}
+		);
+		injectedPool.release(injectedPool.borrow(PORT, "isense", null));
+
+		verify(device1, never()).close();
+		assertEquals(1, injectedPool.getConnectionCount());
+		injectedPool.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testBorrowingConnectionInUseTimesOut() throws Exception {
+		connectionPool.borrow(PORT, "isense", null);
+		connectionPool.borrow(PORT, "isense", null);
+	}
+
+	@Test
+	public void testConnectionWithOtherConfigurationIsClosedBeforeReconnecting() throws Exception {
+
+		connectionPool.release(connectionPool.borrow(PORT, "isense", null));
+
+		assertSame(device2, connectionPool.borrow(PORT, "isense", ImmutableMap.of("baudrate", "115200")));
+
+		final InOrder inOrder = inOrder(device1, device2);
+		inOrder.verify(device1).close();
+		inOrder.verify(device2).connect(PORT);
+		assertEquals(1, connectionPool.getConnectionCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testBorrowingPortInUseWithOtherConfigurationWaits() throws Exception {
+		connectionPool.borrow(PORT, "isense", null);
+		try {
+			connectionPool.borrow(PORT, "isense", ImmutableMap.of("baudrate", "115200"));
+		} finally {
+			verify(device2, never()).connect(PORT);
+		}
+	}
+
+	private DeviceConnectionPool createInjectedPool(final Module configuration) {
+		return Guice.createInjector(configuration, new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(DeviceFactory.class).toInstance(deviceFactory);
+				bind(ExecutorService.class).toInstance(executorService);
+			}
+		}
+		).getInstance(DeviceConnectionPool.class);
+	}
+}
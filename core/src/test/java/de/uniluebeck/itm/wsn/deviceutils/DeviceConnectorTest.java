@@ -0,0 +1,114 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.exception.PortNotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceConnectorTest {
+
+	private static final String PORT = "/dev/ttyUSB0";
+
+	@Mock
+	private Device device;
+
+	private DeviceConnector connector;
+
+	@Before
+	public void setUp() {
+		connector = new DeviceConnector(1, 4, 200);
+	}
+
+	@Test
+	public void testConnectedDeviceIsNotConnectedAgain() throws Exception {
+
+		when(device.isConnected()).thenReturn(true);
+
+		final long attempts = count("wsn_deviceutils_connect_attempts_total");
+		final long connects = count("wsn_deviceutils_connect_total");
+
+		connector.connect(device, PORT);
+
+		verify(device, times(1)).connect(PORT);
+		assertEquals(attempts + 1, count("wsn_deviceutils_connect_attempts_total"));
+		assertEquals(connects + 1, count("wsn_deviceutils_connect_total"));
+	}
+
+	@Test
+	public void testMissingPortIsRetried() throws Exception {
+
+		doThrow(new PortNotFoundException()).doThrow(new PortNotFoundException()).doNothing().when(device).connect(PORT);
+		when(device.isConnected()).thenReturn(false, false, true);
+
+		final long connects = count("wsn_deviceutils_connect_total");
+
+		connector.connect(device, PORT);
+
+		verify(device, times(3)).connect(PORT);
+		assertEquals(connects + 1, count("wsn_deviceutils_connect_total"));
+	}
+
+	@Test
+	public void testFatalErrorIsNotRetried() throws Exception {
+
+		doThrow(new IllegalStateException()).when(device).connect(PORT);
+
+		final long failures = count("wsn_deviceutils_connect_failures_total");
+
+		try {
+			connector.connect(device, PORT);
+			fail();
+		} catch (IOException expected) {
+		}
+
+		verify(device, times(1)).connect(PORT);
+		assertEquals(failures + 1, count("wsn_deviceutils_connect_failures_total"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testGivesUpAfterDeadline() throws Exception {
+		doThrow(new PortNotFoundException()).when(device).connect(PORT);
+		connector.connect(device, PORT);
+	}
+
+	private static long count(final String name) {
+		return MetricRegistry.getDefault().counter(name, "").getCount();
+	}
+}
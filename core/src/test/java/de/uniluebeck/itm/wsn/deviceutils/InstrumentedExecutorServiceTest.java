@@ -0,0 +1,112 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Gauge;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Metric;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentedExecutorServiceTest {
+
+	private InstrumentedExecutorService executorService;
+
+	@After
+	public void tearDown() throws Exception {
+		executorService.shutdownNow();
+	}
+
+	@Test(timeout = 5000)
+	public void boundedExecutorQueuesTasksBeyondItsThreads() throws Exception {
+
+		executorService = DeviceUtilsModule.createExecutorService("test", ExecutorStrategy.BOUNDED, 2);
+
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < 5; i++) {
+			executorService.execute(new Runnable() {
+				@Override
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+			);
+		}
+
+		started.await();
+		assertEquals(2, executorService.getActiveThreads());
+		assertEquals(3, executorService.getQueueDepth());
+		assertEquals(2, executorService.getPoolSize());
+		assertEquals(3, getGauge("wsn_deviceutils_executor_queued_tasks").getValue(), 0);
+
+		release.countDown();
+		executorService.shutdown();
+		assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+
+		assertEquals(0, executorService.getActiveThreads());
+		assertEquals(0, executorService.getQueueDepth());
+		assertEquals(5, executorService.getCompletedTasks());
+		assertEquals(2, executorService.getLargestActiveThreads());
+		assertNull(getGauge("wsn_deviceutils_executor_queued_tasks"));
+	}
+
+	@Test(timeout = 5000)
+	public void virtualThreadsFallBackToCachedPoolIfUnsupported() throws Exception {
+
+		executorService = DeviceUtilsModule.createExecutorService("test", ExecutorStrategy.VIRTUAL, 2);
+
+		final String threadName = executorService.submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return Thread.currentThread().getName();
+			}
+		}
+		).get();
+
+		assertTrue(threadName.startsWith("test "));
+	}
+
+	private static Gauge getGauge(final String name) {
+		for (Metric metric : MetricRegistry.getDefault().getMetrics()) {
+			if (metric.getName().equals(name) && "test".equals(metric.getLabels().get("executor"))) {
+				return (Gauge) metric;
+			}
+		}
+		return null;
+	}
+}
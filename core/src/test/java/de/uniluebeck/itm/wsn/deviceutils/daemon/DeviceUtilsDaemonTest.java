@@ -0,0 +1,160 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.daemon;
+
+import com.google.common.collect.ImmutableMap;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacCache;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceUtilsDaemonTest {
+
+	private static final String PORT = "/dev/ttyUSB0";
+
+	private static final MacAddress MAC_ADDRESS = new MacAddress(new byte[]{0, 0, 0, 0, 0, 0, 0x12, 0x34});
+
+	@Mock
+	private DeviceObserver deviceObserver;
+
+	@Mock
+	private DeviceMacReader deviceMacReader;
+
+	@Mock
+	private DeviceMacCache deviceMacCache;
+
+	@Mock
+	private DeviceConnectionPool connectionPool;
+
+	@Mock
+	private Device device;
+
+	@Mock
+	private OperationFuture<Void> future;
+
+	private DeviceUtilsDaemon daemon;
+
+	private DaemonClient client;
+
+	private File tokenFile;
+
+	@Before
+	public void setUp() throws Exception {
+		when(deviceObserver.getCurrentState()).thenReturn(
+				ImmutableMap.of(PORT, new DeviceInfo("isense", PORT, "ref0", null))
+		);
+		tokenFile = File.createTempFile("daemon", ".token");
+		daemon = new DeviceUtilsDaemon(deviceObserver, deviceMacReader, deviceMacCache, connectionPool);
+		daemon.start(0, null, tokenFile);
+		client = new DaemonClient(daemon.getPort(), DaemonTokenFile.read(tokenFile));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		daemon.close();
+		assertFalse(tokenFile.exists());
+	}
+
+	@Test(expected = DaemonException.class)
+	public void testClientWithWrongTokenIsRejected() throws Exception {
+		new DaemonClient(daemon.getPort(), "0123456789abcdef").close();
+	}
+
+	@Test(expected = IOException.class)
+	public void testHandshakeWithSilentServiceTimesOut() throws Exception {
+		final ServerSocket silentService = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		try {
+			new DaemonClient(silentService.getLocalPort(), "0123456789abcdef").close();
+		} finally {
+			silentService.close();
+		}
+	}
+
+	@Test
+	public void testListDevices() throws Exception {
+
+		final List<DeviceInfo> devices = client.listDevices();
+
+		assertEquals(1, devices.size());
+		assertEquals(PORT, devices.get(0).getPort());
+		assertEquals("isense", devices.get(0).getType());
+		assertEquals("ref0", devices.get(0).getReference());
+	}
+
+	@Test
+	public void testReadMacBypassingCache() throws Exception {
+
+		when(deviceMacReader.readMac(eq(PORT), eq("isense"), Matchers.<Map<String, String>>any(), eq("ref0")))
+				.thenReturn(MAC_ADDRESS);
+
+		client.readMac(PORT, "isense", true);
+
+		verify(deviceMacCache).invalidate("ref0");
+	}
+
+	@Test(expected = DaemonException.class)
+	public void testFailureIsReportedToClient() throws Exception {
+		client.readMac(PORT, "isense", false);
+	}
+
+	@Test
+	public void testResetReturnsConnectionToPool() throws Exception {
+
+		when(connectionPool.borrow(eq(PORT), eq("isense"), Matchers.<Map<String, String>>any())).thenReturn(device);
+		when(device.reset(anyLong(), Matchers.<OperationListener<Void>>any())).thenReturn(future);
+
+		client.reset(PORT, "isense");
+
+		verify(future).get();
+		verify(connectionPool).release(device);
+	}
+}
@@ -0,0 +1,131 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.flasher;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchDeviceFlasherTest {
+
+	private final byte[] image = new byte[]{0x1, 0x2, 0x3};
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+	@Mock
+	private DeviceFactory deviceFactory;
+
+	@Mock
+	private Device device1;
+
+	@Mock
+	private Device device2;
+
+	@Mock
+	private OperationFuture<Void> future;
+
+	@Mock
+	private FlashListener flashListener;
+
+	private BatchDeviceFlasher batchDeviceFlasher;
+
+	@Before
+	public void setUp() throws Exception {
+		when(deviceFactory.create(Matchers.same(executorService), Matchers.eq("isense"), Matchers.<Map<String, String>>any()))
+				.thenReturn(device1, device2);
+		when(device1.isConnected()).thenReturn(true);
+		when(device1.program(Matchers.<byte[]>any(), anyLong(), Matchers.<OperationListener<Void>>any()))
+				.thenReturn(future);
+		batchDeviceFlasher = new BatchDeviceFlasher(deviceFactory, executorService, 1, 1000);
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void returnsOneResultPerPortAndKeepsFlashingAfterFailures() throws Exception {
+
+		final ImmutableList<FlashResult> results = batchDeviceFlasher.flash(
+				ImmutableList.of("/dev/ttyUSB0", "/dev/ttyUSB1"), "isense", null, image
+		);
+
+		assertEquals(2, results.size());
+		assertEquals("/dev/ttyUSB0", results.get(0).getPort());
+		assertTrue(results.get(0).isSuccessful());
+		assertEquals("/dev/ttyUSB1", results.get(1).getPort());
+		assertFalse(results.get(1).isSuccessful());
+
+		verify(device1).program(same(image), anyLong(), Matchers.<OperationListener<Void>>any());
+		verify(device1).close();
+		verify(device2).close();
+	}
+
+	@Test
+	public void notifiesListenerAboutProgressAndResults() throws Exception {
+
+		when(device1.program(Matchers.<byte[]>any(), anyLong(), Matchers.<OperationListener<Void>>any()))
+				.thenAnswer(new Answer<OperationFuture<Void>>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					public OperationFuture<Void> answer(final InvocationOnMock invocation) throws Throwable {
+						((OperationListener<Void>) invocation.getArguments()[2]).onProgressChange(0.5f);
+						return future;
+					}
+				}
+				);
+
+		final ImmutableMap<String, String> deviceTypes = ImmutableMap.of("/dev/ttyUSB0", "isense");
+		final ImmutableList<FlashResult> results = batchDeviceFlasher.flash(deviceTypes, null, image, flashListener);
+
+		verify(flashListener).progressChanged("/dev/ttyUSB0", 0.5f);
+		verify(flashListener).flashed(results.get(0));
+	}
+}
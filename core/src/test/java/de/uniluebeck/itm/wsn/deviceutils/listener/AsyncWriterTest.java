@@ -0,0 +1,117 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class AsyncWriterTest {
+
+	@Test
+	public void allRecordsAreWrittenInOrderWhenClosed() throws Exception {
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final AsyncWriter writer = new AsyncWriter(out, AsyncWriter.OverflowPolicy.BLOCK, 2, 1024, 1000);
+
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			writer.write("record " + i + "\n");
+			writer.flush();
+			expected.append("record ").append(i).append("\n");
+		}
+		writer.write("unflushed");
+		writer.close();
+
+		assertEquals(expected + "unflushed", out.toString());
+	}
+
+	@Test(timeout = 5000)
+	public void canBeClosedThroughBufferedWriter() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final BufferedWriter writer = new BufferedWriter(new AsyncWriter(out, AsyncWriter.OverflowPolicy.BLOCK));
+		writer.write("record");
+		writer.newLine();
+		writer.flush();
+		writer.close();
+		assertEquals("record" + System.getProperty("line.separator"), out.toString());
+	}
+
+	@Test
+	public void newRecordsAreDroppedAndCountedIfOutputCannotKeepUp() throws Exception {
+		final BlockingOutputStream out = new BlockingOutputStream();
+		final AsyncWriter writer = writeWhileBlocked(out, AsyncWriter.OverflowPolicy.COUNT_DROPS);
+		assertEquals(8, writer.getDroppedRecords());
+		assertEquals("first" + "record 0" + "record 1", out.toString());
+	}
+
+	@Test
+	public void oldestRecordsAreDroppedIfOutputCannotKeepUp() throws Exception {
+		final BlockingOutputStream out = new BlockingOutputStream();
+		final AsyncWriter writer = writeWhileBlocked(out, AsyncWriter.OverflowPolicy.DROP_OLDEST);
+		assertEquals(8, writer.getDroppedRecords());
+		assertEquals("first" + "record 8" + "record 9", out.toString());
+	}
+
+	/**
+	 * Writes one record that the writer thread blocks on and ten records of which only two fit into the ring buffer.
+	 */
+	private AsyncWriter writeWhileBlocked(final BlockingOutputStream out, final AsyncWriter.OverflowPolicy policy)
+			throws Exception {
+
+		final AsyncWriter writer = new AsyncWriter(out, policy, 16, 1, 0);
+		writer.write("first");
+		writer.flush();
+		Thread.sleep(100);
+
+		for (int i = 0; i < 10; i++) {
+			writer.write("record " + i);
+			writer.flush();
+		}
+
+		out.released.countDown();
+		writer.close();
+
+		return writer;
+	}
+
+	private static class BlockingOutputStream extends ByteArrayOutputStream {
+
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		@Override
+		public synchronized void write(final byte[] b, final int off, final int len) {
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			super.write(b, off, len);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.collect.ImmutableList;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureReaderTest {
+
+	private static final ImmutableList<String> PORTS = ImmutableList.of("/dev/ttyUSB0", "/dev/ttyUSB1");
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private File base;
+
+	@Before
+	public void setUp() throws Exception {
+		base = new File(tempFolder.getRoot(), "capture");
+	}
+
+	@Test
+	public void readsAllRecordsAcrossSegmentsInOrder() throws Exception {
+
+		writeRecords(100);
+
+		assertTrue(CaptureFormat.listSegmentFiles(base).size() > 1);
+
+		final CaptureReader reader = CaptureReader.open(base);
+		assertEquals(PORTS, reader.getPorts());
+
+		final CaptureReader.Cursor cursor = reader.cursor();
+		long lastTimestamp = 0;
+		for (int i = 0; i < 100; i++) {
+			assertTrue(cursor.next());
+			assertEquals(PORTS.get(i % 2), cursor.getPort());
+			assertEquals("message " + i, new String(readBytes(cursor), "US-ASCII"));
+			assertTrue(cursor.getTimestampNanos() >= lastTimestamp);
+			lastTimestamp = cursor.getTimestampNanos();
+		}
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	public void seekFindsFirstRecordAtOrAfterTimestamp() throws Exception {
+
+		writeRecords(100);
+
+		final CaptureReader reader = CaptureReader.open(base);
+		final List<Long> timestamps = newArrayList();
+		final CaptureReader.Cursor cursor = reader.cursor();
+		while (cursor.next()) {
+			timestamps.add(cursor.getTimestampNanos());
+		}
+
+		for (int i : new int[]{0, 1, 42, 99}) {
+			final CaptureReader.Cursor seeked = reader.seek(timestamps.get(i));
+			assertTrue(seeked.next());
+			assertEquals(timestamps.get(i), Long.valueOf(seeked.getTimestampNanos()));
+		}
+
+		assertFalse(reader.seek(timestamps.get(99) + 1).next());
+	}
+
+	@Test
+	public void partiallyWrittenRecordIsIgnoredAndNewCaptureContinuesAfterExistingSegments() throws Exception {
+
+		writeRecords(2);
+		final List<File> segments = CaptureFormat.listSegmentFiles(base);
+		final RandomAccessFile lastSegment = new RandomAccessFile(segments.get(segments.size() - 1), "rw");
+		lastSegment.setLength(lastSegment.length() - 3);
+		lastSegment.close();
+
+		writeRecords(1);
+
+		final CaptureReader.Cursor cursor = CaptureReader.open(base).cursor();
+		final List<String> messages = newArrayList();
+		while (cursor.next()) {
+			messages.add(new String(readBytes(cursor), "US-ASCII"));
+		}
+		assertEquals(ImmutableList.of("message 0", "message 0"), messages);
+	}
+
+	@Test
+	public void newCaptureDoesNotOverwriteSegmentsAfterGap() throws Exception {
+
+		writeRecords(1);
+		writeRecords(1);
+		assertTrue(CaptureFormat.getSegmentFile(base, 0).delete());
+
+		writeRecords(1);
+
+		assertTrue(CaptureFormat.getSegmentFile(base, 2).exists());
+		final CaptureReader.Cursor cursor = CaptureReader.open(base).cursor();
+		int records = 0;
+		while (cursor.next()) {
+			records++;
+		}
+		assertEquals(2, records);
+	}
+
+	@Test
+	public void portsOfAllSegmentsAreReturned() throws Exception {
+
+		writeRecords(1, ImmutableList.of("/dev/ttyUSB0"));
+		writeRecords(1, ImmutableList.of("/dev/ttyUSB1"));
+
+		assertEquals(PORTS, CaptureReader.open(base).getPorts());
+	}
+
+	private void writeRecords(final int count) throws Exception {
+		writeRecords(count, PORTS);
+	}
+
+	private void writeRecords(final int count, final List<String> ports) throws Exception {
+		final CaptureFileWriter writer = new CaptureFileWriter(base, ports, 256, 1000);
+		for (int i = 0; i < count; i++) {
+			writer.write(i % ports.size(), ChannelBuffers.wrappedBuffer(("message " + i).getBytes("US-ASCII")));
+		}
+		writer.close();
+	}
+
+	private static byte[] readBytes(final CaptureReader.Cursor cursor) {
+		final byte[] bytes = new byte[cursor.getLength()];
+		cursor.getData().getBytes(0, bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,86 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import org.apache.commons.codec.binary.Base64;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecordBufferTest {
+
+	private final RecordBuffer record = new RecordBuffer();
+
+	@Test
+	public void appendsHexValuesOfReadableBytes() throws Exception {
+		final ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(new byte[]{0x00, 0x0a, (byte) 0xff, 0x7f});
+		buffer.readByte();
+		assertEquals("0x0a 0xff 0x7f", record.appendHex(buffer).toString());
+		assertEquals(3, buffer.readableBytes());
+	}
+
+	@Test
+	public void replacesNonPrintableCharacters() throws Exception {
+		final ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(new byte[]{'h', 'i', 0x0a, (byte) 0x80, '~'});
+		assertEquals("hi[0x0a][0x80]~", record.appendPrintableAscii(buffer).toString());
+	}
+
+	@Test
+	public void encodesBase64LikeCommonsCodec() throws Exception {
+		final Random random = new Random(42);
+		for (int length = 0; length < 100; length++) {
+			final byte[] bytes = new byte[length];
+			random.nextBytes(bytes);
+			record.clear().appendBase64(ChannelBuffers.wrappedBuffer(bytes));
+			assertEquals(Base64.encodeBase64String(bytes), record.toString());
+		}
+	}
+
+	@Test
+	public void appendsDecimalValues() throws Exception {
+		record.append(0).append(' ').append(-42).append(' ').append(Long.MAX_VALUE).append(' ').append(Long.MIN_VALUE);
+		assertEquals("0 -42 " + Long.MAX_VALUE + " " + Long.MIN_VALUE, record.toString());
+	}
+
+	@Test
+	public void decodesLikeString() throws Exception {
+		final Charset utf8 = Charset.forName("UTF-8");
+		final byte[] bytes = "grüße €".getBytes(utf8);
+		final byte[] malformed = new byte[]{'a', (byte) 0xc3, 'b'};
+		record.append('>');
+		for (byte[] input : new byte[][]{bytes, malformed}) {
+			record.appendDecoded(ChannelBuffers.wrappedBuffer(input), utf8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE)
+			);
+		}
+		assertEquals(">" + new String(bytes, utf8) + new String(malformed, utf8), record.toString());
+	}
+}
@@ -0,0 +1,177 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RollingFileOutputTest {
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@Test
+	public void segmentsAreSplitBetweenRecordsAndCompressed() throws Exception {
+
+		final File base = new File(tempFolder.getRoot(), "out.txt");
+		final WriterHandler writerHandler = new StringWriter(ByteStreams.nullOutputStream(), Charsets.US_ASCII);
+		writerHandler.setRollingFileOutput(
+				new RollingFileOutput(base, 30, 0, RollingFileOutput.Compression.GZIP)
+		);
+
+		writeMessages(writerHandler, 10);
+
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			expected.append("message ").append(i).append(LINE_SEPARATOR);
+		}
+
+		final StringBuilder actual = new StringBuilder();
+		for (int i = 0; i < 4; i++) {
+			final File segment = new File(tempFolder.getRoot(), "out.txt.00000" + i + ".gz");
+			assertTrue(segment.exists());
+			final String contents = gunzip(segment);
+			assertTrue(contents.length() <= 30);
+			assertTrue(contents.endsWith(LINE_SEPARATOR));
+			actual.append(contents);
+		}
+
+		assertEquals(expected.toString(), actual.toString());
+		assertFalse(new File(tempFolder.getRoot(), "out.txt.000004.gz").exists());
+		assertEquals(4, tempFolder.getRoot().list().length);
+	}
+
+	@Test
+	public void everyWiseMLSegmentIsAValidDocument() throws Exception {
+
+		final File base = new File(tempFolder.getRoot(), "out.wiseml");
+		final WriterHandler writerHandler = new WiseMLWriterHandler(ByteStreams.nullOutputStream(), "urn:test", true);
+		writerHandler.setRollingFileOutput(
+				new RollingFileOutput(base, 200, 0, RollingFileOutput.Compression.NONE)
+		);
+
+		writeMessages(writerHandler, 5);
+
+		final File[] segments = tempFolder.getRoot().listFiles();
+		assertTrue(segments.length > 1);
+
+		int nodes = 0;
+		for (File segment : segments) {
+			final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(segment);
+			assertEquals(1, document.getElementsByTagName("trace").getLength());
+			nodes += document.getElementsByTagName("node").getLength();
+		}
+		assertEquals(5, nodes);
+	}
+
+	@Test
+	public void newRunContinuesAfterExistingSegments() throws Exception {
+
+		final File base = new File(tempFolder.getRoot(), "out.txt");
+		Files.write("old", new File(tempFolder.getRoot(), "out.txt.000000"), Charsets.US_ASCII);
+
+		final WriterHandler writerHandler = new StringWriter(ByteStreams.nullOutputStream(), Charsets.US_ASCII);
+		writerHandler.setRollingFileOutput(new RollingFileOutput(base, 0, 0, RollingFileOutput.Compression.NONE));
+		writeMessages(writerHandler, 1);
+
+		assertEquals("old", Files.toString(new File(tempFolder.getRoot(), "out.txt.000000"), Charsets.US_ASCII));
+		assertEquals("message 0" + LINE_SEPARATOR,
+				Files.toString(new File(tempFolder.getRoot(), "out.txt.000001"), Charsets.US_ASCII)
+		);
+	}
+
+	@Test
+	public void newRunContinuesAfterSegmentsWithOtherCompression() throws Exception {
+
+		final File base = new File(tempFolder.getRoot(), "out.txt");
+		Files.write("old", new File(tempFolder.getRoot(), "out.txt.000003.gz"), Charsets.US_ASCII);
+
+		final WriterHandler writerHandler = new StringWriter(ByteStreams.nullOutputStream(), Charsets.US_ASCII);
+		writerHandler.setRollingFileOutput(new RollingFileOutput(base, 0, 0, RollingFileOutput.Compression.NONE));
+		writeMessages(writerHandler, 1);
+
+		assertTrue(new File(tempFolder.getRoot(), "out.txt.000004").exists());
+		assertFalse(new File(tempFolder.getRoot(), "out.txt.000000").exists());
+	}
+
+	@Test
+	public void segmentIsFinishedWhenIntervalEndsWithoutFurtherRecords() throws Exception {
+
+		final File base = new File(tempFolder.getRoot(), "out.txt");
+		final WriterHandler writerHandler = new StringWriter(ByteStreams.nullOutputStream(), Charsets.US_ASCII);
+		writerHandler.setRollingFileOutput(new RollingFileOutput(base, 0, 100, RollingFileOutput.Compression.NONE));
+
+		writerHandler.channelConnected(null, null);
+		writerHandler.messageReceived(null, new CapturedMessageEvent(
+				ChannelBuffers.wrappedBuffer("message 0".getBytes(Charsets.US_ASCII)), System.currentTimeMillis(), "port"
+		)
+		);
+
+		final File segment = new File(tempFolder.getRoot(), "out.txt.000000");
+		final long timeoutMillis = System.currentTimeMillis() + 5000;
+		while (!segment.exists() && System.currentTimeMillis() < timeoutMillis) {
+			Thread.sleep(10);
+		}
+		writerHandler.channelDisconnected(null, null);
+
+		assertEquals("message 0" + LINE_SEPARATOR, Files.toString(segment, Charsets.US_ASCII));
+	}
+
+	private static void writeMessages(final WriterHandler writerHandler, final int count) throws Exception {
+		writerHandler.channelConnected(null, null);
+		for (int i = 0; i < count; i++) {
+			final byte[] message = ("message " + i).getBytes(Charsets.US_ASCII);
+			writerHandler.messageReceived(null,
+					new CapturedMessageEvent(ChannelBuffers.wrappedBuffer(message), System.currentTimeMillis(), "port")
+			);
+		}
+		writerHandler.channelDisconnected(null, null);
+	}
+
+	private static String gunzip(final File file) throws Exception {
+		final GZIPInputStream in = new GZIPInputStream(new FileInputStream(file));
+		try {
+			return new String(ByteStreams.toByteArray(in), Charsets.US_ASCII);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.listener;
+
+import com.google.common.base.Charsets;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WriterHandlerTest {
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Test
+	public void recordsAreTaggedWithPortAndMacAddress() throws Exception {
+
+		final WriterHandler writerHandler = new StringWriter(out, Charsets.US_ASCII);
+		writerHandler.setTagRecords(true);
+
+		writeMessages(writerHandler);
+
+		assertEquals(
+				"/dev/ttyUSB0 0x1234 hello" + LINE_SEPARATOR + "/dev/ttyUSB1 - world" + LINE_SEPARATOR,
+				out.toString()
+		);
+	}
+
+	@Test
+	public void csvRecordsAreTaggedInSeparateColumns() throws Exception {
+
+		final WriterHandler writerHandler = new CsvWriter(out);
+		writerHandler.setTagRecords(true);
+
+		writeMessages(writerHandler);
+
+		final String[] lines = out.toString().split(LINE_SEPARATOR);
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].startsWith("\"Port\";\"MAC\";\"Time\";"));
+		assertTrue(lines[1].startsWith("\"/dev/ttyUSB0\";\"0x1234\";\""));
+		assertTrue(lines[2].startsWith("\"/dev/ttyUSB1\";\"\";\""));
+	}
+
+	@Test
+	public void wiseMLNodeIdIsDerivedFromMacAddressOrPort() throws Exception {
+
+		final WriterHandler writerHandler = new WiseMLWriterHandler(out, null, true);
+		writerHandler.setTagRecords(true);
+
+		writeMessages(writerHandler);
+
+		assertTrue(out.toString().contains("<node id=\"0x1234\">"));
+		assertTrue(out.toString().contains("<node id=\"node at /dev/ttyUSB1\">"));
+	}
+
+	private static void writeMessages(final WriterHandler writerHandler) throws Exception {
+		writerHandler.channelConnected(null, null);
+		writerHandler.messageReceived(null, new CapturedMessageEvent(
+				ChannelBuffers.copiedBuffer("hello", Charsets.US_ASCII), 0, "/dev/ttyUSB0", "0x1234"
+		)
+		);
+		writerHandler.messageReceived(null, new CapturedMessageEvent(
+				ChannelBuffers.copiedBuffer("world", Charsets.US_ASCII), 0, "/dev/ttyUSB1", null
+		)
+		);
+		writerHandler.channelDisconnected(null, null);
+	}
+}
@@ -0,0 +1,93 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.collect.ImmutableList;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchDeviceMacReaderTest {
+
+	private final DeviceInfo isenseInfo = new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null);
+
+	private final DeviceInfo telosbInfo = new DeviceInfo("telosb", "/dev/ttyUSB1", "12345", null);
+
+	private final DeviceInfo pacemateInfo = new DeviceInfo("pacemate", "/dev/ttyUSB2", "23456", null);
+
+	private final MacAddress macAddress = new MacAddress(new byte[]{0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x3});
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+	@Mock
+	private DeviceMacReader deviceMacReader;
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void returnsOneResultPerDeviceAndKeepsReadingAfterFailures() throws Exception {
+
+		when(deviceMacReader.readMac("/dev/ttyUSB0", "isense", null, "01234")).thenReturn(macAddress);
+		when(deviceMacReader.readMac("/dev/ttyUSB1", "telosb", null, "12345")).thenReturn(null);
+		when(deviceMacReader.readMac("/dev/ttyUSB2", "pacemate", null, "23456"))
+				.thenThrow(new RuntimeException(new IOException("timeout")));
+
+		final BatchDeviceMacReader batchDeviceMacReader = new BatchDeviceMacReader(deviceMacReader, executorService, 2);
+		final ImmutableList<MacReadResult> results = batchDeviceMacReader.readAll(
+				ImmutableList.of(isenseInfo, telosbInfo, pacemateInfo), null
+		);
+
+		assertEquals(3, results.size());
+
+		assertEquals(isenseInfo, results.get(0).getDeviceInfo());
+		assertEquals(macAddress, results.get(0).getMacAddress());
+		assertTrue(results.get(0).isSuccessful());
+
+		assertEquals(telosbInfo, results.get(1).getDeviceInfo());
+		assertFalse(results.get(1).isSuccessful());
+		assertNull(results.get(1).getFailure());
+
+		assertEquals(pacemateInfo, results.get(2).getDeviceInfo());
+		assertFalse(results.get(2).isSuccessful());
+		assertTrue(results.get(2).getFailure() instanceof IOException);
+	}
+}
@@ -0,0 +1,110 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceMacCacheTest {
+
+	private static final MacAddress MAC_ADDRESS = new MacAddress("0x1234");
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private File cacheFile;
+
+	@Before
+	public void setUp() throws Exception {
+		cacheFile = new File(tempFolder.getRoot(), "cache/mac-cache.properties");
+	}
+
+	@Test
+	public void cachedMacAddressSurvivesRestart() throws Exception {
+		new DeviceMacCache(cacheFile, 60000).put("A6005Ycl.16", MAC_ADDRESS);
+		final MacAddress cached = new DeviceMacCache(cacheFile, 60000).get("A6005Ycl.16");
+		assertEquals(MAC_ADDRESS.toHexString(), cached.toHexString());
+	}
+
+	@Test
+	public void expiredEntriesAreIgnored() throws Exception {
+		final DeviceMacCache cache = new DeviceMacCache(cacheFile, -1);
+		cache.put("A6005Ycl.16", MAC_ADDRESS);
+		assertNull(cache.get("A6005Ycl.16"));
+	}
+
+	@Test
+	public void invalidateRemovesAllEntriesOfDevice() throws Exception {
+
+		final DeviceMacCache cache = new DeviceMacCache(cacheFile, 60000);
+		cache.put("A6005Ycl.16", MAC_ADDRESS);
+		cache.put("A6005Ycl.64", MAC_ADDRESS);
+		cache.put("A6005Ycm.16", MAC_ADDRESS);
+
+		cache.invalidate("A6005Ycl");
+
+		assertNull(cache.get("A6005Ycl.16"));
+		assertNull(cache.get("A6005Ycl.64"));
+		assertEquals(MAC_ADDRESS.toHexString(), cache.get("A6005Ycm.16").toHexString());
+	}
+
+	@Test
+	public void entriesOfConcurrentCachesAreMerged() throws Exception {
+
+		final DeviceMacCache cache1 = new DeviceMacCache(cacheFile, 60000);
+		final DeviceMacCache cache2 = new DeviceMacCache(cacheFile, 60000);
+		cache1.get("A6005Ycl.16");
+		cache2.get("A6005Ycl.16");
+
+		cache1.put("A6005Ycl.16", MAC_ADDRESS);
+		cache2.put("A6005Ycm.16", MAC_ADDRESS);
+
+		final DeviceMacCache reloaded = new DeviceMacCache(cacheFile, 60000);
+		assertEquals(MAC_ADDRESS.toHexString(), reloaded.get("A6005Ycl.16").toHexString());
+		assertEquals(MAC_ADDRESS.toHexString(), reloaded.get("A6005Ycm.16").toHexString());
+	}
+
+	@Test
+	public void temporaryFileIsDeletedIfStoringFails() throws Exception {
+
+		// a non-empty directory can't be replaced by the stored cache
+		assertTrue(new File(cacheFile, "blocker").mkdirs());
+
+		new DeviceMacCache(cacheFile, 60000).put("A6005Ycl.16", MAC_ADDRESS);
+
+		for (File file : cacheFile.getParentFile().listFiles()) {
+			assertFalse(file.getName(), file.getName().endsWith(".tmp"));
+		}
+	}
+}
@@ -10,7 +10,6 @@ import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
-import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Matchers;
@@ -55,8 +54,6 @@ public class DeviceMacReaderTest {
 
 	private String port = "/dev/ttyUSB0";
 
-	private DeviceType deviceType = DeviceType.ISENSE;
-
 	public void setUp(final boolean use16BitMode) throws Exception {
 
 		final Injector injector = Guice.createInjector(new Module() {
@@ -73,7 +70,7 @@ public class DeviceMacReaderTest {
 
 		deviceMacReader = injector.getInstance(DeviceMacReader.class);
 
-		when(deviceFactory.create(executorService, deviceType, null)).thenReturn(device);
+		when(deviceFactory.create(executorService, deviceTypeString, null)).thenReturn(device);
 		doNothing().when(device).connect(port);
 		when(device.isConnected()).thenReturn(true);
 		when(device.readMac(Matchers.anyInt(), Matchers.<OperationListener<MacAddress>>any())).thenReturn(future);
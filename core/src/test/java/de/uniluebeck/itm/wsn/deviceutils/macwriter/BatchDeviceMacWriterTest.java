@@ -0,0 +1,134 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macwriter;
+
+import com.google.common.collect.ImmutableMap;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnector;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchDeviceMacWriterTest {
+
+	private static final MacAddress MAC_ADDRESS_1 = new MacAddress(new byte[]{0, 0, 0, 0, 0, 0, 0x12, 0x34});
+
+	private static final MacAddress MAC_ADDRESS_2 = new MacAddress(new byte[]{0, 0, 0, 0, 0, 0, 0x56, 0x78});
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+	@Mock
+	private DeviceFactory deviceFactory;
+
+	@Mock
+	private Device device1;
+
+	@Mock
+	private Device device2;
+
+	@Mock
+	private OperationFuture<Void> writeFuture;
+
+	@Mock
+	private OperationFuture<MacAddress> readFuture1;
+
+	@Mock
+	private OperationFuture<MacAddress> readFuture2;
+
+	private DeviceConnectionPool connectionPool;
+
+	private BatchDeviceMacWriter batchDeviceMacWriter;
+
+	@Before
+	public void setUp() throws Exception {
+
+		when(deviceFactory.create(Matchers.same(executorService), Matchers.eq("isense"),
+				Matchers.<Map<String, String>>any()
+		)
+		).thenReturn(device1, device2);
+
+		for (Device device : new Device[]{device1, device2}) {
+			when(device.isConnected()).thenReturn(true);
+			when(device.writeMac(Matchers.<MacAddress>any(), anyLong(), Matchers.<OperationListener<Void>>any()))
+					.thenReturn(writeFuture);
+		}
+		when(device1.readMac(anyLong(), Matchers.<OperationListener<MacAddress>>any())).thenReturn(readFuture1);
+		when(device2.readMac(anyLong(), Matchers.<OperationListener<MacAddress>>any())).thenReturn(readFuture2);
+
+		connectionPool = new DeviceConnectionPool(deviceFactory, executorService, new DeviceConnector(), 60000, 1000);
+		batchDeviceMacWriter = new BatchDeviceMacWriter(connectionPool, executorService, 1, 1000);
+	}
+
+	@After
+	public void tearDown() {
+		connectionPool.close();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testWritesAreVerifiedByReadingBack() throws Exception {
+
+		when(readFuture1.get()).thenReturn(MAC_ADDRESS_1);
+		// the second device doesn't take the new MAC address
+		when(readFuture2.get()).thenReturn(MAC_ADDRESS_1);
+
+		final List<MacWriteResult> results = batchDeviceMacWriter.writeAll(
+				ImmutableMap.of("/dev/ttyUSB0", MAC_ADDRESS_1, "/dev/ttyUSB1", MAC_ADDRESS_2), "isense", null
+		);
+
+		assertEquals(2, results.size());
+		assertEquals("/dev/ttyUSB0", results.get(0).getPort());
+		assertTrue(results.get(0).isSuccessful());
+		assertEquals("/dev/ttyUSB1", results.get(1).getPort());
+		assertFalse(results.get(1).isSuccessful());
+
+		verify(device1).writeMac(Matchers.eq(MAC_ADDRESS_1), anyLong(), Matchers.<OperationListener<Void>>any());
+		verify(device2).writeMac(Matchers.eq(MAC_ADDRESS_2), anyLong(), Matchers.<OperationListener<Void>>any());
+		verify(device1, never()).close();
+		verify(device2).close();
+	}
+}
@@ -0,0 +1,71 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+	private LatencyHistogram histogram;
+
+	@Before
+	public void setUp() throws Exception {
+		histogram = new MetricRegistry(null).histogram("test_seconds", "test");
+	}
+
+	@Test
+	public void testBucketsCoverAllValuesWithBoundedRelativeError() throws Exception {
+		for (long value = 0; value < 1L << 40; value = value * 3 / 2 + 1) {
+			final int bucket = LatencyHistogram.getBucket(value);
+			final long upperBound = LatencyHistogram.getUpperBound(bucket);
+			assertTrue(value + " exceeds the upper bound " + upperBound, value <= upperBound);
+			assertTrue(value + " is too far from the upper bound " + upperBound, upperBound - value <= value / 8);
+			if (bucket > 0) {
+				assertTrue(value > LatencyHistogram.getUpperBound(bucket - 1));
+			}
+		}
+	}
+
+	@Test
+	public void testPercentiles() throws Exception {
+
+		assertEquals(0, histogram.getValueAtPercentile(0.5));
+
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000000L);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(5050000000L, histogram.getSumNanos());
+		assertEquals(100000000L, histogram.getMaxNanos());
+		assertEquals(50.5, histogram.getMeanMillis(), 0.001);
+		assertEquals(50, histogram.getMedianMillis(), 50 / 8.0);
+		assertEquals(99, histogram.get99thPercentileMillis(), 99 / 8.0);
+		assertEquals(100, histogram.get999thPercentileMillis(), 0.001);
+	}
+}
@@ -0,0 +1,85 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.metrics;
+
+import com.google.common.base.Suppliers;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PrometheusTextFormatTest {
+
+	private MetricRegistry registry;
+
+	@Before
+	public void setUp() throws Exception {
+		registry = new MetricRegistry(null);
+	}
+
+	@Test
+	public void testMetricsWithSameNameAndLabelsAreShared() throws Exception {
+		assertSame(registry.counter("messages_total", "help", "writer", "hex"),
+				registry.counter("messages_total", "help", "writer", "hex")
+		);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMetricNamesCanOnlyBeUsedForOneType() throws Exception {
+		registry.counter("duration_seconds", "help");
+		registry.histogram("duration_seconds", "help");
+	}
+
+	@Test
+	public void testWritesAllTypes() throws Exception {
+
+		registry.counter("messages_total", "Messages", "writer", "hex").add(3);
+		registry.counter("messages_total", "Messages", "writer", "csv\"").increment();
+		registry.gauge("devices", "Devices", Suppliers.ofInstance(2));
+		registry.histogram("scan_seconds", "Scans").record(1500000000L);
+
+		final StringWriter writer = new StringWriter();
+		PrometheusTextFormat.write(registry, writer);
+
+		assertEquals("# HELP devices Devices\n"
+				+ "# TYPE devices gauge\n"
+				+ "devices 2\n"
+				+ "# HELP messages_total Messages\n"
+				+ "# TYPE messages_total counter\n"
+				+ "messages_total{writer=\"csv\\\"\"} 1\n"
+				+ "messages_total{writer=\"hex\"} 3\n"
+				+ "# HELP scan_seconds Scans\n"
+				+ "# TYPE scan_seconds summary\n"
+				+ "scan_seconds{quantile=\"0.5\"} 1.5\n"
+				+ "scan_seconds{quantile=\"0.9\"} 1.5\n"
+				+ "scan_seconds{quantile=\"0.99\"} 1.5\n"
+				+ "scan_seconds{quantile=\"0.999\"} 1.5\n"
+				+ "scan_seconds_sum 1.5\n"
+				+ "scan_seconds_count 1\n", writer.toString()
+		);
+	}
+}
@@ -0,0 +1,89 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceChangeLogTest {
+
+	private final DeviceInfo device1Info = new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null);
+
+	private final DeviceInfo device2Info = new DeviceInfo("telosb", "/dev/ttyUSB1", "12345", null);
+
+	private DeviceChangeLog changeLog;
+
+	@Before
+	public void setUp() {
+		changeLog = new DeviceChangeLog(2);
+	}
+
+	@Test
+	public void testVersionIsOnlyIncrementedIfStateChanges() {
+		assertEquals(1, changeLog.append(state(device1Info)));
+		assertEquals(1, changeLog.append(state(device1Info)));
+		assertEquals(2, changeLog.append(state(device1Info, device2Info)));
+		assertTrue(changeLog.getEventsSince(2).isEmpty());
+	}
+
+	@Test
+	public void testEventsSinceVersionAreReplayedInOrder() {
+
+		changeLog.append(state(device1Info));
+		changeLog.append(state(device1Info, device2Info));
+		changeLog.append(state(device2Info));
+
+		final ImmutableList<DeviceEvent> events = changeLog.getEventsSince(1);
+
+		assertEquals(2, events.size());
+		assertEquals(DeviceEvent.Type.ATTACHED, events.get(0).getType());
+		assertEquals(device2Info, events.get(0).getDeviceInfo());
+		assertEquals(DeviceEvent.Type.REMOVED, events.get(1).getType());
+		assertEquals(device1Info, events.get(1).getDeviceInfo());
+	}
+
+	@Test
+	public void testEventsSinceEvictedVersionAreNotAvailable() {
+
+		changeLog.append(state(device1Info));
+		changeLog.append(state(device1Info, device2Info));
+		changeLog.append(state(device2Info));
+
+		assertNull(changeLog.getEventsSince(0));
+	}
+
+	private static ImmutableMap<String, DeviceInfo> state(final DeviceInfo... deviceInfos) {
+		final ImmutableMap.Builder<String, DeviceInfo> state = ImmutableMap.builder();
+		for (DeviceInfo deviceInfo : deviceInfos) {
+			state.put(deviceInfo.getPort(), deviceInfo);
+		}
+		return state.build();
+	}
+}
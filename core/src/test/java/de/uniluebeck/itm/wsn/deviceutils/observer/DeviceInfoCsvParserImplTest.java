@@ -0,0 +1,100 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeviceInfoCsvParserImplTest {
+
+	private DeviceInfoCsvParserImpl csvParser;
+
+	@Before
+	public void setUp() throws Exception {
+		csvParser = new DeviceInfoCsvParserImpl();
+	}
+
+	@Test
+	public void testParsesRowsAndTrimsUnquotedFields() throws Exception {
+
+		final Map<String, DeviceInfo> devices = csvParser.parseCsv("FT1 , /dev/ttyUSB0,isense\r\nFT2,/dev/ttyUSB1,telosb");
+
+		assertEquals(2, devices.size());
+		assertEquals(new DeviceInfo("isense", "/dev/ttyUSB0", "FT1", null), devices.get("/dev/ttyUSB0"));
+		assertEquals(new DeviceInfo("telosb", "/dev/ttyUSB1", "FT2", null), devices.get("/dev/ttyUSB1"));
+		assertEquals(0, csvParser.getMalformedRowCount());
+	}
+
+	@Test
+	public void testParsesQuotedFields() throws Exception {
+
+		final Map<String, DeviceInfo> devices = csvParser.parseCsv("\"FT \"\"1\"\", rev. 2\",\"/dev/tty USB0\",isense\n");
+
+		assertEquals(new DeviceInfo("isense", "/dev/tty USB0", "FT \"1\", rev. 2", null), devices.get("/dev/tty USB0"));
+	}
+
+	@Test
+	public void testSkipsAndCountsMalformedRows() throws Exception {
+
+		final Map<String, DeviceInfo> devices = csvParser.parseCsv(
+				"FT1,/dev/ttyUSB0\n\nFT2,/dev/ttyUSB1,telosb\nFT3,/dev/ttyUSB2,isense,extra\nFT4,\"/dev/ttyUSB3,isense"
+		);
+
+		assertEquals(1, devices.size());
+		assertEquals(new DeviceInfo("telosb", "/dev/ttyUSB1", "FT2", null), devices.get("/dev/ttyUSB1"));
+		assertEquals(3, csvParser.getMalformedRowCount());
+	}
+
+	@Test
+	public void testStrayQuoteOnlySkipsItsRow() throws Exception {
+
+		final Map<String, DeviceInfo> devices = csvParser.parseCsv(
+				"FT1,\"/dev/ttyUSB0,isense\r\nFT2,/dev/ttyUSB1,telosb\nFT3,\"/dev/ttyUSB2\",isense\n"
+		);
+
+		assertEquals(2, devices.size());
+		assertEquals(new DeviceInfo("telosb", "/dev/ttyUSB1", "FT2", null), devices.get("/dev/ttyUSB1"));
+		assertEquals(new DeviceInfo("isense", "/dev/ttyUSB2", "FT3", null), devices.get("/dev/ttyUSB2"));
+		assertEquals(1, csvParser.getMalformedRowCount());
+	}
+
+	@Test
+	public void testReaderAndCharSequenceYieldTheSameDevices() throws Exception {
+
+		final StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			csv.append("FT").append(i).append(",/dev/ttyUSB").append(i).append(",\"isense\"\n");
+		}
+
+		final Map<String, DeviceInfo> devices = csvParser.parseCsv(csv);
+
+		assertEquals(500, devices.size());
+		assertEquals(devices, csvParser.parseCsv(new StringReader(csv.toString())));
+	}
+}
@@ -0,0 +1,99 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceNodeWatcherTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	@Mock
+	private DeviceObserver deviceObserver;
+
+	private File devDir;
+
+	private DeviceNodeWatcher watcher;
+
+	private Thread watcherThread;
+
+	@Before
+	public void setUp() throws Exception {
+		devDir = tempFolder.newFolder("dev");
+		watcher = new DeviceNodeWatcher(
+				deviceObserver,
+				MoreExecutors.directExecutor(),
+				devDir,
+				DeviceNodeWatcher.DEFAULT_DEVICE_NODE_PATTERN
+		);
+		watcherThread = new Thread(watcher, "DeviceNodeWatcherTest");
+		watcherThread.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		watcher.close();
+		watcherThread.join(5000);
+	}
+
+	@Test
+	public void testRescanIsTriggeredWhenDeviceNodeAppearsAndVanishes() throws Exception {
+
+		final File deviceNode = new File(devDir, "ttyUSB0");
+
+		assertTrue(deviceNode.createNewFile());
+		verify(deviceObserver, timeout(5000)).run();
+
+		assertTrue(deviceNode.delete());
+		verify(deviceObserver, timeout(5000).times(2)).run();
+	}
+
+	@Test
+	public void testNoRescanIsTriggeredForOtherDeviceNodes() throws Exception {
+
+		assertTrue(new File(devDir, "tty0").createNewFile());
+		assertTrue(new File(devDir, "sda1").createNewFile());
+		assertTrue(new File(devDir, "ttyUSB1").createNewFile());
+
+		// the last file triggers the rescan, other events before it must not have triggered any additional ones
+		verify(deviceObserver, timeout(5000)).run();
+		Thread.sleep(200);
+		verify(deviceObserver, times(1)).run();
+	}
+}
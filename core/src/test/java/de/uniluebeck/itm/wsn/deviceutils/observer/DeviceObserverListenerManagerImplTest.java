@@ -0,0 +1,138 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Gauge;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.Metric;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceObserverListenerManagerImplTest {
+
+	private final DeviceEvent event =
+			new DeviceEvent(DeviceEvent.Type.ATTACHED, new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null));
+
+	private final CountDownLatch slowListenerMayReturn = new CountDownLatch(1);
+
+	private final DeviceObserverListener slowListener = new DeviceObserverListener() {
+		@Override
+		public void deviceEvent(final DeviceEvent event) {
+			try {
+				slowListenerMayReturn.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	};
+
+	private DeviceObserverListenerManager listenerManager;
+
+	@Before
+	public void setUp() {
+		listenerManager = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(Integer.class).annotatedWith(Names.named("listenerQueueCapacity")).toInstance(2);
+			}
+		}
+		).getInstance(DeviceObserverListenerManagerImpl.class);
+	}
+
+	@After
+	public void tearDown() {
+		slowListenerMayReturn.countDown();
+	}
+
+	@Test
+	public void testSlowListenerDoesNotDelayOtherListeners() throws Exception {
+
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final DeviceObserverListener listener = new DeviceObserverListener() {
+			@Override
+			public void deviceEvent(final DeviceEvent event) {
+				delivered.countDown();
+			}
+		};
+
+		listenerManager.addListener(slowListener);
+		listenerManager.addListener(listener);
+
+		listenerManager.notifyListener(slowListener, event);
+		listenerManager.notifyListener(listener, event);
+
+		assertTrue(delivered.await(5, TimeUnit.SECONDS));
+		assertEquals(1, listenerManager.getStatistics(listener).getDeliveredEvents());
+	}
+
+	@Test
+	public void testEventsAreDroppedIfQueueOfListenerIsFull() throws Exception {
+
+		listenerManager.addListener(slowListener);
+
+		// the first event is taken from the queue by the dispatching thread and blocks it
+		listenerManager.notifyListener(slowListener, event);
+		while (listenerManager.getStatistics(slowListener).getDeliveredEvents() == 0) {
+			Thread.sleep(1);
+		}
+
+		int rejected = 0;
+		for (int i = 0; i < 5; i++) {
+			if (!listenerManager.notifyListener(slowListener, event)) {
+				rejected++;
+			}
+		}
+
+		final ListenerStatistics statistics = listenerManager.getStatistics(slowListener);
+		assertEquals(2, statistics.getQueuedEvents());
+		assertEquals(3, statistics.getDroppedEvents());
+		assertEquals(3, rejected);
+
+		final String listenerName = slowListener.getClass().getName();
+		assertTrue(MetricRegistry.getDefault().counter(
+				"wsn_deviceutils_observer_listener_dropped_events_total", "", "listener", listenerName
+		).getCount() >= 3);
+		assertEquals(2, findQueuedEventsGauge(listenerName).getValue(), 0);
+	}
+
+	private static Gauge findQueuedEventsGauge(final String listenerName) {
+		for (Metric metric : MetricRegistry.getDefault().getMetrics()) {
+			if (metric.getName().equals("wsn_deviceutils_observer_listener_queued_events")
+					&& listenerName.equals(metric.getLabels().get("listener"))) {
+				return (Gauge) metric;
+			}
+		}
+		throw new AssertionError("No gauge for listener " + listenerName);
+	}
+}
@@ -38,10 +38,17 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.collect.Sets.newHashSet;
 import static org.junit.Assert.assertEquals;
@@ -111,6 +118,7 @@ public class DeviceObserverTest {
 				binder.bind(DeviceMacReader.class).toInstance(deviceMacReader);
 				binder.bind(DeviceCsvProvider.class).toInstance(deviceCsvProvider);
 				binder.bind(DeviceInfoCsvParser.class).to(DeviceInfoCsvParserImpl.class);
+				binder.bind(DeviceInfoProvider.class).to(CsvDeviceInfoProvider.class);
 				binder.bind(DeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
 				binder.bind(DeviceObserver.class).to(DeviceObserverImpl.class);
 			}
@@ -240,11 +248,11 @@ public class DeviceObserverTest {
 		setCsvProviderState();
 
 		deviceObserver.run();
-		verify(deviceCsvProvider, never()).getDeviceCsv();
+		verify(deviceCsvProvider, never()).openDeviceCsv();
 
 		deviceObserver.addListener(deviceObserverListener);
 		deviceObserver.run();
-		verify(deviceCsvProvider).getDeviceCsv();
+		verify(deviceCsvProvider).openDeviceCsv();
 	}
 
 	/**
@@ -294,7 +302,7 @@ public class DeviceObserverTest {
 		deviceObserver.run();
 
 		ArgumentCaptor<DeviceEvent> argumentCaptor = ArgumentCaptor.forClass(DeviceEvent.class);
-		verify(deviceObserverListener).deviceEvent(argumentCaptor.capture());
+		verify(deviceObserverListener, timeout(5000)).deviceEvent(argumentCaptor.capture());
 
 		assertEqualEvents(argumentCaptor.getAllValues(), device1AttachedEvent);
 	}
@@ -315,17 +323,52 @@ public class DeviceObserverTest {
 		deviceObserver.run();
 
 		ArgumentCaptor<DeviceEvent> argumentCaptor = ArgumentCaptor.forClass(DeviceEvent.class);
-		verify(deviceObserverListener).deviceEvent(argumentCaptor.capture());
+		verify(deviceObserverListener, timeout(5000)).deviceEvent(argumentCaptor.capture());
 		assertEqualEvents(argumentCaptor.getAllValues(), device1AttachedEvent);
 
 		deviceObserver.addListener(deviceObserverListener2);
 		deviceObserver.run();
 
 		ArgumentCaptor<DeviceEvent> argumentCaptor2 = ArgumentCaptor.forClass(DeviceEvent.class);
-		verify(deviceObserverListener2).deviceEvent(argumentCaptor2.capture());
+		verify(deviceObserverListener2, timeout(5000)).deviceEvent(argumentCaptor2.capture());
 		assertEquals(argumentCaptor2.getValue(), device1AttachedEvent);
 	}
 
+	@Test
+	public void testIfAttachedEventIsSentBeforeMacAddressIsReadAndFollowedByMacResolvedEvent() throws Exception {
+
+		final CountDownLatch readStarted = new CountDownLatch(1);
+		final CountDownLatch readMayComplete = new CountDownLatch(1);
+
+		when(deviceMacReader.readMac(device1Info.getPort(), device1Info.getType(), null, device1Info.getReference()))
+				.thenAnswer(new Answer<MacAddress>() {
+					@Override
+					public MacAddress answer(final InvocationOnMock invocation) throws Throwable {
+						readStarted.countDown();
+						readMayComplete.await();
+						return device1MacAddress;
+					}
+				}
+				);
+
+		setCsvProviderState(device1Csv);
+		deviceObserver.addListener(deviceObserverListener);
+		deviceObserver.run();
+
+		ArgumentCaptor<DeviceEvent> argumentCaptor = ArgumentCaptor.forClass(DeviceEvent.class);
+		verify(deviceObserverListener, timeout(5000)).deviceEvent(argumentCaptor.capture());
+		assertEquals(DeviceEvent.Type.ATTACHED, argumentCaptor.getValue().getType());
+		assertTrue(readStarted.await(5, TimeUnit.SECONDS));
+
+		readMayComplete.countDown();
+
+		verify(deviceObserverListener, timeout(5000).times(2)).deviceEvent(argumentCaptor.capture());
+		final DeviceEvent macResolvedEvent = argumentCaptor.getValue();
+		assertEquals(DeviceEvent.Type.MAC_RESOLVED, macResolvedEvent.getType());
+		assertEquals(device1MacAddress, macResolvedEvent.getDeviceInfo().getMacAddress());
+		assertEquals(device1MacAddress, deviceObserver.getCurrentState().get(device1Info.getPort()).getMacAddress());
+	}
+
 	private ImmutableList<DeviceEvent> getObserverEventsForCsvRows(
 			@Nullable final ImmutableMap<String, DeviceInfo> lastState,
 			final String... csvRows) {
@@ -341,10 +384,17 @@ public class DeviceObserverTest {
 	}
 
 	private void setCsvProviderState(final String... csvRows) {
-		if (csvRows.length == 0) {
-			when(deviceCsvProvider.getDeviceCsv()).thenReturn("");
-		} else {
-			when(deviceCsvProvider.getDeviceCsv()).thenReturn(Joiner.on("\n").join(csvRows));
+		final String csv = Joiner.on("\n").join(csvRows);
+		try {
+			when(deviceCsvProvider.openDeviceCsv()).thenAnswer(new Answer<Reader>() {
+				@Override
+				public Reader answer(final InvocationOnMock invocation) throws Throwable {
+					return new StringReader(csv);
+				}
+			}
+			);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
 	}
 
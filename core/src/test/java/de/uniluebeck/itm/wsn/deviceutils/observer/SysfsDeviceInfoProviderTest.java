@@ -0,0 +1,120 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SysfsDeviceInfoProviderTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private File sysDir;
+
+	private File devDir;
+
+	private SysfsDeviceInfoProvider provider;
+
+	@Before
+	public void setUp() throws Exception {
+		sysDir = tempFolder.newFolder("sys");
+		devDir = tempFolder.newFolder("dev");
+		new File(sysDir, "bus/usb/drivers/usb").mkdirs();
+		provider = new SysfsDeviceInfoProvider(sysDir, devDir);
+	}
+
+	@Test
+	public void noDevicesFoundIfUsbDriverDirectoryIsEmpty() throws Exception {
+		assertTrue(provider.isAvailable());
+		assertTrue(provider.getDeviceInfos().isEmpty());
+	}
+
+	@Test
+	public void notAvailableIfUsbDriverDirectoryIsMissing() throws Exception {
+		assertFalse(new SysfsDeviceInfoProvider(new File(sysDir, "nonexisting"), devDir).isAvailable());
+	}
+
+	@Test
+	public void findsFtdiAndCp210xDevicesAndMapsProductToDeviceType() throws Exception {
+
+		addUsbDevice("1-1", "0403", "6001", "USB <-> Serial", "01234", "ttyUSB0");
+		addUsbDevice("1-2", "10c4", "ea60", "Crossbow Telos Rev.B", "12345", "ttyUSB1");
+		addUsbDevice("1-3", "0403", "6001", "Some Other Product", "23456", "ttyUSB2");
+
+		final Map<String, DeviceInfo> deviceInfos = provider.getDeviceInfos();
+
+		assertEquals(3, deviceInfos.size());
+		assertEquals(new DeviceInfo("isense", port(0), "01234", null), deviceInfos.get(port(0)));
+		assertEquals(new DeviceInfo("telosb", port(1), "12345", null), deviceInfos.get(port(1)));
+		assertEquals(new DeviceInfo("Some Other Product", port(2), "23456", null), deviceInfos.get(port(2)));
+	}
+
+	@Test
+	public void ignoresUnsupportedUsbDevicesAndDevicesWithoutDeviceNode() throws Exception {
+
+		addUsbDevice("1-1", "046d", "c52b", "USB Receiver", "abcde", "ttyUSB0");
+
+		final File usbDevice = addUsbDevice("1-2", "0403", "6001", "Pacemate", "34567", "ttyUSB1");
+		new File(devDir, "ttyUSB1").delete();
+
+		assertTrue(provider.getDeviceInfos().isEmpty());
+		assertTrue(usbDevice.isDirectory());
+	}
+
+	private String port(final int ttyNumber) {
+		return new File(devDir, "ttyUSB" + ttyNumber).getPath();
+	}
+
+	private File addUsbDevice(final String name, final String vendorId, final String productId, final String product,
+							  final String serial, final String tty) throws IOException {
+
+		final File usbDevice = new File(sysDir, "bus/usb/drivers/usb/" + name);
+		new File(usbDevice, name + ":1.0/" + tty).mkdirs();
+
+		write(new File(usbDevice, "idVendor"), vendorId);
+		write(new File(usbDevice, "idProduct"), productId);
+		write(new File(usbDevice, "product"), product);
+		write(new File(usbDevice, "serial"), serial);
+		write(new File(devDir, tty), "");
+
+		return usbDevice;
+	}
+
+	private static void write(final File file, final String content) throws IOException {
+		Files.write(content + "\n", file, Charsets.US_ASCII);
+	}
+}
@@ -0,0 +1,112 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.tracing;
+
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ChromeTraceFormatTest {
+
+	private Tracer tracer;
+
+	@Before
+	public void setUp() throws Exception {
+		tracer = new Tracer();
+	}
+
+	@Test
+	public void testWritesSpansAndInstantEvents() throws Exception {
+
+		final Span span = tracer.begin("connection", "connect").arg("port", "/dev/ttyUSB0");
+		tracer.instant("driver", "after state change", "event", "RUNNING \"1\"");
+		span.end();
+		span.end();
+
+		final String trace = write();
+
+		assertTrue(trace, trace.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+		assertTrue(trace, trace.endsWith("\n]}\n"));
+		assertTrue(trace, trace.contains("\"name\":\"thread_name\",\"ph\":\"M\""));
+		assertTrue(trace, trace.contains(
+				"{\"name\":\"after state change\",\"cat\":\"driver\",\"ph\":\"i\",\"ts\":"
+		)
+		);
+		assertTrue(trace, trace.contains("\"args\":{\"event\":\"RUNNING \\\"1\\\"\"}}"));
+		assertTrue(trace, trace.contains("{\"name\":\"connect\",\"cat\":\"connection\",\"ph\":\"X\",\"ts\":"));
+		assertTrue(trace, trace.contains("\"args\":{\"port\":\"/dev/ttyUSB0\"}}"));
+		assertEquals(1, trace.split("\"ph\":\"X\"").length - 1);
+	}
+
+	@Test
+	public void testDisabledTracerRecordsNothing() throws Exception {
+
+		final Tracer disabled = Tracer.getDefault();
+		if (disabled.isEnabled()) {
+			return;
+		}
+
+		disabled.begin("connection", "connect").arg("port", "/dev/ttyUSB0").end();
+		disabled.instant("driver", "after state change");
+
+		assertTrue(disabled.getEvents().isEmpty());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testTracingOperationListenerForwardsCallbacks() throws Exception {
+
+		final OperationListener<Void> delegate = mock(OperationListener.class);
+		final OperationListener<Void> listener = new TracingOperationListener<Void>(tracer, "/dev/ttyUSB0", delegate);
+
+		listener.beforeStateChanged(null);
+		listener.onProgressChange(0.5f);
+		listener.afterStateChanged(null);
+
+		verify(delegate).beforeStateChanged(null);
+		verify(delegate).onProgressChange(0.5f);
+		verify(delegate).afterStateChanged(null);
+		assertEquals(2, tracer.getEvents().size());
+	}
+
+	@Test
+	public void testFormatsMicroseconds() throws Exception {
+		assertEquals("0.005", ChromeTraceFormat.toMicros(5));
+		assertEquals("1.050", ChromeTraceFormat.toMicros(1050));
+		assertEquals("1234567.890", ChromeTraceFormat.toMicros(1234567890L));
+	}
+
+	private String write() throws Exception {
+		final StringWriter writer = new StringWriter();
+		ChromeTraceFormat.write(tracer, writer);
+		return writer.toString();
+	}
+}
@@ -0,0 +1,175 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Renders device output into a text area without letting a chatty device stall the event dispatch thread or exhaust
+ * the heap. Output lines may be appended from any thread. They are queued and drained by the event dispatch thread at
+ * most {@code framesPerSecond} times a second, inserting each batch into the document at once. The document is
+ * bounded to the last {@code scrollbackLines} lines, older lines are trimmed from its head. If the event dispatch
+ * thread can't keep up, the oldest queued lines are dropped. Both counts are shown next to the output label.
+ */
+public class DeviceOutputConsole {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceOutputConsole.class);
+
+	/**
+	 * System property setting the number of lines kept in the output text area.
+	 */
+	public static final String SCROLLBACK_PROPERTY = "wsn.deviceutils.gui.scrollback";
+
+	/**
+	 * System property setting how often per second new output is rendered.
+	 */
+	public static final String FRAMES_PER_SECOND_PROPERTY = "wsn.deviceutils.gui.fps";
+
+	public static final int DEFAULT_SCROLLBACK_LINES = 5000;
+
+	public static final int DEFAULT_FRAMES_PER_SECOND = 20;
+
+	private final JTextArea textArea;
+
+	private final JLabel counterLabel;
+
+	private final String counterLabelText;
+
+	private final int scrollbackLines;
+
+	private final Timer timer;
+
+	private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<String>();
+
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private long trimmed;
+
+	private long displayedDropped;
+
+	private long displayedTrimmed;
+
+	public DeviceOutputConsole(final JTextArea textArea, final JLabel counterLabel) {
+		this(textArea, counterLabel,
+				Integer.getInteger(SCROLLBACK_PROPERTY, DEFAULT_SCROLLBACK_LINES),
+				Integer.getInteger(FRAMES_PER_SECOND_PROPERTY, DEFAULT_FRAMES_PER_SECOND)
+		);
+	}
+
+	public DeviceOutputConsole(final JTextArea textArea, final JLabel counterLabel, final int scrollbackLines,
+							   final int framesPerSecond) {
+
+		checkArgument(scrollbackLines > 0, "The scrollback must be at least one line");
+		checkArgument(framesPerSecond > 0 && framesPerSecond <= 1000, "The frame rate must be between 1 and 1000");
+
+		this.textArea = textArea;
+		this.counterLabel = counterLabel;
+		this.counterLabelText = counterLabel.getText();
+		this.scrollbackLines = scrollbackLines;
+		this.timer = new Timer(1000 / framesPerSecond, new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				render();
+			}
+		}
+		);
+		this.timer.setCoalesce(true);
+	}
+
+	public void start() {
+		timer.start();
+	}
+
+	public void stop() {
+		timer.stop();
+	}
+
+	/**
+	 * Queues a line of output. May be called from any thread and never blocks.
+	 */
+	public void append(final String line) {
+		pending.offer(line);
+		// the queue holds about as many lines as the text area would keep anyway
+		if (pendingCount.incrementAndGet() > scrollbackLines && pending.poll() != null) {
+			pendingCount.decrementAndGet();
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Discards all queued and displayed output and resets the counters. Must be called on the event dispatch thread.
+	 */
+	public void clear() {
+		while (pending.poll() != null) {
+			pendingCount.decrementAndGet();
+		}
+		dropped.set(0);
+		trimmed = 0;
+		textArea.setText(null);
+		updateCounterLabel();
+	}
+
+	private void render() {
+
+		if (pending.isEmpty()) {
+			updateCounterLabel();
+			return;
+		}
+
+		final StringBuilder batch = new StringBuilder();
+		String line;
+		while ((line = pending.poll()) != null) {
+			pendingCount.decrementAndGet();
+			batch.append(line).append('\n');
+		}
+
+		final Document document = textArea.getDocument();
+		try {
+
+			document.insertString(document.getLength(), batch.toString(), null);
+
+			final Element root = document.getDefaultRootElement();
+			// the document always ends with an empty line after the last line break
+			final int excessLines = root.getElementCount() - 1 - scrollbackLines;
+			if (excessLines > 0) {
+				document.remove(0, root.getElement(excessLines - 1).getEndOffset());
+				trimmed += excessLines;
+			}
+
+		} catch (BadLocationException e) {
+			log.error("Failed rendering device output: {}", e.getMessage(), e);
+		}
+
+		updateCounterLabel();
+	}
+
+	private void updateCounterLabel() {
+
+		final long currentDropped = dropped.get();
+		if (currentDropped == displayedDropped && trimmed == displayedTrimmed) {
+			return;
+		}
+
+		displayedDropped = currentDropped;
+		displayedTrimmed = trimmed;
+
+		if (currentDropped == 0 && trimmed == 0) {
+			counterLabel.setText(counterLabelText);
+		} else {
+			counterLabel.setText(
+					counterLabelText + " (dropped: " + currentDropped + ", trimmed: " + trimmed + ")"
+			);
+		}
+	}
+}
@@ -0,0 +1,568 @@
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import de.uniluebeck.itm.util.StringUtils;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnector;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationAdapter;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.iostream.IOStreamAddress;
+import org.jboss.netty.channel.iostream.IOStreamChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection, output pane and controls of a single device. Connecting and disconnecting run on the executor service,
+ * device output is rendered through a {@link DeviceOutputConsole}, so a session never blocks the event dispatch
+ * thread and any number of sessions can stream at once. A connect only starts after the preceding disconnect has
+ * closed the port, and a disconnect cancels a connect that hasn't finished yet.
+ */
+public class DeviceSession {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceSession.class);
+
+	/**
+	 * Is notified on the event dispatch thread whenever the status of a session changes.
+	 */
+	public interface StatusListener {
+
+		void statusChanged(DeviceSession session, String status);
+
+	}
+
+	private final DevicePane devicePane = new DevicePane();
+
+	private final DeviceOutputConsole outputConsole =
+			new DeviceOutputConsole(devicePane.outputTextArea, devicePane.deviceOutputLabel);
+
+	private final DeviceConfigurationDialog deviceConfigurationDialog = new DeviceConfigurationDialog();
+
+	private final DeviceFactory deviceFactory;
+
+	private final ExecutorService executorService;
+
+	private final DeviceConnector deviceConnector;
+
+	private final StatusListener statusListener;
+
+	private final String devicePort;
+
+	private final String deviceType;
+
+	private Map<String, String> deviceConfiguration = null;
+
+	private volatile Device device;
+
+	private volatile boolean disposed;
+
+	/**
+	 * Incremented by every connect and disconnect, so that a connect can tell that it has been superseded.
+	 */
+	private final AtomicInteger connectAttempts = new AtomicInteger();
+
+	private volatile Future<?> pendingConnect = Futures.immediateFuture(null);
+
+	private volatile Future<?> pendingDisconnect = Futures.immediateFuture(null);
+
+	public DeviceSession(final DeviceFactory deviceFactory, final ExecutorService executorService,
+						 final DeviceConnector deviceConnector, final StatusListener statusListener,
+						 final String devicePort, final String deviceType) {
+
+		this.deviceFactory = deviceFactory;
+		this.executorService = executorService;
+		this.deviceConnector = deviceConnector;
+		this.statusListener = statusListener;
+		this.devicePort = devicePort;
+		this.deviceType = deviceType;
+
+		devicePane.selectionComboBox.setModel(new DefaultComboBoxModel(new Object[]{devicePort}));
+		addActionListeners();
+
+		outputConsole.start();
+		showDisconnected("Not connected");
+	}
+
+	public JComponent getComponent() {
+		return devicePane.contentPane;
+	}
+
+	public String getDevicePort() {
+		return devicePort;
+	}
+
+	public String getDeviceType() {
+		return deviceType;
+	}
+
+	/**
+	 * Connects to the device in the background.
+	 */
+	public void connect() {
+		connect(false);
+	}
+
+	private void connect(final boolean resetAfterConnect) {
+
+		devicePane.connectButton.setEnabled(false);
+		devicePane.editConfigurationButton.setEnabled(false);
+		setStatus("Connecting to " + deviceType + " device at port " + devicePort);
+
+		final Map<String, String> configuration = deviceConfiguration;
+		final int attempt = connectAttempts.incrementAndGet();
+		final Future<?> previousDisconnect = pendingDisconnect;
+		pendingConnect = executorService.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+
+					awaitQuietly(previousDisconnect);
+					if (isCancelled(attempt)) {
+						return;
+					}
+
+					final Device newDevice = openConnection(configuration);
+
+					if (isCancelled(attempt)) {
+						Closeables.close(newDevice, true);
+						return;
+					}
+
+					device = newDevice;
+					log.debug("Connected to {} device at port {}", deviceType, devicePort);
+
+					if (resetAfterConnect) {
+						newDevice.reset(1000, new DevicePaneOperationListener<Void>());
+					}
+
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							showConnected();
+						}
+					}
+					);
+
+				} catch (final Exception e) {
+					log.warn("{}", e.getMessage(), e);
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							showDisconnected("Connecting failed: " + e.getMessage());
+						}
+					}
+					);
+				}
+			}
+		}
+		);
+	}
+
+	/**
+	 * Closes the connection to the device in the background. A connect that is still in progress is cancelled, if it
+	 * already opened the device, the device is closed as well before the returned future completes.
+	 *
+	 * @param status
+	 * 		the status shown afterwards
+	 *
+	 * @return a future that completes once the port has been released
+	 */
+	public Future<?> disconnect(final String status) {
+
+		if (SwingUtilities.isEventDispatchThread()) {
+			showDisconnected(status);
+		}
+
+		connectAttempts.incrementAndGet();
+		final Future<?> cancelledConnect = pendingConnect;
+
+		final Device disconnected = device;
+		device = null;
+
+		pendingDisconnect = executorService.submit(new Runnable() {
+			@Override
+			public void run() {
+				// a cancelled connect closes the device it opened itself
+				awaitQuietly(cancelledConnect);
+				if (disconnected != null) {
+					try {
+						Closeables.close(disconnected, true);
+					} catch (IOException e) {
+						throw new RuntimeException("This exception should have been swallowed!");
+					}
+				}
+			}
+		}
+		);
+		return pendingDisconnect;
+	}
+
+	/**
+	 * Disconnects and stops rendering output. The session must not be used afterwards.
+	 */
+	public void dispose() {
+		disposed = true;
+		disconnect("Closed");
+		outputConsole.stop();
+	}
+
+	private boolean isCancelled(final int attempt) {
+		return disposed || attempt != connectAttempts.get();
+	}
+
+	private static void awaitQuietly(final Future<?> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log.warn("{}", e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	private Device openConnection(final Map<String, String> configuration) throws IOException {
+
+		final Device newDevice = deviceFactory.create(executorService, deviceType, configuration);
+		deviceConnector.connect(newDevice, devicePort);
+
+		final InputStream inputStream = newDevice.getInputStream();
+		final OutputStream outputStream = newDevice.getOutputStream();
+
+		final ClientBootstrap bootstrap = new ClientBootstrap(new IOStreamChannelFactory(executorService));
+
+		bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+			public ChannelPipeline getPipeline() throws Exception {
+				DefaultChannelPipeline pipeline = new DefaultChannelPipeline();
+				pipeline.addLast("loggingHandler", new SimpleChannelHandler() {
+					@Override
+					public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e)
+							throws Exception {
+
+						final ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+						byte[] messageBytes = new byte[buffer.readableBytes()];
+						buffer.readBytes(messageBytes);
+
+						final String outputMode = (String) devicePane.outputMode.getSelectedItem();
+						final String message;
+
+						if ("ASCII".equals(outputMode)) {
+							message = new String(messageBytes);
+						} else if ("Hex-String".equals(outputMode)) {
+							message = StringUtils.toHexString(messageBytes);
+						} else if ("Replace non-printable ASCII characters".equals(outputMode)) {
+							message = StringUtils.toPrintableString(messageBytes);
+						} else {
+							throw new RuntimeException();
+						}
+
+						log.debug("Output of device at port {}: {}", devicePort, message);
+						outputConsole.append(message);
+					}
+				}
+				);
+				return pipeline;
+			}
+		}
+		);
+
+		// Make a new connection.
+		ChannelFuture connectFuture = bootstrap.connect(new IOStreamAddress(inputStream, outputStream));
+
+		// Wait until the connection is made successfully.
+		connectFuture.awaitUninterruptibly().getChannel();
+
+		return newDevice;
+	}
+
+	private void showConnected() {
+
+		devicePane.connectButton.setEnabled(false);
+		devicePane.disconnectButton.setEnabled(true);
+		devicePane.editConfigurationButton.setEnabled(false);
+
+		devicePane.setDeviceControlsEnabled(true);
+		setStatus("Connected to " + deviceType + " device at port " + devicePort);
+	}
+
+	private void showDisconnected(final String status) {
+
+		devicePane.setDeviceControlsEnabled(false);
+		outputConsole.clear();
+		setStatus(status);
+
+		devicePane.selectionComboBox.setEnabled(false);
+		devicePane.connectButton.setEnabled(true);
+		devicePane.disconnectButton.setEnabled(false);
+		devicePane.editConfigurationButton.setEnabled(true);
+	}
+
+	private void setStatus(final String status) {
+		devicePane.setStatusText(status);
+		statusListener.statusChanged(this, status);
+	}
+
+	private void addActionListeners() {
+
+		devicePane.editConfigurationButton.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				deviceConfigurationDialog.pack();
+				deviceConfigurationDialog.setVisible(true);
+				deviceConfiguration = deviceConfigurationDialog.getConfiguration();
+			}
+		}
+		);
+
+		devicePane.connectButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				connect();
+			}
+		}
+		);
+
+		devicePane.disconnectButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				disconnect("Not connected");
+			}
+		}
+		);
+
+		devicePane.clearOutputButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				outputConsole.clear();
+			}
+		}
+		);
+
+		devicePane.wrapLinesCheckBox.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				devicePane.outputTextArea.setLineWrap(devicePane.wrapLinesCheckBox.isSelected());
+			}
+		}
+		);
+
+		devicePane.programButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+
+				JFileChooser fileChooser = new JFileChooser();
+				fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+				int returnCode = fileChooser.showOpenDialog(getParent());
+
+				if (returnCode == JFileChooser.APPROVE_OPTION) {
+
+					byte[] selectedFileBytes;
+					try {
+
+						File selectedFile = fileChooser.getSelectedFile();
+						selectedFileBytes = Files.toByteArray(selectedFile);
+
+					} catch (IOException e1) {
+
+						log.warn("Error while reading file: {}", e1.getMessage(), e1);
+						JOptionPane.showMessageDialog(getParent(), "Error while reading file: " + e1.getMessage());
+						return;
+					}
+
+					device.program(selectedFileBytes, 120000, new DevicePaneOperationListener<Void>() {
+						@Override
+						public void onSuccess(final Void result) {
+							super.onSuccess(result);
+							// reconnect, as programming might have reset the connection
+							SwingUtilities.invokeLater(new Runnable() {
+								@Override
+								public void run() {
+									disconnect("Reconnecting");
+									connect(true);
+								}
+							}
+							);
+						}
+					}
+					);
+				}
+			}
+		}
+		);
+
+		devicePane.resetButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				device.reset(1000, new DevicePaneOperationListener<Void>());
+			}
+		}
+		);
+
+		devicePane.readMACButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				DevicePaneOperationListener<MacAddress> callback = new DevicePaneOperationListener<MacAddress>() {
+					@Override
+					public void onSuccess(final MacAddress result) {
+						super.onSuccess(result);
+						SwingUtilities.invokeLater(new Runnable() {
+							@Override
+							public void run() {
+								JOptionPane.showMessageDialog(getParent(), "MAC address: " + result.toHexString());
+							}
+						}
+						);
+					}
+				};
+				device.readMac(5000, callback);
+			}
+		}
+		);
+
+		devicePane.writeMACButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+
+				devicePane.progressBar.setValue(0);
+				devicePane.progressBar.setEnabled(true);
+
+				String macAddressString = JOptionPane.showInputDialog("Please enter MAC address to write:");
+				MacAddress macAddress = new MacAddress(macAddressString);
+
+				device.writeMac(macAddress, 120000, new DevicePaneOperationListener<Void>());
+			}
+		}
+		);
+
+		devicePane.sendButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				try {
+
+					byte[] messageBytes;
+
+					final String inputMode = (String) devicePane.inputMode.getSelectedItem();
+
+					if ("ASCII".equals(inputMode)) {
+						messageBytes = devicePane.sendTextField.getText().getBytes();
+					} else if ("Hex-String".equals(inputMode)) {
+						messageBytes = StringUtils.fromStringToByteArray(devicePane.sendTextField.getText());
+					} else {
+						throw new RuntimeException("Unknown input mode \"" + inputMode + "\"");
+					}
+
+					synchronized (device.getOutputStream()) {
+						device.getOutputStream().write(messageBytes);
+						device.getOutputStream().flush();
+					}
+
+				} catch (Exception e1) {
+					log.warn("Error while parsing message: {}", e1.getMessage(), e1);
+					JOptionPane.showMessageDialog(getParent(), "Error while parsing message: " + e1.getMessage());
+				}
+			}
+		}
+		);
+	}
+
+	private Component getParent() {
+		return SwingUtilities.getWindowAncestor(devicePane.contentPane);
+	}
+
+	/**
+	 * Reflects the progress of a device operation in the pane. The driver calls back on its own threads, so all
+	 * changes are handed over to the event dispatch thread.
+	 */
+	private class DevicePaneOperationListener<T> extends OperationAdapter<T> {
+
+		@Override
+		public void onExecute() {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+
+					devicePane.progressBar.setValue(0);
+					devicePane.progressBar.setEnabled(true);
+
+					devicePane.setDeviceControlsEnabled(false);
+				}
+			}
+			);
+		}
+
+		@Override
+		public void onSuccess(final T result) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+
+					devicePane.progressBar.setValue(100);
+					devicePane.progressBar.setEnabled(false);
+
+					devicePane.setDeviceControlsEnabled(true);
+				}
+			}
+			);
+		}
+
+		@Override
+		public void onCancel() {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+
+					devicePane.progressBar.setValue(0);
+					devicePane.progressBar.setEnabled(false);
+
+					devicePane.setDeviceControlsEnabled(true);
+				}
+			}
+			);
+		}
+
+		@Override
+		public void onFailure(final Throwable throwable) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+
+					devicePane.progressBar.setValue(0);
+					devicePane.progressBar.setEnabled(false);
+
+					devicePane.setDeviceControlsEnabled(true);
+
+					JOptionPane.showMessageDialog(getParent(), "Failed executing operation. Reason: " + throwable);
+				}
+			}
+			);
+		}
+
+		@Override
+		public void onProgressChange(final float fraction) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					devicePane.progressBar.setValue((int) (fraction * 100));
+				}
+			}
+			);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+
+import javax.annotation.Nullable;
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * The attached devices and the status of their sessions, one row per device. Must only be used on the event dispatch
+ * thread.
+ */
+public class DeviceTableModel extends AbstractTableModel {
+
+	private static final String[] COLUMN_NAMES = {"Port", "Type", "Reference", "MAC address", "Status"};
+
+	private final List<DeviceInfo> devices = newArrayList();
+
+	private final Map<String, String> statusByPort = newHashMap();
+
+	public void deviceAttached(final DeviceInfo deviceInfo) {
+		final int row = indexOf(deviceInfo.getPort());
+		if (row < 0) {
+			devices.add(deviceInfo);
+			fireTableRowsInserted(devices.size() - 1, devices.size() - 1);
+		} else {
+			devices.set(row, deviceInfo);
+			fireTableRowsUpdated(row, row);
+		}
+	}
+
+	public void deviceRemoved(final String port) {
+		final int row = indexOf(port);
+		if (row >= 0) {
+			devices.remove(row);
+			statusByPort.remove(port);
+			fireTableRowsDeleted(row, row);
+		}
+	}
+
+	public void setStatus(final String port, final String status) {
+		final int row = indexOf(port);
+		if (row >= 0) {
+			statusByPort.put(port, status);
+			fireTableCellUpdated(row, COLUMN_NAMES.length - 1);
+		}
+	}
+
+	public DeviceInfo getDeviceInfo(final int row) {
+		return devices.get(row);
+	}
+
+	@Nullable
+	public DeviceInfo getDeviceInfo(final String port) {
+		final int row = indexOf(port);
+		return row < 0 ? null : devices.get(row);
+	}
+
+	@Override
+	public int getRowCount() {
+		return devices.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMN_NAMES.length;
+	}
+
+	@Override
+	public String getColumnName(final int column) {
+		return COLUMN_NAMES[column];
+	}
+
+	@Override
+	public Object getValueAt(final int row, final int column) {
+		final DeviceInfo deviceInfo = devices.get(row);
+		switch (column) {
+			case 0:
+				return deviceInfo.getPort();
+			case 1:
+				return deviceInfo.getType();
+			case 2:
+				return deviceInfo.getReference();
+			case 3:
+				return deviceInfo.getMacAddress() == null ? null : deviceInfo.getMacAddress().toHexString();
+			default:
+				return statusByPort.get(deviceInfo.getPort());
+		}
+	}
+
+	private int indexOf(final String port) {
+		for (int i = 0; i < devices.size(); i++) {
+			if (devices.get(i).getPort().equals(port)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,98 @@
+import javax.swing.*;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Shows a {@link FlashProgressTableModel} as a grid with a progress bar per device. The grid is refreshed a few times a
+ * second until all devices are done.
+ */
+public class FlashProgressDialog extends JDialog {
+
+	private static final int REFRESH_INTERVAL_MILLIS = 200;
+
+	private final FlashProgressTableModel model;
+
+	private final Timer refreshTimer;
+
+	private final JButton closeButton = new JButton("close");
+
+	public FlashProgressDialog(final Frame owner, final String title, final FlashProgressTableModel model) {
+
+		super(owner, title, false);
+		this.model = model;
+
+		final JTable table = new JTable(model);
+		table.getColumnModel().getColumn(FlashProgressTableModel.PROGRESS_COLUMN)
+				.setCellRenderer(new ProgressCellRenderer());
+
+		final JScrollPane scrollPane = new JScrollPane(table);
+		scrollPane.setPreferredSize(new Dimension(600, Math.min(400, 40 + 20 * model.getRowCount())));
+
+		closeButton.setEnabled(false);
+		closeButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				dispose();
+			}
+		}
+		);
+
+		final JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		buttonPanel.add(closeButton);
+
+		getContentPane().add(scrollPane, BorderLayout.CENTER);
+		getContentPane().add(buttonPanel, BorderLayout.SOUTH);
+		setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+
+		refreshTimer = new Timer(REFRESH_INTERVAL_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				refresh();
+			}
+		}
+		);
+		refreshTimer.setCoalesce(true);
+		refreshTimer.start();
+	}
+
+	/**
+	 * Stops refreshing and lets the user close the dialog. Must be called on the event dispatch thread.
+	 */
+	public void finished() {
+		refreshTimer.stop();
+		model.refresh();
+		closeButton.setEnabled(true);
+		setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+	}
+
+	private void refresh() {
+		model.refresh();
+		if (model.isDone()) {
+			finished();
+		}
+	}
+
+	@Override
+	public void dispose() {
+		refreshTimer.stop();
+		super.dispose();
+	}
+
+	private static class ProgressCellRenderer extends JProgressBar implements TableCellRenderer {
+
+		private ProgressCellRenderer() {
+			super(0, 100);
+			setStringPainted(true);
+		}
+
+		@Override
+		public Component getTableCellRendererComponent(final JTable table, final Object value,
+													   final boolean isSelected, final boolean hasFocus,
+													   final int row, final int column) {
+			setValue((int) ((Float) value * 100));
+			return this;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+import de.uniluebeck.itm.wsn.deviceutils.flasher.FlashListener;
+import de.uniluebeck.itm.wsn.deviceutils.flasher.FlashResult;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Progress, throughput and outcome of flashing a set of devices, one row per device. The flasher reports from its own
+ * threads, the table is only notified about changes when {@link #refresh()} is called on the event dispatch thread,
+ * so frequent progress updates don't flood the event queue.
+ */
+public class FlashProgressTableModel extends AbstractTableModel implements FlashListener {
+
+	private static final String[] COLUMN_NAMES = {"Port", "Type", "Progress", "Throughput", "Status"};
+
+	public static final int PROGRESS_COLUMN = 2;
+
+	private static class Row {
+
+		private final String port;
+
+		private final String deviceType;
+
+		private float progress;
+
+		private long startMillis;
+
+		private long lastProgressMillis;
+
+		private FlashResult result;
+
+		private Row(final String port, final String deviceType) {
+			this.port = port;
+			this.deviceType = deviceType;
+		}
+	}
+
+	private final List<Row> rows = newArrayList();
+
+	private long imageLength;
+
+	private boolean changed;
+
+	public FlashProgressTableModel(final Map<String, String> deviceTypes) {
+		for (Map.Entry<String, String> entry : deviceTypes.entrySet()) {
+			rows.add(new Row(entry.getKey(), entry.getValue()));
+		}
+	}
+
+	public synchronized void setImageLength(final long imageLength) {
+		this.imageLength = imageLength;
+	}
+
+	@Override
+	public synchronized void progressChanged(final String port, final float fraction) {
+		final Row row = getRow(port);
+		final long now = System.currentTimeMillis();
+		if (row.startMillis == 0) {
+			row.startMillis = now;
+		}
+		row.progress = fraction;
+		row.lastProgressMillis = now;
+		changed = true;
+	}
+
+	@Override
+	public synchronized void flashed(final FlashResult result) {
+		final Row row = getRow(result.getPort());
+		row.result = result;
+		if (result.isSuccessful()) {
+			row.progress = 1;
+		}
+		changed = true;
+	}
+
+	/**
+	 * Notifies the table about the changes since the last call. Must be called on the event dispatch thread.
+	 */
+	public void refresh() {
+		synchronized (this) {
+			if (!changed) {
+				return;
+			}
+			changed = false;
+		}
+		fireTableRowsUpdated(0, rows.size() - 1);
+	}
+
+	public synchronized boolean isDone() {
+		for (Row row : rows) {
+			if (row.result == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMN_NAMES.length;
+	}
+
+	@Override
+	public String getColumnName(final int column) {
+		return COLUMN_NAMES[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass(final int column) {
+		return column == PROGRESS_COLUMN ? Float.class : String.class;
+	}
+
+	@Override
+	public synchronized Object getValueAt(final int rowIndex, final int column) {
+		final Row row = rows.get(rowIndex);
+		switch (column) {
+			case 0:
+				return row.port;
+			case 1:
+				return row.deviceType;
+			case PROGRESS_COLUMN:
+				return row.progress;
+			case 3:
+				return formatThroughput(row);
+			default:
+				return formatStatus(row);
+		}
+	}
+
+	private String formatThroughput(final Row row) {
+
+		final long durationMillis;
+		final float progress;
+		if (row.result != null) {
+			durationMillis = row.result.getDurationMillis();
+			progress = row.result.isSuccessful() ? 1 : row.progress;
+		} else {
+			durationMillis = row.lastProgressMillis - row.startMillis;
+			progress = row.progress;
+		}
+
+		if (durationMillis <= 0 || imageLength == 0) {
+			return "";
+		}
+		return (long) (imageLength * progress * 1000 / durationMillis) + " B/s";
+	}
+
+	private static String formatStatus(final Row row) {
+		if (row.result == null) {
+			return row.startMillis == 0 ? "waiting" : "programming";
+		} else if (row.result.isSuccessful()) {
+			return String.format("done in %.1f s", row.result.getDurationMillis() / 1000.0);
+		} else {
+			return "failed: " + row.result.getFailure().getMessage();
+		}
+	}
+
+	private Row getRow(final String port) {
+		for (Row row : rows) {
+			if (row.port.equals(port)) {
+				return row;
+			}
+		}
+		throw new IllegalArgumentException("Unknown port " + port);
+	}
+}
@@ -1,43 +1,50 @@
-import com.google.common.collect.ImmutableMap;
-import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
-import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
 import de.uniluebeck.itm.util.logging.LogLevel;
 import de.uniluebeck.itm.util.logging.Logging;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnector;
 import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
+import de.uniluebeck.itm.wsn.deviceutils.flasher.BatchDeviceFlasher;
+import de.uniluebeck.itm.wsn.deviceutils.metrics.MetricsHttpServer;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceEvent;
 import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
 import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
-import de.uniluebeck.itm.wsn.drivers.core.Device;
-import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
-import de.uniluebeck.itm.wsn.drivers.core.operation.OperationAdapter;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverListener;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactoryModule;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
-import org.jboss.netty.bootstrap.ClientBootstrap;
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.channel.*;
-import org.jboss.netty.channel.iostream.IOStreamAddress;
-import org.jboss.netty.channel.iostream.IOStreamChannelFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
+import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+/**
+ * Shows a live table of all attached devices, kept up to date by a {@link DeviceObserver} polled in the background.
+ * Every opened device gets a {@link DeviceSession} in a tab of its own, so several devices can be used at once, and all
+ * selected devices can be programmed in parallel.
+ */
 public class WsnDeviceUtilsGui {
 
 	static {
@@ -46,23 +53,43 @@ public class WsnDeviceUtilsGui {
 
 	private static final Logger log = LoggerFactory.getLogger(WsnDeviceUtilsGui.class);
 
-	private DeviceObserver deviceObserver;
+	private static final int OBSERVER_POLLING_INTERVAL_SECONDS = 1;
 
-	private DevicePane devicePane = new DevicePane();
+	private static final String MOCK_DEVICE_PORT = "Mock Device";
 
-	private JFrame frame;
+	private static final int MAX_FLASH_PARALLELISM = 64;
 
-	private Device device;
+	private static final long FLASH_TIMEOUT_MILLIS = 120000;
 
-	private DeviceFactory deviceFactory = Guice
+	private final DeviceObserver deviceObserver;
+
+	private final DeviceFactory deviceFactory = Guice
 			.createInjector(new DeviceFactoryModule())
 			.getInstance(DeviceFactory.class);
 
 	private final ExecutorService executorService;
 
-	private final DeviceConfigurationDialog deviceConfigurationDialog = new DeviceConfigurationDialog();
+	private final DeviceConnector deviceConnector = new DeviceConnector();
+
+	private final DeviceTableModel deviceTableModel = new DeviceTableModel();
+
+	private final JTable deviceTable = new JTable(deviceTableModel);
+
+	private final JTabbedPane sessionTabs = new JTabbedPane();
+
+	/**
+	 * The open sessions by device port, only accessed on the event dispatch thread.
+	 */
+	private final Map<String, DeviceSession> sessions = newHashMap();
 
-	private Map<String, String> deviceConfiguration = null;
+	private final DeviceSession.StatusListener sessionStatusListener = new DeviceSession.StatusListener() {
+		@Override
+		public void statusChanged(final DeviceSession session, final String status) {
+			deviceTableModel.setStatus(session.getDevicePort(), status);
+		}
+	};
+
+	private JFrame frame;
 
 	public WsnDeviceUtilsGui(final ExecutorService executorService) {
 
@@ -76,340 +103,260 @@ public class WsnDeviceUtilsGui {
 
 		frame = new JFrame("WSN Device Utils GUI");
 		frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
-		frame.getContentPane().add(devicePane.contentPane);
-
-		disconnect();
-
-		deviceObserver.updateState();
-		ImmutableMap<String, DeviceInfo> currentState = deviceObserver.getCurrentState();
-		Object[] devicePorts = currentState.keySet().toArray();
-		Object[] items = new String[devicePorts.length + 1];
-		items[0] = "Mock Device";
-		System.arraycopy(devicePorts, 0, items, 1, devicePorts.length);
-		devicePane.selectionComboBox.setModel(new DefaultComboBoxModel(items));
-
-		if (items.length > 0) {
-			devicePane.selectionComboBox.setSelectedIndex(0);
-		}
-
-		devicePane.editConfigurationButton.addActionListener(new ActionListener() {
 
+		final JButton openButton = new JButton("open");
+		openButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(final ActionEvent e) {
-				deviceConfigurationDialog.pack();
-				deviceConfigurationDialog.setVisible(true);
-				deviceConfiguration = deviceConfigurationDialog.getConfiguration();
+				for (int row : deviceTable.getSelectedRows()) {
+					final DeviceInfo deviceInfo = deviceTableModel.getDeviceInfo(row);
+					openSession(deviceInfo.getPort(), deviceInfo.getType());
+				}
 			}
 		}
 		);
 
-		devicePane.connectButton.addActionListener(new ActionListener() {
+		final JButton openMockButton = new JButton("open mock device");
+		openMockButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(final ActionEvent e) {
-
-				String devicePort = (String) devicePane.selectionComboBox.getSelectedItem();
-
-				if ("Mock Device".equals(devicePort)) {
-					connect(DeviceType.MOCK.toString(), devicePort, deviceConfiguration);
-				} else {
-					connect(getDeviceType(devicePort), devicePort, deviceConfiguration);
-				}
+				openSession(MOCK_DEVICE_PORT, DeviceType.MOCK.toString());
 			}
 		}
 		);
 
-		devicePane.disconnectButton.addActionListener(new ActionListener() {
+		final JButton closeButton = new JButton("close tab");
+		closeButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(final ActionEvent e) {
-				disconnect();
+				closeSelectedSession();
 			}
 		}
 		);
 
-		devicePane.clearOutputButton.addActionListener(new ActionListener() {
+		deviceTable.addMouseListener(new MouseAdapter() {
 			@Override
-			public void actionPerformed(final ActionEvent e) {
-				devicePane.outputTextArea.setText(null);
+			public void mouseClicked(final MouseEvent e) {
+				final int row = deviceTable.rowAtPoint(e.getPoint());
+				if (e.getClickCount() == 2 && row >= 0) {
+					final DeviceInfo deviceInfo = deviceTableModel.getDeviceInfo(row);
+					openSession(deviceInfo.getPort(), deviceInfo.getType());
+				}
 			}
 		}
 		);
 
-		devicePane.wrapLinesCheckBox.addActionListener(new ActionListener() {
+		final JSpinner parallelismSpinner = new JSpinner(
+				new SpinnerNumberModel(BatchDeviceFlasher.DEFAULT_PARALLELISM, 1, MAX_FLASH_PARALLELISM, 1)
+		);
+
+		final JButton programSelectedButton = new JButton("program selected");
+		programSelectedButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(final ActionEvent e) {
-				devicePane.outputTextArea.setLineWrap(devicePane.wrapLinesCheckBox.isSelected());
+				programSelected((Integer) parallelismSpinner.getValue());
 			}
 		}
 		);
 
-		devicePane.programButton.addActionListener(new ActionListener() {
-			@Override
-			public void actionPerformed(final ActionEvent e) {
-
-				JFileChooser fileChooser = new JFileChooser();
-				fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-				int returnCode = fileChooser.showOpenDialog(frame);
+		final JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		buttonPanel.add(openButton);
+		buttonPanel.add(openMockButton);
+		buttonPanel.add(closeButton);
+		buttonPanel.add(new JSeparator(SwingConstants.VERTICAL));
+		buttonPanel.add(programSelectedButton);
+		buttonPanel.add(new JLabel("in parallel:"));
+		buttonPanel.add(parallelismSpinner);
 
-				if (returnCode == JFileChooser.APPROVE_OPTION) {
+		final JScrollPane deviceTableScrollPane = new JScrollPane(deviceTable);
+		deviceTableScrollPane.setPreferredSize(new Dimension(600, 120));
 
-					byte[] selectedFileBytes;
-					try {
+		final JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, deviceTableScrollPane, sessionTabs);
+		splitPane.setResizeWeight(0.2);
 
-						File selectedFile = fileChooser.getSelectedFile();
-						selectedFileBytes = Files.toByteArray(selectedFile);
+		frame.getContentPane().add(buttonPanel, BorderLayout.NORTH);
+		frame.getContentPane().add(splitPane, BorderLayout.CENTER);
 
-					} catch (IOException e1) {
+		startObservingDevices();
 
-						log.warn("Error while reading file: {}", e1.getMessage(), e1);
-						JOptionPane.showMessageDialog(frame, "Error while reading file: " + e1.getMessage());
-						return;
-					}
-
-					device.program(selectedFileBytes, 120000, new DevicePaneOperationListener<Void>(devicePane) {
-								@Override
-								public void onSuccess(final Void result) {
-									super.onSuccess(result);
-									// simulate reconnect
-									String devicePort = (String) devicePane.selectionComboBox.getSelectedItem();
-									connect(getDeviceType(devicePort), devicePort, deviceConfiguration);
-									device.reset(1000, new DevicePaneOperationListener<Void>(devicePane));
-								}
-							});
-				}
-			}
-		}
-		);
+		frame.pack();
+		frame.setVisible(true);
+	}
 
-		devicePane.resetButton.addActionListener(new ActionListener() {
-			@Override
-			public void actionPerformed(final ActionEvent e) {
-				device.reset(1000, new DevicePaneOperationListener<Void>(devicePane));
-			}
-		}
-		);
+	/**
+	 * Polls the device observer on a background thread. Its events are delivered on threads of the observer and
+	 * handed over to the event dispatch thread.
+	 */
+	private void startObservingDevices() {
 
-		devicePane.readMACButton.addActionListener(new ActionListener() {
+		deviceObserver.addListener(new DeviceObserverListener() {
 			@Override
-			public void actionPerformed(final ActionEvent e) {
-				DevicePaneOperationListener<MacAddress> callback =
-						new DevicePaneOperationListener<MacAddress>(devicePane) {
-							@Override
-							public void onSuccess(final MacAddress result) {
-								super.onSuccess(result);
-								JOptionPane.showMessageDialog(frame, "MAC address: " + result.toHexString());
-							}
-						};
-				device.readMac(5000, callback);
+			public void deviceEvent(final DeviceEvent event) {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						handleDeviceEvent(event);
+					}
+				}
+				);
 			}
 		}
 		);
 
-		devicePane.writeMACButton.addActionListener(new ActionListener() {
-			@Override
-			public void actionPerformed(final ActionEvent e) {
-
-				devicePane.progressBar.setValue(0);
-				devicePane.progressBar.setEnabled(true);
-
-				String macAddressString = JOptionPane.showInputDialog("Please enter MAC address to write:");
-				MacAddress macAddress = new MacAddress(macAddressString);
-
-				device.writeMac(macAddress, 120000, new DevicePaneOperationListener<Void>(devicePane));
-			}
-		}
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("WsnDeviceUtilsGui-Observer %d").setDaemon(true).build()
 		);
-
-		devicePane.sendButton.addActionListener(new ActionListener() {
+		scheduler.scheduleWithFixedDelay(new Runnable() {
 			@Override
-			public void actionPerformed(final ActionEvent e) {
+			public void run() {
 				try {
-
-					byte[] messageBytes;
-
-					final String inputMode = (String) devicePane.inputMode.getSelectedItem();
-
-					if ("ASCII".equals(inputMode)) {
-						messageBytes = devicePane.sendTextField.getText().getBytes();
-					} else if ("Hex-String".equals(inputMode)) {
-						messageBytes = StringUtils.fromStringToByteArray(devicePane.sendTextField.getText());
-					} else {
-						throw new RuntimeException("Unknown input mode \"" + inputMode + "\"");
-					}
-
-					synchronized (device.getOutputStream()) {
-						device.getOutputStream().write(messageBytes);
-						device.getOutputStream().flush();
-					}
-
-				} catch (Exception e1) {
-					log.warn("Error while parsing message: {}", e1.getMessage(), e1);
-					JOptionPane.showMessageDialog(frame, "Error while parsing message: " + e1.getMessage());
+					deviceObserver.run();
+				} catch (Exception e) {
+					log.error("Exception while observing devices: " + e, e);
 				}
 			}
-		}
+		}, 0, OBSERVER_POLLING_INTERVAL_SECONDS, TimeUnit.SECONDS
 		);
-
-		frame.pack();
-		frame.setVisible(true);
 	}
 
-	private class DevicePaneOperationListener<T> extends OperationAdapter<T> {
+	private void handleDeviceEvent(final DeviceEvent event) {
 
-		private final DevicePane devicePane;
+		final String port = event.getDeviceInfo().getPort();
 
-		private DevicePaneOperationListener(final DevicePane devicePane) {
-			this.devicePane = devicePane;
-		}
-
-		@Override
-		public void onExecute() {
+		switch (event.getType()) {
 
-			devicePane.progressBar.setValue(0);
-			devicePane.progressBar.setEnabled(true);
+			case ATTACHED:
+			case MAC_RESOLVED:
+				deviceTableModel.deviceAttached(event.getDeviceInfo());
+				break;
 
-			devicePane.setDeviceControlsEnabled(false);
+			case REMOVED:
+				deviceTableModel.deviceRemoved(port);
+				final DeviceSession session = sessions.get(port);
+				if (session != null) {
+					session.disconnect("Device removed");
+				}
+				break;
 		}
+	}
 
-		@Override
-		public void onSuccess(final T result) {
-
-			devicePane.progressBar.setValue(100);
-			devicePane.progressBar.setEnabled(false);
+	/**
+	 * Flashes one image onto all devices selected in the table. The image is read and the devices are flashed in the
+	 * background, the progress of every device is shown in a {@link FlashProgressDialog}.
+	 */
+	private void programSelected(final int parallelism) {
 
-			devicePane.setDeviceControlsEnabled(true);
+		final Map<String, String> deviceTypes = newLinkedHashMap();
+		for (int row : deviceTable.getSelectedRows()) {
+			final DeviceInfo deviceInfo = deviceTableModel.getDeviceInfo(row);
+			deviceTypes.put(deviceInfo.getPort(), deviceInfo.getType());
 		}
 
-		@Override
-		public void onCancel() {
-
-			devicePane.progressBar.setValue(0);
-			devicePane.progressBar.setEnabled(false);
-
-			devicePane.setDeviceControlsEnabled(true);
+		if (deviceTypes.isEmpty()) {
+			JOptionPane.showMessageDialog(frame, "Please select the devices to program in the device table.");
+			return;
 		}
 
-		@Override
-		public void onFailure(final Throwable throwable) {
-
-			devicePane.progressBar.setValue(0);
-			devicePane.progressBar.setEnabled(false);
-
-			devicePane.setDeviceControlsEnabled(true);
-
-			JOptionPane.showMessageDialog(frame, "Failed executing operation. Reason: " + throwable);
+		final JFileChooser fileChooser = new JFileChooser();
+		fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+		if (fileChooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+			return;
 		}
-
-		@Override
-		public void onProgressChange(final float fraction) {
-			devicePane.progressBar.setValue((int) (fraction * 100));
+		final File imageFile = fileChooser.getSelectedFile();
+
+		// the flasher opens connections of its own, so the sessions must have released the ports before it starts
+		final List<Future<?>> disconnects = newArrayList();
+		for (String port : deviceTypes.keySet()) {
+			final DeviceSession session = sessions.get(port);
+			if (session != null) {
+				disconnects.add(session.disconnect("Programming"));
+			}
 		}
-	}
 
-	private void connect(final String deviceType, final String devicePort, final Map<String, String> configuration) {
+		final FlashProgressTableModel progressTableModel = new FlashProgressTableModel(deviceTypes);
+		final FlashProgressDialog progressDialog =
+				new FlashProgressDialog(frame, "Programming " + imageFile.getName(), progressTableModel);
+		progressDialog.pack();
+		progressDialog.setLocationRelativeTo(frame);
+		progressDialog.setVisible(true);
 
-		disconnect();
-
-		device = deviceFactory.create(executorService, deviceType, configuration);
-
-		try {
-			device.connect(devicePort);
-		} catch (IOException e) {
-			log.warn("{}", e.getMessage(), e);
-			JOptionPane.showMessageDialog(frame, e.getMessage());
-			devicePane.setDeviceControlsEnabled(false);
-			return;
-		}
+		executorService.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
 
-		if (!device.isConnected()) {
-			JOptionPane.showMessageDialog(frame, "Could not connect to device (unknown error)");
-			devicePane.setDeviceControlsEnabled(false);
-			return;
-		}
+					final byte[] image = Files.toByteArray(imageFile);
+					progressTableModel.setImageLength(image.length);
 
-		final InputStream inputStream = device.getInputStream();
-		final OutputStream outputStream = device.getOutputStream();
+					for (Future<?> disconnect : disconnects) {
+						disconnect.get();
+					}
 
-		final ClientBootstrap bootstrap = new ClientBootstrap(new IOStreamChannelFactory(executorService));
+					new BatchDeviceFlasher(deviceFactory, executorService, parallelism, FLASH_TIMEOUT_MILLIS)
+							.flash(deviceTypes, null, image, progressTableModel);
 
-		bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
-			public ChannelPipeline getPipeline() throws Exception {
-				DefaultChannelPipeline pipeline = new DefaultChannelPipeline();
-				pipeline.addLast("loggingHandler", new SimpleChannelHandler() {
-					@Override
-					public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e)
-							throws Exception {
-
-						final ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
-						byte[] messageBytes = new byte[buffer.readableBytes()];
-						buffer.readBytes(messageBytes);
-
-						final String outputMode = (String) devicePane.outputMode.getSelectedItem();
-						final String message;
-
-						if ("ASCII".equals(outputMode)) {
-							message = new String(messageBytes);
-						} else if ("Hex-String".equals(outputMode)) {
-							message = StringUtils.toHexString(messageBytes);
-						} else if ("Replace non-printable ASCII characters".equals(outputMode)) {
-							message = StringUtils.toPrintableString(messageBytes);
-						} else {
-							throw new RuntimeException();
+				} catch (final IOException e) {
+					log.warn("Error while reading file: {}", e.getMessage(), e);
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							progressDialog.dispose();
+							JOptionPane.showMessageDialog(frame, "Error while reading file: " + e.getMessage());
 						}
-
-						log.debug("Device output: {}", message);
-						devicePane.outputTextArea.append(message + '\n');
 					}
+					);
+				} catch (ExecutionException e) {
+					log.warn("Error while disconnecting: {}", e.getCause().getMessage(), e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
 				}
-				);
-				return pipeline;
 			}
 		}
 		);
+	}
+
+	private void openSession(final String port, final String deviceType) {
 
-		// Make a new connection.
-		ChannelFuture connectFuture = bootstrap.connect(new IOStreamAddress(inputStream, outputStream));
+		DeviceSession session = sessions.get(port);
 
-		// Wait until the connection is made successfully.
-		connectFuture.awaitUninterruptibly().getChannel();
+		if (session == null || !session.getDeviceType().equals(deviceType)) {
 
-		log.debug("Connected to {} device at port {}", deviceType, devicePort);
+			if (session != null) {
+				closeSession(session);
+			}
 
-		devicePane.selectionComboBox.setEnabled(false);
-		devicePane.connectButton.setEnabled(false);
-		devicePane.disconnectButton.setEnabled(true);
-		devicePane.editConfigurationButton.setEnabled(false);
+			session = new DeviceSession(
+					deviceFactory, executorService, deviceConnector, sessionStatusListener, port, deviceType
+			);
+			sessions.put(port, session);
+			sessionTabs.addTab(port, session.getComponent());
+			session.connect();
+		}
 
-		devicePane.setDeviceControlsEnabled(true);
-		devicePane.setStatusText("Connected to " + deviceType + " device at port " + devicePort);
+		sessionTabs.setSelectedComponent(session.getComponent());
 	}
 
-	private String getDeviceType(final String devicePort) {
-		return deviceObserver.getCurrentState().get(devicePort).getType();
+	private void closeSelectedSession() {
+		final Component selected = sessionTabs.getSelectedComponent();
+		for (DeviceSession session : sessions.values()) {
+			if (session.getComponent() == selected) {
+				closeSession(session);
+				return;
+			}
+		}
 	}
 
-	private void disconnect() {
-		if (device != null && device.isConnected()) {
-            try {
-                Closeables.close(device, true);
-            } catch (IOException e) {
-                throw new RuntimeException("This exception should have been swallowed!");
-            }
-        }
-		devicePane.setDeviceControlsEnabled(false);
-		devicePane.outputTextArea.setText(null);
-		devicePane.setStatusText("Not connected");
-
-		devicePane.selectionComboBox.setEnabled(true);
-		devicePane.connectButton.setEnabled(true);
-		devicePane.disconnectButton.setEnabled(false);
-		devicePane.editConfigurationButton.setEnabled(true);
+	private void closeSession(final DeviceSession session) {
+		session.dispose();
+		sessions.remove(session.getDevicePort());
+		sessionTabs.remove(session.getComponent());
+		deviceTableModel.setStatus(session.getDevicePort(), null);
 	}
 
 	public static void main(String[] args) {
 
-		final ThreadFactory threadFactory =
-				new ThreadFactoryBuilder().setNameFormat("WsnDeviceUtilsGui-Thread %d").build();
-		final ExecutorService executorService = Executors.newCachedThreadPool(threadFactory);
+		MetricsHttpServer.startIfConfigured();
+		final ExecutorService executorService = DeviceUtilsModule.createExecutorService("WsnDeviceUtilsGui-Thread");
 
 		Runtime.getRuntime().addShutdownHook(new Thread("WsnDeviceUtilsGui-ShutdownHook") {
 			@Override